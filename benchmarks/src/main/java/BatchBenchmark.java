@@ -0,0 +1,66 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * How batches scale with their size: {@link Calc#evalAll(List)} against evaluating the
+ * same expressions one after the other on one thread. The expressions repeat, so most
+ * of them are found in the expression cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    private static final int DISTINCT_EXPRESSIONS_COUNT = 200;
+
+    @Param({"10", "1000", "100000"})
+    public int batchSize;
+
+    private Calc calc;
+    private List<String> expressions;
+
+    @Setup
+    public void setUp() {
+        // the expressions are evaluated every time , not taken from the result cache
+        calc = new Calc(new ExpressionCache(Constants.DEFAULT_EXPRESSION_CACHE_CAPACITY), 0);
+        ExpressionShape.bindVariables(calc.bindings());
+        expressions = new ArrayList<>(batchSize);
+        for (int expressionIndex = 0; expressionIndex < batchSize; expressionIndex++) {
+            int distinctIndex = expressionIndex % DISTINCT_EXPRESSIONS_COUNT;
+            expressions.add("(x+" + distinctIndex + ")*v" + (distinctIndex % ExpressionShape.VARIABLES_COUNT) + "-4/x");
+        }
+    }
+
+    @Benchmark
+    public List<EvaluationResult> evalAll() {
+        return calc.evalAll(expressions);
+    }
+
+    @Benchmark
+    public double evalOneByOne() {
+        double sum = 0;
+        for (String expression : expressions) {
+            sum += calc.eval(expression);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,77 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A binding heavy workload, like a session of the calculator program: a chain of
+ * statements where every statement binds a variable computed from the previous ones,
+ * evaluated with the bindings of a calculator, of a session, or of a calculator keeping
+ * "_" per thread. The time is per statement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingsBenchmark {
+
+    private static final int STATEMENTS_COUNT = 100;
+
+    /*
+     * the bindings the statements are evaluated with
+     * */
+    public enum Bindings {
+        CALCULATOR,
+        SESSION,
+        THREAD_LAST_RESULT
+    }
+
+    @Param
+    public Bindings bindingsKind;
+
+    private final String[] statements = new String[STATEMENTS_COUNT];
+    private Calc calc;
+    private Session session;
+
+    @Setup
+    public void setUp() {
+        statements[0] = "a0=(x*2)";
+        for (int statementIndex = 1; statementIndex < STATEMENTS_COUNT - 1; statementIndex++) {
+            statements[statementIndex] = "a" + statementIndex + "=(a" + (statementIndex - 1) + "*1.01+v"
+                    + statementIndex + "-_/2)";
+        }
+        statements[STATEMENTS_COUNT - 1] = "total=(a0+a" + (STATEMENTS_COUNT / 2) + "+a" + (STATEMENTS_COUNT - 2) + ")";
+        calc = new Calc();
+        ExpressionShape.bindVariables(calc.bindings());
+        calc.eval("0");
+        if (bindingsKind == Bindings.THREAD_LAST_RESULT) {
+            calc.setLastResultScope(LastResultScope.THREAD);
+        }
+        session = calc.newSession();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STATEMENTS_COUNT)
+    public double evalStatements() {
+        double value = 0;
+        for (String statement : statements) {
+            value = bindingsKind == Bindings.SESSION ? session.eval(statement) : calc.eval(statement);
+        }
+        return value;
+    }
+}
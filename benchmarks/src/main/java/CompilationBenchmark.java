@@ -0,0 +1,61 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * What the expression cache saves: evaluating an expression every time as if it was new,
+ * against finding it in the cache, and compiling it on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilationBenchmark {
+
+    @Param
+    public ExpressionShape shape;
+
+    private String expression;
+    private Calc cachingCalc;
+    private Calc uncachedCalc;
+
+    @Setup
+    public void setUp() {
+        expression = shape.expression();
+        // the expressions are evaluated every time , not taken from the result cache
+        cachingCalc = new Calc(new ExpressionCache(Constants.DEFAULT_EXPRESSION_CACHE_CAPACITY), 0);
+        ExpressionShape.bindVariables(cachingCalc.bindings());
+        uncachedCalc = new Calc(new ExpressionCache(0), 0);
+        ExpressionShape.bindVariables(uncachedCalc.bindings());
+    }
+
+    @Benchmark
+    public double evalCached() {
+        return cachingCalc.eval(expression);
+    }
+
+    @Benchmark
+    public double evalUncached() {
+        return uncachedCalc.eval(expression);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() {
+        return uncachedCalc.compile(expression);
+    }
+}
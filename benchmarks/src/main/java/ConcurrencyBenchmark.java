@@ -0,0 +1,89 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The throughput of a single calculator shared by 1 to 64 threads, every thread evaluating
+ * the same expressions through {@link Calc#eval(String)}. With the shared "_" every evaluation
+ * writes the same binding, with a "_" per thread they only share the cache and the variables
+ * they read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyBenchmark {
+
+    @Param
+    public LastResultScope lastResultScope;
+
+    private Calc calc;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        // the expressions are evaluated every time , not taken from the result cache
+        calc = new Calc(new ExpressionCache(Constants.DEFAULT_EXPRESSION_CACHE_CAPACITY), 0);
+        calc.setLastResultScope(lastResultScope);
+        ExpressionShape.bindVariables(calc.bindings());
+        expression = ExpressionShape.SHORT.expression();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double eval01Threads() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public double eval02Threads() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double eval04Threads() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public double eval08Threads() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public double eval16Threads() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public double eval32Threads() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public double eval64Threads() {
+        return calc.eval(expression);
+    }
+}
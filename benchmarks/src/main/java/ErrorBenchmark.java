@@ -0,0 +1,62 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The throughput of {@link Calc#tryEval(String)} for expressions that fail, against the same
+ * expression when it succeeds. The failures are found while compiling (an unknown character,
+ * the expression is compiled every time) or while evaluating (an undefined variable and a
+ * division by zero, the expression is cached).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorBenchmark {
+
+    @Param({"success", "unknownCharacter", "undefinedVariable", "divisionByZero"})
+    public String outcome;
+
+    private Calc calc;
+    private String expression;
+
+    @Setup
+    public void setUp() {
+        calc = new Calc();
+        calc.bindings().put("x", 1.5);
+        calc.bindings().put("y", 1.5);
+        switch (outcome) {
+            case "success":
+                expression = "(x+2)*3-4/y";
+                break;
+            case "unknownCharacter":
+                expression = "(x+2)*3-4$y";
+                break;
+            case "undefinedVariable":
+                expression = "(x+2)*3-4/z";
+                break;
+            default:
+                expression = "(x+2)*3-4/(y-x)";
+        }
+    }
+
+    @Benchmark
+    public double tryEval() {
+        return calc.tryEval(expression).getValueOrElse(0);
+    }
+}
@@ -0,0 +1,70 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Evaluating expressions of every shape with both backends: through {@link Calc#eval(String)},
+ * which finds the compiled expression in the cache and binds "_", and through an expression
+ * compiled once, with bindings or with an array of variable values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param
+    public ExpressionShape shape;
+
+    @Param
+    public EvaluationBackend backend;
+
+    private String expression;
+    private Calc calc;
+    private Map<String, Double> bindings;
+    private CompiledExpression compiledExpression;
+    private double[] variables;
+
+    @Setup
+    public void setUp() {
+        expression = shape.expression();
+        // the expressions are evaluated every time , not taken from the result cache
+        calc = new Calc(new ExpressionCache(Constants.DEFAULT_EXPRESSION_CACHE_CAPACITY), 0);
+        calc.setEvaluationBackend(backend);
+        bindings = calc.bindings();
+        ExpressionShape.bindVariables(bindings);
+        compiledExpression = calc.compile(expression);
+        variables = ExpressionShape.variableValues(bindings, compiledExpression.getVariableNames());
+    }
+
+    @Benchmark
+    public double eval() {
+        return calc.eval(expression);
+    }
+
+    @Benchmark
+    public double evaluateCompiledWithBindings() {
+        return compiledExpression.evaluate(bindings);
+    }
+
+    @Benchmark
+    public double evaluateCompiledWithVariables() {
+        return compiledExpression.evaluate(variables);
+    }
+}
@@ -0,0 +1,111 @@
+package main.java;
+
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * the shapes of the expressions the benchmarks are run with.
+ *
+ * every shape reads the variable x , so the optimizer can't fold the whole expression into a number
+ * and the evaluation still has work to do
+ * */
+public enum ExpressionShape {
+
+    // a few operators , like the lines typed in the calculator program
+    SHORT {
+        @Override
+        String expression() {
+            return "(x+2)*3-4/x";
+        }
+    },
+
+    // every operation is nested in the parentheses of the next one
+    DEEP_NESTING {
+        @Override
+        String expression() {
+            StringBuilder expression = new StringBuilder();
+            for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+                expression.append('(');
+            }
+            expression.append('x');
+            for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+                expression.append(')').append("+-*/".charAt(depth % 4)).append(depth % 4 < 2 ? "3" : "1.01");
+            }
+            return expression.toString();
+        }
+    },
+
+    // a long sum without parentheses
+    LONG_FLAT_SUM {
+        @Override
+        String expression() {
+            StringBuilder expression = new StringBuilder("x");
+            for (int term = 1; term < SUM_TERMS_COUNT; term++) {
+                expression.append(term % 3 == 0 ? '-' : '+').append(term % 2 == 0 ? "x" : String.valueOf(term));
+            }
+            return expression.toString();
+        }
+    },
+
+    // a sum of function calls
+    FUNCTION_HEAVY {
+        @Override
+        String expression() {
+            StringBuilder expression = new StringBuilder();
+            for (int call = 0; call < FUNCTION_CALLS_COUNT; call++) {
+                if (call > 0) {
+                    expression.append('+');
+                }
+                expression.append(FUNCTION_NAMES[call % FUNCTION_NAMES.length]).append("(x+").append(call).append(')');
+            }
+            return expression.toString();
+        }
+    },
+
+    // a sum of products of many different variables
+    VARIABLE_HEAVY {
+        @Override
+        String expression() {
+            StringBuilder expression = new StringBuilder("x");
+            for (int variableIndex = 0; variableIndex < VARIABLES_COUNT; variableIndex += 2) {
+                expression.append("+v").append(variableIndex).append("*v").append(variableIndex + 1);
+            }
+            return expression.toString();
+        }
+    };
+
+    static final int NESTING_DEPTH = 100;
+    static final int SUM_TERMS_COUNT = 500;
+    static final int FUNCTION_CALLS_COUNT = 50;
+    static final int VARIABLES_COUNT = 100;
+
+    private static final String[] FUNCTION_NAMES = {"sqrt", "log", "sin", "cos"};
+
+
+    /*
+     * returns the expression of this shape
+     * */
+    abstract String expression();
+
+    /*
+     * binds the variables read by the expressions of every shape
+     * */
+    static void bindVariables(Map<String, Double> bindings) {
+        bindings.put("x", 1.5);
+        for (int variableIndex = 0; variableIndex < VARIABLES_COUNT; variableIndex++) {
+            bindings.put("v" + variableIndex, 1 + variableIndex / 100.0);
+        }
+    }
+
+    /*
+     * returns the values of the given variables , in the same order
+     * */
+    static double[] variableValues(Map<String, Double> bindings, List<String> variableNames) {
+        double[] values = new double[variableNames.size()];
+        for (int variableIndex = 0; variableIndex < values.length; variableIndex++) {
+            values[variableIndex] = bindings.get(variableNames.get(variableIndex));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,87 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A file of expressions evaluated with {@link Calc#evalFile(Path, Path)}, against reading,
+ * evaluating and writing it one line after the other like the calculator program does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileEvaluationBenchmark {
+
+    @Param({"100000"})
+    public int linesCount;
+
+    private Path directory;
+    private Path input;
+    private Path output;
+    private Calc calc;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("calc-benchmark");
+        input = directory.resolve("input.txt");
+        output = directory.resolve("output.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int line = 0; line < linesCount; line++) {
+                // mostly expressions seen before , and a binding now and then
+                writer.write(line % 10 == 0 ? "y=(x*" + line % 100 + ")" : "(x+" + line % 500 + ")*y-4/x");
+                writer.newLine();
+            }
+        }
+        calc = new Calc();
+        calc.bindings().put("x", 1.5);
+        calc.bindings().put("y", 2.5);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long evalFile() throws IOException {
+        return calc.evalFile(input, output);
+    }
+
+    @Benchmark
+    public long evalLineByLine() throws IOException {
+        long evaluatedLinesCount = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                writer.write(String.valueOf(calc.eval(line)));
+                writer.newLine();
+                evaluatedLinesCount++;
+            }
+        }
+        return evaluatedLinesCount;
+    }
+}
@@ -0,0 +1,82 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Formulas sharing subterms, evaluated together with a {@link FormulaSet} against every
+ * formula compiled and evaluated on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaSetBenchmark {
+
+    private static final String[] SHARED_SUBTERMS = {"sqrt(a*a+b*b)", "(a+b)*(a-b)", "log(a*b+c)", "sin(a)*cos(b)"};
+
+    @Param({"10", "100"})
+    public int formulasCount;
+
+    private FormulaSet formulaSet;
+    private double[] variables;
+    private double[] outputs;
+    private CompiledExpression[] compiledFormulas;
+    private double[][] formulaVariables;
+
+    @Setup
+    public void setUp() {
+        List<String> formulas = new ArrayList<>(formulasCount);
+        for (int formulaIndex = 0; formulaIndex < formulasCount; formulaIndex++) {
+            formulas.add(SHARED_SUBTERMS[formulaIndex % SHARED_SUBTERMS.length] + "*" + (formulaIndex + 1)
+                    + "+" + SHARED_SUBTERMS[(formulaIndex + 1) % SHARED_SUBTERMS.length] + "/c");
+        }
+        Map<String, Double> bindings = new TreeMap<>();
+        bindings.put("a", 3.0);
+        bindings.put("b", 4.0);
+        bindings.put("c", 1.5);
+        Calc calc = new Calc();
+        formulaSet = new FormulaSet(calc, formulas);
+        variables = ExpressionShape.variableValues(bindings, formulaSet.getVariableNames());
+        outputs = new double[formulasCount];
+        compiledFormulas = new CompiledExpression[formulasCount];
+        formulaVariables = new double[formulasCount][];
+        for (int formulaIndex = 0; formulaIndex < formulasCount; formulaIndex++) {
+            compiledFormulas[formulaIndex] = calc.compile(formulas.get(formulaIndex));
+            formulaVariables[formulaIndex] = ExpressionShape.variableValues(bindings,
+                    compiledFormulas[formulaIndex].getVariableNames());
+        }
+    }
+
+    @Benchmark
+    public BitSet evaluateFormulaSet() {
+        return formulaSet.evaluate(variables, outputs);
+    }
+
+    @Benchmark
+    public double[] evaluateOneByOne() {
+        for (int formulaIndex = 0; formulaIndex < compiledFormulas.length; formulaIndex++) {
+            outputs[formulaIndex] = compiledFormulas[formulaIndex].evaluate(formulaVariables[formulaIndex]);
+        }
+        return outputs;
+    }
+}
@@ -0,0 +1,69 @@
+package main.java;
+
+import main.java.exceptions.UnknownCharacterException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The cost of calling a registered function against a built in one, with the function registered
+ * as an operator or as a method handle, with both backends. Compiling shows the cost of resolving
+ * the calls with a few or many registered functions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionBenchmark {
+
+    @Param({"sin(x)*sin(y)+sin(x+y)", "sine(x)*sine(y)+sine(x+y)", "sinh(x)*sinh(y)+sinh(x+y)"})
+    public String expression;
+
+    @Param({"INTERPRETER", "BYTECODE"})
+    public EvaluationBackend backend;
+
+    @Param({"4", "1000"})
+    public int registeredFunctionsCount;
+
+    private Calc calc;
+    private CompiledExpression compiledExpression;
+    private double[] variables;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        calc = new Calc();
+        calc.functions().register("sine", Math::sin, true);
+        calc.functions().register("sinh", MethodHandles.publicLookup().findStatic(Math.class, "sin",
+                MethodType.methodType(double.class, double.class)), true);
+        for (int functionIndex = calc.functions().getFunctions().size(); functionIndex < registeredFunctionsCount; functionIndex++) {
+            calc.functions().register("f" + functionIndex, Math::abs, true);
+        }
+        compiledExpression = calc.compile(expression).withBackend(backend);
+        variables = new double[]{0.5, 1.25};
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return compiledExpression.evaluate(variables);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() throws UnknownCharacterException {
+        return new ExpressionCompiler(calc.functions()).compile(expression, RoundingPolicy.FINAL_RESULT);
+    }
+}
@@ -0,0 +1,84 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The value and the gradient of an expression of many variables, evaluated in one pass over
+ * dual numbers with {@link CompiledExpression#evaluateGradient(double[], double[])}, against
+ * forward finite differences (one evaluation more per variable). The values are not rounded,
+ * rounding to 12 digits would leave nothing of the finite differences.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GradientBenchmark {
+
+    private static final double STEP = 1e-7;
+
+    @Param({"2", "8", "32"})
+    public int variablesCount;
+
+    private CompiledExpression compiledExpression;
+    private double[] variables;
+    private double[] gradient;
+
+    @Setup
+    public void setUp() {
+        // every variable appears in a function call and in a product with the next one
+        StringBuilder expression = new StringBuilder();
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            if (variableIndex > 0) {
+                expression.append('+');
+            }
+            expression.append("sin(v").append(variableIndex).append(")*v").append((variableIndex + 1) % variablesCount)
+                    .append("+sqrt(1+v").append(variableIndex).append("*v").append(variableIndex).append(')');
+        }
+        Calc calc = new Calc();
+        calc.setRoundingPolicy(RoundingPolicy.NONE);
+        compiledExpression = calc.compile(expression.toString());
+        variables = new double[variablesCount];
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            variables[variableIndex] = 0.5 + variableIndex * 0.25;
+        }
+        gradient = new double[variablesCount];
+    }
+
+    @Benchmark
+    public double value() {
+        return compiledExpression.evaluate(variables);
+    }
+
+    @Benchmark
+    public double[] dualNumbers() {
+        compiledExpression.evaluateGradient(variables, gradient);
+        return gradient;
+    }
+
+    @Benchmark
+    public double[] finiteDifferences() {
+        double value = compiledExpression.evaluate(variables);
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            double variable = variables[variableIndex];
+            variables[variableIndex] = variable + STEP;
+            gradient[variableIndex] = (compiledExpression.evaluate(variables) - value) / STEP;
+            variables[variableIndex] = variable;
+        }
+        return gradient;
+    }
+}
@@ -0,0 +1,72 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The cost of a cheap built in function and of an expensive registered one, memoized or not,
+ * called with the angles of a grid in turn. The cache holds all of them, or a quarter of them
+ * which the clock keeps evicting before they are read again.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoizationBenchmark {
+
+    private static final int ANGLES_COUNT = 360;
+
+    @Param({"sin(x)", "erf(x)"})
+    public String expression;
+
+    @Param({"0", "90", "360"})
+    public int cacheCapacity;
+
+    private CompiledExpression compiledExpression;
+    private double[][] angles;
+    private int nextAngle;
+
+    @Setup
+    public void setUp() {
+        Calc calc = new Calc();
+        // the error function integrated with the simpson rule , about as costly as a user function can be
+        calc.functions().register("erf", argument -> {
+            int intervalsCount = 64;
+            double step = argument / intervalsCount;
+            double sum = 1 + Math.exp(-argument * argument);
+            for (int interval = 1; interval < intervalsCount; interval++) {
+                double point = interval * step;
+                sum += (interval % 2 == 0 ? 2 : 4) * Math.exp(-point * point);
+            }
+            return sum * step / 3 * 2 / Math.sqrt(Math.PI);
+        }, true);
+        if (cacheCapacity > 0) {
+            calc.functions().memoize(expression.substring(0, expression.indexOf('(')), cacheCapacity);
+        }
+        compiledExpression = calc.compile(expression);
+        angles = new double[ANGLES_COUNT][];
+        for (int angle = 0; angle < ANGLES_COUNT; angle++) {
+            angles[angle] = new double[]{Math.toRadians(angle)};
+        }
+    }
+
+    @Benchmark
+    public double evaluate() {
+        nextAngle = nextAngle == ANGLES_COUNT - 1 ? 0 : nextAngle + 1;
+        return compiledExpression.evaluate(angles[nextAngle]);
+    }
+}
@@ -0,0 +1,50 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The cost of every {@link NumericBackend} on an expression of integers, which LONG evaluates on
+ * primitive longs, and on an expression of decimals, which LONG promotes to BigDecimal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericBackendBenchmark {
+
+    @Param({"DOUBLE", "LONG", "BIG_DECIMAL", "INFERRED"})
+    public String numericBackend;
+
+    @Param({"(x*3+y)*(x-y)/2+x*y", "(x*0.3+y)*(x-y)/2.5+x*y"})
+    public String expression;
+
+    private CompiledExpression compiledExpression;
+    private double[] variables;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        NumericBackend backend = (NumericBackend) NumericBackend.class.getField(numericBackend).get(null);
+        compiledExpression = new Calc().compile(expression).withNumericBackend(backend);
+        variables = new double[]{1234, 56};
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return compiledExpression.evaluate(variables);
+    }
+}
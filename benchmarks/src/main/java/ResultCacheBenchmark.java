@@ -0,0 +1,65 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A dashboard workload: the expressions of every shape are sent again and again, and
+ * once per round one of the variables they read is bound again, with or without the
+ * result cache of the calculator. The time is per expression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultCacheBenchmark {
+
+    private static final int ROUNDS_COUNT = 10;
+
+    @Param({"0", "1024"})
+    public int resultCacheCapacity;
+
+    private final String[] expressions = new String[ExpressionShape.values().length];
+    private Calc calc;
+    private int changedVariableIndex;
+
+    @Setup
+    public void setUp() {
+        for (ExpressionShape shape : ExpressionShape.values()) {
+            expressions[shape.ordinal()] = shape.expression();
+        }
+        calc = new Calc(new ExpressionCache(Constants.DEFAULT_EXPRESSION_CACHE_CAPACITY), resultCacheCapacity);
+        ExpressionShape.bindVariables(calc.bindings());
+    }
+
+    @Benchmark
+    // 5 shapes per round
+    @OperationsPerInvocation(ROUNDS_COUNT * 5)
+    public double evalDashboard() {
+        double value = 0;
+        for (int round = 0; round < ROUNDS_COUNT; round++) {
+            for (String expression : expressions) {
+                value += calc.eval(expression);
+            }
+        }
+        // only the variable heavy expression reads the v variables
+        changedVariableIndex = (changedVariableIndex + 1) % ExpressionShape.VARIABLES_COUNT;
+        calc.bindings().put("v" + changedVariableIndex, 1 + changedVariableIndex / 100.0);
+        return value;
+    }
+}
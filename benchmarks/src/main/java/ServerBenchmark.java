@@ -0,0 +1,138 @@
+package main.java;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The cost of an evaluation sent over loopback to {@link CalcServer} as an HTTP request,
+ * and to {@link BinaryProtocolServer} one request at a time, pipelined, and as one request
+ * of many rows. The time is per evaluation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerBenchmark {
+
+    private static final String EXPRESSION = "(x+2)*3-4/x";
+    private static final int BATCH_SIZE = 1000;
+
+    private CalcServer calcServer;
+    private BinaryProtocolServer binaryProtocolServer;
+
+    @Setup(Level.Trial)
+    public void startServers() throws IOException {
+        Calc calc = new Calc();
+        calc.bindings().put("x", 1.5);
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        CalcServer.enableNoDelay();
+        calcServer = new CalcServer(calc, loopback);
+        calcServer.start();
+        binaryProtocolServer = new BinaryProtocolServer(calc, loopback);
+        binaryProtocolServer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServers() throws IOException {
+        calcServer.stop(0);
+        binaryProtocolServer.close();
+    }
+
+
+    /*
+     * the connection of a benchmark thread to the binary protocol server
+     * */
+    @State(Scope.Thread)
+    public static class BinaryConnection {
+
+        BinaryProtocolClient client;
+        int handle;
+        final double[] rows = new double[BATCH_SIZE];
+        final double[] results = new double[BATCH_SIZE];
+
+        @Setup(Level.Trial)
+        public void connect(ServerBenchmark benchmark) throws IOException {
+            client = BinaryProtocolClient.connect(benchmark.binaryProtocolServer.getAddress());
+            handle = client.prepare(EXPRESSION);
+            for (int row = 0; row < BATCH_SIZE; row++) {
+                rows[row] = 1 + row;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            client.close();
+        }
+    }
+
+
+    @Benchmark
+    public String httpEval() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + calcServer.getPort()
+                + "/eval").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(EXPRESSION.getBytes(StandardCharsets.UTF_8));
+        }
+        // the whole body is read , so the connection is kept alive for the next request
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        try (InputStream in = connection.getInputStream()) {
+            for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                body.write(buffer, 0, count);
+            }
+        }
+        return body.toString("UTF-8");
+    }
+
+    @Benchmark
+    public double binaryEvaluate(BinaryConnection connection) throws IOException {
+        return connection.client.evaluate(connection.handle, 1.5);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double binaryEvaluatePipelined(BinaryConnection connection) throws IOException {
+        for (int row = 0; row < BATCH_SIZE; row++) {
+            connection.client.send(connection.handle, connection.rows[row]);
+        }
+        double sum = 0;
+        for (int row = 0; row < BATCH_SIZE; row++) {
+            sum += connection.client.receive();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public double[] binaryEvaluateRows(BinaryConnection connection) throws IOException {
+        connection.client.evaluate(connection.handle, connection.rows, BATCH_SIZE, connection.results);
+        return connection.results;
+    }
+}
@@ -0,0 +1,53 @@
+package main.java;
+
+import javafx.util.Pair;
+import main.java.exceptions.UnknownCharacterException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Tokenizing expressions of every shape, into a list of pairs and into packed tokens.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param
+    public ExpressionShape shape;
+
+    private String expression;
+    private Tokenizer tokenizer;
+
+    @Setup
+    public void setUp() {
+        expression = shape.expression();
+        tokenizer = new Tokenizer();
+    }
+
+    @Benchmark
+    public List<Pair<TokenType, String>> tokenizeString() throws UnknownCharacterException {
+        return tokenizer.tokenizeString(expression);
+    }
+
+    @Benchmark
+    public PackedTokens tokenize() throws UnknownCharacterException {
+        return tokenizer.tokenize(expression);
+    }
+}
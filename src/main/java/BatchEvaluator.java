@@ -0,0 +1,170 @@
+package main.java;
+
+import main.java.exceptions.MalformedExpressionException;
+import main.java.exceptions.UnbalancedParenthesesException;
+import main.java.exceptions.UnknownCharacterException;
+import main.java.exceptions.VariableIsNotDefinedException;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.RecursiveAction;
+
+
+/*
+ * evaluates many independent expressions of a calculator in parallel.
+ *
+ * every worker thread has its own scratch state (the expressions it already compiled and , for
+ * isolated bindings , the bindings made by the current expression) , so the workers only meet
+ * in the shared expression cache when they see an expression for the first time
+ * */
+class BatchEvaluator {
+
+    // a batch is split until every task evaluates at most this many expressions
+    private static final int EXPRESSIONS_PER_TASK = 1024;
+    // the biggest number of compiled expressions a worker remembers
+    private static final int MAX_WORKER_COMPILED_EXPRESSIONS = 1024;
+
+    private final Calc calc;
+    private final BindingsMode bindingsMode;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    BatchEvaluator(Calc calc, BindingsMode bindingsMode) {
+        this.calc = calc;
+        this.bindingsMode = bindingsMode;
+    }
+
+
+    /*
+     * returns a task evaluating the given expressions into results , at the same positions
+     * */
+    RecursiveAction evaluateAll(List<String> expressions, EvaluationResult[] results) {
+        return new EvaluationTask(expressions, results, 0, expressions.size());
+    }
+
+
+    /*
+     * evaluates one expression , on the worker of the current thread
+     * */
+    EvaluationResult evaluate(String expression) {
+        return workers.get().evaluate(expression);
+    }
+
+
+    /*
+     * evaluates the expressions between start and end , splitting the range between workers while it is big
+     * */
+    private final class EvaluationTask extends RecursiveAction {
+
+        private final List<String> expressions;
+        private final EvaluationResult[] results;
+        private final int start;
+        private final int end;
+
+        EvaluationTask(List<String> expressions, EvaluationResult[] results, int start, int end) {
+            this.expressions = expressions;
+            this.results = results;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > EXPRESSIONS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new EvaluationTask(expressions, results, start, middle),
+                        new EvaluationTask(expressions, results, middle, end));
+                return;
+            }
+            Worker worker = workers.get();
+            for (int expressionIndex = start; expressionIndex < end; expressionIndex++) {
+                results[expressionIndex] = worker.evaluate(expressions.get(expressionIndex));
+            }
+        }
+    }
+
+
+    /*
+     * the scratch state of one worker thread
+     * */
+    private final class Worker {
+
+        private final Map<String, CompiledExpression> compiledExpressions = new HashMap<>();
+        private final IsolatedBindings isolatedBindings = new IsolatedBindings(calc.bindings());
+
+        EvaluationResult evaluate(String expression) {
+            try {
+                Map<String, Double> bindings = calc.bindings();
+                if (bindingsMode == BindingsMode.ISOLATED) {
+                    isolatedBindings.clear();
+                    bindings = isolatedBindings;
+                }
+                return EvaluationResult.success(expression, compile(expression).execute(bindings));
+            } catch (VariableIsNotDefinedException | UnknownCharacterException | MalformedExpressionException
+                    | UnbalancedParenthesesException | ArithmeticException | NumberFormatException e) {
+                // malformed expressions fail while they are compiled , the failures of the functions are thrown
+                return EvaluationResult.failure(expression, e);
+            }
+        }
+
+        private CompiledExpression compile(String expression) throws UnknownCharacterException {
+            CompiledExpression compiledExpression = compiledExpressions.get(expression);
+            if (compiledExpression == null) {
+                compiledExpression = calc.compileExpression(expression);
+                if (compiledExpressions.size() == MAX_WORKER_COMPILED_EXPRESSIONS) {
+                    compiledExpressions.clear();
+                }
+                compiledExpressions.put(expression, compiledExpression);
+            }
+            return compiledExpression;
+        }
+    }
+
+
+    /*
+     * bindings reading through to the bindings of the calculator , the bindings made by an
+     * expression are kept on the side and forgotten when it is done
+     * */
+    private static final class IsolatedBindings extends AbstractMap<String, Double> {
+
+        private final Map<String, Double> sharedBindings;
+        private final Map<String, Double> ownBindings = new HashMap<>();
+
+        IsolatedBindings(Map<String, Double> sharedBindings) {
+            this.sharedBindings = sharedBindings;
+        }
+
+        @Override
+        public Double get(Object variableName) {
+            Double variableValue = ownBindings.get(variableName);
+            return variableValue != null ? variableValue : sharedBindings.get(variableName);
+        }
+
+        @Override
+        public boolean containsKey(Object variableName) {
+            return ownBindings.containsKey(variableName) || sharedBindings.containsKey(variableName);
+        }
+
+        @Override
+        public Double put(String variableName, Double variableValue) {
+            Double previousValue = get(variableName);
+            ownBindings.put(variableName, variableValue);
+            return previousValue;
+        }
+
+        @Override
+        public void clear() {
+            ownBindings.clear();
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            Map<String, Double> allBindings = new TreeMap<>(sharedBindings);
+            allBindings.putAll(ownBindings);
+            return allBindings.entrySet();
+        }
+    }
+}
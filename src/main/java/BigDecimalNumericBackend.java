@@ -0,0 +1,118 @@
+package main.java;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/*
+ * the arithmetic of decimals rounded to a math context after every operation.
+ *
+ * the numbers are BigDecimal , the square root is found with newton's method to the precision of
+ * the context , the other functions have no BigDecimal version and are computed with doubles
+ * */
+final class BigDecimalNumericBackend implements NumericBackend {
+
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    // newton's method may end up going back and forth between two roots differing in their last digit
+    private static final int MAX_SQRT_ITERATIONS = 100;
+
+    private final MathContext mathContext;
+
+    BigDecimalNumericBackend(MathContext mathContext) {
+        this.mathContext = mathContext;
+    }
+
+    @Override
+    public Number valueOf(double number) {
+        // the shortest decimal that is the double , 0.1 is 0.1 and not the binary fraction closest to it
+        return BigDecimal.valueOf(number);
+    }
+
+    @Override
+    public Number add(Number first, Number second) {
+        return toBigDecimal(first).add(toBigDecimal(second), mathContext);
+    }
+
+    @Override
+    public Number subtract(Number first, Number second) {
+        return toBigDecimal(first).subtract(toBigDecimal(second), mathContext);
+    }
+
+    @Override
+    public Number multiply(Number first, Number second) {
+        return toBigDecimal(first).multiply(toBigDecimal(second), mathContext);
+    }
+
+    @Override
+    public Number divide(Number dividend, Number divisor) {
+        return toBigDecimal(dividend).divide(toBigDecimal(divisor), mathContext);
+    }
+
+    @Override
+    public boolean isZero(Number number) {
+        return toBigDecimal(number).signum() == 0;
+    }
+
+    @Override
+    public Number sqrt(Number number) {
+        return sqrt(toBigDecimal(number), mathContext);
+    }
+
+    @Override
+    public Number log(Number number) {
+        return BigDecimal.valueOf(Math.log(number.doubleValue()));
+    }
+
+    @Override
+    public Number sin(Number number) {
+        return BigDecimal.valueOf(Math.sin(number.doubleValue()));
+    }
+
+    @Override
+    public Number cos(Number number) {
+        return BigDecimal.valueOf(Math.cos(number.doubleValue()));
+    }
+
+
+    static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof Long) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        return BigDecimal.valueOf(number.doubleValue());
+    }
+
+    /*
+     * the square root with the precision of the given context , newton's method starts from the double
+     * square root (or from the order of magnitude of the root , for numbers out of the range of doubles)
+     * and stops when the root doesn't change anymore. the square root of a negative number is NaN ,
+     * which a BigDecimal can't be
+     * */
+    static BigDecimal sqrt(BigDecimal number, MathContext mathContext) {
+        if (number.signum() < 0) {
+            throw new ArithmeticException("the square root of " + number + " is not a number");
+        }
+        if (number.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        MathContext workingContext = new MathContext(mathContext.getPrecision() + 2, mathContext.getRoundingMode());
+        double doubleNumber = number.doubleValue();
+        BigDecimal root = doubleNumber >= Double.MIN_NORMAL && doubleNumber < Double.POSITIVE_INFINITY
+                ? new BigDecimal(Math.sqrt(doubleNumber), workingContext)
+                : BigDecimal.ONE.scaleByPowerOfTen((number.precision() - number.scale()) / 2);
+        for (int iteration = 0; iteration < MAX_SQRT_ITERATIONS; iteration++) {
+            BigDecimal nextRoot = root.add(number.divide(root, workingContext), workingContext).divide(TWO, workingContext);
+            if (nextRoot.compareTo(root) == 0) {
+                break;
+            }
+            root = nextRoot;
+        }
+        return root.round(mathContext);
+    }
+
+    @Override
+    public String toString() {
+        return "BIG_DECIMAL(" + mathContext + ")";
+    }
+}
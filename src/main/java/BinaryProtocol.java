@@ -0,0 +1,102 @@
+package main.java;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+
+/*
+ * the frames of the binary protocol of BinaryProtocolServer , and the sockets it runs on.
+ *
+ * every frame starts with its length (an int , not counting itself) , then a byte telling what the
+ * frame is. all numbers are big endian , strings are UTF-8.
+ *
+ * requests :
+ *   PREPARE   the expression                                  -> handle (int) , variables count (int) ,
+ *                                                                then every variable name (int length , bytes)
+ *   EVALUATE  handle (int) , rows count (int) , the values
+ *             of the variables of every row (doubles)         -> rows count (int) , the value of every row (doubles)
+ *   RELEASE   handle (int)                                    -> nothing
+ *
+ * responses start with OK followed by what the request gives back , or with ERROR followed by the
+ * message of the error. a connection answers its requests in the order they were sent , so a client
+ * can send many requests before reading the answers.
+ *
+ * the sockets are unix domain sockets when the JVM has them (java 16 and later) and the address is a
+ * path , loopback TCP otherwise. they are reached by reflection since the code is built for java 8
+ * */
+final class BinaryProtocol {
+
+    static final byte PREPARE = 1;
+    static final byte EVALUATE = 2;
+    static final byte RELEASE = 3;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // the length field and the type of a frame
+    static final int HEADER_SIZE = 5;
+    // bigger frames close the connection , they are most likely garbage
+    static final int MAX_FRAME_SIZE = 64 << 20;
+
+    private BinaryProtocol() {
+    }
+
+
+    /*
+     * returns the address of a unix domain socket at the given path
+     * */
+    static SocketAddress unixDomainSocketAddress(Path path) {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class)
+                    .invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("unix domain sockets need java 16 or later");
+        }
+    }
+
+    /*
+     * returns the path of a unix domain socket address , or null for other addresses
+     * */
+    static Path unixDomainSocketPath(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            return null;
+        }
+        try {
+            return (Path) address.getClass().getMethod("getPath").invoke(address);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static ServerSocketChannel openServerChannel(SocketAddress address) throws IOException {
+        if (address instanceof InetSocketAddress) {
+            return ServerSocketChannel.open().bind(address);
+        }
+        try {
+            ProtocolFamily unixFamily = StandardProtocolFamily.valueOf("UNIX");
+            ServerSocketChannel channel = (ServerSocketChannel) ServerSocketChannel.class
+                    .getMethod("open", ProtocolFamily.class).invoke(null, unixFamily);
+            return channel.bind(address);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new UnsupportedOperationException("unix domain sockets need java 16 or later");
+        }
+    }
+
+    static SocketChannel openChannel(SocketAddress address) throws IOException {
+        // since java 16 this opens a unix domain socket for a unix domain address
+        SocketChannel channel = SocketChannel.open(address);
+        if (address instanceof InetSocketAddress) {
+            channel.socket().setTcpNoDelay(true);
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,266 @@
+package main.java;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A client of {@link BinaryProtocolServer}, over one connection.
+ * <p>
+ * An expression is prepared once, then evaluated any number of times with the values of
+ * its variables in the order of {@link #getVariableNames(int)}. Evaluations can be sent
+ * without waiting for their values with {@link #send(int, double...)}, and their values
+ * received later, in the same order, with {@link #receive()}; the number of evaluations
+ * sent and not received yet should stay bounded (a few thousands) so neither side waits
+ * for the other to read.
+ * <p>
+ * Failed evaluations throw {@link UnsupportedOperationException} with the message of the
+ * server. A client is not thread safe.
+ */
+public final class BinaryProtocolClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // read mode , the bytes received and not handled yet are between the position and the limit
+    private final ByteBuffer in = (ByteBuffer) ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+    private final Map<Integer, List<String>> variableNames = new HashMap<>();
+    // the evaluations sent with send() whose values were not received yet
+    private int pendingEvaluationsCount;
+
+    private BinaryProtocolClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @param address the address of the server, a loopback address or a unix domain socket
+     * @return a client connected to the server
+     * @throws IOException if the server can't be reached
+     */
+    public static BinaryProtocolClient connect(SocketAddress address) throws IOException {
+        return new BinaryProtocolClient(BinaryProtocol.openChannel(address));
+    }
+
+
+    /**
+     * Compiles an expression on the server.
+     *
+     * @param expression well-formed arithmetic expression
+     * @return the handle of the expression, used to evaluate it
+     */
+    public int prepare(String expression) throws IOException {
+        requireNoPendingEvaluations();
+        byte[] expressionBytes = expression.getBytes(StandardCharsets.UTF_8);
+        reserve(BinaryProtocol.HEADER_SIZE + expressionBytes.length);
+        out.putInt(1 + expressionBytes.length).put(BinaryProtocol.PREPARE).put(expressionBytes);
+        flush();
+        readAnswerHeader();
+        readFully(8);
+        int handle = in.getInt();
+        int variablesCount = in.getInt();
+        List<String> names = new ArrayList<>(variablesCount);
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            readFully(4);
+            byte[] nameBytes = new byte[in.getInt()];
+            readFully(nameBytes.length);
+            in.get(nameBytes);
+            names.add(new String(nameBytes, StandardCharsets.UTF_8));
+        }
+        variableNames.put(handle, Collections.unmodifiableList(names));
+        return handle;
+    }
+
+    /**
+     * @param handle the handle of a prepared expression
+     * @return the variables of the expression, in the order their values are sent
+     */
+    public List<String> getVariableNames(int handle) {
+        List<String> names = variableNames.get(handle);
+        if (names == null) {
+            throw new IllegalArgumentException("unknown handle " + handle);
+        }
+        return names;
+    }
+
+    /**
+     * Evaluates a prepared expression and waits for its value.
+     *
+     * @param handle    the handle of the expression
+     * @param variables the values of its variables
+     * @return the value of the expression
+     */
+    public double evaluate(int handle, double... variables) throws IOException {
+        requireNoPendingEvaluations();
+        send(handle, variables);
+        return receive();
+    }
+
+    /**
+     * Evaluates a prepared expression for many rows of variable values with a single request.
+     *
+     * @param handle    the handle of the expression
+     * @param rows      the values of the variables of every row, one row after the other
+     * @param rowsCount the number of rows
+     * @param results   the value of every row
+     */
+    public void evaluate(int handle, double[] rows, int rowsCount, double[] results) throws IOException {
+        requireNoPendingEvaluations();
+        int variablesCount = getVariableNames(handle).size();
+        if (rows.length < rowsCount * variablesCount || results.length < rowsCount) {
+            throw new IllegalArgumentException("expected " + rowsCount + " rows of " + variablesCount + " values");
+        }
+        writeEvaluateHeader(handle, rowsCount, variablesCount);
+        for (int valueIndex = 0; valueIndex < rowsCount * variablesCount; valueIndex++) {
+            reserve(8);
+            out.putDouble(rows[valueIndex]);
+        }
+        flush();
+        readAnswerHeader();
+        readFully(4);
+        in.getInt();
+        for (int row = 0; row < rowsCount; row++) {
+            readFully(8);
+            results[row] = in.getDouble();
+        }
+    }
+
+    /**
+     * Sends the evaluation of a prepared expression without waiting for its value. The
+     * request may stay buffered until {@link #receive()} is called.
+     *
+     * @param handle    the handle of the expression
+     * @param variables the values of its variables
+     */
+    public void send(int handle, double... variables) throws IOException {
+        int variablesCount = getVariableNames(handle).size();
+        if (variables.length != variablesCount) {
+            throw new IllegalArgumentException("expected " + variablesCount + " values but got " + variables.length);
+        }
+        writeEvaluateHeader(handle, 1, variablesCount);
+        for (double variable : variables) {
+            out.putDouble(variable);
+        }
+        pendingEvaluationsCount++;
+    }
+
+    /**
+     * Receives the value of the oldest evaluation sent with {@link #send(int, double...)}.
+     *
+     * @return the value of the expression
+     */
+    public double receive() throws IOException {
+        if (pendingEvaluationsCount == 0) {
+            throw new IllegalStateException("no evaluation was sent");
+        }
+        if (out.position() > 0) {
+            flush();
+        }
+        pendingEvaluationsCount--;
+        readAnswerHeader();
+        readFully(12);
+        in.getInt();
+        return in.getDouble();
+    }
+
+    /**
+     * Forgets a prepared expression, its handle can be given to another expression.
+     *
+     * @param handle the handle of the expression
+     */
+    public void release(int handle) throws IOException {
+        requireNoPendingEvaluations();
+        getVariableNames(handle);
+        reserve(BinaryProtocol.HEADER_SIZE + 4);
+        out.putInt(5).put(BinaryProtocol.RELEASE).putInt(handle);
+        flush();
+        readAnswerHeader();
+        variableNames.remove(handle);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    private void writeEvaluateHeader(int handle, int rowsCount, int variablesCount) throws IOException {
+        long frameSize = 1 + 8 + (long) rowsCount * variablesCount * 8;
+        if (frameSize > BinaryProtocol.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("too many rows for one request " + rowsCount);
+        }
+        // the values of a single row are written without checking the room again
+        reserve(BinaryProtocol.HEADER_SIZE + 8 + (rowsCount == 1 ? variablesCount * 8 : 0));
+        out.putInt((int) frameSize).put(BinaryProtocol.EVALUATE).putInt(handle).putInt(rowsCount);
+    }
+
+    /*
+     * reads the length and the status of an answer , an error answer is thrown
+     * */
+    private void readAnswerHeader() throws IOException {
+        readFully(BinaryProtocol.HEADER_SIZE);
+        int frameSize = in.getInt();
+        if (in.get() == BinaryProtocol.OK) {
+            return;
+        }
+        byte[] message = new byte[frameSize - 1];
+        readFully(message.length);
+        in.get(message);
+        throw new UnsupportedOperationException(new String(message, StandardCharsets.UTF_8));
+    }
+
+    /*
+     * waits until at least the given number of bytes were received
+     * */
+    private void readFully(int size) throws IOException {
+        if (in.remaining() >= size) {
+            return;
+        }
+        if (size > in.capacity()) {
+            throw new IOException("answer too big " + size);
+        }
+        in.compact();
+        while (in.position() < size) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("the server closed the connection");
+            }
+        }
+        in.flip();
+    }
+
+    /*
+     * makes room in the output buffer for the given number of bytes
+     * */
+    private void reserve(int size) throws IOException {
+        if (out.remaining() < size) {
+            flush();
+            if (out.remaining() < size) {
+                throw new IllegalArgumentException("request too big " + size);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private void requireNoPendingEvaluations() {
+        if (pendingEvaluationsCount > 0) {
+            throw new IllegalStateException(pendingEvaluationsCount + " evaluations were sent and not received");
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package main.java;
+
+import org.testng.log4testng.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A server evaluating expressions for clients running on the same machine, with a compact
+ * binary protocol instead of HTTP and JSON, see {@link BinaryProtocolClient}.
+ * <p>
+ * A client prepares an expression once and gets a handle for it, then sends evaluate
+ * requests carrying the values of the variables of the expression as packed doubles, for
+ * one or many rows, and gets the values back as packed doubles. A client can send many
+ * requests without waiting for the answers, they are answered in order.
+ * <p>
+ * All the connections are served by one thread with a selector, every connection reading
+ * and writing through its own direct buffers. The expressions are compiled with the
+ * calculator but evaluated without its bindings, the handles belong to their connection.
+ */
+public final class BinaryProtocolServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(BinaryProtocolServer.class);
+
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private final Calc calc;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Path unixDomainSocketPath;
+    private final Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * Creates a server listening on the given address, it only accepts connections once it is started.
+     *
+     * @param calc    the calculator compiling the expressions
+     * @param address a loopback address, or the address of a unix domain socket from
+     *                {@link #unixDomainSocketAddress(Path)}
+     * @throws IOException if the address can't be bound
+     */
+    public BinaryProtocolServer(Calc calc, SocketAddress address) throws IOException {
+        this.calc = calc;
+        this.serverChannel = BinaryProtocol.openServerChannel(address);
+        this.unixDomainSocketPath = BinaryProtocol.unixDomainSocketPath(address);
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::serve, "calc-binary-server");
+        selectorThread.setDaemon(true);
+    }
+
+    /**
+     * @param path the file of the socket, it must not exist yet
+     * @return the address of a unix domain socket
+     * @throws UnsupportedOperationException if the JVM has no unix domain sockets (before java 16)
+     */
+    public static SocketAddress unixDomainSocketAddress(Path path) {
+        return BinaryProtocol.unixDomainSocketAddress(path);
+    }
+
+    public void start() {
+        running = true;
+        selectorThread.start();
+        LOGGER.info("started serving on " + getAddress());
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public SocketAddress getAddress() {
+        try {
+            return serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stops the server and closes its connections.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        serverChannel.close();
+        if (unixDomainSocketPath != null) {
+            Files.deleteIfExists(unixDomainSocketPath);
+        }
+        LOGGER.info("stopped serving");
+    }
+
+
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                LOGGER.error("the selector failed", e);
+                return;
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read(key);
+                        } else if (key.isWritable()) {
+                            connection.write(key);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.debug("closing a connection " + e.getMessage());
+                    closeQuietly(key);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        if (channel.getLocalAddress() instanceof InetSocketAddress) {
+            channel.socket().setTcpNoDelay(true);
+        }
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // the connection is gone anyway
+        }
+    }
+
+
+    /*
+     * a client connection , with its buffers and the expressions it prepared
+     * */
+    private final class Connection {
+
+        private ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        // the prepared expressions by handle , released handles are null
+        private final List<CompiledExpression> expressions = new ArrayList<>();
+        private double[] variables = new double[8];
+
+        /*
+         * reads what the client sent , answers every complete request and writes the answers
+         * */
+        void read(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            if (channel.read(in) < 0) {
+                closeQuietly(key);
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= 4) {
+                int frameSize = in.getInt(in.position());
+                if (frameSize < 1 || frameSize > BinaryProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("bad frame size " + frameSize);
+                }
+                if (in.remaining() < 4 + frameSize) {
+                    if (in.capacity() < 4 + frameSize) {
+                        // the frame doesn't fit , the buffer grows and keeps the start of the frame
+                        ByteBuffer grownIn = ByteBuffer.allocateDirect(Math.max(4 + frameSize, in.capacity() * 2));
+                        grownIn.put(in).flip();
+                        in = grownIn;
+                    }
+                    break;
+                }
+                int frameEnd = in.position() + 4 + frameSize;
+                in.position(in.position() + 4);
+                answer(in.get(), frameEnd);
+                in.position(frameEnd);
+            }
+            in.compact();
+            write(key);
+        }
+
+        /*
+         * writes the pending answers , the connection stops reading until they are all written
+         * so a client that doesn't read its answers can't make the server buffer without limit
+         * */
+        void write(SelectionKey key) throws IOException {
+            out.flip();
+            ((SocketChannel) key.channel()).write(out);
+            boolean pending = out.hasRemaining();
+            out.compact();
+            key.interestOps(pending ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+
+        private void answer(byte type, int frameEnd) {
+            int answerStart = out.position();
+            try {
+                switch (type) {
+                    case BinaryProtocol.PREPARE:
+                        prepare(frameEnd);
+                        break;
+                    case BinaryProtocol.EVALUATE:
+                        evaluate(frameEnd);
+                        break;
+                    case BinaryProtocol.RELEASE:
+                        release();
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("unknown request " + type);
+                }
+            } catch (RuntimeException e) {
+                out.position(answerStart);
+                byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                reserve(BinaryProtocol.HEADER_SIZE + message.length);
+                out.putInt(1 + message.length).put(BinaryProtocol.ERROR).put(message);
+            }
+        }
+
+        private void prepare(int frameEnd) {
+            byte[] expressionBytes = new byte[frameEnd - in.position()];
+            in.get(expressionBytes);
+            CompiledExpression expression = calc.compile(new String(expressionBytes, StandardCharsets.UTF_8));
+            int handle = expressions.indexOf(null);
+            if (handle < 0) {
+                handle = expressions.size();
+                expressions.add(expression);
+            } else {
+                expressions.set(handle, expression);
+            }
+            List<String> variableNames = expression.getVariableNames();
+            int answerStart = out.position();
+            reserve(BinaryProtocol.HEADER_SIZE + 8);
+            out.putInt(0).put(BinaryProtocol.OK).putInt(handle).putInt(variableNames.size());
+            for (String variableName : variableNames) {
+                byte[] nameBytes = variableName.getBytes(StandardCharsets.UTF_8);
+                reserve(4 + nameBytes.length);
+                out.putInt(nameBytes.length).put(nameBytes);
+            }
+            out.putInt(answerStart, out.position() - answerStart - 4);
+        }
+
+        private void evaluate(int frameEnd) {
+            CompiledExpression expression = expression(in.getInt());
+            int rowsCount = in.getInt();
+            int variablesCount = expression.getVariableNames().size();
+            if (rowsCount < 0 || rowsCount > BinaryProtocol.MAX_FRAME_SIZE / 8
+                    || (long) rowsCount * variablesCount * 8 != frameEnd - in.position()) {
+                throw new UnsupportedOperationException("expected " + rowsCount + " rows of " + variablesCount + " values");
+            }
+            if (variables.length < variablesCount) {
+                variables = new double[variablesCount];
+            }
+            int answerSize = 1 + 4 + rowsCount * 8;
+            reserve(4 + answerSize);
+            out.putInt(answerSize).put(BinaryProtocol.OK).putInt(rowsCount);
+            for (int row = 0; row < rowsCount; row++) {
+                for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+                    variables[variableIndex] = in.getDouble();
+                }
+                out.putDouble(expression.evaluate(variables));
+            }
+        }
+
+        private void release() {
+            int handle = in.getInt();
+            expression(handle);
+            expressions.set(handle, null);
+            reserve(BinaryProtocol.HEADER_SIZE);
+            out.putInt(1).put(BinaryProtocol.OK);
+        }
+
+        private CompiledExpression expression(int handle) {
+            CompiledExpression expression = handle >= 0 && handle < expressions.size() ? expressions.get(handle) : null;
+            if (expression == null) {
+                throw new UnsupportedOperationException("unknown handle " + handle);
+            }
+            return expression;
+        }
+
+        /*
+         * makes room in the output buffer for the given number of bytes
+         * */
+        private void reserve(int size) {
+            if (out.remaining() < size) {
+                ByteBuffer grownOut = ByteBuffer.allocateDirect(Math.max(out.position() + size, out.capacity() * 2));
+                out.flip();
+                out = grownOut.put(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package main.java;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/*
+ * bindings forked from parent bindings without copying them.
+ *
+ * a variable is looked up in the bindings of the scope first and then in its parent , which can
+ * be a scope itself. bindings made in the scope never reach the parent , and variables removed
+ * from the scope are only hidden , so a scope only holds the variables it changed.
+ *
+ * a scope is not thread safe , while its parent can be changed by other threads
+ * */
+final class BindingScope extends AbstractMap<String, Double> {
+
+    private final Map<String, Double> parentBindings;
+    // the variables bound in this scope , and the variables of the parent it hides , created when needed
+    private Map<String, Double> ownBindings;
+    private Set<String> hiddenVariables;
+    // set when the scope was cleared , the parent is not read at all anymore
+    private boolean parentHidden;
+
+    BindingScope(Map<String, Double> parentBindings) {
+        this.parentBindings = parentBindings;
+    }
+
+    @Override
+    public Double get(Object variableName) {
+        if (ownBindings != null) {
+            Double variableValue = ownBindings.get(variableName);
+            if (variableValue != null) {
+                return variableValue;
+            }
+        }
+        if (parentHidden || hiddenVariables != null && hiddenVariables.contains(variableName)) {
+            return null;
+        }
+        return parentBindings.get(variableName);
+    }
+
+    @Override
+    public boolean containsKey(Object variableName) {
+        return get(variableName) != null;
+    }
+
+    @Override
+    public Double put(String variableName, Double variableValue) {
+        if (ownBindings == null) {
+            ownBindings = new HashMap<>();
+        }
+        Double previousValue = get(variableName);
+        ownBindings.put(variableName, variableValue);
+        return previousValue;
+    }
+
+    @Override
+    public Double remove(Object variableName) {
+        Double previousValue = get(variableName);
+        if (ownBindings != null) {
+            ownBindings.remove(variableName);
+        }
+        if (!parentHidden && parentBindings.containsKey(variableName)) {
+            if (hiddenVariables == null) {
+                hiddenVariables = new HashSet<>();
+            }
+            hiddenVariables.add((String) variableName);
+        }
+        return previousValue;
+    }
+
+    @Override
+    public void clear() {
+        ownBindings = null;
+        hiddenVariables = null;
+        parentHidden = true;
+    }
+
+    /*
+     * returns the number of variables bound in the scope itself
+     * */
+    int ownBindingsCount() {
+        return ownBindings == null ? 0 : ownBindings.size();
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        return new AbstractSet<Entry<String, Double>>() {
+            @Override
+            public Iterator<Entry<String, Double>> iterator() {
+                Iterator<Entry<String, Double>> visibleBindings = visibleBindings().entrySet().iterator();
+                return new Iterator<Entry<String, Double>>() {
+                    private Entry<String, Double> lastEntry;
+
+                    @Override
+                    public boolean hasNext() {
+                        return visibleBindings.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Double> next() {
+                        lastEntry = visibleBindings.next();
+                        return lastEntry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        BindingScope.this.remove(lastEntry.getKey());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return visibleBindings().size();
+            }
+        };
+    }
+
+    /*
+     * copies the variables seen from this scope , sorted by name
+     * */
+    private Map<String, Double> visibleBindings() {
+        Map<String, Double> visibleBindings = new TreeMap<>();
+        if (!parentHidden) {
+            visibleBindings.putAll(parentBindings);
+            if (hiddenVariables != null) {
+                visibleBindings.keySet().removeAll(hiddenVariables);
+            }
+        }
+        if (ownBindings != null) {
+            visibleBindings.putAll(ownBindings);
+        }
+        return visibleBindings;
+    }
+}
@@ -0,0 +1,16 @@
+package main.java;
+
+/*
+ * how the expressions of a batch see the bindings of the calculator
+ * */
+public enum BindingsMode {
+
+    // every expression reads and writes the bindings of the calculator , the expressions run in parallel
+    // so a binding is only seen by the expressions that happen to run after it
+    SHARED,
+
+    // every expression reads the bindings of the calculator , the bindings it makes are only seen by itself
+    ISOLATED
+
+
+}
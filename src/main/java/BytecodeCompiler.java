@@ -0,0 +1,494 @@
+package main.java;
+
+import org.testng.log4testng.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * translates the instructions of a compiled expression into a java class implementing FormulaFunction.
+ *
+ * every instruction becomes a few jvm instructions working on the operand stack , so the JIT
+ * can inline and register allocate the whole expression. the class file is written by hand
+ * with the version of java 5 , which doesn't need stack map frames.
+ *
+ * the registered functions an expression calls are kept in static final fields of its class ,
+ * so the JIT sees a constant method handle and can inline the function into the expression.
+ *
+ * every generated class is defined by its own class loader , so it can be unloaded together
+ * with the expression it was generated for
+ * */
+class BytecodeCompiler {
+
+    private final Logger LOGGER = Logger.getLogger(BytecodeCompiler.class);
+
+    private static final String GENERATED_CLASS_NAME = "main/java/generated/GeneratedFormula";
+    private static final String FUNCTION_INTERFACE_NAME = "main/java/FormulaFunction";
+    private static final String RUNTIME_CLASS_NAME = "main/java/FormulaRuntime";
+    private static final String METHOD_HANDLE_CLASS_NAME = "java/lang/invoke/MethodHandle";
+    private static final String METHOD_HANDLE_DESCRIPTOR = "Ljava/lang/invoke/MethodHandle;";
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int JAVA_5_CLASS_FILE_VERSION = 49;
+    private static final int MAX_METHOD_CODE_LENGTH = 65535;
+    // the class itself , its interface and the constructor still have to fit in the pool after the code
+    private static final int MAX_CONSTANT_POOL_SIZE = 65535 - 16;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // the jvm instructions used by the generated code
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DLOAD = 0x18;
+    private static final int DSTORE = 0x39;
+    private static final int DALOAD = 0x31;
+    private static final int DASTORE = 0x52;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    // the local variables used to swap and store values , next to "this" and the variables array
+    private static final int FIRST_TEMPORARY_LOCAL = 2;
+    private static final int SECOND_TEMPORARY_LOCAL = 4;
+    // the arguments of a call are stored after them , while the method handle is pushed under them
+    private static final int FIRST_ARGUMENT_LOCAL = 6;
+    // the local variable instructions take a one byte index
+    private static final int MAX_LOCAL_INDEX = 255;
+
+    private RoundingPolicy roundingPolicy;
+    // the functions called by the expression , in the order of their fields
+    private List<RegisteredFunction> functions = new ArrayList<>();
+    private Map<RegisteredFunction, Integer> functionFields = new HashMap<>();
+    private int maxArity;
+    private ConstantPool constantPool = new ConstantPool();
+    private ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+
+    /*
+     * generates and loads a class evaluating the given instructions with the given rounding policy ,
+     * returns null if the instructions don't fit in a single java method
+     * */
+    FormulaFunction compile(Instruction[] instructions, int maxStackDepth, RoundingPolicy roundingPolicy) {
+        this.roundingPolicy = roundingPolicy;
+        for (Instruction instruction : instructions) {
+            emitInstruction(instruction);
+        }
+        emitRoundResult();
+        code.write(DRETURN);
+
+        if (code.size() > MAX_METHOD_CODE_LENGTH || constantPool.size() > MAX_CONSTANT_POOL_SIZE
+                || FIRST_ARGUMENT_LOCAL + 2 * maxArity > MAX_LOCAL_INDEX) {
+            LOGGER.warn("the expression is too long to be generated as a class , it will be interpreted");
+            return null;
+        }
+        // every double takes two slots of the operand stack , storing a variable needs two more values on top
+        int maxStack = 2 * maxStackDepth + 4;
+        byte[] classFile = writeClassFile(maxStack);
+        LOGGER.debug("generated a class of " + classFile.length + " bytes");
+
+        MethodHandle[] functionHandles = new MethodHandle[functions.size()];
+        for (int functionIndex = 0; functionIndex < functionHandles.length; functionIndex++) {
+            functionHandles[functionIndex] = functions.get(functionIndex).getHandle();
+        }
+        // the class is initialized by newInstance , on this thread
+        FormulaRuntime.setPendingFunctions(functionHandles);
+        try {
+            Class<?> generatedClass = new FormulaClassLoader(BytecodeCompiler.class.getClassLoader())
+                    .defineFormulaClass(GENERATED_CLASS_NAME.replace('/', '.'), classFile);
+            return (FormulaFunction) generatedClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not load the generated class", e);
+        } finally {
+            FormulaRuntime.setPendingFunctions(null);
+        }
+    }
+
+
+    /*
+     * writes the jvm instructions for one instruction of the expression
+     * */
+    private void emitInstruction(Instruction instruction) {
+        switch (instruction.getOpCode()) {
+            case PUSH_NUMBER:
+                code.write(LDC2_W);
+                double number = roundingPolicy == RoundingPolicy.EVERY_STEP
+                        ? FormulaRuntime.scaleNumber(instruction.getNumber()) : instruction.getNumber();
+                writeShort(code, constantPool.doubleConstant(number));
+                break;
+            case LOAD_VARIABLE:
+                code.write(ALOAD_1);
+                emitInteger(instruction.getVariableIndex());
+                code.write(DALOAD);
+                emitScaleNumber();
+                break;
+            case STORE_VARIABLE:
+                // the value stays on the stack , a copy goes to the variables array
+                code.write(DUP2);
+                emitRoundResult();
+                emitLocal(DSTORE, FIRST_TEMPORARY_LOCAL);
+                code.write(ALOAD_1);
+                emitInteger(instruction.getVariableIndex());
+                emitLocal(DLOAD, FIRST_TEMPORARY_LOCAL);
+                code.write(DASTORE);
+                break;
+            case SWAP:
+                emitLocal(DSTORE, FIRST_TEMPORARY_LOCAL);
+                emitLocal(DSTORE, SECOND_TEMPORARY_LOCAL);
+                emitLocal(DLOAD, FIRST_TEMPORARY_LOCAL);
+                emitLocal(DLOAD, SECOND_TEMPORARY_LOCAL);
+                break;
+            case ADD:
+                code.write(DADD);
+                emitScaleNumber();
+                break;
+            case SUBTRACT:
+                code.write(DSUB);
+                emitScaleNumber();
+                break;
+            case MULTIPLY:
+                code.write(DMUL);
+                emitScaleNumber();
+                break;
+            case DIVIDE:
+                emitInteger(instruction.getPosition());
+                emitStaticCall(RUNTIME_CLASS_NAME, "divide", "(DDI)D");
+                emitScaleNumber();
+                break;
+            case SQRT:
+                emitStaticCall("java/lang/Math", "sqrt", "(D)D");
+                emitScaleNumber();
+                break;
+            case LOG:
+                emitStaticCall("java/lang/Math", "log", "(D)D");
+                emitScaleNumber();
+                break;
+            case SIN:
+                emitStaticCall("java/lang/Math", "sin", "(D)D");
+                emitScaleNumber();
+                break;
+            case COS:
+                emitStaticCall("java/lang/Math", "cos", "(D)D");
+                emitScaleNumber();
+                break;
+            case CALL:
+                emitCall(instruction.getFunction());
+                emitScaleNumber();
+                break;
+        }
+    }
+
+    /*
+     * calls a registered function with the arguments on top of the stack , they are stored while the
+     * method handle of the function is pushed under them
+     * */
+    private void emitCall(RegisteredFunction function) {
+        int arity = function.getArity();
+        maxArity = Math.max(maxArity, arity);
+        for (int argumentIndex = arity - 1; argumentIndex >= 0; argumentIndex--) {
+            emitLocal(DSTORE, FIRST_ARGUMENT_LOCAL + 2 * argumentIndex);
+        }
+        code.write(GETSTATIC);
+        writeShort(code, constantPool.fieldReference(GENERATED_CLASS_NAME, functionField(function), METHOD_HANDLE_DESCRIPTOR));
+        for (int argumentIndex = 0; argumentIndex < arity; argumentIndex++) {
+            emitLocal(DLOAD, FIRST_ARGUMENT_LOCAL + 2 * argumentIndex);
+        }
+        code.write(INVOKEVIRTUAL);
+        writeShort(code, constantPool.methodReference(METHOD_HANDLE_CLASS_NAME, "invokeExact",
+                RegisteredFunction.doublesMethodType(arity).toMethodDescriptorString()));
+    }
+
+    /*
+     * returns the name of the field holding the given function , the field is added the first time
+     * */
+    private String functionField(RegisteredFunction function) {
+        Integer functionIndex = functionFields.get(function);
+        if (functionIndex == null) {
+            functionIndex = functions.size();
+            functions.add(function);
+            functionFields.put(function, functionIndex);
+        }
+        return "function" + functionIndex;
+    }
+
+    /*
+     * rounds the intermediate value on top of the stack , only when every step is rounded
+     * */
+    private void emitScaleNumber() {
+        if (roundingPolicy == RoundingPolicy.EVERY_STEP) {
+            emitStaticCall(RUNTIME_CLASS_NAME, "scaleNumber", "(D)D");
+        }
+    }
+
+    /*
+     * rounds the value on top of the stack when it is the value of the expression or bound to a variable
+     * */
+    private void emitRoundResult() {
+        if (roundingPolicy == RoundingPolicy.FINAL_RESULT) {
+            emitStaticCall(RUNTIME_CLASS_NAME, "roundNumber", "(D)D");
+        }
+    }
+
+    private void emitStaticCall(String className, String methodName, String descriptor) {
+        code.write(INVOKESTATIC);
+        writeShort(code, constantPool.methodReference(className, methodName, descriptor));
+    }
+
+    private void emitLocal(int opCode, int localIndex) {
+        code.write(opCode);
+        code.write(localIndex);
+    }
+
+    /*
+     * pushes an int constant with the shortest jvm instruction that can hold it
+     * */
+    private void emitInteger(int value) {
+        emitInteger(code, value);
+    }
+
+    private void emitInteger(ByteArrayOutputStream output, int value) {
+        if (value <= 5) {
+            output.write(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            output.write(BIPUSH);
+            output.write(value);
+        } else if (value <= Short.MAX_VALUE) {
+            output.write(SIPUSH);
+            writeShort(output, value);
+        } else {
+            output.write(LDC_W);
+            writeShort(output, constantPool.integerConstant(value));
+        }
+    }
+
+
+    /*
+     * writes the whole class file , a public constructor and the applyAsDouble method , with a field
+     * and a static initializer for the functions it calls
+     * */
+    private byte[] writeClassFile(int maxStack) {
+        int thisClass = constantPool.classReference(GENERATED_CLASS_NAME);
+        int superClass = constantPool.classReference("java/lang/Object");
+        int functionInterface = constantPool.classReference(FUNCTION_INTERFACE_NAME);
+        int objectConstructor = constantPool.methodReference("java/lang/Object", "<init>", "()V");
+        int constructorName = constantPool.utf8("<init>");
+        int constructorDescriptor = constantPool.utf8("()V");
+        int methodName = constantPool.utf8("applyAsDouble");
+        int methodDescriptor = constantPool.utf8("([D)D");
+        int codeAttributeName = constantPool.utf8("Code");
+        int staticInitializerName = constantPool.utf8("<clinit>");
+        int[] functionFieldNames = new int[functions.size()];
+        int functionFieldDescriptor = constantPool.utf8(METHOD_HANDLE_DESCRIPTOR);
+        ByteArrayOutputStream staticInitializerCode = new ByteArrayOutputStream();
+        for (int functionIndex = 0; functionIndex < functions.size(); functionIndex++) {
+            functionFieldNames[functionIndex] = constantPool.utf8("function" + functionIndex);
+            emitInteger(staticInitializerCode, functionIndex);
+            staticInitializerCode.write(INVOKESTATIC);
+            writeShort(staticInitializerCode, constantPool.methodReference(RUNTIME_CLASS_NAME, "pendingFunction",
+                    "(I)" + METHOD_HANDLE_DESCRIPTOR));
+            staticInitializerCode.write(PUTSTATIC);
+            writeShort(staticInitializerCode, constantPool.fieldReference(GENERATED_CLASS_NAME, "function" + functionIndex,
+                    METHOD_HANDLE_DESCRIPTOR));
+        }
+        staticInitializerCode.write(RETURN);
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        try (DataOutputStream classFile = new DataOutputStream(classBytes)) {
+            classFile.writeInt(CLASS_FILE_MAGIC);
+            classFile.writeShort(0);
+            classFile.writeShort(JAVA_5_CLASS_FILE_VERSION);
+            constantPool.write(classFile);
+            classFile.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            classFile.writeShort(thisClass);
+            classFile.writeShort(superClass);
+            classFile.writeShort(1);
+            classFile.writeShort(functionInterface);
+            classFile.writeShort(functions.size());
+            for (int functionFieldName : functionFieldNames) {
+                // access , name , descriptor , no attributes
+                classFile.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+                classFile.writeShort(functionFieldName);
+                classFile.writeShort(functionFieldDescriptor);
+                classFile.writeShort(0);
+            }
+
+            classFile.writeShort(functions.isEmpty() ? 2 : 3);
+            ByteArrayOutputStream constructorCode = new ByteArrayOutputStream();
+            constructorCode.write(ALOAD_0);
+            constructorCode.write(INVOKESPECIAL);
+            writeShort(constructorCode, objectConstructor);
+            constructorCode.write(RETURN);
+            writeMethod(classFile, ACC_PUBLIC, constructorName, constructorDescriptor, codeAttributeName, 1, 1,
+                    constructorCode.toByteArray());
+            writeMethod(classFile, ACC_PUBLIC, methodName, methodDescriptor, codeAttributeName, maxStack,
+                    FIRST_ARGUMENT_LOCAL + 2 * maxArity, code.toByteArray());
+            if (!functions.isEmpty()) {
+                // the function index and then the method handle
+                writeMethod(classFile, ACC_STATIC, staticInitializerName, constructorDescriptor, codeAttributeName, 1, 0,
+                        staticInitializerCode.toByteArray());
+            }
+
+            // no class attributes
+            classFile.writeShort(0);
+        } catch (IOException e) {
+            // can't happen , everything is written to memory
+            throw new IllegalStateException(e);
+        }
+        return classBytes.toByteArray();
+    }
+
+    private void writeMethod(DataOutputStream classFile, int access, int name, int descriptor, int codeAttributeName,
+                             int maxStack, int maxLocals, byte[] methodCode) throws IOException {
+        classFile.writeShort(access);
+        classFile.writeShort(name);
+        classFile.writeShort(descriptor);
+        classFile.writeShort(1);
+        classFile.writeShort(codeAttributeName);
+        // max stack , max locals , code length , code , no exception table , no attributes
+        classFile.writeInt(2 + 2 + 4 + methodCode.length + 2 + 2);
+        classFile.writeShort(maxStack);
+        classFile.writeShort(maxLocals);
+        classFile.writeInt(methodCode.length);
+        classFile.write(methodCode);
+        classFile.writeShort(0);
+        classFile.writeShort(0);
+    }
+
+    private static void writeShort(ByteArrayOutputStream output, int value) {
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+
+    /*
+     * the constant pool of the generated class , equal constants are only added once
+     * */
+    private static class ConstantPool {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_FIELD_REFERENCE = 9;
+        private static final int CONSTANT_METHOD_REFERENCE = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private DataOutputStream entriesOutput = new DataOutputStream(entries);
+        private Map<List<Object>, Integer> entryIndexes = new HashMap<>();
+        // the first entry of the pool has the index 1
+        private int nextIndex = 1;
+
+        int utf8(String value) {
+            return addEntry(CONSTANT_UTF8, value, 1, output -> output.writeUTF(value));
+        }
+
+        int integerConstant(int value) {
+            return addEntry(CONSTANT_INTEGER, value, 1, output -> output.writeInt(value));
+        }
+
+        int doubleConstant(double value) {
+            // doubles take two entries of the pool , the raw bits make 0.0 and -0.0 different constants
+            long bits = Double.doubleToRawLongBits(value);
+            return addEntry(CONSTANT_DOUBLE, bits, 2, output -> output.writeLong(bits));
+        }
+
+        int classReference(String internalName) {
+            int name = utf8(internalName);
+            return addEntry(CONSTANT_CLASS, internalName, 1, output -> output.writeShort(name));
+        }
+
+        int methodReference(String className, String methodName, String descriptor) {
+            return memberReference(CONSTANT_METHOD_REFERENCE, className, methodName, descriptor);
+        }
+
+        int fieldReference(String className, String fieldName, String descriptor) {
+            return memberReference(CONSTANT_FIELD_REFERENCE, className, fieldName, descriptor);
+        }
+
+        private int memberReference(int tag, String className, String memberName, String descriptor) {
+            int classIndex = classReference(className);
+            int nameIndex = utf8(memberName);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = addEntry(CONSTANT_NAME_AND_TYPE, memberName + descriptor, 1, output -> {
+                output.writeShort(nameIndex);
+                output.writeShort(descriptorIndex);
+            });
+            return addEntry(tag, className + "." + memberName + descriptor, 1, output -> {
+                output.writeShort(classIndex);
+                output.writeShort(nameAndType);
+            });
+        }
+
+        int size() {
+            return nextIndex;
+        }
+
+        void write(DataOutputStream classFile) throws IOException {
+            classFile.writeShort(nextIndex);
+            entries.writeTo(classFile);
+        }
+
+        private int addEntry(int tag, Object key, int slots, EntryWriter entryWriter) {
+            List<Object> entryKey = new ArrayList<>(2);
+            entryKey.add(tag);
+            entryKey.add(key);
+            Integer index = entryIndexes.get(entryKey);
+            if (index == null) {
+                index = nextIndex;
+                nextIndex += slots;
+                entryIndexes.put(entryKey, index);
+                try {
+                    entriesOutput.writeByte(tag);
+                    entryWriter.write(entriesOutput);
+                } catch (IOException e) {
+                    // can't happen , everything is written to memory
+                    throw new IllegalStateException(e);
+                }
+            }
+            return index;
+        }
+
+        private interface EntryWriter {
+            void write(DataOutputStream output) throws IOException;
+        }
+    }
+
+
+    /*
+     * defines a single generated class
+     * */
+    private static class FormulaClassLoader extends ClassLoader {
+
+        FormulaClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineFormulaClass(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
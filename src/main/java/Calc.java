@@ -1,6 +1,7 @@
 package main.java;
 
-import javafx.util.Pair;
+import main.java.exceptions.MalformedExpressionException;
+import main.java.exceptions.UnbalancedParenthesesException;
 import main.java.exceptions.UnknownCharacterException;
 import main.java.exceptions.VariableIsNotDefinedException;
 import org.testng.log4testng.Logger;
@@ -9,20 +10,82 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 
 /**
  * A simple calculator program reading arithmetic expressions from the standard
  * input, evaluating them, and printing the results on the standard output.
+ * <p>
+ * A calculator can be shared between threads: the scratch memory of an evaluation
+ * belongs to the evaluating thread and the bindings are kept in a frame of doubles
+ * guarded by a lock, where every variable has a slot resolved when an expression is
+ * compiled.
+ * An evaluation reads the variables it needs once, when it starts, and the variables
+ * it binds are stored when it finishes, so a binding is seen by every
+ * evaluation starting after the binding one finished. When two evaluations bind the
+ * same variable, the one finishing last wins. Who sees the value bound to "_" is
+ * chosen with {@link #setLastResultScope(LastResultScope)}.
  */
 public class Calc {
 
 
     private final Logger LOGGER = Logger.getLogger(Calc.class);
 
+    private volatile EvaluationBackend evaluationBackend = EvaluationBackend.INTERPRETER;
+
+    private volatile RoundingPolicy roundingPolicy = Constants.DEFAULT_ROUNDING_POLICY;
+
+    private volatile NumericBackend numericBackend = NumericBackend.DOUBLE;
+
+    private volatile LastResultScope lastResultScope = LastResultScope.SHARED;
+
+    // the bindings of every thread , when _ is kept per thread
+    private final ThreadLocal<LastResultBindings> threadBindings =
+            ThreadLocal.withInitial(() -> new LastResultBindings(bindings()));
+
+    // expressions that were already compiled
+    private final ExpressionCache expressionCache;
+
+    // the values of expressions evaluated with the bindings of the calculator
+    private final ResultCache resultCache;
+
+    // the functions expressions can call
+    private final FunctionRegistry functionRegistry = new FunctionRegistry();
+
+
+    public Calc() {
+        this(new ExpressionCache(Constants.DEFAULT_EXPRESSION_CACHE_CAPACITY));
+    }
+
+    /**
+     * @param expressionCache the cache of compiled expressions, it can be shared with other calculators
+     */
+    public Calc(ExpressionCache expressionCache) {
+        this(expressionCache, Constants.DEFAULT_RESULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * @param expressionCache     the cache of compiled expressions, it can be shared with other calculators
+     * @param resultCacheCapacity the maximum number of values kept by the result cache of the calculator,
+     *                            0 evaluates every expression every time
+     * @see #resultCache()
+     */
+    public Calc(ExpressionCache expressionCache, int resultCacheCapacity) {
+        this.expressionCache = expressionCache;
+        this.resultCache = new ResultCache(resultCacheCapacity);
+    }
+
     /**
      * Evaluates an arithmetic expression. The grammar of accepted expressions
      * is the following:
@@ -37,7 +100,7 @@ public class Calc {
      * posint ::= ('1' - '9') | posint ('0' - '9')
      * decimal ::= int '.' ('0' - '9') | '.' ('0' - '9')
      * id ::= ('a' - 'z' | 'A' - 'Z' | '_') | id ('a' - 'z' | 'A' - 'Z' | '_' | '0' - '9')
-     * function ::= ('sqrt' | 'log' | 'sin' | 'cos') '(' expr ')'
+     * function ::= name '(' [expr (',' expr)*] ')'
      * binding ::= id '=' expr
      *
      * </code>
@@ -45,58 +108,39 @@ public class Calc {
      * The binary operators are left-associative, with multiplication and division
      * taking precedence over addition and subtraction.
      * <p>
-     * Functions are implemented in terms of the respective static methods of
-     * the class java.lang.Math.
+     * The functions sqrt, log, sin and cos are implemented in terms of the
+     * respective static methods of the class java.lang.Math, the others are
+     * the ones registered into {@link #functions()}.
      * <p>
      * The bindings produced during the evaluation of the given expression
      * are stored in a map, where they remain available for the evaluation
      * of subsequent expressions.
      * <p>
+     * An expression evaluated again while none of the variables it reads changed
+     * is not evaluated again, its value comes from {@link #resultCache()}.
+     * <p>
      * Before leaving this method, the value of the given expression is bound
      * to the special variable named "_".
      *
      * @param expr well-formed arithmetic expression
      * @return the value of the given expression
      */
+    public double eval(String expr) {
+        return evaluate(expr, lastResultScope == LastResultScope.THREAD ? threadBindings.get() : bindings());
+    }
 
 
-    // used to store the numbers
-    private Stack<Double> numbersStack = new Stack();
-
-    // used to store parsed operators
-    private Stack<String> operatorsStack = new Stack();
-
-
-    //stores the index of the matching parentheses in the expression
-    private HashMap<Integer, Integer> parenthesesIndex;
-
-
-    //seen variable names are stored in this stack
-    private Stack<String> variablesStack = new Stack<>();
-
-    // the output of the tokenizer will be in this variable
-    private List<Pair<TokenType, String>> expressionAsTokens;
-    private StringBuilder stringBuilder = new StringBuilder();
-
-    public double eval(String expr) {
+    /*
+     * evaluates the given expression with the given bindings , and binds its value to _ in them
+     * */
+    double evaluate(String expr, Map<String, Double> evaluationBindings) {
         LOGGER.info("started Evaluating the expression " + expr);
         try {
-            initializeDataForExpression(expr);
-            double expressionResult = evaluateExpression();
+            double expressionResult = evaluate(compileExpression(expr), evaluationBindings);
 
             LOGGER.info("done Evaluating the expression " + expr + " and the result was " + expressionResult);
-
-            if (!numbersStack.isEmpty() || !operatorsStack.isEmpty() || !variablesStack.isEmpty()) {
-                LOGGER.warn("evaluating finished but one of the stacks was not empty");
-                LOGGER.debug("the stacks are after evaulating the expression " + " Operators Stack " + operatorsStack +
-                        "numbers Stack " + numbersStack + " variables stack " + variablesStack);
-            }
-            // the result of the last evaluated expression is stored in the variable _
-            assignValueToVariable(Constants.SPECIAL_VARIABLE, expressionResult);
             return expressionResult;
         } catch (ArithmeticException | VariableIsNotDefinedException | UnknownCharacterException e) {
-            // if there was an exception , clear all stacks from any leftovers
-            emptyStacks();
             e.printStackTrace();
             throw new UnsupportedOperationException(e.getMessage());
 
@@ -104,552 +148,443 @@ public class Calc {
 
     }
 
-    /*
-     * populates the needed dataStructures before evaluating the expression
-     * */
-    private void initializeDataForExpression(String expr) throws UnknownCharacterException {
-        Tokenizer tokenizer = new Tokenizer();
-        expr = wrapString(expr);
-        expressionAsTokens = tokenizer.tokenizeString(expr);
-        parenthesesIndex = indexParentheses(expressionAsTokens);
-
-    }
-
-    private void emptyStacks() {
-        numbersStack.clear();
-        operatorsStack.clear();
-        variablesStack.clear();
 
+    /**
+     * Evaluates an arithmetic expression like {@link #eval(String)}, but an expression
+     * that fails is returned as a result instead of being thrown. The result says why
+     * the expression failed, with an {@link ErrorCode} and the position in the
+     * expression where the error was found.
+     * <p>
+     * Nothing is printed for a failure, and the errors of the calculator have no stack
+     * trace, so a failure costs about as much as a success. Only the errors of the
+     * expression are returned, an exception thrown by a registered function or by the
+     * calculator itself is thrown like by {@link #eval(String)}.
+     *
+     * @param expr arithmetic expression
+     * @return the value of the given expression, or why it could not be evaluated
+     */
+    public EvaluationResult tryEval(String expr) {
+        return tryEvaluate(expr, lastResultScope == LastResultScope.THREAD ? threadBindings.get() : bindings());
     }
 
 
     /*
-     *
-     * this function iterates over the expression tokens and evaluates it
-     *
+     * evaluates the given expression with the given bindings like evaluate , the errors of the expression are
+     * returned and any other exception is thrown
      * */
-    private double evaluateExpression() throws VariableIsNotDefinedException {
-        int currentPositionInExpression = 0;
-        LOGGER.info("evaluating Expression ");
-        LOGGER.debug("expression tokens are " + expressionAsTokens);
-        while (currentPositionInExpression < expressionAsTokens.size()) {
-            TokenType currentTokenType = expressionAsTokens.get(currentPositionInExpression).getKey();
-            String currentTokenValue = expressionAsTokens.get(currentPositionInExpression).getValue();
-            switch (currentTokenType) {
-                case NUMBER:
-                    pushNumberToNumbersStack(Double.valueOf(currentTokenValue));
-                    break;
-                case FUNCTION:
-                    pushOperatorToOperatorsStack(currentTokenValue);
-                    break;
-                case VARIABLE:
-                    pushOperatorToOperatorsStack(String.valueOf(Constants.VARIABLE));
-                    pushVariableToVariablesStack(currentTokenValue);
-                    break;
-                case BINARY_OPERATOR:
-                    evaluateBinaryOperator(currentPositionInExpression, currentTokenValue);
-                    break;
-                case PARENTHESES:
-                    evaluateParentheses(currentTokenValue, currentPositionInExpression);
-
-            }
-            currentPositionInExpression++;
+    EvaluationResult tryEvaluate(String expr, Map<String, Double> evaluationBindings) {
+        try {
+            return EvaluationResult.success(expr, evaluate(compileExpression(expr), evaluationBindings));
+        } catch (VariableIsNotDefinedException | UnknownCharacterException | MalformedExpressionException
+                | UnbalancedParenthesesException | ArithmeticException | NumberFormatException e) {
+            return EvaluationResult.failure(expr, e);
         }
-        LOGGER.info("done evaluating Expression ");
-
-        return getNumberFromNumbersStack();
     }
 
 
     /*
-     *
-     * evaluates Parentheses
-     *
+     * evaluates an expression that was already compiled with the given bindings , and binds its value to _ in them
      * */
-
-    private void evaluateParentheses(String currentTokenValue, int currentPositionInExpression) throws VariableIsNotDefinedException {
-        LOGGER.debug("evaluating Parentheses ");
-        String currentSubExpression;
-
-        switch (currentTokenValue) {
-            //if current token is a closing Parentheses then we need to apply all operators until we reach
-            // an opening parentheses
-            case Constants.CLOSING_PARENTHESES:
-                while (operatorsStack.peek() != Constants.OPENING_PARENTHESES) {
-                    evaluateOperator(Constants.SPECIAL_OPERATOR);
-                }
-                // builds a the string of the current subexpression
-                currentSubExpression = getCurrentSubExpression(currentPositionInExpression, false);
-
-                LOGGER.debug("done evaluating the sub Expression " + currentSubExpression + " and the result was " + numbersStack.peek());
-                //pop the opening Parentheses from the stack( since we just saw a closing parentheses
-                getOperatorFromOperatorsStack();
-                break;
-            case Constants.OPENING_PARENTHESES:
-                currentSubExpression = getCurrentSubExpression(currentPositionInExpression, true);
-
-                LOGGER.debug("Started evaluating the sub Expression " + currentSubExpression);
-                pushOperatorToOperatorsStack(Constants.OPENING_PARENTHESES);
-        }
-        LOGGER.debug("done evaluating Parentheses ");
-
+    double evaluate(CompiledExpression compiledExpression, Map<String, Double> evaluationBindings)
+            throws VariableIsNotDefinedException {
+        // only the bindings of the calculator have versions telling whether a cached value is still valid
+        double expressionResult = evaluationBindings == bindings && resultCache.getCapacity() > 0
+                && compiledExpression.isRepeatable()
+                ? resultCache.evaluate(compiledExpression, bindings) : compiledExpression.execute(evaluationBindings);
+        // the result of the last evaluated expression is stored in the variable _
+        assignValueToVariable(evaluationBindings, Constants.SPECIAL_VARIABLE, expressionResult);
+        return expressionResult;
     }
 
 
-    /*
-     *
-     * returns a string that contains all the token in between 2 matching parentheses
+    /**
+     * Evaluates an arithmetic expression like {@link #eval(String)}, together with its
+     * partial derivatives with respect to the variables it reads from the bindings, in a
+     * single pass over dual numbers. The derivative with respect to any other variable
+     * is 0.
+     * <p>
+     * The value of the expression is bound to "_", and the variables it binds are stored,
+     * like with {@link #eval(String)}.
      *
-     * */
-    private String getCurrentSubExpression(int startingParentheses, boolean fromStart) {
-        Integer endingParentheses;
-        int currentPositioninExpression;
-        if (fromStart) {
-            currentPositioninExpression = startingParentheses;
-            endingParentheses = parenthesesIndex.get(startingParentheses);
-        } else {
-            currentPositioninExpression = parenthesesIndex.get(startingParentheses);
-            endingParentheses = startingParentheses;
-
-        }
-        while (currentPositioninExpression < endingParentheses + 1) {
-            stringBuilder.append(expressionAsTokens.get(currentPositioninExpression).getValue());
-
-            currentPositioninExpression++;
+     * @param expr well-formed arithmetic expression
+     * @return the value of the given expression and its partial derivatives
+     */
+    public Gradient evalGradient(String expr) {
+        Map<String, Double> evaluationBindings = lastResultScope == LastResultScope.THREAD ? threadBindings.get() : bindings();
+        try {
+            Gradient gradient = compileExpression(expr).executeGradient(evaluationBindings);
+            assignValueToVariable(evaluationBindings, Constants.SPECIAL_VARIABLE, gradient.getValue());
+            return gradient;
+        } catch (ArithmeticException | VariableIsNotDefinedException | UnknownCharacterException e) {
+            throw new UnsupportedOperationException(e.getMessage());
         }
-
-        String subExpression = stringBuilder.toString();
-        clearStringBuilder();
-        return subExpression;
     }
 
 
-    /*
-     *
-     * this method will evaluates binary Operators (- + / *)
+    /**
+     * Evaluates an arithmetic expression like {@link #eval(String)}, and returns its value
+     * as the numeric backend computed it, a {@link java.math.BigDecimal} for example. The
+     * value bound to "_" and the values of the variables are the nearest doubles.
      *
-     * */
-    private void evaluateBinaryOperator(int currentPositionInExperssion, String currentTokenValue) throws VariableIsNotDefinedException {
-        Pair<TokenType, String> previousToken = expressionAsTokens.get(currentPositionInExperssion - 1);
-        LOGGER.info("evaluating binary operator");
-
-        //this is for cases like 1--1
-        // path for such expression
-        // expr-> number-expr -> number-factor -> number-term ->number --term -> number--number
-        if (currentTokenValue.equals(Constants.SUBSTRACTION) &&
-                previousToken.getValue().equals(Constants.OPENING_PARENTHESES)
-                || previousToken.getKey() == TokenType.BINARY_OPERATOR) {
-            LOGGER.debug("substituting - after operator");
-            // if a (-) is found after ( or another binary Operator then we translate it to 0-
-            // we push 0 to numbersStack and ("-") to the operators stack
-            // for example --1 will be 0-0-1
-            pushNumberToNumbersStack(0);
-            pushOperatorToOperatorsStack(Constants.SUBSTRACTION);
-
-        } else {
-            evaluateOperator(currentTokenValue);
+     * @param expr well-formed arithmetic expression
+     * @return the value of the given expression
+     * @see #setNumericBackend(NumericBackend)
+     */
+    public Number evalNumber(String expr) {
+        Map<String, Double> evaluationBindings = lastResultScope == LastResultScope.THREAD ? threadBindings.get() : bindings();
+        try {
+            Number expressionResult = compileExpression(expr).executeNumber(evaluationBindings);
+            assignValueToVariable(evaluationBindings, Constants.SPECIAL_VARIABLE, expressionResult.doubleValue());
+            return expressionResult;
+        } catch (ArithmeticException | VariableIsNotDefinedException | UnknownCharacterException e) {
+            throw new UnsupportedOperationException(e.getMessage());
         }
-        LOGGER.info("done evaluating binary operator");
     }
 
 
-    /*
-     *
-     * inserts a number to the numbers Stack , before that it only takes the first 12 digits after the decimal point
-     *
-     * */
-    private void pushNumberToNumbersStack(double numberToAdd) {
-        // before adding a number to the numbers stack we only take the first
-        double scaledNumberToAdd = BigDecimal.valueOf(numberToAdd)
-                .setScale(Constants.NUMBER_OF_DIGITS_AFTER_DECEMAL_POINT, RoundingMode.HALF_UP)
-                .doubleValue();
-        LOGGER.debug("inserting " + scaledNumberToAdd + "  to the numbers stack");
-
-        numbersStack.add(scaledNumberToAdd);
-    }
-
-    /*
-     *
-     * inserts an operator to the operators Stack
+    /**
+     * Parses an arithmetic expression once, so it can be evaluated many times
+     * without tokenizing it again. The accepted grammar is the same as the one
+     * of {@link #eval(String)}.
+     * <p>
+     * Unlike {@link #eval(String)}, evaluating the returned expression does not
+     * bind its value to the special variable "_".
      *
-     * */
-    private void pushOperatorToOperatorsStack(String operatorToAdd) {
-        LOGGER.debug("inserting " + operatorToAdd + "  to the operators stack");
-        operatorsStack.add(operatorToAdd);
+     * @param expr well-formed arithmetic expression
+     * @return the compiled expression
+     */
+    public CompiledExpression compile(String expr) {
+        try {
+            return compileExpression(expr);
+        } catch (UnknownCharacterException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
     }
 
 
-    /*
-     *
-     * inserts a variable name to the variables Stack
+    /**
+     * Creates a session forked from the bindings of this calculator. The session sees
+     * the bindings of the calculator, but the variables it binds or clears, including
+     * "_", are only seen by the session.
      *
-     * */
-    private void pushVariableToVariablesStack(String variableName) {
-        LOGGER.debug("inserting " + variableName + "  to the variables stack");
-        variablesStack.add(variableName);
+     * @return the new session
+     */
+    public Session newSession() {
+        return new Session(this, new BindingScope(bindings()));
     }
 
 
-    /*
-     *  wraps a given string with "(" ")"
-     *
-     *
-     * */
-    private String wrapString(String expr) {
-
-        LOGGER.debug("wrapping the expression");
-
-        stringBuilder.append(Constants.OPENING_PARENTHESES);
-        stringBuilder.append(expr);
-        stringBuilder.append(Constants.CLOSING_PARENTHESES);
-
-        expr = stringBuilder.toString();
-        clearStringBuilder();
-        return expr;
-
+    /**
+     * Evaluates a formula once per row of the given columns of variable values, without
+     * touching the bindings of the calculator.
+     *
+     * @param formula well-formed arithmetic expression
+     * @param columns the values of every variable by its name, at least one per row of the output
+     * @param output  the value of the formula for every row
+     * @return the rows where a division by zero happened, their value is NaN
+     * @see CompiledExpression#evaluateColumns(double[][], double[])
+     */
+    public BitSet evalColumns(String formula, Map<String, double[]> columns, double[] output) {
+        return compile(formula).evaluateColumns(columns, output);
     }
 
 
-    private void clearStringBuilder() {
-        stringBuilder.setLength(0);
+    /**
+     * Evaluates independent expressions in parallel on the common fork join pool,
+     * every expression with its own bindings.
+     *
+     * @param expressions well-formed arithmetic expressions
+     * @return the results of the expressions, in the same order
+     * @see #evalAll(List, BindingsMode, ForkJoinPool)
+     */
+    public List<EvaluationResult> evalAll(List<String> expressions) {
+        return evalAll(expressions, BindingsMode.ISOLATED);
     }
 
-    /*
-     * returns map of which key value is the position a parentheses is open at , and the value is where
-     * the matching parentheses is
+    /**
+     * Evaluates independent expressions in parallel on the common fork join pool.
      *
-     * */
-    private HashMap<Integer, Integer> indexParentheses(List<Pair<TokenType, String>> expressionAsTokens) {
-        HashMap<Integer, Integer> parenthesesIndex = new HashMap<>();
-        Stack<Integer> startOfParentheses = new Stack<>();
-
-        int currentTokenindexInTokensList = 0;
-        while (currentTokenindexInTokensList < expressionAsTokens.size()) {
-            String currentTokenValue = expressionAsTokens.get(currentTokenindexInTokensList).getValue();
-            switch (currentTokenValue) {
-                case Constants.OPENING_PARENTHESES:
-                    startOfParentheses.push(currentTokenindexInTokensList);
-                    break;
-                case Constants.CLOSING_PARENTHESES:
-                    Integer lastOpeningParentheses = startOfParentheses.pop();
-                    parenthesesIndex.put(lastOpeningParentheses, currentTokenindexInTokensList);
-                    parenthesesIndex.put(currentTokenindexInTokensList, lastOpeningParentheses);
-                    break;
-            }
-            currentTokenindexInTokensList++;
-        }
-
-
-        if (!startOfParentheses.isEmpty()) {
-            LOGGER.warn("your expression is not valid");
-
-        }
-        return parenthesesIndex;
-
-
+     * @param expressions  well-formed arithmetic expressions
+     * @param bindingsMode whether the expressions share the bindings of the calculator
+     * @return the results of the expressions, in the same order
+     * @see #evalAll(List, BindingsMode, ForkJoinPool)
+     */
+    public List<EvaluationResult> evalAll(List<String> expressions, BindingsMode bindingsMode) {
+        return evalAll(expressions, bindingsMode, ForkJoinPool.commonPool());
     }
 
-
-    /*
-     *   evaluates operator if possible
-     * */
-
-    private void evaluateOperator(String currentOperator) throws VariableIsNotDefinedException {
-        LOGGER.info("evaluating Operator " + currentOperator);
-        // if we reached the end of the current expression , we need to evaluate all operators in current expression
-        // for example (5+(5+5*6/2))
-        // when we are evaluating subexpression (5+5*6/2) and we reach ")"
-        // we need to apply any operators that appeared between the parentheses
-        if (currentOperator == Constants.SPECIAL_OPERATOR) {
-            String lastOperatorInStack = getOperatorFromOperatorsStack();
-
-            if (!lastOperatorInStack.equals(Constants.OPENING_PARENTHESES)) {
-                LOGGER.debug("applying Operator " + lastOperatorInStack);
-
-                double evaluationOutput = calculateValueWithOperator(lastOperatorInStack);
-
-                pushNumberToNumbersStack(evaluationOutput);
-
-            }
-        } else {
-            // if top of the stack is "(" and the operators stack is empty , or current operator has precedence over the
-            // last seen operator push current operator to the operators stack
-            if (operatorsStack.isEmpty() || operatorsStack.peek().equals(Constants.OPENING_PARENTHESES)
-                    || operatorHasPrecedence(currentOperator)) {
-                pushOperatorToOperatorsStack(currentOperator);
-
-            } else {
-                // apply the operators that can be applied
-                applyPreviousOperatorsWithHigherPrecedence(currentOperator);
-
-            }
-        }
-        LOGGER.info("done evaluating Operator " + currentOperator);
-
+    /**
+     * Evaluates independent expressions in parallel on the given pool. The expressions
+     * are split between the workers of the pool, and every worker compiles and evaluates
+     * its expressions with its own scratch memory.
+     * <p>
+     * An expression that fails doesn't stop the batch, its error is kept in its result.
+     * An exception thrown by a registered function is not an error of an expression, it
+     * stops the batch and is thrown.
+     * Unlike {@link #eval(String)}, the values of the expressions are not bound to "_".
+     *
+     * @param expressions  well-formed arithmetic expressions
+     * @param bindingsMode whether the expressions share the bindings of the calculator
+     * @param pool         the pool evaluating the expressions
+     * @return the results of the expressions, in the same order
+     */
+    public List<EvaluationResult> evalAll(List<String> expressions, BindingsMode bindingsMode, ForkJoinPool pool) {
+        LOGGER.info("started Evaluating a batch of " + expressions.size() + " expressions");
+        EvaluationResult[] results = new EvaluationResult[expressions.size()];
+        pool.invoke(new BatchEvaluator(this, bindingsMode).evaluateAll(expressions, results));
+        LOGGER.info("done Evaluating a batch of " + expressions.size() + " expressions");
+        return Arrays.asList(results);
     }
 
-
-    /*
-     * applies previous operators with higher precedence (just not "(" )
-     * */
-    private void applyPreviousOperatorsWithHigherPrecedence(String currentOperator) throws VariableIsNotDefinedException {
-        String lastOperatorInStack;
-        LOGGER.debug("started applying previous operators ");
-
-        // if the input is something like 1*3*4*5+1
-        // we need to do all the * before adding
-        // if the top of the operators stack is "(" then we stop
-        // "(" is the start of the current subexpression  for example ((1*3*4+5*8)+5)
-        // when the first + is encountered we can evaluate all previous Operators until "("
-        while (!operatorsStack.isEmpty() && !operatorsStack.peek().equals(Constants.OPENING_PARENTHESES) &&
-                !operatorHasPrecedence(currentOperator)) {
-
-            // apply the operator on top of the operators stack
-            lastOperatorInStack = getOperatorFromOperatorsStack();
-            LOGGER.debug("applying Operator " + lastOperatorInStack);
-            double evaluationOutput = calculateValueWithOperator(lastOperatorInStack);
-            // push the output of that operator to the numbersStack
-            pushNumberToNumbersStack(evaluationOutput);
-        }
-        //after finishing , push the current operator to the operators sz
-        pushOperatorToOperatorsStack(currentOperator);
-        LOGGER.debug("done applying previous operators ");
-
-
+    /**
+     * Evaluates a stream of independent expressions in parallel, the expressions are
+     * only read and evaluated when the returned stream is consumed. The results keep the
+     * order of the expressions, as long as they are consumed in encounter order (for
+     * example with {@link Stream#forEachOrdered}).
+     *
+     * @param expressions  well-formed arithmetic expressions
+     * @param bindingsMode whether the expressions share the bindings of the calculator
+     * @return the results of the expressions
+     * @see #evalAll(List, BindingsMode, ForkJoinPool)
+     */
+    public Stream<EvaluationResult> evalAll(Stream<String> expressions, BindingsMode bindingsMode) {
+        BatchEvaluator batchEvaluator = new BatchEvaluator(this, bindingsMode);
+        return expressions.parallel().map(batchEvaluator::evaluate);
     }
 
+
     /**
-     * this method will apply the given operator on the first n elements in the stack
-     * where n is the number of arguments the operator takes
-     * for example for "+" n=2
+     * Evaluates a file of expressions, one per line, and writes the value of every line
+     * to the output file, one per line and in the same order. Blank lines are skipped, a
+     * line that fails gets its error instead of its value. The lines are evaluated one
+     * after the other with the bindings of the calculator, like the lines typed in the
+     * calculator program.
+     * <p>
+     * Reading, compiling, evaluating and writing run at the same time on their own
+     * threads, and the file is read and written in big blocks, so large files are
+     * evaluated at the speed of the slowest stage.
+     *
+     * @param input  the file of expressions
+     * @param output the file of results, it is created or replaced
+     * @return the number of expressions that were evaluated
+     * @throws IOException if the input can't be read or the output can't be written
      */
-    private double calculateValueWithOperator(String currentOperator) throws VariableIsNotDefinedException {
-        double lastSeenNumber = 0;
-        // if the current operator is not a variable then we need to get the top number in the numbers stack
-        if (!currentOperator.equals(Constants.VARIABLE)) {
-            lastSeenNumber = getNumberFromNumbersStack();
+    public long evalFile(Path input, Path output) throws IOException {
+        try (FileChannel outputChannel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return evalFile(input, outputChannel);
         }
-        double firstNumberInOperationNeeded = 0;
-        // check if the currentOperator is a binary operator , if yes fetch the next operand
-        if (isBinaryOperator(currentOperator)) {
-            firstNumberInOperationNeeded = fetchFirstOperandForOperator();
-        }
-        switch (currentOperator) {
-            case Constants.ADDITION:
-                return firstNumberInOperationNeeded + lastSeenNumber;
-            case Constants.SUBSTRACTION:
-                return firstNumberInOperationNeeded - lastSeenNumber;
-            case Constants.MULTIPLICATION:
-                return firstNumberInOperationNeeded * lastSeenNumber;
-
-            case Constants.DIVISION:
-                if (lastSeenNumber == 0) {
-                    throw new ArithmeticException("Division By Zero Exception");
-                }
-                return firstNumberInOperationNeeded / lastSeenNumber;
-            case Constants.SQRT_FUNTION:
-                return Math.sqrt(lastSeenNumber);
-            case Constants.LOG_FUNCTION:
-                return Math.log(lastSeenNumber);
-            case Constants.SIN_FUNCTION:
-                return Math.sin(lastSeenNumber);
-            case Constants.COS_FUNCTION:
-                return Math.cos(lastSeenNumber);
-            case Constants.BINDING:
-                bindVariableToValue(lastSeenNumber);
-                return lastSeenNumber;
-            case Constants.VARIABLE:
-                double variableValue = gerVariableValue();
-                return variableValue;
-            default:
-                return lastSeenNumber;
-        }
-
     }
 
     /*
-     * binds the last seen variable to a given value
-     *
+     * evaluates a file of expressions into the given channel
      * */
-    private void bindVariableToValue(double lastSeenNumber) {
-        LOGGER.debug("binding vale to variable ");
-        //discard of the variable operator
-        getOperatorFromOperatorsStack();
-        // fetch the variable's name and assign the give value to it
-        String variableName = getVariableFromVariablesStack();
-        assignValueToVariable(variableName, lastSeenNumber);
+    long evalFile(Path input, WritableByteChannel output) throws IOException {
+        LOGGER.info("started Evaluating the file " + input);
+        long evaluatedLinesCount = new FileEvaluator(this,
+                lastResultScope == LastResultScope.THREAD ? threadBindings.get() : bindings()).evaluate(input, output);
+        LOGGER.info("done Evaluating " + evaluatedLinesCount + " expressions of the file " + input);
+        return evaluatedLinesCount;
     }
 
 
     /*
-     *  checks if one of the two terms is a variable , if yes , substitute the variable with its value
-     *
+     * returns the compiled form of the given expression , from the cache if it was compiled before
      * */
-    private double fetchFirstOperandForOperator() throws VariableIsNotDefinedException {
-        LOGGER.debug("fetching first Operand for operation");
-
-        double firstOperand = 0;
-
-        // if the first operand is not a variable
-        if (!hasVariableBefore()) {
-            firstOperand = getNumberFromNumbersStack();
-        } else {
-            firstOperand = gerVariableValue();
-            getOperatorFromOperatorsStack();
+    CompiledExpression compileExpression(String expr) throws UnknownCharacterException {
+        String normalizedExpression = ExpressionCache.normalizeExpression(expr);
+        CompiledExpression compiledExpression = expressionCache.get(normalizedExpression);
+        // an expression compiled before a function was registered may call another function now
+        if (compiledExpression == null || !compiledExpression.isResolvedWith(functionRegistry)) {
+            compiledExpression = new ExpressionCompiler(functionRegistry).compile(normalizedExpression, roundingPolicy)
+                    .withBackend(evaluationBackend).withNumericBackend(numericBackend);
+            expressionCache.put(normalizedExpression, compiledExpression);
+        } else if (compiledExpression.getBackend() != evaluationBackend
+                || compiledExpression.getRoundingPolicy() != roundingPolicy
+                || compiledExpression.getNumericBackend() != numericBackend) {
+            compiledExpression = compiledExpression.withRoundingPolicy(roundingPolicy).withBackend(evaluationBackend)
+                    .withNumericBackend(numericBackend);
+            expressionCache.put(normalizedExpression, compiledExpression);
         }
-        LOGGER.debug("done fetching first Operand for operation");
-
-        return firstOperand;
+        return compiledExpression;
     }
 
 
-    /*
-     *
-     * this method returns the value of the last seen variable , if the variable is not defined an exception will be thrown
+    /**
+     * Returns the functions expressions can call, sqrt, log, sin and cos and the ones
+     * registered into it. The expressions compiled before a function is registered are
+     * compiled again the next time they are evaluated.
      *
-     * */
-    private double gerVariableValue() throws VariableIsNotDefinedException {
-        String variableName = getVariableFromVariablesStack();
-        double firstOperand = 0;
-        // check if the there is a value assigned to the variable
-        if (bindings().containsKey(variableName)) {
-            LOGGER.debug("getting the value of variable " + variableName);
-
-            firstOperand = bindings().get(variableName);
+     * @return the functions of this calculator
+     */
+    public FunctionRegistry functions() {
+        return functionRegistry;
+    }
 
-        } else {
-            LOGGER.warn(String.format("you need to assign a value to variable %s before using it", variableName));
-            throw new VariableIsNotDefinedException(variableName + " is not defined");
 
-        }
+    /**
+     * @return the cache of compiled expressions used by this calculator
+     */
+    public ExpressionCache expressionCache() {
+        return expressionCache;
+    }
 
-        return firstOperand;
+    /**
+     * @return the cache of the values of the expressions evaluated with the bindings of this calculator
+     */
+    public ResultCache resultCache() {
+        return resultCache;
     }
 
 
-    /*
-     *
-     * assigns the given value to the give Variable
+    /**
+     * Chooses how expressions are evaluated. The bytecode backend generates a class
+     * for every compiled expression, so it is meant for expressions compiled once
+     * with {@link #compile(String)} and evaluated many times.
      *
-     * */
-    private void assignValueToVariable(String variableName, double variableValue) {
-        LOGGER.debug("assigning the value  " + variableValue + "to variable " + variableName);
+     * @param evaluationBackend the backend used by {@link #eval(String)} and {@link #compile(String)}
+     */
+    public void setEvaluationBackend(EvaluationBackend evaluationBackend) {
+        this.evaluationBackend = evaluationBackend;
+    }
 
-        bindings().put(variableName, variableValue);
+    public EvaluationBackend getEvaluationBackend() {
+        return evaluationBackend;
     }
 
 
-    /*
-     *  checks if the given operator is one of the base operators ( - + / * )
+    /**
+     * Chooses when values are rounded to 12 digits after the decimal point. By default
+     * only the value of an expression and the values bound to variables are rounded,
+     * {@link RoundingPolicy#EVERY_STEP} rounds every intermediate result like earlier
+     * versions did.
      *
-     * */
-    private boolean isBinaryOperator(String operator) {
-        return (operator.equals(Constants.MULTIPLICATION) || operator.equals(Constants.SUBSTRACTION)
-                || operator.equals(Constants.ADDITION) || operator.equals(Constants.DIVISION));
+     * @param roundingPolicy the rounding policy used by {@link #eval(String)} and {@link #compile(String)}
+     */
+    public void setRoundingPolicy(RoundingPolicy roundingPolicy) {
+        this.roundingPolicy = roundingPolicy;
+    }
 
+    public RoundingPolicy getRoundingPolicy() {
+        return roundingPolicy;
     }
 
 
-    /*
-     *
-     * returns the first element in Numbers Stack
+    /**
+     * Chooses the arithmetic expressions are evaluated with. By default they are evaluated
+     * with doubles, {@link NumericBackend#LONG} and {@link NumericBackend#BIG_DECIMAL} are
+     * exact for the expressions they can be exact for, and {@link NumericBackend#INFERRED}
+     * picks the cheapest exact one for every expression.
      *
-     * */
-    private double getNumberFromNumbersStack() {
-        LOGGER.debug("popping " + numbersStack.peek() + "from the numbers stack");
-        return numbersStack.pop();
+     * @param numericBackend the arithmetic used by {@link #eval(String)} and {@link #compile(String)}
+     * @see CompiledExpression#withNumericBackend(NumericBackend)
+     */
+    public void setNumericBackend(NumericBackend numericBackend) {
+        this.numericBackend = numericBackend;
     }
 
-    /*
-     *
-     * returns the first element in Operators Stack
-     *
-     * */
-    private String getOperatorFromOperatorsStack() {
-        LOGGER.debug("popping " + operatorsStack.peek() + "from the operators stack");
-
-        return operatorsStack.pop();
+    public NumericBackend getNumericBackend() {
+        return numericBackend;
     }
 
 
-    /*
-     *
-     * returns the first element in Variables Stack
+    /**
+     * Chooses who sees the value {@link #eval(String)} binds to "_". By default "_"
+     * is an ordinary binding holding the value of the last evaluation that finished
+     * on any thread. With {@link LastResultScope#THREAD} every thread reads the value
+     * of its own last evaluation, and the "_" of {@link #bindings()} is left as it is.
      *
-     * */
-    private String getVariableFromVariablesStack() {
-        LOGGER.debug("popping " + operatorsStack.peek() + "from the variables stack");
-        return variablesStack.pop();
+     * @param lastResultScope the visibility of "_"
+     */
+    public void setLastResultScope(LastResultScope lastResultScope) {
+        this.lastResultScope = lastResultScope;
     }
 
-
-    /*
-     * returns true if there is a Operator of Type variable on top of the stack
-     * */
-    private boolean hasVariableBefore() {
-
-        return operatorsStack.isEmpty() ? false : operatorsStack.peek().equals(Constants.VARIABLE);
-
+    public LastResultScope getLastResultScope() {
+        return lastResultScope;
     }
 
 
     /*
-     * this method checks if the current Operator Has precedence over the previous one
      *
-     * */
-    private boolean operatorHasPrecedence(String currentOperator) {
-        String lastOperatorInOperatorStack = operatorsStack.peek();
-        int lastOperatorInStackStrength = getOperatorStrength(lastOperatorInOperatorStack);
-        int currentOperatorsStrength = getOperatorStrength(currentOperator);
-        return (lastOperatorInStackStrength < currentOperatorsStrength);
-    }
-
-
-    /*
-     * this method return the Priority of the given Operator
+     * assigns the given value to the give Variable
      *
      * */
-    private int getOperatorStrength(String operator) {
-        switch (operator) {
-            case Constants.ADDITION:
-            case Constants.SUBSTRACTION:
-                return Constants.ADDITION_SUBTRACTION_PRECEDENCE;
-
-            case Constants.MULTIPLICATION:
-            case Constants.DIVISION:
-                return Constants.MULTIPLICATION_DIVISION_PRECEDENCE;
-
-            case Constants.OPENING_PARENTHESES:
-                return Constants.PARENTHESE_PRECEDENCE;
-            case Constants.SQRT_FUNTION:
-            case Constants.LOG_FUNCTION:
-            case Constants.SIN_FUNCTION:
-            case Constants.COS_FUNCTION:
-                return Constants.FUNCTION_PRECEDENCE;
-
-            case Constants.VARIABLE:
-                return Constants.VARIABLE_OPERATOR_PRECEDENCE;
-
-            case Constants.BINDING:
-                return Constants.BINDING_PRECEDENCE;
-
-            default:
-                return -1;
-        }
-
+    private void assignValueToVariable(Map<String, Double> evaluationBindings, String variableName, double variableValue) {
+        LOGGER.debug("assigning the value  " + variableValue + "to variable " + variableName);
 
+        evaluationBindings.put(variableName, variableValue);
     }
 
 
+    /**
+     * Returns the bindings of the calculator, the variables sorted by name with "_" among
+     * them. The map is a view of the frame the compiled expressions read and write by the
+     * slots of their variables, changing it changes the variables the expressions see.
+     *
+     * @return the bindings of the calculator
+     */
     public Map<String, Double> bindings() {
         return bindings;
     }
 
-    private final Map<String, Double> bindings = new TreeMap<>();
+    /**
+     * Returns the number of variables the bindings have room for before they grow. A
+     * variable takes room once it is bound, the room of removed variables is given back
+     * when the bindings are cleared or when most of their room is not used anymore.
+     *
+     * @return the number of variables the bindings have room for, at least 64
+     */
+    public int bindingsCapacity() {
+        return bindings.capacity();
+    }
+
+    // a map sorted by name like a TreeMap , over a frame the compiled expressions read and write by slot
+    private final VariableFrame bindings = new VariableFrame();
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         Calc calc = new Calc();
+        List<String> arguments = Arrays.asList(args);
+        // with --serve the calculator answers HTTP requests on the given port until it is killed
+        int serveIndex = arguments.indexOf("--serve");
+        if (serveIndex >= 0 && serveIndex + 1 < args.length) {
+            CalcServer.enableNoDelay();
+            new CalcServer(calc, new InetSocketAddress(Integer.parseInt(args[serveIndex + 1]))).start();
+            return;
+        }
+        // with --serve-binary the calculator answers the binary protocol on the given loopback port ,
+        // or on the unix domain socket at the given path , until it is killed
+        int serveBinaryIndex = arguments.indexOf("--serve-binary");
+        if (serveBinaryIndex >= 0 && serveBinaryIndex + 1 < args.length) {
+            String address = args[serveBinaryIndex + 1];
+            new BinaryProtocolServer(calc, address.matches("\\d+")
+                    ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address))
+                    : BinaryProtocolServer.unixDomainSocketAddress(Paths.get(address))).start();
+            // the server thread is a daemon
+            Thread.currentThread().join();
+            return;
+        }
+        // with --input the expressions are read from a file instead of the standard input , and their
+        // values are written to the --output file (or the standard output)
+        int inputIndex = arguments.indexOf("--input");
+        if (inputIndex >= 0 && inputIndex + 1 < args.length) {
+            Path input = Paths.get(args[inputIndex + 1]);
+            int outputIndex = arguments.indexOf("--output");
+            if (outputIndex >= 0 && outputIndex + 1 < args.length) {
+                calc.evalFile(input, Paths.get(args[outputIndex + 1]));
+            } else {
+                calc.evalFile(input, Channels.newChannel(System.out));
+                System.out.flush();
+            }
+            return;
+        }
+        // with --dump-optimized every expression is printed with its instructions before its value
+        boolean dumpOptimized = arguments.contains("--dump-optimized");
+        // the sessions opened with :session , the default session uses the bindings of the calculator
+        Map<String, Session> sessions = new HashMap<>();
+        Session defaultSession = new Session(calc, calc.bindings());
+        Session session = defaultSession;
         try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
              PrintWriter out = new PrintWriter(System.out, true)) {
             while (true) {
@@ -664,24 +599,40 @@ public class Calc {
                 try {
                     if (!line.startsWith(":")) {
                         // handle expression
-                        out.println(calc.eval(line));
+                        if (dumpOptimized) {
+                            out.println(calc.compile(line).dump());
+                        }
+                        out.println(session.eval(line));
                     } else {
                         // handle command
                         String[] command = line.split("\\s+", 2);
                         switch (command[0]) {
                             case ":vars":
-                                calc.bindings().forEach((name, value) ->
+                                session.bindings().forEach((name, value) ->
                                         out.println(name + " = " + value));
                                 break;
                             case ":clear":
                                 if (command.length == 1) {
                                     // clear all
-                                    calc.bindings().clear();
+                                    session.bindings().clear();
                                 } else {
                                     // clear requested
-                                    calc.bindings().keySet().removeAll(Arrays.asList(command[1].split("\\s+")));
+                                    session.bindings().keySet().removeAll(Arrays.asList(command[1].split("\\s+")));
                                 }
                                 break;
+                            case ":session":
+                                if (command.length == 1) {
+                                    // back to the default session
+                                    session = defaultSession;
+                                } else {
+                                    // switch to the requested session , it is forked from the default one when it is new
+                                    session = sessions.computeIfAbsent(command[1], name -> calc.newSession());
+                                }
+                                break;
+                            case ":cache":
+                                out.println(calc.expressionCache());
+                                out.println(calc.resultCache());
+                                break;
                             case ":exit":
                             case ":quit":
                                 System.exit(0);
@@ -0,0 +1,366 @@
+package main.java;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.log4testng.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An HTTP server evaluating expressions with a calculator, started from the calculator
+ * program with <code>--serve &lt;port&gt;</code>.
+ * <p>
+ * The server answers with JSON, a result is <code>{"value":5.0}</code> or
+ * <code>{"error":"..."}</code>:
+ * <ul>
+ * <li><code>POST /eval</code> evaluates the expression in the body with the bindings of the calculator</li>
+ * <li><code>POST /batch</code> evaluates a JSON array of independent expressions in parallel and
+ * answers with an array of results, see {@link Calc#evalAll(List)}</li>
+ * <li><code>POST /sessions/{name}/eval</code> evaluates the expression in the body in a session,
+ * the session is forked from the calculator when it is first used</li>
+ * <li><code>GET /sessions/{name}/vars</code> answers with the bindings of the session, like :vars,
+ * or with a 404 when there is no such session</li>
+ * <li><code>POST /sessions/{name}/clear</code> clears the variables named in the body, or all
+ * of them when the body is empty, like :clear</li>
+ * <li><code>DELETE /sessions/{name}</code> forgets the session</li>
+ * </ul>
+ * An expression that fails is answered with a 400, and a registered function that throws
+ * is answered with a 500 and logged.
+ * <p>
+ * The server keeps a bounded number of sessions, when a session is created while the
+ * server already has as many as it can keep, the least recently used one is forgotten.
+ * <p>
+ * Connections are kept alive between requests, and requests sent one after the other on a
+ * connection without waiting for the answers are answered in order. Every request runs on
+ * its own virtual thread when the JVM has them (java 21 and later), on a pooled thread otherwise.
+ * Creating a server changes no setting of the JVM, see {@link #enableNoDelay()} for the
+ * latency of small answers.
+ */
+public final class CalcServer {
+
+    private static final Logger LOGGER = Logger.getLogger(CalcServer.class);
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String SESSIONS_PATH = "/sessions/";
+
+    // read once by the JDK server , when the first server of the JVM is created
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    public static final int DEFAULT_MAX_SESSIONS = 1024;
+
+    private final Calc calc;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    // the bindings of the calculator , used by /eval
+    private final Session defaultSession;
+    // the sessions by name in their least recently used order , guarded by itself
+    private final Map<String, Session> sessions;
+
+    /**
+     * Creates a server keeping at most {@link #DEFAULT_MAX_SESSIONS} sessions, it only
+     * accepts requests once it is started.
+     *
+     * @param calc    the calculator evaluating the expressions
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the address can't be bound
+     */
+    public CalcServer(Calc calc, InetSocketAddress address) throws IOException {
+        this(calc, address, DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Creates a server, it only accepts requests once it is started.
+     *
+     * @param calc        the calculator evaluating the expressions
+     * @param address     the address to listen on, port 0 picks a free port
+     * @param maxSessions the maximum number of sessions kept, the least recently used one is
+     *                    forgotten when another one is created
+     * @throws IOException if the address can't be bound
+     */
+    public CalcServer(Calc calc, InetSocketAddress address, int maxSessions) throws IOException {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("the server has to keep at least one session");
+        }
+        this.calc = calc;
+        // iterating in access order makes the first entry the least recently used session
+        this.sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > maxSessions;
+            }
+        };
+        this.defaultSession = new Session(calc, calc.bindings());
+        this.httpServer = HttpServer.create(address, 0);
+        this.executor = newRequestExecutor();
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/eval", this::handleEval);
+        httpServer.createContext("/batch", this::handleBatch);
+        httpServer.createContext(SESSIONS_PATH, this::handleSession);
+    }
+
+    public void start() {
+        httpServer.start();
+        LOGGER.info("started serving on " + httpServer.getAddress());
+    }
+
+    /**
+     * Makes the JDK HTTP servers send their answers right away instead of waiting for the
+     * acknowledgment of the previous packet, which delays the small answers of the server by
+     * tens of milliseconds. This sets the system property <code>sun.net.httpserver.nodelay</code>,
+     * so it changes every HTTP server of the JVM, and it only works when it is called before the
+     * first one is created. The calculator program calls it for <code>--serve</code>, an
+     * application embedding the server decides for itself. A value already set is kept.
+     */
+    public static void enableNoDelay() {
+        System.getProperties().putIfAbsent(NO_DELAY_PROPERTY, "true");
+    }
+
+    /**
+     * Stops accepting requests and waits at most the given time for the running ones.
+     *
+     * @param delaySeconds the time given to the running requests
+     */
+    public void stop(int delaySeconds) {
+        httpServer.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("stopped serving on " + httpServer.getAddress());
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+
+    private void handleEval(HttpExchange exchange) throws IOException {
+        try {
+            if (!requireMethod(exchange, "POST") || !requirePath(exchange, "/eval")) {
+                return;
+            }
+            sendResult(exchange, defaultSession.tryEval(readBody(exchange)));
+        } catch (RuntimeException e) {
+            sendFailure(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!requireMethod(exchange, "POST") || !requirePath(exchange, "/batch")) {
+                return;
+            }
+            List<String> expressions;
+            try {
+                expressions = Json.parseStringArray(readBody(exchange));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, "the body must be a JSON array of expressions: " + e.getMessage());
+                return;
+            }
+            StringBuilder json = new StringBuilder(expressions.size() * 24 + 2).append('[');
+            List<EvaluationResult> results = calc.evalAll(expressions);
+            for (int resultIndex = 0; resultIndex < results.size(); resultIndex++) {
+                if (resultIndex > 0) {
+                    json.append(',');
+                }
+                Json.appendResult(json, results.get(resultIndex));
+            }
+            send(exchange, 200, json.append(']'));
+        } catch (RuntimeException e) {
+            sendFailure(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * handles /sessions/{name} , /sessions/{name}/eval , /sessions/{name}/vars and /sessions/{name}/clear
+     * */
+    private void handleSession(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring(SESSIONS_PATH.length()).split("/");
+            String sessionName = path[0];
+            if (sessionName.isEmpty() || path.length > 2) {
+                readBody(exchange);
+                sendError(exchange, 404, "no such resource " + exchange.getRequestURI().getPath());
+                return;
+            }
+            if (path.length == 1) {
+                if (requireMethod(exchange, "DELETE")) {
+                    readBody(exchange);
+                    synchronized (sessions) {
+                        sessions.remove(sessionName);
+                    }
+                    send(exchange, 200, new StringBuilder("{}"));
+                }
+                return;
+            }
+            switch (path[1]) {
+                case "eval":
+                    if (requireMethod(exchange, "POST")) {
+                        Session session = sessionOf(sessionName);
+                        String expression = readBody(exchange);
+                        EvaluationResult result;
+                        // a session is used by one request at a time , the failures are not printed
+                        synchronized (session) {
+                            result = session.tryEval(expression);
+                        }
+                        sendResult(exchange, result);
+                    }
+                    break;
+                case "vars":
+                    if (requireMethod(exchange, "GET")) {
+                        readBody(exchange);
+                        Session session;
+                        synchronized (sessions) {
+                            session = sessions.get(sessionName);
+                        }
+                        if (session == null) {
+                            sendError(exchange, 404, "no such session " + sessionName);
+                            break;
+                        }
+                        StringBuilder json = new StringBuilder();
+                        synchronized (session) {
+                            Json.appendBindings(json, session.bindings());
+                        }
+                        send(exchange, 200, json);
+                    }
+                    break;
+                case "clear":
+                    if (requireMethod(exchange, "POST")) {
+                        Session session = sessionOf(sessionName);
+                        String variableNames = readBody(exchange).trim();
+                        synchronized (session) {
+                            if (variableNames.isEmpty()) {
+                                session.bindings().clear();
+                            } else {
+                                session.bindings().keySet().removeAll(Arrays.asList(variableNames.split("\\s+")));
+                            }
+                        }
+                        send(exchange, 200, new StringBuilder("{}"));
+                    }
+                    break;
+                default:
+                    readBody(exchange);
+                    sendError(exchange, 404, "no such resource " + exchange.getRequestURI().getPath());
+            }
+        } catch (RuntimeException e) {
+            sendFailure(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * returns the session with the given name , forked from the calculator if there is none. only the
+     * requests changing a session create it , so the other paths can't fill the server with sessions
+     * */
+    private Session sessionOf(String sessionName) {
+        synchronized (sessions) {
+            return sessions.computeIfAbsent(sessionName, name -> calc.newSession());
+        }
+    }
+
+
+    private static boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestMethod().equals(method)) {
+            return true;
+        }
+        readBody(exchange);
+        exchange.getResponseHeaders().set("Allow", method);
+        sendError(exchange, 405, exchange.getRequestMethod() + " is not allowed here");
+        return false;
+    }
+
+    private static boolean requirePath(HttpExchange exchange, String path) throws IOException {
+        if (exchange.getRequestURI().getPath().equals(path)) {
+            return true;
+        }
+        readBody(exchange);
+        sendError(exchange, 404, "no such resource " + exchange.getRequestURI().getPath());
+        return false;
+    }
+
+    /*
+     * reads the whole body , it has to be read even when it is not used for the connection to be reused
+     * */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                body.write(buffer, 0, count);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendResult(HttpExchange exchange, EvaluationResult result) throws IOException {
+        StringBuilder json = new StringBuilder(32);
+        Json.appendResult(json, result);
+        send(exchange, result.isSuccess() ? 200 : 400, json);
+    }
+
+    /*
+     * a registered function failed or the calculator has a bug , it is not an error of the expression
+     * */
+    private static void sendFailure(HttpExchange exchange, RuntimeException failure) throws IOException {
+        LOGGER.error("answering " + exchange.getRequestURI().getPath() + " failed", failure);
+        sendError(exchange, 500, String.valueOf(failure));
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.appendString(json, message);
+        send(exchange, status, json.append('}'));
+    }
+
+    /*
+     * sends the response with its length , so the connection can be kept alive
+     * */
+    private static void send(HttpExchange exchange, int status, StringBuilder json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+
+    /*
+     * a virtual thread per request when the JVM has them , looked up by reflection since the
+     * code is built for java 8 , and a pool of threads growing with the load otherwise
+     * */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "calc-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package main.java;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+
+/*
+ * evaluates the instructions of a compiled expression over columns of variable values.
+ *
+ * instead of running all the instructions for one row and then the next row , every instruction
+ * runs over a block of rows at once , so each operator becomes a tight loop over arrays that the
+ * JIT can unroll and vectorize. the numbers stack holds a block of values per slot , and swapping
+ * two slots only swaps the arrays.
+ *
+ * rows where a division by zero happens are not thrown , they are reported and their value is NaN
+ * */
+class ColumnarEvaluator {
+
+    // the rows evaluated by one pass over the instructions , small enough for the blocks to stay in the cache
+    private static final int BLOCK_SIZE = 1024;
+
+    private final OpCode[] opCodes;
+    private final double[] numbers;
+    private final int[] variableIndexes;
+    private final RegisteredFunction[] functions;
+    private final RoundingPolicy roundingPolicy;
+
+    // a block of values for every slot of the numbers stack and every variable
+    private final double[][] numbersStack;
+    private final double[][] variables;
+    // rows of the current block that divided by zero
+    private final boolean[] failedRows = new boolean[BLOCK_SIZE];
+
+    ColumnarEvaluator(OpCode[] opCodes, double[] numbers, int[] variableIndexes, RegisteredFunction[] functions,
+                      int maxStackDepth, int variablesCount, RoundingPolicy roundingPolicy) {
+        this.opCodes = opCodes;
+        this.numbers = numbers;
+        this.variableIndexes = variableIndexes;
+        this.functions = functions;
+        this.roundingPolicy = roundingPolicy;
+        this.numbersStack = new double[maxStackDepth][BLOCK_SIZE];
+        this.variables = new double[variablesCount][BLOCK_SIZE];
+    }
+
+
+    /*
+     * evaluates every row of the columns into the output , a column is given for every variable the
+     * expression reads before binding it (the others can be null). returns the rows that divided by zero
+     * */
+    BitSet evaluate(double[][] columns, double[] output) {
+        BitSet divisionByZeroRows = new BitSet();
+        for (int blockStart = 0; blockStart < output.length; blockStart += BLOCK_SIZE) {
+            int blockSize = Math.min(BLOCK_SIZE, output.length - blockStart);
+            for (int variableIndex = 0; variableIndex < columns.length; variableIndex++) {
+                if (columns[variableIndex] != null) {
+                    System.arraycopy(columns[variableIndex], blockStart, variables[variableIndex], 0, blockSize);
+                }
+            }
+            Arrays.fill(failedRows, 0, blockSize, false);
+
+            double[] result = evaluateBlock(blockSize);
+            for (int row = 0; row < blockSize; row++) {
+                if (failedRows[row]) {
+                    divisionByZeroRows.set(blockStart + row);
+                    output[blockStart + row] = Double.NaN;
+                } else {
+                    output[blockStart + row] = roundResult(result[row]);
+                }
+            }
+        }
+        return divisionByZeroRows;
+    }
+
+
+    /*
+     * runs all the instructions over the first blockSize rows of the blocks , returns the block of results
+     * */
+    private double[] evaluateBlock(int blockSize) {
+        int top = -1;
+        for (int instructionIndex = 0; instructionIndex < opCodes.length; instructionIndex++) {
+            switch (opCodes[instructionIndex]) {
+                case PUSH_NUMBER:
+                    Arrays.fill(numbersStack[++top], 0, blockSize, numbers[instructionIndex]);
+                    break;
+                case LOAD_VARIABLE:
+                    System.arraycopy(variables[variableIndexes[instructionIndex]], 0, numbersStack[++top], 0, blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case STORE_VARIABLE:
+                    double[] variable = variables[variableIndexes[instructionIndex]];
+                    for (int row = 0; row < blockSize; row++) {
+                        variable[row] = roundResult(numbersStack[top][row]);
+                    }
+                    break;
+                case SWAP:
+                    double[] lastSeenNumbers = numbersStack[top];
+                    numbersStack[top] = numbersStack[top - 1];
+                    numbersStack[top - 1] = lastSeenNumbers;
+                    break;
+                case ADD:
+                    top--;
+                    add(numbersStack[top], numbersStack[top + 1], blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case SUBTRACT:
+                    top--;
+                    subtract(numbersStack[top], numbersStack[top + 1], blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case MULTIPLY:
+                    top--;
+                    multiply(numbersStack[top], numbersStack[top + 1], blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case DIVIDE:
+                    top--;
+                    divide(numbersStack[top], numbersStack[top + 1], blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case SQRT:
+                    sqrt(numbersStack[top], blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case LOG:
+                case SIN:
+                case COS:
+                    applyFunction(opCodes[instructionIndex], numbersStack[top], blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+                case CALL:
+                    // the arguments are replaced by the values of the call
+                    top -= functions[instructionIndex].getArity() - 1;
+                    call(functions[instructionIndex], top, blockSize);
+                    roundStep(numbersStack[top], blockSize);
+                    break;
+            }
+        }
+        return numbersStack[top];
+    }
+
+
+    private static void add(double[] firstOperands, double[] secondOperands, int blockSize) {
+        for (int row = 0; row < blockSize; row++) {
+            firstOperands[row] += secondOperands[row];
+        }
+    }
+
+    private static void subtract(double[] firstOperands, double[] secondOperands, int blockSize) {
+        for (int row = 0; row < blockSize; row++) {
+            firstOperands[row] -= secondOperands[row];
+        }
+    }
+
+    private static void multiply(double[] firstOperands, double[] secondOperands, int blockSize) {
+        for (int row = 0; row < blockSize; row++) {
+            firstOperands[row] *= secondOperands[row];
+        }
+    }
+
+    /*
+     * divides the rows , the zero divisors are checked in a second loop so the division loop stays branch free
+     * */
+    private void divide(double[] dividends, double[] divisors, int blockSize) {
+        for (int row = 0; row < blockSize; row++) {
+            dividends[row] /= divisors[row];
+        }
+        for (int row = 0; row < blockSize; row++) {
+            if (divisors[row] == 0) {
+                failedRows[row] = true;
+                // the value of the row is thrown away , 0 keeps the rounding of the next steps away from infinity
+                dividends[row] = 0;
+            }
+        }
+    }
+
+    private static void sqrt(double[] operands, int blockSize) {
+        for (int row = 0; row < blockSize; row++) {
+            operands[row] = Math.sqrt(operands[row]);
+        }
+    }
+
+    private static void applyFunction(OpCode function, double[] operands, int blockSize) {
+        switch (function) {
+            case LOG:
+                for (int row = 0; row < blockSize; row++) {
+                    operands[row] = Math.log(operands[row]);
+                }
+                break;
+            case SIN:
+                for (int row = 0; row < blockSize; row++) {
+                    operands[row] = Math.sin(operands[row]);
+                }
+                break;
+            default:
+                for (int row = 0; row < blockSize; row++) {
+                    operands[row] = Math.cos(operands[row]);
+                }
+        }
+    }
+
+
+    /*
+     * calls a registered function once per row , with the arguments in the slots from the given one
+     * */
+    private void call(RegisteredFunction function, int firstArgument, int blockSize) {
+        double[] arguments = new double[function.getArity()];
+        double[] values = numbersStack[firstArgument];
+        for (int row = 0; row < blockSize; row++) {
+            for (int argumentIndex = 0; argumentIndex < arguments.length; argumentIndex++) {
+                arguments[argumentIndex] = numbersStack[firstArgument + argumentIndex][row];
+            }
+            values[row] = function.invoke(arguments, 0);
+        }
+    }
+
+
+    /*
+     * rounds a block of intermediate values , only when every step is rounded
+     * */
+    private void roundStep(double[] values, int blockSize) {
+        if (roundingPolicy == RoundingPolicy.EVERY_STEP) {
+            for (int row = 0; row < blockSize; row++) {
+                values[row] = FormulaRuntime.scaleNumber(values[row]);
+            }
+        }
+    }
+
+    /*
+     * rounds the value of the expression or a value bound to a variable
+     * */
+    private double roundResult(double number) {
+        return roundingPolicy == RoundingPolicy.FINAL_RESULT ? FormulaRuntime.roundNumber(number) : number;
+    }
+}
@@ -0,0 +1,834 @@
+package main.java;
+
+import main.java.exceptions.DivisionByZeroException;
+import main.java.exceptions.VariableIsNotDefinedException;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An arithmetic expression that was tokenized and parsed once by {@link Calc#compile(String)}
+ * and can be evaluated any number of times with different bindings.
+ * <p>
+ * The expression is stored as a list of postfix instructions, with its constant parts already
+ * computed and its identities (like <code>*1</code> and <code>+0</code>) dropped, see {@link #dump()}.
+ * A compiled expression is immutable, so it can be shared between threads as long as every
+ * thread evaluates it with its own bindings.
+ */
+public final class CompiledExpression {
+
+    private static final long UNBOUND_VARIABLE_BITS = 0x7ff8_0000_dead_beefL;
+    private static final double UNBOUND_VARIABLE = Double.longBitsToDouble(UNBOUND_VARIABLE_BITS);
+    // the number of frames an expression keeps the slots of its variables for
+    private static final int RESOLVED_FRAMES_COUNT = 4;
+
+    private final String expression;
+    // the instructions as they were compiled , and simplified by the optimizer for the rounding policy
+    private final Instruction[] compiledInstructions;
+    private final Instruction[] instructions;
+    private final int maxStackDepth;
+
+    // the instructions as primitive arrays , the number and the variable of an instruction are at its index
+    private final OpCode[] opCodes;
+    private final double[] numbers;
+    private final int[] variableIndexes;
+    private final RegisteredFunction[] functions;
+
+    // the table of functions the calls of the expression were resolved with
+    private final RegisteredFunction[] functionsTable;
+
+    // the variables the expression reads or binds , every variable instruction refers to its position here
+    private final String[] variableNames;
+    // variables that are read before the expression binds them , they have to come from the bindings
+    private final boolean[] freeVariables;
+    // variables the expression binds
+    private final boolean[] boundVariables;
+    // the variables read from the bindings , and whether evaluating the expression again with the same
+    // variables gives the same value without changing anything
+    private final String[] freeVariableNames;
+    private final boolean repeatable;
+
+    // the slots of the variables , and of the variables read from the bindings , in the frames of the last
+    // calculators the expression was evaluated with. calculators sharing an expression cache evaluate the same
+    // expressions , every frame keeps its resolution instead of replacing the one of the other frame. the
+    // resolutions have final fields only , they are read and written without a lock and the frame says when
+    // they have to be resolved again
+    private final VariableFrame.Resolution[] frameResolutions = new VariableFrame.Resolution[RESOLVED_FRAMES_COUNT];
+    private final VariableFrame.Resolution[] freeVariablesResolutions = new VariableFrame.Resolution[RESOLVED_FRAMES_COUNT];
+
+    // the errors of the expression are made once , they have no stack trace and say where they are in the
+    // expression. an undefined variable is reported where it is read first , a division at its /
+    private final VariableIsNotDefinedException[] undefinedVariableErrors;
+    private final DivisionByZeroException[] divisionErrors;
+
+    // evaluates the expression with its derivatives
+    private final DualNumberEvaluator dualNumberEvaluator;
+
+    private final RoundingPolicy roundingPolicy;
+    private final boolean roundEveryStep;
+    private final EvaluationBackend backend;
+    private final FormulaFunction function;
+
+    // the numeric backend that was asked for , and the evaluator of the backend it resolved to , null for doubles
+    private final NumericBackend numericBackend;
+    private final NumericEvaluator numericEvaluator;
+
+    CompiledExpression(String expression, Instruction[] compiledInstructions, String[] variableNames,
+                       RoundingPolicy roundingPolicy, RegisteredFunction[] functionsTable) {
+        this.expression = expression;
+        this.functionsTable = functionsTable;
+        this.compiledInstructions = compiledInstructions;
+        this.instructions = new ExpressionOptimizer(roundingPolicy).optimize(compiledInstructions);
+        this.maxStackDepth = ExpressionOptimizer.computeMaxStackDepth(instructions);
+        this.opCodes = new OpCode[instructions.length];
+        this.numbers = new double[instructions.length];
+        this.variableIndexes = new int[instructions.length];
+        this.functions = new RegisteredFunction[instructions.length];
+        this.roundingPolicy = roundingPolicy;
+        this.roundEveryStep = roundingPolicy == RoundingPolicy.EVERY_STEP;
+        for (int instructionIndex = 0; instructionIndex < instructions.length; instructionIndex++) {
+            opCodes[instructionIndex] = instructions[instructionIndex].getOpCode();
+            // literals are rounded once here instead of every time they are pushed
+            numbers[instructionIndex] = roundEveryStep ? FormulaRuntime.scaleNumber(instructions[instructionIndex].getNumber())
+                    : instructions[instructionIndex].getNumber();
+            variableIndexes[instructionIndex] = instructions[instructionIndex].getVariableIndex();
+            functions[instructionIndex] = instructions[instructionIndex].getFunction();
+        }
+        this.variableNames = variableNames;
+        this.freeVariables = new boolean[variableNames.length];
+        this.boundVariables = new boolean[variableNames.length];
+        this.undefinedVariableErrors = new VariableIsNotDefinedException[variableNames.length];
+        this.divisionErrors = new DivisionByZeroException[instructions.length];
+        for (int instructionIndex = 0; instructionIndex < instructions.length; instructionIndex++) {
+            Instruction instruction = instructions[instructionIndex];
+            if (instruction.getOpCode() == OpCode.STORE_VARIABLE) {
+                boundVariables[instruction.getVariableIndex()] = true;
+            } else if (instruction.getOpCode() == OpCode.LOAD_VARIABLE && !boundVariables[instruction.getVariableIndex()]) {
+                freeVariables[instruction.getVariableIndex()] = true;
+            } else if (instruction.getOpCode() == OpCode.DIVIDE) {
+                divisionErrors[instructionIndex] = new DivisionByZeroException(instruction.getPosition());
+            }
+            if (instruction.getOpCode() == OpCode.LOAD_VARIABLE && undefinedVariableErrors[instruction.getVariableIndex()] == null) {
+                undefinedVariableErrors[instruction.getVariableIndex()] =
+                        new VariableIsNotDefinedException(instruction.getVariableName(), instruction.getPosition());
+            }
+        }
+        int freeVariablesCount = 0;
+        for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            freeVariablesCount += freeVariables[variableIndex] ? 1 : 0;
+        }
+        this.freeVariableNames = new String[freeVariablesCount];
+        for (int variableIndex = 0, freeVariableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            if (freeVariables[variableIndex]) {
+                freeVariableNames[freeVariableIndex++] = variableNames[variableIndex];
+            }
+        }
+        boolean repeatable = true;
+        for (int instructionIndex = 0; instructionIndex < instructions.length; instructionIndex++) {
+            // bindings are an effect , and an impure function can return another value
+            if (opCodes[instructionIndex] == OpCode.STORE_VARIABLE
+                    || functions[instructionIndex] != null && !functions[instructionIndex].isPure()) {
+                repeatable = false;
+            }
+        }
+        this.repeatable = repeatable;
+        this.dualNumberEvaluator = new DualNumberEvaluator(opCodes, numbers, variableIndexes, functions, maxStackDepth,
+                freeVariables, roundingPolicy, undefinedVariableErrors, divisionErrors);
+        this.backend = EvaluationBackend.INTERPRETER;
+        this.function = this::interpret;
+        this.numericBackend = NumericBackend.DOUBLE;
+        this.numericEvaluator = null;
+    }
+
+    private CompiledExpression(CompiledExpression compiledExpression, EvaluationBackend backend, FormulaFunction function,
+                               NumericBackend numericBackend, NumericEvaluator numericEvaluator) {
+        this.expression = compiledExpression.expression;
+        this.compiledInstructions = compiledExpression.compiledInstructions;
+        this.instructions = compiledExpression.instructions;
+        this.maxStackDepth = compiledExpression.maxStackDepth;
+        this.opCodes = compiledExpression.opCodes;
+        this.numbers = compiledExpression.numbers;
+        this.variableIndexes = compiledExpression.variableIndexes;
+        this.functions = compiledExpression.functions;
+        this.functionsTable = compiledExpression.functionsTable;
+        this.variableNames = compiledExpression.variableNames;
+        this.freeVariables = compiledExpression.freeVariables;
+        this.boundVariables = compiledExpression.boundVariables;
+        this.freeVariableNames = compiledExpression.freeVariableNames;
+        this.repeatable = compiledExpression.repeatable;
+        this.undefinedVariableErrors = compiledExpression.undefinedVariableErrors;
+        this.divisionErrors = compiledExpression.divisionErrors;
+        this.dualNumberEvaluator = compiledExpression.dualNumberEvaluator;
+        this.roundingPolicy = compiledExpression.roundingPolicy;
+        this.roundEveryStep = compiledExpression.roundEveryStep;
+        this.backend = backend;
+        this.function = function;
+        this.numericBackend = numericBackend;
+        this.numericEvaluator = numericEvaluator;
+    }
+
+    /**
+     * Returns this expression evaluated with the given backend.
+     * <p>
+     * With {@link EvaluationBackend#BYTECODE} a class is generated and loaded for the expression,
+     * which only pays off for expressions that are evaluated many times. Expressions too large
+     * for a single java method stay interpreted. The backend only evaluates doubles, an
+     * expression with another {@link NumericBackend} keeps it for when it goes back to doubles.
+     *
+     * @param backend the backend used by the evaluate methods
+     * @return a compiled expression using the given backend
+     */
+    public CompiledExpression withBackend(EvaluationBackend backend) {
+        if (backend == this.backend) {
+            return this;
+        }
+        if (backend == EvaluationBackend.BYTECODE) {
+            FormulaFunction generatedFunction = new BytecodeCompiler().compile(instructions, maxStackDepth, roundingPolicy);
+            return generatedFunction == null ? this
+                    : new CompiledExpression(this, backend, generatedFunction, numericBackend, numericEvaluator);
+        }
+        return new CompiledExpression(expression, compiledInstructions, variableNames, roundingPolicy, functionsTable)
+                .withNumericBackend(numericBackend);
+    }
+
+    /**
+     * Returns this expression evaluated with the given rounding policy and the same backend.
+     *
+     * @param roundingPolicy when the values of the expression are rounded to 12 digits after the decimal point
+     * @return a compiled expression using the given rounding policy
+     */
+    public CompiledExpression withRoundingPolicy(RoundingPolicy roundingPolicy) {
+        if (roundingPolicy == this.roundingPolicy) {
+            return this;
+        }
+        return new CompiledExpression(expression, compiledInstructions, variableNames, roundingPolicy, functionsTable)
+                .withBackend(backend).withNumericBackend(numericBackend);
+    }
+
+    /**
+     * Returns this expression evaluated with the arithmetic of the given backend.
+     * <p>
+     * The backends other than {@link NumericBackend#DOUBLE} evaluate the expression as it was
+     * written, without the constants the optimizer computed with doubles, and don't round
+     * anything. The values are given to the evaluate methods returning doubles as the nearest
+     * double, {@link #evaluateNumber(Map)} returns them as the backend computed them. Gradients
+     * and columns are always evaluated with doubles.
+     *
+     * @param numericBackend the arithmetic of the evaluate methods, {@link NumericBackend#INFERRED}
+     *                       is replaced by the one {@link #inferNumericBackend()} picks
+     * @return a compiled expression using the given numeric backend
+     */
+    public CompiledExpression withNumericBackend(NumericBackend numericBackend) {
+        if (numericBackend == this.numericBackend) {
+            return this;
+        }
+        NumericBackend resolvedBackend = numericBackend == NumericBackend.INFERRED ? inferNumericBackend() : numericBackend;
+        NumericEvaluator evaluator = resolvedBackend == NumericBackend.DOUBLE ? null
+                : new NumericEvaluator(compiledInstructions, variableNames.length, resolvedBackend);
+        return new CompiledExpression(this, backend, function, numericBackend, evaluator);
+    }
+
+    /**
+     * Picks the cheapest backend the expression is exact with: {@link NumericBackend#LONG}
+     * when its literals are integers, {@link NumericBackend#BIG_DECIMAL} when some are decimals
+     * and {@link NumericBackend#DOUBLE} when it calls a function, their values are not exact anyway.
+     * Divisions don't matter, LONG promotes the quotients that are not integers.
+     *
+     * @return the backend {@link NumericBackend#INFERRED} resolves to for this expression
+     */
+    public NumericBackend inferNumericBackend() {
+        NumericBackend inferredBackend = NumericBackend.LONG;
+        for (Instruction instruction : compiledInstructions) {
+            switch (instruction.getOpCode()) {
+                case SQRT:
+                case LOG:
+                case SIN:
+                case COS:
+                case CALL:
+                    return NumericBackend.DOUBLE;
+                case PUSH_NUMBER:
+                    if (Math.rint(instruction.getNumber()) != instruction.getNumber()) {
+                        inferredBackend = NumericBackend.BIG_DECIMAL;
+                    }
+                    break;
+            }
+        }
+        return inferredBackend;
+    }
+
+    /**
+     * Evaluates the expression with its numeric backend, reading its variables from the given
+     * bindings and storing the variables it binds back into them as doubles.
+     *
+     * @param bindings the values of the variables
+     * @return the value of the expression as the numeric backend computed it
+     */
+    public Number evaluateNumber(Map<String, Double> bindings) {
+        try {
+            return executeNumber(bindings);
+        } catch (ArithmeticException | VariableIsNotDefinedException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Evaluates the expression, reading its variables from the given bindings and storing
+     * the variables it binds back into them.
+     * <p>
+     * With the bytecode backend all the variables the expression reads are checked before
+     * anything is evaluated.
+     *
+     * @param bindings the values of the variables
+     * @return the value of the expression
+     */
+    public double evaluate(Map<String, Double> bindings) {
+        try {
+            return execute(bindings);
+        } catch (ArithmeticException | VariableIsNotDefinedException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Evaluates the expression with the given values of its variables, in the order of
+     * {@link #getVariableNames()}. The values of the variables the expression binds
+     * are written back into the array.
+     *
+     * @param variables the values of the variables
+     * @return the value of the expression
+     */
+    public double evaluate(double[] variables) {
+        try {
+            return numericEvaluator == null ? function.applyAsDouble(variables) : interpretNumber(variables);
+        } catch (ArithmeticException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Evaluates the expression and its partial derivatives with respect to all its variables
+     * in one pass, with forward mode automatic differentiation over dual numbers. The
+     * variables are given, and the derivatives written, in the order of
+     * {@link #getVariableNames()}. The derivative with respect to a variable the expression
+     * binds before reading it is 0. The values of the variables the expression binds are
+     * written back into the array.
+     * <p>
+     * The values are rounded like {@link #evaluate(double[])} rounds them, the derivatives
+     * are not rounded. The expression is interpreted whatever its backend.
+     *
+     * @param variables the values of the variables
+     * @param gradient  the partial derivative of the expression with respect to every variable
+     * @return the value of the expression
+     */
+    public double evaluateGradient(double[] variables, double[] gradient) {
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            return dualNumberEvaluator.evaluate(variables, null, gradient,
+                    context.numbersStack(dualNumberEvaluator.scratchSize()));
+        } catch (VariableIsNotDefinedException e) {
+            // can't happen , variables are only checked when their definitions are given
+            throw new IllegalStateException(e);
+        } catch (ArithmeticException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        } finally {
+            context.release();
+        }
+    }
+
+    /**
+     * Evaluates the expression and its partial derivatives with respect to the variables it
+     * reads from the given bindings, storing the variables it binds back into them.
+     *
+     * @param bindings the values of the variables
+     * @return the value of the expression and its partial derivatives
+     * @see #evaluateGradient(double[], double[])
+     */
+    public Gradient evaluateGradient(Map<String, Double> bindings) {
+        try {
+            return executeGradient(bindings);
+        } catch (ArithmeticException | VariableIsNotDefinedException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Evaluates the expression once per row of the given columns, one operator at a
+     * time over blocks of rows. The columns are given in the order of
+     * {@link #getVariableNames()}, a column is only needed for the variables the
+     * expression reads before binding them.
+     * <p>
+     * A division by zero doesn't stop the evaluation, the value of its row is NaN and
+     * the row is reported in the returned set.
+     *
+     * @param columns the values of every variable, at least one per row of the output
+     * @param output  the value of the expression for every row
+     * @return the rows where a division by zero happened
+     */
+    public BitSet evaluateColumns(double[][] columns, double[] output) {
+        if (columns.length != variableNames.length) {
+            throw new IllegalArgumentException("expected " + variableNames.length + " columns but got " + columns.length);
+        }
+        for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            if (freeVariables[variableIndex] && columns[variableIndex] == null) {
+                throw new IllegalArgumentException(variableNames[variableIndex] + " is not defined");
+            }
+            if (columns[variableIndex] != null && columns[variableIndex].length < output.length) {
+                throw new IllegalArgumentException("the column of " + variableNames[variableIndex] + " is too short");
+            }
+        }
+        return new ColumnarEvaluator(opCodes, numbers, variableIndexes, functions, maxStackDepth, variableNames.length,
+                roundingPolicy).evaluate(columns, output);
+    }
+
+    /**
+     * Evaluates the expression once per row of the given columns.
+     *
+     * @param columns the values of every variable by its name, at least one per row of the output
+     * @param output  the value of the expression for every row
+     * @return the rows where a division by zero happened
+     * @see #evaluateColumns(double[][], double[])
+     */
+    public BitSet evaluateColumns(Map<String, double[]> columns, double[] output) {
+        double[][] orderedColumns = new double[variableNames.length][];
+        for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            orderedColumns[variableIndex] = columns.get(variableNames[variableIndex]);
+        }
+        return evaluateColumns(orderedColumns, output);
+    }
+
+    /**
+     * @return the expression as a function of its variables
+     */
+    public FormulaFunction asFunction() {
+        return numericEvaluator == null ? function : this::interpretNumber;
+    }
+
+    /**
+     * @return the names of the variables the expression reads or binds, in the order they appear in
+     */
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(variableNames));
+    }
+
+    /*
+     * returns the optimized instructions of the expression , they must not be changed
+     * */
+    Instruction[] getInstructions() {
+        return instructions;
+    }
+
+    /*
+     * returns true if the calls of the expression were resolved to the functions the given registry has now
+     * */
+    boolean isResolvedWith(FunctionRegistry functionRegistry) {
+        return functionsTable == functionRegistry.table();
+    }
+
+    /*
+     * reads the versions of the variables the expression reads from the given frame , in the order of their
+     * slots in the returned resolution. returns null if one of the variables is not bound in the frame
+     * */
+    VariableFrame.Resolution loadFreeVariableVersions(VariableFrame frame, long[] versions) {
+        VariableFrame.Resolution resolution = resolutionOf(freeVariablesResolutions, frame);
+        if (resolution == null || !frame.loadVersions(resolution, versions)) {
+            resolution = frame.resolve(freeVariableNames);
+            keepResolution(freeVariablesResolutions, frame, resolution);
+            if (!frame.loadVersions(resolution, versions)) {
+                return null;
+            }
+        }
+        return resolution;
+    }
+
+    /*
+     * returns the resolution kept for the given frame , or null
+     * */
+    private static VariableFrame.Resolution resolutionOf(VariableFrame.Resolution[] resolutions, VariableFrame frame) {
+        for (VariableFrame.Resolution resolution : resolutions) {
+            if (resolution != null && resolution.isOf(frame)) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * keeps the given resolution of the given frame in place of its previous one , or of an empty entry. when
+     * every entry is taken by another frame , the frame replaces the entry its hash picks
+     * */
+    private static void keepResolution(VariableFrame.Resolution[] resolutions, VariableFrame frame,
+                                       VariableFrame.Resolution resolution) {
+        for (int resolutionIndex = 0; resolutionIndex < resolutions.length; resolutionIndex++) {
+            VariableFrame.Resolution keptResolution = resolutions[resolutionIndex];
+            if (keptResolution == null || keptResolution.isOf(frame)) {
+                resolutions[resolutionIndex] = resolution;
+                return;
+            }
+        }
+        resolutions[(System.identityHashCode(frame) & Integer.MAX_VALUE) % resolutions.length] = resolution;
+    }
+
+    /*
+     * returns the number of variables the expression reads from the bindings
+     * */
+    int getFreeVariablesCount() {
+        return freeVariableNames.length;
+    }
+
+    /*
+     * returns true if the expression binds no variable and calls no impure function , its value only depends
+     * on the variables it reads from the bindings
+     * */
+    boolean isRepeatable() {
+        return repeatable;
+    }
+
+    /*
+     * returns true if the expression binds the variable at the given position of the variable names
+     * */
+    boolean isBoundVariable(int variableIndex) {
+        return boundVariables[variableIndex];
+    }
+
+    /**
+     * @return the expression this was compiled from
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return when the values of the expression are rounded
+     */
+    public RoundingPolicy getRoundingPolicy() {
+        return roundingPolicy;
+    }
+
+    /**
+     * @return the backend used to evaluate the expression
+     */
+    public EvaluationBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @return the numeric backend the expression is evaluated with, as it was given to
+     * {@link #withNumericBackend(NumericBackend)}
+     */
+    public NumericBackend getNumericBackend() {
+        return numericBackend;
+    }
+
+
+    /*
+     * evaluates the expression with the variables in the given bindings , the variables bound by the
+     * expression are stored back into the bindings
+     * */
+    double execute(Map<String, Double> bindings) throws VariableIsNotDefinedException {
+        if (numericEvaluator != null) {
+            return executeNumber(bindings).doubleValue();
+        }
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            double[] variables = context.variables(variableNames.length);
+            boolean[] definedVariables = context.definedVariables(variableNames.length);
+            loadVariables(bindings, variables, definedVariables);
+
+            if (backend == EvaluationBackend.INTERPRETER) {
+                try {
+                    return execute(variables, definedVariables, context.numbersStack(maxStackDepth));
+                } finally {
+                    // bindings done before a failure stay , like they would if the expression was evaluated directly
+                    storeBoundVariables(bindings, variables, definedVariables);
+                }
+            }
+
+            for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+                if (freeVariables[variableIndex] && !definedVariables[variableIndex]) {
+                    throw undefinedVariableErrors[variableIndex];
+                }
+                if (!definedVariables[variableIndex]) {
+                    // arithmetic never produces this NaN , so it marks variables the expression didn't bind yet
+                    variables[variableIndex] = UNBOUND_VARIABLE;
+                }
+            }
+            try {
+                return function.applyAsDouble(variables);
+            } finally {
+                for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+                    definedVariables[variableIndex] =
+                            Double.doubleToRawLongBits(variables[variableIndex]) != UNBOUND_VARIABLE_BITS;
+                }
+                storeBoundVariables(bindings, variables, definedVariables);
+            }
+        } finally {
+            context.release();
+        }
+    }
+
+
+    /*
+     * evaluates the expression with its numeric backend and the variables in the given bindings , the variables
+     * bound by the expression are stored back into the bindings
+     * */
+    Number executeNumber(Map<String, Double> bindings) throws VariableIsNotDefinedException {
+        if (numericEvaluator == null) {
+            return execute(bindings);
+        }
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            double[] variables = context.variables(variableNames.length);
+            boolean[] definedVariables = context.definedVariables(variableNames.length);
+            loadVariables(bindings, variables, definedVariables);
+            try {
+                return numericEvaluator.evaluate(variables, definedVariables,
+                        context.integersStack(numericEvaluator.scratchSize()));
+            } finally {
+                storeBoundVariables(bindings, variables, definedVariables);
+            }
+        } finally {
+            context.release();
+        }
+    }
+
+
+    /*
+     * evaluates the expression and its derivatives with the variables in the given bindings , the variables
+     * bound by the expression are stored back into the bindings
+     * */
+    Gradient executeGradient(Map<String, Double> bindings) throws VariableIsNotDefinedException {
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            double[] variables = context.variables(variableNames.length);
+            boolean[] definedVariables = context.definedVariables(variableNames.length);
+            loadVariables(bindings, variables, definedVariables);
+            double[] gradient = new double[variableNames.length];
+            double expressionResult;
+            try {
+                expressionResult = dualNumberEvaluator.evaluate(variables, definedVariables, gradient,
+                        context.numbersStack(dualNumberEvaluator.scratchSize()));
+            } finally {
+                storeBoundVariables(bindings, variables, definedVariables);
+            }
+            Map<String, Double> partialDerivatives = new LinkedHashMap<>();
+            for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+                if (freeVariables[variableIndex]) {
+                    partialDerivatives.put(variableNames[variableIndex], gradient[variableIndex]);
+                }
+            }
+            return new Gradient(expressionResult, partialDerivatives);
+        } finally {
+            context.release();
+        }
+    }
+
+
+    /*
+     * reads the variables of the expression from the bindings , and marks the ones that are defined. the
+     * frame of a calculator is read by the slots of the variables , without looking up their names
+     * */
+    private void loadVariables(Map<String, Double> bindings, double[] variables, boolean[] definedVariables) {
+        if (bindings instanceof VariableFrame) {
+            VariableFrame frame = (VariableFrame) bindings;
+            VariableFrame.Resolution resolution = resolutionOf(frameResolutions, frame);
+            while (resolution == null || !frame.load(resolution, variables, definedVariables)) {
+                resolution = frame.resolve(variableNames);
+                keepResolution(frameResolutions, frame, resolution);
+            }
+            return;
+        }
+        for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            Double variableValue = bindings.get(variableNames[variableIndex]);
+            definedVariables[variableIndex] = variableValue != null;
+            if (variableValue != null) {
+                variables[variableIndex] = variableValue;
+            }
+        }
+    }
+
+
+    /*
+     * writes the variables the expression bound back to the bindings
+     * */
+    private void storeBoundVariables(Map<String, Double> bindings, double[] variables, boolean[] definedVariables) {
+        if (bindings instanceof VariableFrame) {
+            VariableFrame frame = (VariableFrame) bindings;
+            frame.store(resolutionOf(frameResolutions, frame), variableNames, boundVariables, variables,
+                    definedVariables);
+            return;
+        }
+        for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            if (boundVariables[variableIndex] && definedVariables[variableIndex]) {
+                bindings.put(variableNames[variableIndex], variables[variableIndex]);
+            }
+        }
+    }
+
+
+    /*
+     * interprets the instructions with all the variables defined
+     * */
+    private double interpret(double[] variables) {
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            return execute(variables, null, context.numbersStack(maxStackDepth));
+        } catch (VariableIsNotDefinedException e) {
+            // can't happen , variables are only checked when their definitions are given
+            throw new IllegalStateException(e);
+        } finally {
+            context.release();
+        }
+    }
+
+
+    /*
+     * evaluates the expression with its numeric backend and all the variables defined
+     * */
+    private double interpretNumber(double[] variables) {
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            return numericEvaluator.evaluate(variables, null, context.integersStack(numericEvaluator.scratchSize()))
+                    .doubleValue();
+        } catch (VariableIsNotDefinedException e) {
+            // can't happen , variables are only checked when their definitions are given
+            throw new IllegalStateException(e);
+        } finally {
+            context.release();
+        }
+    }
+
+
+    /*
+     * runs the instructions on the given numbers stack , the values are rounded as the rounding policy says.
+     *
+     * when definedVariables is given , reading a variable that is not defined throws an exception
+     * */
+    private double execute(double[] variables, boolean[] definedVariables, double[] numbersStack)
+            throws VariableIsNotDefinedException {
+        int top = -1;
+        for (int instructionIndex = 0; instructionIndex < opCodes.length; instructionIndex++) {
+            switch (opCodes[instructionIndex]) {
+                case PUSH_NUMBER:
+                    numbersStack[++top] = numbers[instructionIndex];
+                    break;
+                case LOAD_VARIABLE:
+                    int variableIndex = variableIndexes[instructionIndex];
+                    if (definedVariables != null && !definedVariables[variableIndex]) {
+                        throw undefinedVariableErrors[variableIndex];
+                    }
+                    numbersStack[++top] = roundStep(variables[variableIndex]);
+                    break;
+                case STORE_VARIABLE:
+                    variables[variableIndexes[instructionIndex]] = roundResult(numbersStack[top]);
+                    if (definedVariables != null) {
+                        definedVariables[variableIndexes[instructionIndex]] = true;
+                    }
+                    break;
+                case SWAP:
+                    double lastSeenNumber = numbersStack[top];
+                    numbersStack[top] = numbersStack[top - 1];
+                    numbersStack[top - 1] = lastSeenNumber;
+                    break;
+                case ADD:
+                    top--;
+                    numbersStack[top] = roundStep(numbersStack[top] + numbersStack[top + 1]);
+                    break;
+                case SUBTRACT:
+                    top--;
+                    numbersStack[top] = roundStep(numbersStack[top] - numbersStack[top + 1]);
+                    break;
+                case MULTIPLY:
+                    top--;
+                    numbersStack[top] = roundStep(numbersStack[top] * numbersStack[top + 1]);
+                    break;
+                case DIVIDE:
+                    top--;
+                    if (numbersStack[top + 1] == 0) {
+                        throw divisionErrors[instructionIndex];
+                    }
+                    numbersStack[top] = roundStep(numbersStack[top] / numbersStack[top + 1]);
+                    break;
+                case SQRT:
+                    numbersStack[top] = roundStep(Math.sqrt(numbersStack[top]));
+                    break;
+                case LOG:
+                    numbersStack[top] = roundStep(Math.log(numbersStack[top]));
+                    break;
+                case SIN:
+                    numbersStack[top] = roundStep(Math.sin(numbersStack[top]));
+                    break;
+                case COS:
+                    numbersStack[top] = roundStep(Math.cos(numbersStack[top]));
+                    break;
+                case CALL:
+                    // the arguments are replaced by the value of the call
+                    RegisteredFunction calledFunction = functions[instructionIndex];
+                    top -= calledFunction.getArity() - 1;
+                    numbersStack[top] = roundStep(calledFunction.invoke(numbersStack, top));
+                    break;
+            }
+        }
+        return roundResult(numbersStack[top]);
+    }
+
+
+    /*
+     * rounds an intermediate value , only when every step is rounded
+     * */
+    private double roundStep(double number) {
+        return roundEveryStep ? FormulaRuntime.scaleNumber(number) : number;
+    }
+
+
+    /*
+     * rounds the value of the expression or a value bound to a variable
+     * */
+    private double roundResult(double number) {
+        return roundingPolicy == RoundingPolicy.FINAL_RESULT ? FormulaRuntime.roundNumber(number) : number;
+    }
+
+
+    /**
+     * @return the number of instructions evaluated for the expression, after the optimizer
+     * folded its constant parts and dropped its identities
+     */
+    public int getOperationCount() {
+        return instructions.length;
+    }
+
+    /**
+     * @return the number of instructions the expression was compiled to, before it was optimized
+     */
+    public int getCompiledOperationCount() {
+        return compiledInstructions.length;
+    }
+
+    /**
+     * Describes the instructions of the expression before and after it was optimized, one per line.
+     *
+     * @return a readable listing of the compiled and the optimized instructions
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder(expression).append(System.lineSeparator());
+        dump.append("compiled (").append(compiledInstructions.length).append(" operations)").append(System.lineSeparator());
+        for (Instruction instruction : compiledInstructions) {
+            dump.append("    ").append(instruction).append(System.lineSeparator());
+        }
+        dump.append("optimized (").append(instructions.length).append(" operations)");
+        for (Instruction instruction : instructions) {
+            dump.append(System.lineSeparator()).append("    ").append(instruction);
+        }
+        return dump.toString();
+    }
+
+
+    @Override
+    public String toString() {
+        return expression + " -> " + Arrays.toString(instructions);
+    }
+}
@@ -33,6 +33,7 @@ public class Constants {
     public static final char FIRST_CAPITAL_CHARACTER ='A';
     public static final char LAST_CAPITAL_CHARACTER ='Z';
     public static final char SPECIAL_VARIABLE_CHARACTER ='_';
+    public static final char ARGUMENT_SEPARATOR_CHARACTER =',';
 
 
 
@@ -55,6 +56,11 @@ public class Constants {
 
 
     public static final int NUMBER_OF_DIGITS_AFTER_DECEMAL_POINT=12;
+    public static final RoundingPolicy DEFAULT_ROUNDING_POLICY=RoundingPolicy.FINAL_RESULT;
+
+    public static final int DEFAULT_EXPRESSION_CACHE_CAPACITY=1024;
+
+    public static final int DEFAULT_RESULT_CACHE_CAPACITY=1024;
 
 
 }
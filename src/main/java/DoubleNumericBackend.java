@@ -0,0 +1,65 @@
+package main.java;
+
+/*
+ * the arithmetic of doubles , through boxed numbers.
+ *
+ * compiled expressions don't go through it , they evaluate doubles without boxing , it is only
+ * there for the callers of the numeric backends
+ * */
+final class DoubleNumericBackend implements NumericBackend {
+
+    @Override
+    public Number valueOf(double number) {
+        return number;
+    }
+
+    @Override
+    public Number add(Number first, Number second) {
+        return first.doubleValue() + second.doubleValue();
+    }
+
+    @Override
+    public Number subtract(Number first, Number second) {
+        return first.doubleValue() - second.doubleValue();
+    }
+
+    @Override
+    public Number multiply(Number first, Number second) {
+        return first.doubleValue() * second.doubleValue();
+    }
+
+    @Override
+    public Number divide(Number dividend, Number divisor) {
+        return dividend.doubleValue() / divisor.doubleValue();
+    }
+
+    @Override
+    public boolean isZero(Number number) {
+        return number.doubleValue() == 0;
+    }
+
+    @Override
+    public Number sqrt(Number number) {
+        return Math.sqrt(number.doubleValue());
+    }
+
+    @Override
+    public Number log(Number number) {
+        return Math.log(number.doubleValue());
+    }
+
+    @Override
+    public Number sin(Number number) {
+        return Math.sin(number.doubleValue());
+    }
+
+    @Override
+    public Number cos(Number number) {
+        return Math.cos(number.doubleValue());
+    }
+
+    @Override
+    public String toString() {
+        return "DOUBLE";
+    }
+}
@@ -0,0 +1,265 @@
+package main.java;
+
+import main.java.exceptions.DivisionByZeroException;
+import main.java.exceptions.VariableIsNotDefinedException;
+
+import java.util.Arrays;
+
+
+/*
+ * evaluates the instructions of a compiled expression over dual numbers , to get the value of the
+ * expression and its partial derivatives with respect to all its variables in one pass (forward mode
+ * automatic differentiation).
+ *
+ * a dual number is a value followed by the derivatives of the value with respect to every variable of
+ * the expression , in the order of the variables. every slot of the numbers stack and every variable
+ * holds one. the variables the expression reads before binding them start with a derivative of 1 with
+ * respect to themselves , the variables it binds take the dual number of the value bound to them , so
+ * the chain rule goes through the bindings.
+ *
+ * the values are rounded like the interpreter rounds them , the derivatives never are : rounding is
+ * taken as the identity , not as the step function it really is.
+ *
+ * the derivatives of a registered function are not known , the partial derivatives of a pure function
+ * are approximated with central differences , and the value of an impure function is taken as a constant
+ * */
+final class DualNumberEvaluator {
+
+    private final OpCode[] opCodes;
+    private final double[] numbers;
+    private final int[] variableIndexes;
+    private final RegisteredFunction[] functions;
+    private final int maxStackDepth;
+    private final int variablesCount;
+    // the number of doubles of a dual number , the value and a derivative per variable
+    private final int width;
+    private final boolean[] freeVariables;
+    private final boolean roundEveryStep;
+    private final boolean roundResult;
+
+    private final VariableIsNotDefinedException[] undefinedVariableErrors;
+    private final DivisionByZeroException[] divisionErrors;
+
+    DualNumberEvaluator(OpCode[] opCodes, double[] numbers, int[] variableIndexes, RegisteredFunction[] functions,
+                        int maxStackDepth,
+                        boolean[] freeVariables, RoundingPolicy roundingPolicy,
+                        VariableIsNotDefinedException[] undefinedVariableErrors, DivisionByZeroException[] divisionErrors) {
+        this.opCodes = opCodes;
+        this.numbers = numbers;
+        this.variableIndexes = variableIndexes;
+        this.functions = functions;
+        this.maxStackDepth = maxStackDepth;
+        this.variablesCount = freeVariables.length;
+        this.width = variablesCount + 1;
+        this.freeVariables = freeVariables;
+        this.roundEveryStep = roundingPolicy == RoundingPolicy.EVERY_STEP;
+        this.roundResult = roundingPolicy == RoundingPolicy.FINAL_RESULT;
+        this.undefinedVariableErrors = undefinedVariableErrors;
+        this.divisionErrors = divisionErrors;
+    }
+
+
+    /*
+     * returns the number of doubles of scratch memory evaluate needs , for the numbers stack and the variables
+     * */
+    int scratchSize() {
+        return (maxStackDepth + variablesCount) * width;
+    }
+
+
+    /*
+     * evaluates the expression with the given variables , and writes its derivative with respect to every
+     * variable it reads before binding it to the gradient (the others are 0). the values of the variables the
+     * expression binds are written back to the variables , and marked as defined when definedVariables is
+     * given. reading a variable that is not defined throws an exception
+     * */
+    double evaluate(double[] variables, boolean[] definedVariables, double[] gradient, double[] scratch)
+            throws VariableIsNotDefinedException {
+        int firstVariableSlot = maxStackDepth * width;
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            int variableSlot = firstVariableSlot + variableIndex * width;
+            scratch[variableSlot] = variables[variableIndex];
+            Arrays.fill(scratch, variableSlot + 1, variableSlot + width, 0);
+            if (freeVariables[variableIndex]) {
+                scratch[variableSlot + 1 + variableIndex] = 1;
+            }
+        }
+
+        int top = -width;
+        for (int instructionIndex = 0; instructionIndex < opCodes.length; instructionIndex++) {
+            switch (opCodes[instructionIndex]) {
+                case PUSH_NUMBER:
+                    top += width;
+                    scratch[top] = numbers[instructionIndex];
+                    Arrays.fill(scratch, top + 1, top + width, 0);
+                    break;
+                case LOAD_VARIABLE:
+                    int variableIndex = variableIndexes[instructionIndex];
+                    if (definedVariables != null && !definedVariables[variableIndex]) {
+                        throw undefinedVariableErrors[variableIndex];
+                    }
+                    top += width;
+                    System.arraycopy(scratch, firstVariableSlot + variableIndex * width, scratch, top, width);
+                    scratch[top] = roundStep(scratch[top]);
+                    break;
+                case STORE_VARIABLE:
+                    int boundVariableIndex = variableIndexes[instructionIndex];
+                    int boundVariableSlot = firstVariableSlot + boundVariableIndex * width;
+                    System.arraycopy(scratch, top, scratch, boundVariableSlot, width);
+                    scratch[boundVariableSlot] = roundResult(scratch[top]);
+                    variables[boundVariableIndex] = scratch[boundVariableSlot];
+                    if (definedVariables != null) {
+                        definedVariables[boundVariableIndex] = true;
+                    }
+                    break;
+                case SWAP:
+                    for (int offset = 0; offset < width; offset++) {
+                        double lastSeenNumber = scratch[top + offset];
+                        scratch[top + offset] = scratch[top - width + offset];
+                        scratch[top - width + offset] = lastSeenNumber;
+                    }
+                    break;
+                case ADD:
+                    top -= width;
+                    for (int offset = 0; offset < width; offset++) {
+                        scratch[top + offset] += scratch[top + width + offset];
+                    }
+                    scratch[top] = roundStep(scratch[top]);
+                    break;
+                case SUBTRACT:
+                    top -= width;
+                    for (int offset = 0; offset < width; offset++) {
+                        scratch[top + offset] -= scratch[top + width + offset];
+                    }
+                    scratch[top] = roundStep(scratch[top]);
+                    break;
+                case MULTIPLY:
+                    top -= width;
+                    multiply(scratch, top, top + width);
+                    break;
+                case DIVIDE:
+                    top -= width;
+                    if (scratch[top + width] == 0) {
+                        throw divisionErrors[instructionIndex];
+                    }
+                    divide(scratch, top, top + width);
+                    break;
+                case SQRT:
+                    double root = Math.sqrt(scratch[top]);
+                    // (sqrt u)' = u' / (2 sqrt u)
+                    applyFunction(scratch, top, root, 0.5 / root);
+                    break;
+                case LOG:
+                    // (log u)' = u' / u
+                    applyFunction(scratch, top, Math.log(scratch[top]), 1 / scratch[top]);
+                    break;
+                case SIN:
+                    // (sin u)' = u' cos u
+                    applyFunction(scratch, top, Math.sin(scratch[top]), Math.cos(scratch[top]));
+                    break;
+                case COS:
+                    // (cos u)' = -u' sin u
+                    applyFunction(scratch, top, Math.cos(scratch[top]), -Math.sin(scratch[top]));
+                    break;
+                case CALL:
+                    // the arguments are replaced by the value of the call
+                    top -= (functions[instructionIndex].getArity() - 1) * width;
+                    call(functions[instructionIndex], scratch, top);
+                    break;
+            }
+        }
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            gradient[variableIndex] = freeVariables[variableIndex] ? scratch[top + 1 + variableIndex] : 0;
+        }
+        return roundResult(scratch[top]);
+    }
+
+
+    /*
+     * (u v)' = u' v + u v' , the product replaces the first operand
+     * */
+    private void multiply(double[] scratch, int firstOperand, int secondOperand) {
+        double firstValue = scratch[firstOperand];
+        double secondValue = scratch[secondOperand];
+        for (int offset = 1; offset < width; offset++) {
+            scratch[firstOperand + offset] = scratch[firstOperand + offset] * secondValue
+                    + firstValue * scratch[secondOperand + offset];
+        }
+        scratch[firstOperand] = roundStep(firstValue * secondValue);
+    }
+
+    /*
+     * (u / v)' = (u' - (u / v) v') / v , the quotient replaces the first operand
+     * */
+    private void divide(double[] scratch, int firstOperand, int secondOperand) {
+        double secondValue = scratch[secondOperand];
+        double quotient = scratch[firstOperand] / secondValue;
+        for (int offset = 1; offset < width; offset++) {
+            scratch[firstOperand + offset] = (scratch[firstOperand + offset] - quotient * scratch[secondOperand + offset])
+                    / secondValue;
+        }
+        scratch[firstOperand] = roundStep(quotient);
+    }
+
+    /*
+     * replaces the operand with the value of a function of it , the derivatives are multiplied by the
+     * derivative of the function at the operand (the chain rule)
+     * */
+    private void applyFunction(double[] scratch, int operand, double value, double derivative) {
+        for (int offset = 1; offset < width; offset++) {
+            scratch[operand + offset] *= derivative;
+        }
+        scratch[operand] = roundStep(value);
+    }
+
+
+    /*
+     * replaces the arguments starting at the given slot with the value of the call ,
+     * its derivative is the sum of the derivatives of the arguments times the partial derivatives
+     * of the function (the chain rule)
+     * */
+    private void call(RegisteredFunction function, double[] scratch, int firstArgument) {
+        int arity = function.getArity();
+        double[] arguments = new double[arity];
+        for (int argumentIndex = 0; argumentIndex < arity; argumentIndex++) {
+            arguments[argumentIndex] = scratch[firstArgument + argumentIndex * width];
+        }
+        double value = function.invoke(arguments, 0);
+        double[] derivatives = new double[width];
+        if (function.isPure()) {
+            for (int argumentIndex = 0; argumentIndex < arity; argumentIndex++) {
+                double partialDerivative = partialDerivative(function, arguments, argumentIndex);
+                int argumentSlot = firstArgument + argumentIndex * width;
+                for (int offset = 1; offset < width; offset++) {
+                    derivatives[offset] += partialDerivative * scratch[argumentSlot + offset];
+                }
+            }
+        }
+        System.arraycopy(derivatives, 1, scratch, firstArgument + 1, width - 1);
+        scratch[firstArgument] = roundStep(value);
+    }
+
+    /*
+     * the partial derivative of the function with respect to one argument , by central differences
+     * with a step of the cube root of the machine epsilon relative to the argument
+     * */
+    private static double partialDerivative(RegisteredFunction function, double[] arguments, int argumentIndex) {
+        double argument = arguments[argumentIndex];
+        double step = 6.055454452393343e-6 * Math.max(1, Math.abs(argument));
+        arguments[argumentIndex] = argument + step;
+        double forwardValue = function.invoke(arguments, 0);
+        arguments[argumentIndex] = argument - step;
+        double backwardValue = function.invoke(arguments, 0);
+        arguments[argumentIndex] = argument;
+        return (forwardValue - backwardValue) / (2 * step);
+    }
+
+
+    private double roundStep(double number) {
+        return roundEveryStep ? FormulaRuntime.scaleNumber(number) : number;
+    }
+
+    private double roundResult(double number) {
+        return roundResult ? FormulaRuntime.roundNumber(number) : number;
+    }
+}
@@ -0,0 +1,26 @@
+package main.java;
+
+/*
+ * why an expression could not be evaluated , see EvaluationResult
+ * */
+public enum ErrorCode {
+
+    // a character that is not part of the grammar , like $
+    UNKNOWN_CHARACTER,
+
+    // a parentheses without a matching one
+    UNBALANCED_PARENTHESES,
+
+    // tokens that don't follow the grammar , like 1+ or the number 1.2.3
+    MALFORMED_EXPRESSION,
+
+    // a variable read before it has a value
+    UNDEFINED_VARIABLE,
+
+    DIVISION_BY_ZERO,
+
+    // a step of the expression is NaN or infinite while every step is rounded or with an exact numeric backend , like sqrt(-1)
+    NOT_A_NUMBER
+
+
+}
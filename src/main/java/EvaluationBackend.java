@@ -0,0 +1,15 @@
+package main.java;
+
+/*
+ * the ways a compiled expression can be evaluated
+ * */
+public enum EvaluationBackend {
+
+    // the instructions are executed one by one on a numbers stack
+    INTERPRETER,
+
+    // the instructions are translated to a generated java class , so the JIT can compile them like normal code
+    BYTECODE
+
+
+}
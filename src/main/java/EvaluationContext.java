@@ -0,0 +1,80 @@
+package main.java;
+
+/*
+ * the scratch memory used while evaluating a compiled expression , the numbers stack and
+ * the variables frame grow when an expression needs more room and are reused afterwards ,
+ * so evaluating an expression again doesn't allocate anything.
+ *
+ * every thread has its own context , a context already in use by the thread (for example
+ * when an expression is evaluated while evaluating another one) is never shared
+ * */
+final class EvaluationContext {
+
+    private static final int INITIAL_NUMBERS_STACK_SIZE = 32;
+    private static final int INITIAL_VARIABLES_SIZE = 8;
+
+    private static final ThreadLocal<EvaluationContext> THREAD_CONTEXT = ThreadLocal.withInitial(EvaluationContext::new);
+
+    private double[] numbersStack = new double[INITIAL_NUMBERS_STACK_SIZE];
+    private long[] integersStack = new long[INITIAL_NUMBERS_STACK_SIZE];
+    private double[] variables = new double[INITIAL_VARIABLES_SIZE];
+    private boolean[] definedVariables = new boolean[INITIAL_VARIABLES_SIZE];
+    private boolean inUse;
+
+
+    /*
+     * returns the context of the current thread , it has to be given back with release()
+     * */
+    static EvaluationContext acquire() {
+        EvaluationContext context = THREAD_CONTEXT.get();
+        if (context.inUse) {
+            context = new EvaluationContext();
+        }
+        context.inUse = true;
+        return context;
+    }
+
+    void release() {
+        inUse = false;
+    }
+
+    /*
+     * returns a numbers stack that can hold at least the given number of values
+     * */
+    double[] numbersStack(int depth) {
+        if (numbersStack.length < depth) {
+            numbersStack = new double[Math.max(depth, numbersStack.length * 2)];
+        }
+        return numbersStack;
+    }
+
+    /*
+     * returns a stack of longs that can hold at least the given number of values , for the exact backends
+     * */
+    long[] integersStack(int depth) {
+        if (integersStack.length < depth) {
+            integersStack = new long[Math.max(depth, integersStack.length * 2)];
+        }
+        return integersStack;
+    }
+
+    /*
+     * returns a variables frame that can hold at least the given number of variables
+     * */
+    double[] variables(int count) {
+        if (variables.length < count) {
+            variables = new double[Math.max(count, variables.length * 2)];
+        }
+        return variables;
+    }
+
+    /*
+     * returns the flags of defined variables , for at least the given number of variables
+     * */
+    boolean[] definedVariables(int count) {
+        if (definedVariables.length < count) {
+            definedVariables = new boolean[Math.max(count, definedVariables.length * 2)];
+        }
+        return definedVariables;
+    }
+}
@@ -0,0 +1,140 @@
+package main.java;
+
+import main.java.exceptions.DivisionByZeroException;
+import main.java.exceptions.MalformedExpressionException;
+import main.java.exceptions.UnbalancedParenthesesException;
+import main.java.exceptions.UnknownCharacterException;
+import main.java.exceptions.VariableIsNotDefinedException;
+
+/**
+ * The outcome of evaluating one expression: either its value or the error that
+ * stopped its evaluation, with the code of the error and where it was found in
+ * the expression.
+ */
+public final class EvaluationResult {
+
+    private final String expression;
+    private final double value;
+    private final ErrorCode errorCode;
+    private final int errorPosition;
+    private final String errorMessage;
+
+    // only created when it is asked for , most failures are only looked at by their code
+    private RuntimeException error;
+
+    private EvaluationResult(String expression, double value, ErrorCode errorCode, int errorPosition, String errorMessage) {
+        this.expression = expression;
+        this.value = value;
+        this.errorCode = errorCode;
+        this.errorPosition = errorPosition;
+        this.errorMessage = errorMessage;
+    }
+
+    static EvaluationResult success(String expression, double value) {
+        return new EvaluationResult(expression, value, null, -1, null);
+    }
+
+    /*
+     * the result of an expression that failed with the given error of the calculator , the other exceptions
+     * are not errors of the expression and are not turned into results. the expression was compiled without its
+     * whitespace , the position of the error is moved back to where it is in the given expression
+     * */
+    static EvaluationResult failure(String expression, Exception cause) {
+        ErrorCode errorCode;
+        int errorPosition = -1;
+        if (cause instanceof UnknownCharacterException) {
+            errorCode = ErrorCode.UNKNOWN_CHARACTER;
+            errorPosition = ((UnknownCharacterException) cause).getPosition();
+        } else if (cause instanceof UnbalancedParenthesesException) {
+            errorCode = ErrorCode.UNBALANCED_PARENTHESES;
+            errorPosition = ((UnbalancedParenthesesException) cause).getPosition();
+        } else if (cause instanceof MalformedExpressionException) {
+            errorCode = ErrorCode.MALFORMED_EXPRESSION;
+            errorPosition = ((MalformedExpressionException) cause).getPosition();
+        } else if (cause instanceof VariableIsNotDefinedException) {
+            errorCode = ErrorCode.UNDEFINED_VARIABLE;
+            errorPosition = ((VariableIsNotDefinedException) cause).getPosition();
+        } else if (cause instanceof DivisionByZeroException) {
+            errorCode = ErrorCode.DIVISION_BY_ZERO;
+            errorPosition = ((DivisionByZeroException) cause).getPosition();
+        } else if (cause instanceof NumberFormatException || cause instanceof ArithmeticException) {
+            // rounding every step can't round NaN and infinities , and the exact backends can't represent them
+            errorCode = ErrorCode.NOT_A_NUMBER;
+        } else {
+            throw new IllegalArgumentException("not an error of the calculator", cause);
+        }
+        return new EvaluationResult(expression, Double.NaN, errorCode,
+                ExpressionCache.originalPosition(expression, errorPosition), cause.getMessage());
+    }
+
+    /**
+     * @return the evaluated expression
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return true if the expression was evaluated without an error
+     */
+    public boolean isSuccess() {
+        return errorCode == null;
+    }
+
+    /**
+     * @return the value of the expression
+     * @throws RuntimeException the error of the expression, if it failed
+     */
+    public double getValue() {
+        if (errorCode != null) {
+            throw getError();
+        }
+        return value;
+    }
+
+    /**
+     * @param otherValue the value returned when the expression failed
+     * @return the value of the expression, or the given value if it failed
+     */
+    public double getValueOrElse(double otherValue) {
+        return errorCode == null ? value : otherValue;
+    }
+
+    /**
+     * @return why the expression failed, or null if it succeeded
+     */
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return the position in the expression where the error was found, or -1 if the
+     * expression succeeded or the error has no position
+     */
+    public int getErrorPosition() {
+        return errorPosition;
+    }
+
+    /**
+     * @return the message of the error, or null if the expression succeeded
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return the error that stopped the evaluation, as {@link Calc#eval(String)} would
+     * have thrown it, or null if the expression succeeded
+     */
+    public RuntimeException getError() {
+        if (errorCode != null && error == null) {
+            error = new UnsupportedOperationException(errorMessage);
+        }
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return expression + " = " + (errorCode == null ? String.valueOf(value) : "ERROR " + errorMessage);
+    }
+}
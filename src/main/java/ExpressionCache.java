@@ -0,0 +1,135 @@
+package main.java;
+
+/**
+ * A size bounded cache from expression text to its compiled form, so expressions
+ * evaluated again are not tokenized and parsed again. When the cache is full the
+ * least recently used expression is evicted.
+ * <p>
+ * Expressions are looked up by their normalized text, where whitespace that doesn't
+ * separate two tokens is ignored, so "2+ x" and "2+x" share an entry.
+ * <p>
+ * The cache can be shared by several calculators running on different threads. Large
+ * caches are split into stripes by the hash of the expression, every stripe with its
+ * own lock and its own least recently used order, so threads looking up different
+ * expressions rarely wait for each other.
+ */
+public final class ExpressionCache {
+
+    private final StripedLruCache<String, CompiledExpression> compiledExpressions;
+
+    /**
+     * @param capacity the maximum number of cached expressions, 0 disables caching
+     */
+    public ExpressionCache(int capacity) {
+        this.compiledExpressions = new StripedLruCache<>(capacity, String::hashCode);
+    }
+
+
+    /*
+     * returns the compiled form of the given normalized expression , or null if it is not cached
+     * */
+    CompiledExpression get(String normalizedExpression) {
+        return compiledExpressions.get(normalizedExpression);
+    }
+
+    /*
+     * caches the compiled form of the given normalized expression
+     * */
+    void put(String normalizedExpression, CompiledExpression compiledExpression) {
+        compiledExpressions.put(normalizedExpression, compiledExpression);
+    }
+
+
+    /*
+     * removes the whitespace that doesn't separate two tokens , and replaces the whitespace
+     * that does with a single space , expressions without whitespace are returned as they are
+     * */
+    static String normalizeExpression(String expr) {
+        int firstWhitespace = 0;
+        while (firstWhitespace < expr.length() && !Tokenizer.isWhitespace(expr.charAt(firstWhitespace))) {
+            firstWhitespace++;
+        }
+        if (firstWhitespace == expr.length()) {
+            return expr;
+        }
+
+        StringBuilder normalizedExpression = new StringBuilder(expr.length());
+        normalizedExpression.append(expr, 0, firstWhitespace);
+        boolean skippedWhitespace = false;
+        for (int currentCharacterIndex = firstWhitespace; currentCharacterIndex < expr.length(); currentCharacterIndex++) {
+            char currentCharacter = expr.charAt(currentCharacterIndex);
+            if (Tokenizer.isWhitespace(currentCharacter)) {
+                skippedWhitespace = true;
+                continue;
+            }
+            // 1 2 are two numbers , 12 is one , so whitespace between two words is kept
+            if (skippedWhitespace && normalizedExpression.length() > 0
+                    && Tokenizer.isWordCharacter(normalizedExpression.charAt(normalizedExpression.length() - 1))
+                    && Tokenizer.isWordCharacter(currentCharacter)) {
+                normalizedExpression.append(' ');
+            }
+            normalizedExpression.append(currentCharacter);
+            skippedWhitespace = false;
+        }
+        return normalizedExpression.toString();
+    }
+
+    /*
+     * returns where the character at the given position of the normalized expression is in the given
+     * expression. a space of the normalized expression stands for the whitespace it replaced , every
+     * other character for the same character after some whitespace
+     * */
+    static int originalPosition(String expr, int normalizedPosition) {
+        String normalizedExpression = normalizeExpression(expr);
+        if (normalizedPosition < 0 || normalizedExpression == expr) {
+            return normalizedPosition;
+        }
+        int currentCharacterIndex = 0;
+        int lastNormalizedIndex = Math.min(normalizedPosition, normalizedExpression.length());
+        for (int normalizedIndex = 0; normalizedIndex < lastNormalizedIndex; normalizedIndex++) {
+            while (currentCharacterIndex < expr.length() && Tokenizer.isWhitespace(expr.charAt(currentCharacterIndex))) {
+                currentCharacterIndex++;
+            }
+            if (normalizedExpression.charAt(normalizedIndex) != ' ') {
+                currentCharacterIndex++;
+            }
+        }
+        while (currentCharacterIndex < expr.length() && Tokenizer.isWhitespace(expr.charAt(currentCharacterIndex))) {
+            currentCharacterIndex++;
+        }
+        return currentCharacterIndex;
+    }
+
+
+    /**
+     * Removes all the cached expressions, the counters are kept.
+     */
+    public void clear() {
+        compiledExpressions.clear();
+    }
+
+    public int size() {
+        return compiledExpressions.size();
+    }
+
+    public int getCapacity() {
+        return compiledExpressions.getCapacity();
+    }
+
+    public long getHitCount() {
+        return compiledExpressions.getHitCount();
+    }
+
+    public long getMissCount() {
+        return compiledExpressions.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return compiledExpressions.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return compiledExpressions.toString();
+    }
+}
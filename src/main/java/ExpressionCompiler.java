@@ -0,0 +1,613 @@
+package main.java;
+
+import main.java.exceptions.MalformedExpressionException;
+import main.java.exceptions.UnbalancedParenthesesException;
+import main.java.exceptions.UnknownCharacterException;
+import org.testng.log4testng.Logger;
+
+import java.util.*;
+
+
+/*
+ * translates an infix expression into the postfix instructions of a CompiledExpression.
+ *
+ * the compiler walks the tokens with the same operators stack the calculator used to evaluate
+ * with , but instead of applying an operator it emits the instruction that applies it , so
+ * the order in which operators are applied (and all the special cases like 1--1) stay the same.
+ * the numbers stack is only tracked by its depth.
+ *
+ * a compiler instance is not thread safe , use a new one for every expression
+ * */
+class ExpressionCompiler {
+
+
+    private final Logger LOGGER = Logger.getLogger(ExpressionCompiler.class);
+
+    // used to store parsed operators , operatorsStackSize is the number of operators in it
+    private Operator[] operatorsStack = new Operator[16];
+    // the position in the expression of every operator of the operators stack
+    private int[] operatorPositionsStack = new int[16];
+    // the function of every function call of the operators stack
+    private RegisteredFunction[] operatorFunctionsStack = new RegisteredFunction[16];
+    // the number of argument separators seen in every "(" , and the number of arguments of every function call
+    // once its parentheses are closed (-1 before , a function called without parentheses takes one argument)
+    private int[] operatorArgumentsStack = new int[16];
+    // the depth of the numbers stack when every "(" was pushed , what is above it when it is closed are arguments
+    private int[] operatorDepthsStack = new int[16];
+    private int operatorsStackSize;
+
+    //seen variable names are stored in this stack , and their positions in the expression in the other one
+    private Stack<String> variablesStack = new Stack<>();
+    private int[] variablePositionsStack = new int[16];
+
+    // the token being compiled , errors are reported at its position
+    private int currentTokenIndex;
+
+    // the number of values the numbers stack would hold at this point of the evaluation
+    private int numbersStackDepth;
+
+    // the output of the tokenizer will be in this variable
+    private PackedTokens expressionAsTokens;
+
+    // the output of the compiler
+    private List<Instruction> instructions = new ArrayList<>();
+
+    // the position of every variable of the expression , in the order they appear in
+    private Map<String, Integer> variableIndexes = new LinkedHashMap<>();
+
+    // the functions the expression can call , as they were when the compiler started
+    private final FunctionRegistry functionRegistry;
+    private RegisteredFunction[] functionsTable;
+
+    private Tokenizer tokenizer;
+
+
+    ExpressionCompiler(FunctionRegistry functionRegistry) {
+        this.functionRegistry = functionRegistry;
+        this.tokenizer = new Tokenizer(functionRegistry);
+    }
+
+
+    /*
+     * compiles the given expression , to be evaluated with the given rounding policy
+     * */
+    CompiledExpression compile(String expr, RoundingPolicy roundingPolicy) throws UnknownCharacterException {
+        LOGGER.info("started compiling the expression " + expr);
+        initializeDataForExpression(expr);
+        compileExpression();
+
+        if (numbersStackDepth != 0 || operatorsStackSize != 0 || !variablesStack.isEmpty()) {
+            LOGGER.warn("compiling finished but one of the stacks was not empty");
+            LOGGER.debug("the stacks are after compiling the expression " + " Operators Stack "
+                    + Arrays.toString(Arrays.copyOf(operatorsStack, operatorsStackSize)) +
+                    "numbers Stack depth " + numbersStackDepth + " variables stack " + variablesStack);
+        }
+        Instruction[] compiledInstructions = instructions.toArray(new Instruction[0]);
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("done compiling the expression " + expr + " to " + instructions);
+        }
+        String[] variableNames = variableIndexes.keySet().toArray(new String[0]);
+        return new CompiledExpression(expr, compiledInstructions, variableNames, roundingPolicy, functionsTable);
+    }
+
+    /*
+     * populates the needed dataStructures before compiling the expression
+     * */
+    private void initializeDataForExpression(String expr) throws UnknownCharacterException {
+        // the expression is wrapped with "(" ")" by the tokenizer , without copying it
+        functionsTable = functionRegistry.table();
+        expressionAsTokens = tokenizer.tokenize(expr, true, functionsTable);
+        checkParenthesesAreBalanced(expressionAsTokens);
+
+    }
+
+
+    /*
+     *
+     * this function iterates over the expression tokens and compiles it
+     *
+     * */
+    private void compileExpression() {
+        int currentPositionInExpression = 0;
+        while (currentPositionInExpression < expressionAsTokens.size()) {
+            currentTokenIndex = currentPositionInExpression;
+            switch (expressionAsTokens.getType(currentPositionInExpression)) {
+                case NUMBER:
+                    pushNumberToNumbersStack(getNumberOfToken(currentPositionInExpression));
+                    break;
+                case FUNCTION:
+                    // the call is resolved to its function once , here
+                    pushOperatorToOperatorsStack(Operator.FUNCTION);
+                    operatorFunctionsStack[operatorsStackSize - 1] = FunctionRegistry.find(functionsTable,
+                            expressionAsTokens.getSource(), expressionAsTokens.getStart(currentPositionInExpression),
+                            expressionAsTokens.getEnd(currentPositionInExpression));
+                    break;
+                case VARIABLE:
+                    pushOperatorToOperatorsStack(Operator.VARIABLE);
+                    pushVariableToVariablesStack(expressionAsTokens.getText(currentPositionInExpression));
+                    break;
+                case BINARY_OPERATOR:
+                    compileBinaryOperator(currentPositionInExpression, expressionAsTokens.getSymbol(currentPositionInExpression));
+                    break;
+                case PARENTHESES:
+                    compileParentheses(expressionAsTokens.getSymbol(currentPositionInExpression), currentPositionInExpression);
+                    break;
+                case ARGUMENT_SEPARATOR:
+                    compileArgumentSeparator();
+
+            }
+            currentPositionInExpression++;
+        }
+        currentTokenIndex = expressionAsTokens.size() - 1;
+        // the value of the expression is the last value left in the numbers stack
+        popNumberFromNumbersStack();
+    }
+
+
+    /*
+     * returns the value of the number token at the given position , the tokenizer leaves
+     * NaN for malformed numbers like 1.2.3
+     * */
+    private double getNumberOfToken(int currentPositionInExpression) {
+        double number = expressionAsTokens.getNumber(currentPositionInExpression);
+        if (Double.isNaN(number)) {
+            throw new MalformedExpressionException(expressionAsTokens.getText(currentPositionInExpression)
+                    + " is not a valid number", expressionAsTokens.getStart(currentPositionInExpression));
+        }
+        return number;
+    }
+
+
+    /*
+     *
+     * compiles Parentheses
+     *
+     * */
+
+    private void compileParentheses(char currentTokenValue, int currentPositionInExpression) {
+        LOGGER.debug("compiling Parentheses ");
+
+        switch (currentTokenValue) {
+            //if current token is a closing Parentheses then we need to apply all operators until we reach
+            // an opening parentheses
+            case Constants.CLOSING_PARENTHESES_CHARACTER:
+                while (peekOperatorsStack() != Operator.OPENING_PARENTHESES) {
+                    applyOperatorOnTopOfStack();
+                }
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("done compiling the sub Expression ending at "
+                            + expressionAsTokens.getStart(currentPositionInExpression));
+                }
+                //pop the opening Parentheses from the stack( since we just saw a closing parentheses
+                int separatorsCount = operatorArgumentsStack[operatorsStackSize - 1];
+                int argumentsCount = numbersStackDepth - operatorDepthsStack[operatorsStackSize - 1];
+                getOperatorFromOperatorsStack();
+                countArguments(separatorsCount, argumentsCount);
+                break;
+            case Constants.OPENING_PARENTHESES_CHARACTER:
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Started compiling the sub Expression starting at "
+                            + expressionAsTokens.getStart(currentPositionInExpression));
+                }
+                pushOperatorToOperatorsStack(Operator.OPENING_PARENTHESES);
+        }
+
+    }
+
+
+    /*
+     * compiles the "," between two arguments of a function call , the argument before it is done
+     * */
+    private void compileArgumentSeparator() {
+        while (peekOperatorsStack() != Operator.OPENING_PARENTHESES) {
+            applyOperatorOnTopOfStack();
+        }
+        operatorArgumentsStack[operatorsStackSize - 1]++;
+    }
+
+
+    /*
+     * gives the number of arguments between the parentheses that were just closed to the function they
+     * belong to , parentheses that don't belong to a function call hold a single value
+     * */
+    private void countArguments(int separatorsCount, int argumentsCount) {
+        if (operatorsStackSize != 0 && peekOperatorsStack() == Operator.FUNCTION
+                && operatorArgumentsStack[operatorsStackSize - 1] == -1) {
+            // every argument leaves one value , f() has none. without separators the function takes the last value
+            // like it always did , sin(2x) is sin(x)
+            if (separatorsCount != 0 && argumentsCount != separatorsCount + 1) {
+                throw malformedExpression();
+            }
+            operatorArgumentsStack[operatorsStackSize - 1] = separatorsCount == 0 ? Math.min(argumentsCount, 1) : argumentsCount;
+        } else if (separatorsCount != 0) {
+            throw malformedExpression();
+        }
+    }
+
+
+    /*
+     *
+     * this method will compile binary Operators (- + / *)
+     *
+     * */
+    private void compileBinaryOperator(int currentPositionInExperssion, char currentTokenValue) {
+        int previousToken = currentPositionInExperssion - 1;
+
+        //this is for cases like 1--1
+        // path for such expression
+        // expr-> number-expr -> number-factor -> number-term ->number --term -> number--number
+        // the same goes for a - starting an argument of a function , like pow(2,-1)
+        if (currentTokenValue == Constants.SUBSTRACTION_CHARACTER &&
+                (expressionAsTokens.getType(previousToken) == TokenType.PARENTHESES
+                && expressionAsTokens.getSymbol(previousToken) == Constants.OPENING_PARENTHESES_CHARACTER
+                || expressionAsTokens.getType(previousToken) == TokenType.ARGUMENT_SEPARATOR)
+                || expressionAsTokens.getType(previousToken) == TokenType.BINARY_OPERATOR) {
+            LOGGER.debug("substituting - after operator");
+            // if a (-) is found after ( or another binary Operator then we translate it to 0-
+            // we push 0 to numbersStack and ("-") to the operators stack
+            // for example --1 will be 0-0-1
+            pushNumberToNumbersStack(0);
+            pushOperatorToOperatorsStack(Operator.SUBTRACTION);
+
+        } else {
+            compileOperator(Operator.fromSymbol(currentTokenValue));
+        }
+    }
+
+
+    /*
+     *
+     * emits a number , it is rounded when the expression is evaluated , depending on the rounding policy
+     *
+     * */
+    private void pushNumberToNumbersStack(double numberToAdd) {
+        LOGGER.debug("inserting " + numberToAdd + "  to the numbers stack");
+
+        emitInstruction(Instruction.number(numberToAdd));
+        numbersStackDepth++;
+    }
+
+    /*
+     *
+     * inserts an operator to the operators Stack
+     *
+     * */
+    private void pushOperatorToOperatorsStack(Operator operatorToAdd) {
+        LOGGER.debug("inserting " + operatorToAdd + "  to the operators stack");
+        if (operatorsStackSize == operatorsStack.length) {
+            operatorsStack = Arrays.copyOf(operatorsStack, operatorsStackSize * 2);
+            operatorPositionsStack = Arrays.copyOf(operatorPositionsStack, operatorsStackSize * 2);
+            operatorFunctionsStack = Arrays.copyOf(operatorFunctionsStack, operatorsStackSize * 2);
+            operatorArgumentsStack = Arrays.copyOf(operatorArgumentsStack, operatorsStackSize * 2);
+            operatorDepthsStack = Arrays.copyOf(operatorDepthsStack, operatorsStackSize * 2);
+        }
+        operatorPositionsStack[operatorsStackSize] = expressionAsTokens.getStart(currentTokenIndex);
+        operatorArgumentsStack[operatorsStackSize] = operatorToAdd == Operator.FUNCTION ? -1 : 0;
+        operatorDepthsStack[operatorsStackSize] = numbersStackDepth;
+        operatorsStack[operatorsStackSize++] = operatorToAdd;
+    }
+
+
+    /*
+     *
+     * inserts a variable name to the variables Stack
+     *
+     * */
+    private void pushVariableToVariablesStack(String variableName) {
+        LOGGER.debug("inserting " + variableName + "  to the variables stack");
+        if (variablesStack.size() == variablePositionsStack.length) {
+            variablePositionsStack = Arrays.copyOf(variablePositionsStack, variablesStack.size() * 2);
+        }
+        variablePositionsStack[variablesStack.size()] = expressionAsTokens.getStart(currentTokenIndex);
+        variablesStack.add(variableName);
+    }
+
+
+    /*
+     * checks that every parentheses of the expression has a matching one , without remembering where
+     * they are : the depth is counted from the start , an unmatched ")" takes it below zero. when some "("
+     * are left open , the depth is counted again from the end to find the last one of them.
+     *
+     * the "(" ")" wrapping the expression are not checked , they are the first and the last tokens
+     * */
+    private static void checkParenthesesAreBalanced(PackedTokens expressionAsTokens) {
+        int lastExpressionToken = expressionAsTokens.size() - 2;
+        int depth = 0;
+        for (int currentTokenIndex = 1; currentTokenIndex <= lastExpressionToken; currentTokenIndex++) {
+            if (expressionAsTokens.getType(currentTokenIndex) != TokenType.PARENTHESES) {
+                continue;
+            }
+            if (expressionAsTokens.getSymbol(currentTokenIndex) == Constants.OPENING_PARENTHESES_CHARACTER) {
+                depth++;
+            } else if (--depth < 0) {
+                throw new UnbalancedParenthesesException(Constants.CLOSING_PARENTHESES_CHARACTER,
+                        expressionAsTokens.getStart(currentTokenIndex));
+            }
+        }
+        if (depth == 0) {
+            return;
+        }
+        depth = 0;
+        for (int currentTokenIndex = lastExpressionToken; currentTokenIndex >= 1; currentTokenIndex--) {
+            if (expressionAsTokens.getType(currentTokenIndex) != TokenType.PARENTHESES) {
+                continue;
+            }
+            if (expressionAsTokens.getSymbol(currentTokenIndex) == Constants.CLOSING_PARENTHESES_CHARACTER) {
+                depth++;
+            } else if (--depth < 0) {
+                throw new UnbalancedParenthesesException(Constants.OPENING_PARENTHESES_CHARACTER,
+                        expressionAsTokens.getStart(currentTokenIndex));
+            }
+        }
+    }
+
+
+    /*
+     *   applies the operator on top of the operators stack , if it is not "("
+     * */
+    private void applyOperatorOnTopOfStack() {
+        // if we reached the end of the current expression , we need to apply all operators in current expression
+        // for example (5+(5+5*6/2))
+        // when we are compiling subexpression (5+5*6/2) and we reach ")"
+        // we need to apply any operators that appeared between the parentheses
+        int operatorPosition = peekOperatorPosition();
+        RegisteredFunction function = operatorFunctionsStack[operatorsStackSize - 1];
+        int argumentsCount = operatorArgumentsStack[operatorsStackSize - 1];
+        Operator lastOperatorInStack = getOperatorFromOperatorsStack();
+
+        if (lastOperatorInStack != Operator.OPENING_PARENTHESES) {
+            LOGGER.debug("applying Operator " + lastOperatorInStack);
+            emitInstructionsForOperator(lastOperatorInStack, operatorPosition, function, argumentsCount);
+        }
+    }
+
+
+    /*
+     *   compiles operator if possible
+     * */
+    private void compileOperator(Operator currentOperator) {
+        // if top of the stack is "(" and the operators stack is empty , or current operator has precedence over the
+        // last seen operator push current operator to the operators stack
+        if (operatorsStackSize == 0 || peekOperatorsStack() == Operator.OPENING_PARENTHESES
+                || operatorHasPrecedence(currentOperator)) {
+            pushOperatorToOperatorsStack(currentOperator);
+
+        } else {
+            // apply the operators that can be applied
+            applyPreviousOperatorsWithHigherPrecedence(currentOperator);
+
+        }
+
+    }
+
+
+    /*
+     * applies previous operators with higher precedence (just not "(" )
+     * */
+    private void applyPreviousOperatorsWithHigherPrecedence(Operator currentOperator) {
+        Operator lastOperatorInStack;
+        LOGGER.debug("started applying previous operators ");
+
+        // if the input is something like 1*3*4*5+1
+        // we need to do all the * before adding
+        // if the top of the operators stack is "(" then we stop
+        // "(" is the start of the current subexpression  for example ((1*3*4+5*8)+5)
+        // when the first + is encountered we can apply all previous Operators until "("
+        while (operatorsStackSize != 0 && peekOperatorsStack() != Operator.OPENING_PARENTHESES &&
+                !operatorHasPrecedence(currentOperator)) {
+
+            // apply the operator on top of the operators stack
+            int operatorPosition = peekOperatorPosition();
+            RegisteredFunction function = operatorFunctionsStack[operatorsStackSize - 1];
+            int argumentsCount = operatorArgumentsStack[operatorsStackSize - 1];
+            lastOperatorInStack = getOperatorFromOperatorsStack();
+            LOGGER.debug("applying Operator " + lastOperatorInStack);
+            emitInstructionsForOperator(lastOperatorInStack, operatorPosition, function, argumentsCount);
+        }
+        //after finishing , push the current operator to the operators stack
+        pushOperatorToOperatorsStack(currentOperator);
+        LOGGER.debug("done applying previous operators ");
+
+
+    }
+
+    /**
+     * this method will emit the instructions that apply the given operator on the first n elements in the stack
+     * where n is the number of arguments the operator takes
+     * for example for "+" n=2 , the operator is at the given position of the expression. a function call
+     * comes with its function and the number of arguments it was given
+     */
+    private void emitInstructionsForOperator(Operator currentOperator, int operatorPosition,
+                                             RegisteredFunction function, int argumentsCount) {
+        if (currentOperator == Operator.FUNCTION) {
+            emitFunctionCall(function, argumentsCount, operatorPosition);
+            return;
+        }
+        // if the current operator is not a variable then it takes the top number in the numbers stack
+        if (currentOperator != Operator.VARIABLE) {
+            popNumberFromNumbersStack();
+        }
+        // check if the currentOperator is a binary operator , if yes fetch the next operand
+        if (currentOperator.isBinaryOperator()) {
+            fetchFirstOperandForOperator();
+        }
+        switch (currentOperator) {
+            case BINDING:
+                bindVariableToValue();
+                break;
+            case VARIABLE:
+                emitVariableInstruction(OpCode.LOAD_VARIABLE);
+                break;
+            case DIVISION:
+                // a division can fail , so it remembers where it is
+                emitInstruction(Instruction.operation(OpCode.DIVIDE, operatorPosition));
+                break;
+            default:
+                emitInstruction(Instruction.operation(currentOperator.getOpCode()));
+        }
+        // the output of the operator is pushed back to the numbers stack
+        numbersStackDepth++;
+
+    }
+
+    /*
+     * emits the call of a function with the given number of arguments , the built in functions have their own
+     * instructions and the others are called through the function they were resolved to
+     * */
+    private void emitFunctionCall(RegisteredFunction function, int argumentsCount, int functionPosition) {
+        // a function called without parentheses , like sqrt 4 , takes the value after it
+        int givenArgumentsCount = argumentsCount == -1 ? 1 : argumentsCount;
+        if (givenArgumentsCount != function.getArity()) {
+            throw new MalformedExpressionException(function.getName() + " takes " + function.getArity()
+                    + (function.getArity() == 1 ? " argument" : " arguments"), functionPosition);
+        }
+        for (int argumentIndex = 0; argumentIndex < givenArgumentsCount; argumentIndex++) {
+            popNumberFromNumbersStack();
+        }
+        if (function.getOpCode() == OpCode.CALL) {
+            // a call can fail , so it remembers where it is
+            emitInstruction(Instruction.call(function, functionPosition));
+        } else {
+            emitInstruction(Instruction.operation(function.getOpCode()));
+        }
+        numbersStackDepth++;
+    }
+
+
+    /*
+     * binds the last seen variable to the value on top of the stack
+     *
+     * */
+    private void bindVariableToValue() {
+        LOGGER.debug("binding vale to variable ");
+        //discard of the variable operator
+        getOperatorFromOperatorsStack();
+        // fetch the variable's name and assign the value to it
+        emitVariableInstruction(OpCode.STORE_VARIABLE);
+    }
+
+
+    /*
+     *  checks if one of the two terms is a variable , if yes , substitute the variable with its value
+     *
+     * */
+    private void fetchFirstOperandForOperator() {
+        // if the first operand is not a variable
+        if (!hasVariableBefore()) {
+            popNumberFromNumbersStack();
+        } else {
+            // the variable is loaded after the second operand , so they have to change places
+            emitVariableInstruction(OpCode.LOAD_VARIABLE);
+            emitInstruction(Instruction.operation(OpCode.SWAP));
+            getOperatorFromOperatorsStack();
+        }
+    }
+
+
+    /*
+     *
+     * removes the first element from the Numbers Stack
+     *
+     * */
+    private void popNumberFromNumbersStack() {
+        if (numbersStackDepth == 0) {
+            throw malformedExpression();
+        }
+        numbersStackDepth--;
+    }
+
+    /*
+     *
+     * returns the first element in Operators Stack
+     *
+     * */
+    private Operator peekOperatorsStack() {
+        if (operatorsStackSize == 0) {
+            throw malformedExpression();
+        }
+        return operatorsStack[operatorsStackSize - 1];
+    }
+
+    /*
+     * returns the position of the first element in Operators Stack
+     * */
+    private int peekOperatorPosition() {
+        if (operatorsStackSize == 0) {
+            throw malformedExpression();
+        }
+        return operatorPositionsStack[operatorsStackSize - 1];
+    }
+
+    /*
+     *
+     * removes and returns the first element in Operators Stack
+     *
+     * */
+    private Operator getOperatorFromOperatorsStack() {
+        Operator lastOperatorInStack = peekOperatorsStack();
+        LOGGER.debug("popping " + lastOperatorInStack + "from the operators stack");
+        operatorFunctionsStack[operatorsStackSize - 1] = null;
+        operatorsStack[--operatorsStackSize] = null;
+        return lastOperatorInStack;
+    }
+
+
+    /*
+     *
+     * returns the first element in Variables Stack
+     *
+     * */
+    private String getVariableFromVariablesStack() {
+        if (variablesStack.isEmpty()) {
+            throw malformedExpression();
+        }
+        LOGGER.debug("popping " + variablesStack.peek() + "from the variables stack");
+        return variablesStack.pop();
+    }
+
+
+    /*
+     * returns true if there is a Operator of Type variable on top of the stack
+     * */
+    private boolean hasVariableBefore() {
+
+        return operatorsStackSize != 0 && peekOperatorsStack() == Operator.VARIABLE;
+
+    }
+
+
+    /*
+     * this method checks if the current Operator Has precedence over the previous one
+     *
+     * */
+    private boolean operatorHasPrecedence(Operator currentOperator) {
+        return peekOperatorsStack().getStrength() < currentOperator.getStrength();
+    }
+
+
+    private void emitInstruction(Instruction instruction) {
+        instructions.add(instruction);
+    }
+
+    /*
+     * emits an instruction that reads or writes the variable on top of the variables stack
+     * */
+    private void emitVariableInstruction(OpCode opCode) {
+        String variableName = getVariableFromVariablesStack();
+        int variablePosition = variablePositionsStack[variablesStack.size()];
+        Integer variableIndex = variableIndexes.get(variableName);
+        if (variableIndex == null) {
+            variableIndex = variableIndexes.size();
+            variableIndexes.put(variableName, variableIndex);
+        }
+        emitInstruction(Instruction.variable(opCode, variableName, variableIndex, variablePosition));
+    }
+
+    /*
+     * the error of an expression that doesn't follow the grammar , found at the current token
+     * */
+    private MalformedExpressionException malformedExpression() {
+        int position = expressionAsTokens.getStart(currentTokenIndex);
+        return new MalformedExpressionException("your expression is not valid", position);
+    }
+}
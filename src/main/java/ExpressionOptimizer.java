@@ -0,0 +1,469 @@
+package main.java;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+
+/*
+ * simplifies the postfix instructions of an expression before they are evaluated.
+ *
+ * the instructions are turned back into a tree , the tree is simplified while it is built and
+ * then emitted again as postfix instructions :
+ *  - operators and functions whose operands are all numbers are computed once here (constant folding) ,
+ *    a registered function only when it is pure
+ *  - x*1 , 1*x , x/1 , x+0 , 0+x , x-0 are replaced by x
+ *  - the double negations made by unary minus (x--y is x-(0-y) , --x is 0-(0-x)) are removed
+ *
+ * every rewrite gives exactly the value the original instructions give , for every value of the
+ * variables and with the same rounding : a division by a zero number is never folded so it still
+ * fails when evaluated , a rewrite that could turn a negative zero into a positive zero is only made
+ * when the operand can't be a negative zero (or when the value is rounded right away , which turns
+ * -0 into 0 anyway) , and with the EVERY_STEP rounding policy the folded
+ * numbers are rounded like the steps they replace. variables are read and bound in the same order
+ * as before , only numbers are dropped.
+ *
+ * an optimizer instance is not thread safe , use a new one for every expression
+ * */
+class ExpressionOptimizer {
+
+    private final boolean roundEveryStep;
+    private final boolean roundResult;
+
+    // true while the value of the node being simplified is rounded right after it , so a -0 becomes 0 anyway
+    private boolean ignoreSignOfZero;
+
+    ExpressionOptimizer(RoundingPolicy roundingPolicy) {
+        this.roundEveryStep = roundingPolicy == RoundingPolicy.EVERY_STEP;
+        this.roundResult = roundingPolicy == RoundingPolicy.FINAL_RESULT;
+    }
+
+
+    /*
+     * returns the simplified instructions , or the given instructions when they can't be turned into a tree
+     * */
+    Instruction[] optimize(Instruction[] instructions) {
+        Deque<Node> nodesStack = new ArrayDeque<>();
+        for (int instructionIndex = 0; instructionIndex < instructions.length; instructionIndex++) {
+            Instruction instruction = instructions[instructionIndex];
+            switch (instruction.getOpCode()) {
+                case PUSH_NUMBER:
+                    Double number = roundStep(instruction.getNumber());
+                    if (number == null) {
+                        return instructions;
+                    }
+                    nodesStack.push(Node.number(number));
+                    break;
+                case LOAD_VARIABLE:
+                    nodesStack.push(Node.variable(instruction, !roundEveryStep));
+                    break;
+                case STORE_VARIABLE:
+                    if (nodesStack.isEmpty()) {
+                        return instructions;
+                    }
+                    Node value = nodesStack.pop();
+                    nodesStack.push(new Node(instruction, value, null, false, value.canBeNegativeZero));
+                    break;
+                case SWAP:
+                    // the first operand was loaded after the second one , the swap is always followed by the operator
+                    if (nodesStack.size() < 2 || instructionIndex + 1 == instructions.length
+                            || !isBinaryOperation(instructions[instructionIndex + 1].getOpCode())) {
+                        return instructions;
+                    }
+                    Node firstOperand = nodesStack.pop();
+                    Node secondOperand = nodesStack.pop();
+                    nodesStack.push(binaryOperation(instructions[++instructionIndex], firstOperand,
+                            secondOperand, true));
+                    break;
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE:
+                    if (nodesStack.size() < 2) {
+                        return instructions;
+                    }
+                    Node rightOperand = nodesStack.pop();
+                    Node leftOperand = nodesStack.pop();
+                    nodesStack.push(binaryOperation(instruction, leftOperand, rightOperand, false));
+                    break;
+                case CALL:
+                    int arity = instruction.getFunction().getArity();
+                    if (nodesStack.size() < arity) {
+                        return instructions;
+                    }
+                    Node[] arguments = new Node[arity];
+                    for (int argumentIndex = arity - 1; argumentIndex >= 0; argumentIndex--) {
+                        arguments[argumentIndex] = nodesStack.pop();
+                    }
+                    nodesStack.push(call(instruction, arguments));
+                    break;
+                default:
+                    if (nodesStack.isEmpty()) {
+                        return instructions;
+                    }
+                    nodesStack.push(function(instruction.getOpCode(), nodesStack.pop()));
+            }
+        }
+        if (roundResult) {
+            Deque<Node> roots = new ArrayDeque<>();
+            while (!nodesStack.isEmpty()) {
+                roots.push(simplifyRoundedNode(nodesStack.pollLast()));
+            }
+            nodesStack = roots;
+        }
+        return emit(nodesStack);
+    }
+
+
+    /*
+     * simplifies again the top node of a value that is rounded as the final result , or as the value
+     * bound to a variable , now that the sign of its zero doesn't matter. a chain of bindings (x=y=...) is
+     * walked down without recursion , only its innermost value is simplified and the chain is built again
+     * */
+    private Node simplifyRoundedNode(Node node) {
+        Deque<Node> bindings = new ArrayDeque<>();
+        while (node.instruction.getOpCode() == OpCode.STORE_VARIABLE) {
+            bindings.push(node);
+            node = node.left;
+        }
+        Node simplifiedNode = simplifyRoundedValue(node);
+        while (!bindings.isEmpty()) {
+            Node binding = bindings.pop();
+            simplifiedNode = new Node(binding.instruction, simplifiedNode, null, false, binding.canBeNegativeZero);
+        }
+        return simplifiedNode;
+    }
+
+    /*
+     * simplifies again the top node of a rounded value that is not a binding
+     * */
+    private Node simplifyRoundedValue(Node node) {
+        if (node.right == null || !(node.instruction.getOpCode() == OpCode.ADD
+                || node.instruction.getOpCode() == OpCode.SUBTRACT)) {
+            return node;
+        }
+        ignoreSignOfZero = true;
+        try {
+            return binaryOperation(node.instruction, node.left, node.right, node.swapped);
+        } finally {
+            ignoreSignOfZero = false;
+        }
+    }
+
+
+    /*
+     * returns the node of a binary operation , simplified when it can be. the operation is kept as it
+     * is when it isn't simplified , a division remembers where it is in the expression
+     * */
+    private Node binaryOperation(Instruction operation, Node leftOperand, Node rightOperand, boolean swapped) {
+        OpCode opCode = operation.getOpCode();
+        if (leftOperand.isNumber() && rightOperand.isNumber()
+                && !(opCode == OpCode.DIVIDE && rightOperand.number() == 0)) {
+            Double folded = roundStep(apply(opCode, leftOperand.number(), rightOperand.number()));
+            if (folded != null) {
+                return Node.number(folded);
+            }
+        }
+        switch (opCode) {
+            case ADD:
+                // x + -0 is x for every x , x + 0 and 0 + x only when x isn't -0
+                if (rightOperand.isNegativeZero()
+                        || rightOperand.isPositiveZero() && !canBeNegativeZero(leftOperand)) {
+                    return leftOperand;
+                }
+                if (leftOperand.isPositiveZero() && !canBeNegativeZero(rightOperand)) {
+                    return rightOperand;
+                }
+                // x + (0 - y) is x - y
+                if (rightOperand.isNegation() && !canBeNegativeZero(leftOperand)) {
+                    return binaryOperation(Instruction.operation(OpCode.SUBTRACT), leftOperand, rightOperand.right, swapped);
+                }
+                break;
+            case SUBTRACT:
+                // x - 0 is x for every x , x - -0 only when x isn't -0
+                if (rightOperand.isPositiveZero()
+                        || rightOperand.isNegativeZero() && !canBeNegativeZero(leftOperand)) {
+                    return leftOperand;
+                }
+                // 0 - (0 - x) is x , x - (0 - y) is x + y
+                if (rightOperand.isNegation() && !canBeNegativeZero(leftOperand)) {
+                    return leftOperand.isPositiveZero() && !canBeNegativeZero(rightOperand.right) ? rightOperand.right
+                            : binaryOperation(Instruction.operation(OpCode.ADD), leftOperand, rightOperand.right, swapped);
+                }
+                break;
+            case MULTIPLY:
+                if (rightOperand.isOne()) {
+                    return leftOperand;
+                }
+                if (leftOperand.isOne()) {
+                    return rightOperand;
+                }
+                break;
+            case DIVIDE:
+                if (rightOperand.isOne()) {
+                    return leftOperand;
+                }
+                break;
+        }
+        return new Node(operation, leftOperand, rightOperand, swapped,
+                canBeNegativeZero(opCode, leftOperand, rightOperand));
+    }
+
+
+    /*
+     * returns the node of a function call , computed when its operand is a number
+     */
+    private Node function(OpCode opCode, Node operand) {
+        if (operand.isNumber()) {
+            Double folded = roundStep(apply(opCode, operand.number(), 0));
+            if (folded != null) {
+                return Node.number(folded);
+            }
+        }
+        // the square root and the sine of -0 are -0 , the logarithm and the cosine are never -0
+        boolean canBeNegativeZero = !roundEveryStep && (opCode == OpCode.SQRT || opCode == OpCode.SIN)
+                && operand.canBeNegativeZero;
+        return new Node(Instruction.operation(opCode), operand, null, false, canBeNegativeZero);
+    }
+
+
+    /*
+     * returns the node of a call of a registered function , computed when the function is pure and its
+     * arguments are numbers. an impure function is called every time , and so is a call that fails
+     * */
+    private Node call(Instruction call, Node[] arguments) {
+        RegisteredFunction function = call.getFunction();
+        boolean constantArguments = function.isPure();
+        for (int argumentIndex = 0; constantArguments && argumentIndex < arguments.length; argumentIndex++) {
+            constantArguments = arguments[argumentIndex].isNumber();
+        }
+        if (constantArguments) {
+            double[] argumentValues = new double[arguments.length];
+            for (int argumentIndex = 0; argumentIndex < arguments.length; argumentIndex++) {
+                argumentValues[argumentIndex] = arguments[argumentIndex].number();
+            }
+            Double folded = null;
+            try {
+                folded = roundStep(function.invoke(argumentValues, 0));
+            } catch (RuntimeException e) {
+                // the call has to fail when the expression is evaluated
+            }
+            if (folded != null) {
+                return Node.number(folded);
+            }
+        }
+        // nothing is known about the values of a registered function
+        return Node.call(call, arguments, !roundEveryStep);
+    }
+
+
+    private boolean canBeNegativeZero(Node node) {
+        return node.canBeNegativeZero && !ignoreSignOfZero;
+    }
+
+
+    /*
+     * returns true if the operation can give -0 with the given operands , rounded steps are never -0
+     * */
+    private boolean canBeNegativeZero(OpCode opCode, Node leftOperand, Node rightOperand) {
+        if (roundEveryStep) {
+            return false;
+        }
+        switch (opCode) {
+            case ADD:
+                return leftOperand.canBeNegativeZero && rightOperand.canBeNegativeZero;
+            case SUBTRACT:
+                return leftOperand.canBeNegativeZero;
+            default:
+                return true;
+        }
+    }
+
+
+    /*
+     * rounds a folded value like the step it replaces , returns null when the step would fail
+     * */
+    private Double roundStep(double number) {
+        if (!roundEveryStep) {
+            return number;
+        }
+        try {
+            return FormulaRuntime.scaleNumber(number);
+        } catch (NumberFormatException e) {
+            // NaN and infinities can't be rounded , they have to fail when the expression is evaluated
+            return null;
+        }
+    }
+
+
+    private static double apply(OpCode opCode, double firstOperand, double secondOperand) {
+        switch (opCode) {
+            case ADD:
+                return firstOperand + secondOperand;
+            case SUBTRACT:
+                return firstOperand - secondOperand;
+            case MULTIPLY:
+                return firstOperand * secondOperand;
+            case DIVIDE:
+                return firstOperand / secondOperand;
+            case SQRT:
+                return Math.sqrt(firstOperand);
+            case LOG:
+                return Math.log(firstOperand);
+            case SIN:
+                return Math.sin(firstOperand);
+            case COS:
+                return Math.cos(firstOperand);
+            default:
+                throw new IllegalArgumentException(opCode + " is not an operation");
+        }
+    }
+
+    private static boolean isBinaryOperation(OpCode opCode) {
+        return opCode == OpCode.ADD || opCode == OpCode.SUBTRACT || opCode == OpCode.MULTIPLY || opCode == OpCode.DIVIDE;
+    }
+
+
+    /*
+     * emits the instructions of the trees left on the stack , from the bottom of the stack to its top.
+     * an explicit stack is used , expressions can be nested deeper than the java stack
+     * */
+    private static Instruction[] emit(Deque<Node> nodesStack) {
+        List<Instruction> instructions = new ArrayList<>();
+        // holds the nodes still to emit and the instructions to emit after the operands of their node
+        Deque<Object> pendingItems = new ArrayDeque<>();
+        for (Node root : nodesStack) {
+            // the deque iterates from the top of the stack , pushing reverses it
+            pendingItems.push(root);
+        }
+        while (!pendingItems.isEmpty()) {
+            Object pendingItem = pendingItems.pop();
+            if (pendingItem instanceof Instruction) {
+                instructions.add((Instruction) pendingItem);
+                continue;
+            }
+            Node node = (Node) pendingItem;
+            pendingItems.push(node.instruction);
+            if (node.arguments != null) {
+                // the first argument is emitted first
+                for (int argumentIndex = node.arguments.length - 1; argumentIndex >= 0; argumentIndex--) {
+                    pendingItems.push(node.arguments[argumentIndex]);
+                }
+            } else if (node.swapped) {
+                pendingItems.push(Instruction.operation(OpCode.SWAP));
+                pendingItems.push(node.left);
+                pendingItems.push(node.right);
+            } else {
+                if (node.right != null) {
+                    pendingItems.push(node.right);
+                }
+                if (node.left != null) {
+                    pendingItems.push(node.left);
+                }
+            }
+        }
+        return instructions.toArray(new Instruction[0]);
+    }
+
+
+    /*
+     * returns the biggest number of values the numbers stack will hold while executing the given instructions
+     * */
+    static int computeMaxStackDepth(Instruction[] instructions) {
+        int depth = 0;
+        int maxDepth = 0;
+        for (Instruction instruction : instructions) {
+            switch (instruction.getOpCode()) {
+                case PUSH_NUMBER:
+                case LOAD_VARIABLE:
+                    depth++;
+                    break;
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE:
+                    depth--;
+                    break;
+                case CALL:
+                    // the arguments are replaced by the value , a function without arguments pushes it
+                    depth += 1 - instruction.getFunction().getArity();
+                    break;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return maxDepth;
+    }
+
+
+    /*
+     * a node of the expression tree , the instruction is emitted after the operands.
+     * a swapped operation evaluates its right operand before its left one , a call has its arguments
+     * instead of a left and a right operand
+     * */
+    private static final class Node {
+
+        private final Instruction instruction;
+        private final Node left;
+        private final Node right;
+        private final boolean swapped;
+        private final Node[] arguments;
+        // false when the value of the node is never -0 , whatever the values of the variables
+        private final boolean canBeNegativeZero;
+
+        Node(Instruction instruction, Node left, Node right, boolean swapped, boolean canBeNegativeZero) {
+            this(instruction, left, right, swapped, null, canBeNegativeZero);
+        }
+
+        private Node(Instruction instruction, Node left, Node right, boolean swapped, Node[] arguments,
+                     boolean canBeNegativeZero) {
+            this.instruction = instruction;
+            this.left = left;
+            this.right = right;
+            this.swapped = swapped;
+            this.arguments = arguments;
+            this.canBeNegativeZero = canBeNegativeZero;
+        }
+
+        static Node number(double number) {
+            return new Node(Instruction.number(number), null, null, false, isNegativeZero(number));
+        }
+
+        static Node variable(Instruction instruction, boolean canBeNegativeZero) {
+            return new Node(instruction, null, null, false, canBeNegativeZero);
+        }
+
+        static Node call(Instruction instruction, Node[] arguments, boolean canBeNegativeZero) {
+            return new Node(instruction, null, null, false, arguments, canBeNegativeZero);
+        }
+
+        boolean isNumber() {
+            return instruction.getOpCode() == OpCode.PUSH_NUMBER;
+        }
+
+        double number() {
+            return instruction.getNumber();
+        }
+
+        boolean isOne() {
+            return isNumber() && number() == 1;
+        }
+
+        boolean isPositiveZero() {
+            return isNumber() && number() == 0 && !isNegativeZero(number());
+        }
+
+        boolean isNegativeZero() {
+            return isNumber() && isNegativeZero(number());
+        }
+
+        // 0 - x , the way unary minus is compiled
+        boolean isNegation() {
+            return instruction.getOpCode() == OpCode.SUBTRACT && left.isPositiveZero();
+        }
+
+        private static boolean isNegativeZero(double number) {
+            return Double.doubleToRawLongBits(number) == Long.MIN_VALUE;
+        }
+    }
+}
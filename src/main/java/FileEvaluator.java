@@ -0,0 +1,297 @@
+package main.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+
+/*
+ * evaluates a file of expressions , one expression per line , into a file of results.
+ *
+ * the work is split in four stages running at the same time , each one on its own thread :
+ * reading and splitting the lines , compiling them , evaluating them and writing the results.
+ * the lines go from a stage to the next one in chunks , through bounded queues , so a slow stage
+ * holds back the stages before it instead of letting the chunks pile up in memory. every stage
+ * handles the chunks in the order it gets them , so the results keep the order of the lines.
+ *
+ * compiling doesn't depend on the bindings , only the evaluation stage reads and binds variables ,
+ * one line after the other like the calculator program does.
+ * */
+class FileEvaluator {
+
+    // the lines handed from a stage to the next one at once
+    private static final int LINES_PER_CHUNK = 4096;
+    // the chunks waiting between two stages
+    private static final int CHUNKS_PER_QUEUE = 8;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    // the results are written once this many characters are waiting
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    // how often a blocked stage checks whether another stage failed
+    private static final long FAILURE_CHECK_MILLIS = 100;
+
+    private static final String ERROR_PREFIX = "*** ERROR: ";
+
+    private final Calc calc;
+    private final Map<String, Double> bindings;
+
+    private final BlockingQueue<Chunk> readChunks = new ArrayBlockingQueue<>(CHUNKS_PER_QUEUE);
+    private final BlockingQueue<Chunk> compiledChunks = new ArrayBlockingQueue<>(CHUNKS_PER_QUEUE);
+    private final BlockingQueue<Chunk> evaluatedChunks = new ArrayBlockingQueue<>(CHUNKS_PER_QUEUE);
+
+    // set when a stage fails , so the other stages stop instead of waiting for it forever
+    private volatile boolean failed;
+
+    private long evaluatedLinesCount;
+
+    FileEvaluator(Calc calc, Map<String, Double> bindings) {
+        this.calc = calc;
+        this.bindings = bindings;
+    }
+
+
+    /*
+     * evaluates the lines of the input into the output , returns the number of evaluated lines.
+     * the evaluation runs on the calling thread , the other stages on threads of their own
+     * */
+    long evaluate(Path input, WritableByteChannel output) throws IOException {
+        FutureTask<Void> reader = startStage("reader", () -> readLines(input));
+        FutureTask<Void> compiler = startStage("compiler", this::compileLines);
+        FutureTask<Void> writer = startStage("writer", () -> writeResults(output));
+        Throwable evaluationFailure = null;
+        try {
+            runStage(this::evaluateLines);
+        } catch (Throwable e) {
+            evaluationFailure = e;
+        }
+        // the first failure that is not another stage giving up is the cause
+        Throwable failure = firstFailure(firstFailure(firstFailure(stageFailure(reader), stageFailure(compiler)),
+                evaluationFailure), stageFailure(writer));
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+        return evaluatedLinesCount;
+    }
+
+
+    /*
+     * reads the input in big blocks and splits it into lines , a line longer than the buffer makes it grow
+     * */
+    private void readLines(Path input) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            Chunk chunk = new Chunk();
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(buffer) < 0;
+                byte[] bytes = buffer.array();
+                int lineStart = 0;
+                for (int position = 0; position < buffer.position(); position++) {
+                    if (bytes[position] == '\n') {
+                        chunk = addLine(chunk, bytes, lineStart, position);
+                        lineStart = position + 1;
+                    }
+                }
+                if (endOfInput) {
+                    if (lineStart < buffer.position()) {
+                        // the last line has no line break
+                        chunk = addLine(chunk, bytes, lineStart, buffer.position());
+                    }
+                } else if (lineStart == 0 && !buffer.hasRemaining()) {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put((ByteBuffer) buffer.flip());
+                } else {
+                    // keeps the start of the line that goes on in the next block
+                    buffer.limit(buffer.position()).position(lineStart);
+                    buffer.compact();
+                }
+            }
+            if (chunk.size > 0) {
+                put(readChunks, chunk);
+            }
+        }
+        put(readChunks, Chunk.END);
+    }
+
+    private Chunk addLine(Chunk chunk, byte[] bytes, int lineStart, int lineEnd) throws InterruptedException {
+        if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        chunk.lines[chunk.size++] = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8).trim();
+        if (chunk.size == LINES_PER_CHUNK) {
+            put(readChunks, chunk);
+            return new Chunk();
+        }
+        return chunk;
+    }
+
+
+    /*
+     * compiles the lines , a line that can't be compiled gets its error
+     * */
+    private void compileLines() throws InterruptedException {
+        for (Chunk chunk = take(readChunks); chunk != Chunk.END; chunk = take(readChunks)) {
+            for (int lineIndex = 0; lineIndex < chunk.size; lineIndex++) {
+                String line = chunk.lines[lineIndex];
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith(":")) {
+                    chunk.errors[lineIndex] = "commands can't be used in a file: " + line;
+                    continue;
+                }
+                try {
+                    chunk.expressions[lineIndex] = calc.compileExpression(line);
+                } catch (Exception e) {
+                    chunk.errors[lineIndex] = e.getMessage();
+                }
+            }
+            put(compiledChunks, chunk);
+        }
+        put(compiledChunks, Chunk.END);
+    }
+
+
+    /*
+     * evaluates the compiled lines one after the other with the bindings
+     * */
+    private void evaluateLines() throws InterruptedException {
+        for (Chunk chunk = take(compiledChunks); chunk != Chunk.END; chunk = take(compiledChunks)) {
+            for (int lineIndex = 0; lineIndex < chunk.size; lineIndex++) {
+                if (chunk.expressions[lineIndex] == null) {
+                    continue;
+                }
+                try {
+                    chunk.values[lineIndex] = calc.evaluate(chunk.expressions[lineIndex], bindings);
+                } catch (Exception e) {
+                    chunk.errors[lineIndex] = e.getMessage();
+                }
+                evaluatedLinesCount++;
+            }
+            put(evaluatedChunks, chunk);
+        }
+        put(evaluatedChunks, Chunk.END);
+    }
+
+
+    /*
+     * formats the results , one line per line that isn't blank , and writes them in big blocks
+     * */
+    private void writeResults(WritableByteChannel output) throws IOException, InterruptedException {
+        StringBuilder results = new StringBuilder(WRITE_BUFFER_SIZE + LINES_PER_CHUNK * 32);
+        for (Chunk chunk = take(evaluatedChunks); chunk != Chunk.END; chunk = take(evaluatedChunks)) {
+            for (int lineIndex = 0; lineIndex < chunk.size; lineIndex++) {
+                if (chunk.errors[lineIndex] != null) {
+                    results.append(ERROR_PREFIX).append(chunk.errors[lineIndex]).append('\n');
+                } else if (chunk.expressions[lineIndex] != null) {
+                    results.append(chunk.values[lineIndex]).append('\n');
+                }
+            }
+            if (results.length() >= WRITE_BUFFER_SIZE) {
+                writeFully(output, results);
+            }
+        }
+        writeFully(output, results);
+    }
+
+    private static void writeFully(WritableByteChannel output, StringBuilder results) throws IOException {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(results));
+        while (bytes.hasRemaining()) {
+            output.write(bytes);
+        }
+        results.setLength(0);
+    }
+
+
+    private void put(BlockingQueue<Chunk> queue, Chunk chunk) throws InterruptedException {
+        while (!queue.offer(chunk, FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (failed) {
+                throw new CancellationException("another stage failed");
+            }
+        }
+    }
+
+    private Chunk take(BlockingQueue<Chunk> queue) throws InterruptedException {
+        Chunk chunk;
+        while ((chunk = queue.poll(FAILURE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            if (failed) {
+                throw new CancellationException("another stage failed");
+            }
+        }
+        return chunk;
+    }
+
+
+    private FutureTask<Void> startStage(String name, Stage stage) {
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            runStage(stage);
+            return null;
+        });
+        Thread thread = new Thread(task, "calc-file-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    private void runStage(Stage stage) throws Exception {
+        try {
+            stage.run();
+        } catch (Throwable e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private static Throwable stageFailure(FutureTask<Void> task) {
+        try {
+            task.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+    }
+
+    private static Throwable firstFailure(Throwable failure, Throwable otherFailure) {
+        return failure == null || failure instanceof CancellationException && otherFailure != null ? otherFailure : failure;
+    }
+
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+
+    /*
+     * a block of consecutive lines , with what every stage found out about them
+     * */
+    private static final class Chunk {
+
+        // marks the end of the lines
+        static final Chunk END = new Chunk();
+
+        final String[] lines = new String[LINES_PER_CHUNK];
+        final CompiledExpression[] expressions = new CompiledExpression[LINES_PER_CHUNK];
+        final double[] values = new double[LINES_PER_CHUNK];
+        final String[] errors = new String[LINES_PER_CHUNK];
+        int size;
+    }
+}
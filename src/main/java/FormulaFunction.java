@@ -0,0 +1,14 @@
+package main.java;
+
+/**
+ * A compiled expression seen as a function of its variables.
+ * <p>
+ * The values of the variables are passed in the order of
+ * {@link CompiledExpression#getVariableNames()}. Variables bound by the
+ * expression are written back into the same array.
+ */
+public interface FormulaFunction {
+
+    double applyAsDouble(double[] variables);
+
+}
@@ -0,0 +1,328 @@
+package main.java;
+
+import main.java.exceptions.UnknownCharacterException;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/**
+ * Spreadsheet style bindings: a variable is bound to a formula instead of a number,
+ * and keeps following the variables the formula reads.
+ * <p>
+ * The formulas are kept in a dependency graph, with an edge from every variable a
+ * formula reads to the variable it defines. Changing a variable only marks the formulas
+ * downstream of it as stale, and a stale formula is recomputed when its value is read,
+ * after the stale formulas it reads, so the work done for a change depends on the part
+ * of the graph it affects and not on the number of formulas. Definitions that would make
+ * a formula depend on itself are rejected.
+ * <p>
+ * A formula graph is not thread safe.
+ */
+public final class FormulaGraph {
+
+    private final Calc calc;
+    private final Map<String, FormulaNode> nodes = new HashMap<>();
+    private final Tokenizer tokenizer;
+
+    private long recomputedFormulasCount;
+
+    /**
+     * @param calc the calculator compiling the formulas, its expression cache and settings are used
+     */
+    public FormulaGraph(Calc calc) {
+        this.calc = calc;
+        this.tokenizer = new Tokenizer(calc.functions());
+    }
+
+    public FormulaGraph() {
+        this(new Calc());
+    }
+
+
+    /**
+     * Evaluates a statement. A statement of the form <code>id '=' expr</code> binds the
+     * variable to the whole formula on the right (so <code>y = x*2</code> follows x), any
+     * other expression is evaluated with the current values of the graph.
+     *
+     * @param statement a binding or a well-formed arithmetic expression
+     * @return the value of the statement
+     */
+    public double eval(String statement) {
+        PackedTokens tokens;
+        try {
+            tokens = tokenizer.tokenize(statement);
+        } catch (UnknownCharacterException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
+        if (tokens.size() > 2 && tokens.getType(0) == TokenType.VARIABLE
+                && tokens.getType(1) == TokenType.BINARY_OPERATOR && tokens.getSymbol(1) == Constants.BINDING_CHARACTER) {
+            String variableName = tokens.getText(0);
+            define(variableName, statement.substring(tokens.getEnd(1)));
+            return get(variableName);
+        }
+        CompiledExpression expression = calc.compile(statement);
+        rejectBindings(expression);
+        return evaluate(expression, nodesOf(expression));
+    }
+
+
+    /**
+     * Binds a variable to a formula, the formulas reading the variable are recomputed
+     * when they are read next.
+     *
+     * @param variableName the variable
+     * @param formula      well-formed arithmetic expression that doesn't bind variables
+     */
+    public void define(String variableName, String formula) {
+        CompiledExpression expression = calc.compile(formula);
+        rejectBindings(expression);
+        FormulaNode node = nodeOf(variableName);
+        FormulaNode[] dependencies = nodesOf(expression);
+        if (readsDownstreamNode(node, dependencies)) {
+            throw new UnsupportedOperationException("defining " + variableName + " as " + formula
+                    + " makes it depend on itself");
+        }
+        unlinkDependencies(node);
+        node.formula = expression;
+        node.dependencies = dependencies;
+        node.variables = new double[dependencies.length];
+        for (FormulaNode dependency : dependencies) {
+            dependency.dependents.add(node);
+        }
+        node.defined = true;
+        markStale(node);
+    }
+
+
+    /**
+     * Binds a variable to a number, the formulas reading the variable are recomputed
+     * when they are read next.
+     *
+     * @param variableName the variable
+     * @param value        its value
+     */
+    public void assign(String variableName, double value) {
+        FormulaNode node = nodeOf(variableName);
+        unlinkDependencies(node);
+        node.formula = null;
+        node.dependencies = new FormulaNode[0];
+        node.defined = true;
+        markStale(node);
+        node.value = value;
+        node.stale = false;
+    }
+
+
+    /**
+     * Returns the value of a variable, recomputing the stale formulas it depends on.
+     *
+     * @param variableName the variable
+     * @return its value
+     */
+    public double get(String variableName) {
+        FormulaNode node = nodes.get(variableName);
+        if (node == null || !node.defined) {
+            throw new UnsupportedOperationException(variableName + " is not defined");
+        }
+        recompute(node);
+        return node.value;
+    }
+
+
+    /**
+     * @return the formula bound to the variable, or null if it is bound to a number or not defined
+     */
+    public String getFormula(String variableName) {
+        FormulaNode node = nodes.get(variableName);
+        return node == null || node.formula == null ? null : node.formula.getExpression();
+    }
+
+
+    /**
+     * @return the values of all the defined variables, recomputing the stale ones
+     */
+    public Map<String, Double> values() {
+        Map<String, Double> values = new TreeMap<>();
+        for (FormulaNode node : nodes.values()) {
+            if (node.defined) {
+                values.put(node.name, get(node.name));
+            }
+        }
+        return values;
+    }
+
+
+    /**
+     * @return the number of times a formula was evaluated because it was stale
+     */
+    public long getRecomputedFormulasCount() {
+        return recomputedFormulasCount;
+    }
+
+
+    /*
+     * recomputes the stale formulas the node depends on , then the node , every formula after the formulas it reads
+     * */
+    private void recompute(FormulaNode node) {
+        if (!node.stale) {
+            return;
+        }
+        // an explicit stack , chains of formulas can be deeper than the java stack
+        Deque<FormulaNode> pendingNodes = new ArrayDeque<>();
+        pendingNodes.push(node);
+        while (!pendingNodes.isEmpty()) {
+            FormulaNode pendingNode = pendingNodes.peek();
+            if (!pendingNode.stale) {
+                pendingNodes.pop();
+                continue;
+            }
+            boolean dependenciesReady = true;
+            for (FormulaNode dependency : pendingNode.dependencies) {
+                if (!dependency.defined) {
+                    throw new UnsupportedOperationException(dependency.name + " is not defined");
+                }
+                if (dependency.stale) {
+                    pendingNodes.push(dependency);
+                    dependenciesReady = false;
+                }
+            }
+            if (dependenciesReady) {
+                for (int dependencyIndex = 0; dependencyIndex < pendingNode.dependencies.length; dependencyIndex++) {
+                    pendingNode.variables[dependencyIndex] = pendingNode.dependencies[dependencyIndex].value;
+                }
+                pendingNode.value = pendingNode.formula.evaluate(pendingNode.variables);
+                pendingNode.stale = false;
+                recomputedFormulasCount++;
+                pendingNodes.pop();
+            }
+        }
+    }
+
+
+    /*
+     * evaluates an expression that is not part of the graph with the values of the given nodes
+     * */
+    private double evaluate(CompiledExpression expression, FormulaNode[] dependencies) {
+        double[] variables = new double[dependencies.length];
+        for (int dependencyIndex = 0; dependencyIndex < dependencies.length; dependencyIndex++) {
+            if (!dependencies[dependencyIndex].defined) {
+                throw new UnsupportedOperationException(dependencies[dependencyIndex].name + " is not defined");
+            }
+            recompute(dependencies[dependencyIndex]);
+            variables[dependencyIndex] = dependencies[dependencyIndex].value;
+        }
+        return expression.evaluate(variables);
+    }
+
+
+    /*
+     * marks the node and everything downstream of it as stale , nodes already stale are not visited again
+     * since everything downstream of them is stale too
+     * */
+    private void markStale(FormulaNode node) {
+        Deque<FormulaNode> pendingNodes = new ArrayDeque<>();
+        node.stale = true;
+        pendingNodes.push(node);
+        while (!pendingNodes.isEmpty()) {
+            for (FormulaNode dependent : pendingNodes.pop().dependents) {
+                if (!dependent.stale) {
+                    dependent.stale = true;
+                    pendingNodes.push(dependent);
+                }
+            }
+        }
+    }
+
+
+    /*
+     * returns true if one of the given dependencies is the node or is downstream of it , a formula
+     * of the node reading them would depend on itself
+     * */
+    private boolean readsDownstreamNode(FormulaNode node, FormulaNode[] dependencies) {
+        Set<FormulaNode> dependenciesSet = new HashSet<>(Arrays.asList(dependencies));
+        Set<FormulaNode> visitedNodes = new HashSet<>();
+        Deque<FormulaNode> pendingNodes = new ArrayDeque<>();
+        pendingNodes.push(node);
+        while (!pendingNodes.isEmpty()) {
+            FormulaNode pendingNode = pendingNodes.pop();
+            if (dependenciesSet.contains(pendingNode)) {
+                return true;
+            }
+            for (FormulaNode dependent : pendingNode.dependents) {
+                if (visitedNodes.add(dependent)) {
+                    pendingNodes.push(dependent);
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private void unlinkDependencies(FormulaNode node) {
+        if (node.dependencies != null) {
+            for (FormulaNode dependency : node.dependencies) {
+                dependency.dependents.remove(node);
+            }
+        }
+    }
+
+
+    /*
+     * returns the nodes of the variables of the expression , in the order of its variables
+     * */
+    private FormulaNode[] nodesOf(CompiledExpression expression) {
+        List<String> variableNames = expression.getVariableNames();
+        FormulaNode[] variableNodes = new FormulaNode[variableNames.size()];
+        for (int variableIndex = 0; variableIndex < variableNodes.length; variableIndex++) {
+            variableNodes[variableIndex] = nodeOf(variableNames.get(variableIndex));
+        }
+        return variableNodes;
+    }
+
+    /*
+     * returns the node of the variable , a variable read before it is defined gets a node that is not defined
+     * */
+    private FormulaNode nodeOf(String variableName) {
+        return nodes.computeIfAbsent(variableName, FormulaNode::new);
+    }
+
+
+    private static void rejectBindings(CompiledExpression expression) {
+        for (int variableIndex = 0; variableIndex < expression.getVariableNames().size(); variableIndex++) {
+            if (expression.isBoundVariable(variableIndex)) {
+                throw new UnsupportedOperationException("a formula can't bind " + expression.getVariableNames().get(variableIndex));
+            }
+        }
+    }
+
+
+    /*
+     * a variable of the graph , with the formula computing it and the edges to the variables it reads
+     * and the formulas reading it
+     * */
+    private static final class FormulaNode {
+
+        private final String name;
+        private final Set<FormulaNode> dependents = new LinkedHashSet<>();
+        private FormulaNode[] dependencies;
+        private CompiledExpression formula;
+        // the values of the dependencies , in the order of the variables of the formula
+        private double[] variables;
+        private double value;
+        private boolean defined;
+        private boolean stale;
+
+        FormulaNode(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package main.java;
+
+import main.java.exceptions.DivisionByZeroException;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic shared by the interpreter and the classes generated by the
+ * bytecode backend. It is public only because generated classes live in
+ * their own class loader and can't see package private methods.
+ */
+public final class FormulaRuntime {
+
+    // 10^12 , numbers smaller than this bound times 10^12 are still exact integers when scaled
+    private static final double SCALE = 1e12;
+    private static final double EXACTLY_SCALABLE_BOUND = (1L << 53) / SCALE;
+    private static final double EXACT_INTEGER_BOUND = 1L << 53;
+
+    // the functions a generated class calls , handed to its static initializer while it is loaded
+    private static final ThreadLocal<MethodHandle[]> PENDING_FUNCTIONS = new ThreadLocal<>();
+
+    private FormulaRuntime() {
+    }
+
+    /*
+     * only takes the first 12 digits after the decimal point of the given number , the result is the
+     * same as rounding with BigDecimal.
+     *
+     * most numbers (integers and short decimals) already have at most 12 digits after the decimal
+     * point , they are returned as they are without allocating , only the other numbers are
+     * rounded through BigDecimal
+     * */
+    public static double scaleNumber(double number) {
+        if (number == 0) {
+            // BigDecimal has no negative zero
+            return 0.0;
+        }
+        if (Math.abs(number) < EXACT_INTEGER_BOUND && Math.rint(number) == number) {
+            return number;
+        }
+        if (Math.abs(number) < EXACTLY_SCALABLE_BOUND && Math.rint(number * SCALE) / SCALE == number) {
+            return number;
+        }
+        return BigDecimal.valueOf(number)
+                .setScale(Constants.NUMBER_OF_DIGITS_AFTER_DECEMAL_POINT, RoundingMode.HALF_UP)
+                .doubleValue();
+    }
+
+    /*
+     * rounds the given number to 12 digits after the decimal point (half away from zero) using double
+     * arithmetic only , it can differ from scaleNumber in the last bit of the result.
+     *
+     * numbers too big to be scaled exactly keep all their digits , NaN and infinities are returned as they are
+     * */
+    public static double roundNumber(double number) {
+        if (!(Math.abs(number) < EXACTLY_SCALABLE_BOUND)) {
+            return number;
+        }
+        double roundedNumber = Math.floor(Math.abs(number) * SCALE + 0.5) / SCALE;
+        // rounding to zero gives a positive zero , like scaleNumber
+        return number < 0 && roundedNumber != 0 ? -roundedNumber : roundedNumber;
+    }
+
+    /*
+     * divides the given numbers , a division by zero is reported at the given position of the expression
+     * */
+    public static double divide(double dividend, double divisor, int position) {
+        if (divisor == 0) {
+            throw new DivisionByZeroException(position);
+        }
+        return dividend / divisor;
+    }
+
+    /*
+     * returns a function of the class being loaded by this thread , its static initializer keeps them in
+     * static final fields so the JIT can inline the calls
+     * */
+    public static MethodHandle pendingFunction(int functionIndex) {
+        return PENDING_FUNCTIONS.get()[functionIndex];
+    }
+
+    /*
+     * gives the functions of the class about to be loaded to its static initializer , null once it is loaded
+     * */
+    static void setPendingFunctions(MethodHandle[] functions) {
+        if (functions == null) {
+            PENDING_FUNCTIONS.remove();
+        } else {
+            PENDING_FUNCTIONS.set(functions);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Many formulas over the same variables, compiled together and evaluated in one pass.
+ * <p>
+ * The formulas are merged into a single graph where identical subterms are the same node,
+ * so a subterm shared by several formulas (like <code>sqrt(a*a+b*b)</code>) is computed once
+ * per evaluation instead of once per formula. Operands of additions and multiplications are
+ * put in a fixed order first, so <code>a+b</code> and <code>b+a</code> are the same node too.
+ * Calls of a registered function are merged only when the function is pure.
+ * <p>
+ * The formulas can't bind variables. A formula set is immutable and can be evaluated by
+ * several threads at the same time.
+ */
+public final class FormulaSet {
+
+    private final String[] formulas;
+    private final String[] variableNames;
+    private final RoundingPolicy roundingPolicy;
+
+    // the nodes of the graph , every node comes after its operands. a variable node has the
+    // position of its variable as first operand , a number node has no operand
+    private final OpCode[] opCodes;
+    private final double[] numbers;
+    private final int[] firstOperands;
+    private final int[] secondOperands;
+    // the function and the argument nodes of every call node
+    private final RegisteredFunction[] functions;
+    private final int[][] arguments;
+    private final int maxArity;
+
+    // the node computing every formula
+    private final int[] formulaNodes;
+    private final int compiledOperationCount;
+
+    /**
+     * @param calc     the calculator compiling the formulas, its expression cache and rounding policy are used
+     * @param formulas well-formed arithmetic expressions that don't bind variables
+     */
+    public FormulaSet(Calc calc, List<String> formulas) {
+        this.formulas = formulas.toArray(new String[0]);
+        this.roundingPolicy = calc.getRoundingPolicy();
+        GraphBuilder builder = new GraphBuilder();
+        this.formulaNodes = new int[this.formulas.length];
+        int operationCount = 0;
+        for (int formulaIndex = 0; formulaIndex < this.formulas.length; formulaIndex++) {
+            CompiledExpression expression = calc.compile(this.formulas[formulaIndex]).withRoundingPolicy(roundingPolicy);
+            formulaNodes[formulaIndex] = builder.add(expression);
+            operationCount += expression.getOperationCount();
+        }
+        this.compiledOperationCount = operationCount;
+        this.variableNames = builder.variableIndexes.keySet().toArray(new String[0]);
+        int nodeCount = builder.opCodes.size();
+        this.opCodes = builder.opCodes.toArray(new OpCode[0]);
+        this.numbers = new double[nodeCount];
+        this.firstOperands = new int[nodeCount];
+        this.secondOperands = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            numbers[node] = builder.numbers.get(node);
+            firstOperands[node] = builder.firstOperands.get(node);
+            secondOperands[node] = builder.secondOperands.get(node);
+        }
+        this.functions = builder.functions.toArray(new RegisteredFunction[0]);
+        this.arguments = builder.arguments.toArray(new int[0][]);
+        int maxArity = 0;
+        for (RegisteredFunction function : functions) {
+            maxArity = function == null ? maxArity : Math.max(maxArity, function.getArity());
+        }
+        this.maxArity = maxArity;
+    }
+
+    public FormulaSet(List<String> formulas) {
+        this(new Calc(), formulas);
+    }
+
+
+    /**
+     * Evaluates every formula with the given bindings.
+     *
+     * @param bindings the values of the variables
+     * @return the value of every formula, in the order the formulas were given
+     */
+    public double[] evaluate(Map<String, Double> bindings) {
+        double[] variables = new double[variableNames.length];
+        for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+            Double variableValue = bindings.get(variableNames[variableIndex]);
+            if (variableValue == null) {
+                throw new UnsupportedOperationException(variableNames[variableIndex] + " is not defined");
+            }
+            variables[variableIndex] = variableValue;
+        }
+        double[] outputs = new double[formulas.length];
+        if (!evaluate(variables, outputs).isEmpty()) {
+            throw new UnsupportedOperationException("Division By Zero Exception");
+        }
+        return outputs;
+    }
+
+    /**
+     * Evaluates every formula with the given values of the variables, in the order of
+     * {@link #getVariableNames()}. Every node of the graph is computed once.
+     * <p>
+     * A division by zero doesn't stop the evaluation, the value of the formulas it is
+     * part of is NaN and they are reported in the returned set.
+     *
+     * @param variables the values of the variables
+     * @param outputs   the value of every formula, in the order the formulas were given
+     * @return the positions of the formulas where a division by zero happened
+     */
+    public BitSet evaluate(double[] variables, double[] outputs) {
+        if (variables.length < variableNames.length) {
+            throw new IllegalArgumentException("expected " + variableNames.length + " variables but got " + variables.length);
+        }
+        boolean roundEveryStep = roundingPolicy == RoundingPolicy.EVERY_STEP;
+        boolean divisionByZero = false;
+        EvaluationContext context = EvaluationContext.acquire();
+        try {
+            double[] values = context.numbersStack(opCodes.length);
+            double[] argumentValues = maxArity == 0 ? null : new double[maxArity];
+            for (int node = 0; node < opCodes.length; node++) {
+                double value;
+                switch (opCodes[node]) {
+                    case PUSH_NUMBER:
+                        values[node] = numbers[node];
+                        continue;
+                    case LOAD_VARIABLE:
+                        value = variables[firstOperands[node]];
+                        break;
+                    case ADD:
+                        value = values[firstOperands[node]] + values[secondOperands[node]];
+                        break;
+                    case SUBTRACT:
+                        value = values[firstOperands[node]] - values[secondOperands[node]];
+                        break;
+                    case MULTIPLY:
+                        value = values[firstOperands[node]] * values[secondOperands[node]];
+                        break;
+                    case DIVIDE:
+                        if (values[secondOperands[node]] == 0) {
+                            divisionByZero = true;
+                            // the value is thrown away , 0 keeps the rounding of the next steps away from infinity
+                            value = 0;
+                        } else {
+                            value = values[firstOperands[node]] / values[secondOperands[node]];
+                        }
+                        break;
+                    case SQRT:
+                        value = Math.sqrt(values[firstOperands[node]]);
+                        break;
+                    case LOG:
+                        value = Math.log(values[firstOperands[node]]);
+                        break;
+                    case SIN:
+                        value = Math.sin(values[firstOperands[node]]);
+                        break;
+                    case CALL:
+                        int[] argumentNodes = arguments[node];
+                        for (int argumentIndex = 0; argumentIndex < argumentNodes.length; argumentIndex++) {
+                            argumentValues[argumentIndex] = values[argumentNodes[argumentIndex]];
+                        }
+                        value = functions[node].invoke(argumentValues, 0);
+                        break;
+                    default:
+                        value = Math.cos(values[firstOperands[node]]);
+                }
+                values[node] = roundEveryStep ? FormulaRuntime.scaleNumber(value) : value;
+            }
+            for (int formulaIndex = 0; formulaIndex < formulas.length; formulaIndex++) {
+                outputs[formulaIndex] = roundResult(values[formulaNodes[formulaIndex]]);
+            }
+            return divisionByZero ? failedFormulas(values, outputs) : new BitSet();
+        } finally {
+            context.release();
+        }
+    }
+
+
+    /*
+     * finds the formulas depending on a division by zero and sets their value to NaN , only done
+     * after a division by zero happened
+     * */
+    private BitSet failedFormulas(double[] values, double[] outputs) {
+        boolean[] failedNodes = new boolean[opCodes.length];
+        for (int node = 0; node < opCodes.length; node++) {
+            switch (opCodes[node]) {
+                case PUSH_NUMBER:
+                case LOAD_VARIABLE:
+                    break;
+                case DIVIDE:
+                    failedNodes[node] = values[secondOperands[node]] == 0;
+                    // fall through , the operands can fail too
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                    failedNodes[node] |= failedNodes[firstOperands[node]] || failedNodes[secondOperands[node]];
+                    break;
+                case CALL:
+                    for (int argumentNode : arguments[node]) {
+                        failedNodes[node] |= failedNodes[argumentNode];
+                    }
+                    break;
+                default:
+                    failedNodes[node] = failedNodes[firstOperands[node]];
+            }
+        }
+        BitSet failedFormulas = new BitSet();
+        for (int formulaIndex = 0; formulaIndex < formulas.length; formulaIndex++) {
+            if (failedNodes[formulaNodes[formulaIndex]]) {
+                failedFormulas.set(formulaIndex);
+                outputs[formulaIndex] = Double.NaN;
+            }
+        }
+        return failedFormulas;
+    }
+
+
+    private double roundResult(double number) {
+        return roundingPolicy == RoundingPolicy.FINAL_RESULT ? FormulaRuntime.roundNumber(number) : number;
+    }
+
+
+    /**
+     * @return the formulas of the set, in the order they were given
+     */
+    public List<String> getFormulas() {
+        return Collections.unmodifiableList(Arrays.asList(formulas));
+    }
+
+    /**
+     * @return the names of the variables the formulas read, in the order they appear in
+     */
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(variableNames));
+    }
+
+    /**
+     * @return the number of operations computed by one evaluation of the set
+     */
+    public int getNodeCount() {
+        return opCodes.length;
+    }
+
+    /**
+     * @return the number of operations computed when every formula is evaluated on its own
+     */
+    public int getCompiledOperationCount() {
+        return compiledOperationCount;
+    }
+
+    /**
+     * @return the rounding policy the formulas were compiled with
+     */
+    public RoundingPolicy getRoundingPolicy() {
+        return roundingPolicy;
+    }
+
+
+    @Override
+    public String toString() {
+        return formulas.length + " formulas, " + opCodes.length + " nodes instead of " + compiledOperationCount
+                + " operations";
+    }
+
+
+    /*
+     * merges the instructions of the formulas into the graph , a node is only added when
+     * there isn't already a node with the same operation and operands
+     * */
+    private final class GraphBuilder {
+
+        private final List<OpCode> opCodes = new ArrayList<>();
+        private final List<Double> numbers = new ArrayList<>();
+        private final List<Integer> firstOperands = new ArrayList<>();
+        private final List<Integer> secondOperands = new ArrayList<>();
+        private final List<RegisteredFunction> functions = new ArrayList<>();
+        private final List<int[]> arguments = new ArrayList<>();
+        private final Map<NodeKey, Integer> nodes = new HashMap<>();
+        private final Map<String, Integer> variableIndexes = new LinkedHashMap<>();
+
+        /*
+         * adds the nodes of the expression , returns the node computing it
+         * */
+        int add(CompiledExpression expression) {
+            List<String> expressionVariables = expression.getVariableNames();
+            for (int variableIndex = 0; variableIndex < expressionVariables.size(); variableIndex++) {
+                if (expression.isBoundVariable(variableIndex)) {
+                    throw new UnsupportedOperationException("a formula of a set can't bind "
+                            + expressionVariables.get(variableIndex));
+                }
+            }
+            // the nodes computed so far by the expression , in the order its numbers stack would hold them
+            int[] nodesStack = new int[expression.getOperationCount()];
+            int top = -1;
+            for (Instruction instruction : expression.getInstructions()) {
+                switch (instruction.getOpCode()) {
+                    case PUSH_NUMBER:
+                        double number = roundingPolicy == RoundingPolicy.EVERY_STEP
+                                ? FormulaRuntime.scaleNumber(instruction.getNumber()) : instruction.getNumber();
+                        nodesStack[++top] = node(OpCode.PUSH_NUMBER, number, -1, -1);
+                        break;
+                    case LOAD_VARIABLE:
+                        String variableName = instruction.getVariableName();
+                        Integer variableIndex = variableIndexes.get(variableName);
+                        if (variableIndex == null) {
+                            variableIndex = variableIndexes.size();
+                            variableIndexes.put(variableName, variableIndex);
+                        }
+                        nodesStack[++top] = node(OpCode.LOAD_VARIABLE, 0, variableIndex, -1);
+                        break;
+                    case SWAP:
+                        // formulas don't bind variables , so the order the operands are computed in doesn't matter
+                        int lastSeenNode = nodesStack[top];
+                        nodesStack[top] = nodesStack[top - 1];
+                        nodesStack[top - 1] = lastSeenNode;
+                        break;
+                    case ADD:
+                    case MULTIPLY:
+                        top--;
+                        nodesStack[top] = node(instruction.getOpCode(), 0, Math.min(nodesStack[top], nodesStack[top + 1]),
+                                Math.max(nodesStack[top], nodesStack[top + 1]));
+                        break;
+                    case SUBTRACT:
+                    case DIVIDE:
+                        top--;
+                        nodesStack[top] = node(instruction.getOpCode(), 0, nodesStack[top], nodesStack[top + 1]);
+                        break;
+                    case CALL:
+                        RegisteredFunction function = instruction.getFunction();
+                        top -= function.getArity() - 1;
+                        nodesStack[top] = call(function, Arrays.copyOfRange(nodesStack, top, top + function.getArity()));
+                        break;
+                    default:
+                        nodesStack[top] = node(instruction.getOpCode(), 0, nodesStack[top], -1);
+                }
+            }
+            if (top != 0) {
+                throw new UnsupportedOperationException("your expression is not valid " + expression.getExpression());
+            }
+            return nodesStack[top];
+        }
+
+        private int node(OpCode opCode, double number, int firstOperand, int secondOperand) {
+            NodeKey key = new NodeKey(opCode, Double.doubleToRawLongBits(number), firstOperand, secondOperand, null, null);
+            Integer node = nodes.get(key);
+            if (node == null) {
+                node = addNode(opCode, number, firstOperand, secondOperand, null, null);
+                nodes.put(key, node);
+            }
+            return node;
+        }
+
+        /*
+         * the calls of an impure function are never merged , every call is made
+         * */
+        private int call(RegisteredFunction function, int[] argumentNodes) {
+            if (!function.isPure()) {
+                return addNode(OpCode.CALL, 0, -1, -1, function, argumentNodes);
+            }
+            NodeKey key = new NodeKey(OpCode.CALL, 0, -1, -1, function, argumentNodes);
+            Integer node = nodes.get(key);
+            if (node == null) {
+                node = addNode(OpCode.CALL, 0, -1, -1, function, argumentNodes);
+                nodes.put(key, node);
+            }
+            return node;
+        }
+
+        private int addNode(OpCode opCode, double number, int firstOperand, int secondOperand,
+                            RegisteredFunction function, int[] argumentNodes) {
+            opCodes.add(opCode);
+            numbers.add(number);
+            firstOperands.add(firstOperand);
+            secondOperands.add(secondOperand);
+            functions.add(function);
+            arguments.add(argumentNodes);
+            return opCodes.size() - 1;
+        }
+    }
+
+
+    /*
+     * what makes two nodes the same : the operation , the number and the operands , or the function and
+     * the arguments of a call
+     * */
+    private static final class NodeKey {
+
+        private final OpCode opCode;
+        private final long numberBits;
+        private final int firstOperand;
+        private final int secondOperand;
+        private final RegisteredFunction function;
+        private final int[] argumentNodes;
+
+        NodeKey(OpCode opCode, long numberBits, int firstOperand, int secondOperand,
+                RegisteredFunction function, int[] argumentNodes) {
+            this.opCode = opCode;
+            this.numberBits = numberBits;
+            this.firstOperand = firstOperand;
+            this.secondOperand = secondOperand;
+            this.function = function;
+            this.argumentNodes = argumentNodes;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof NodeKey)) {
+                return false;
+            }
+            NodeKey otherKey = (NodeKey) other;
+            return opCode == otherKey.opCode && numberBits == otherKey.numberBits
+                    && firstOperand == otherKey.firstOperand && secondOperand == otherKey.secondOperand
+                    && function == otherKey.function && Arrays.equals(argumentNodes, otherKey.argumentNodes);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = opCode.hashCode();
+            hash = 31 * hash + Long.hashCode(numberBits);
+            hash = 31 * hash + firstOperand;
+            hash = 31 * hash + Arrays.hashCode(argumentNodes);
+            return 31 * hash + secondOperand;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package main.java;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleUnaryOperator;
+
+
+/**
+ * The values a pure function of one argument was called with and returned, see
+ * {@link FunctionRegistry#memoize(String, int)}.
+ * <p>
+ * The arguments are kept by their bits in open addressing tables of primitive longs and
+ * doubles, so nothing is boxed. The cache holds a bounded number of values: once it is full,
+ * a new value replaces one that wasn't read since the clock hand last went over it (the clock
+ * approximation of LRU). The cache is split in segments with their own lock, which a value
+ * found in the cache doesn't take: it is read optimistically and read again under the lock only
+ * if a value was added at the same time. The function is called outside of the locks.
+ * <p>
+ * The hits are counted without a lock, a few hits of calls made at the same time by several
+ * threads can be missing from the statistics.
+ */
+public final class FunctionCache implements DoubleUnaryOperator {
+
+    // a segment per this many values , up to MAX_SEGMENTS_COUNT. the arguments are spread over the segments by
+    // their hash , a segment can be full while the others are not , which is negligible with many values per segment
+    private static final int VALUES_PER_SEGMENT = 4096;
+    private static final int MAX_SEGMENTS_COUNT = 16;
+
+    private final DoubleUnaryOperator function;
+    private final int capacity;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    FunctionCache(DoubleUnaryOperator function, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("a cache holds at least one value , not " + capacity);
+        }
+        this.function = function;
+        this.capacity = capacity;
+        int segmentsCount = 1;
+        while (segmentsCount < MAX_SEGMENTS_COUNT && 2 * segmentsCount * VALUES_PER_SEGMENT <= capacity) {
+            segmentsCount *= 2;
+        }
+        this.segments = new Segment[segmentsCount];
+        for (int segmentIndex = 0; segmentIndex < segmentsCount; segmentIndex++) {
+            // the first segments take the values that don't divide evenly
+            segments[segmentIndex] = new Segment(capacity / segmentsCount + (segmentIndex < capacity % segmentsCount ? 1 : 0));
+        }
+        this.segmentMask = segmentsCount - 1;
+    }
+
+
+    /**
+     * Returns the value of the function for the given argument, from the cache when it was
+     * computed before.
+     *
+     * @param argument the argument of the function
+     * @return the value of the function
+     */
+    @Override
+    public double applyAsDouble(double argument) {
+        // -0 and 0 are different arguments , sin(-0) is -0
+        long key = Double.doubleToRawLongBits(argument);
+        long hash = hash(key);
+        Segment segment = segments[(int) (hash >>> 48) & segmentMask];
+        long stamp = segment.lock.tryOptimisticRead();
+        int slot = segment.find(key, hash);
+        double value = slot < 0 ? 0 : segment.values[slot];
+        if (!segment.lock.validate(stamp)) {
+            stamp = segment.lock.readLock();
+            try {
+                slot = segment.find(key, hash);
+                value = slot < 0 ? 0 : segment.values[slot];
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        if (slot >= 0) {
+            segment.hitCount++;
+            segment.referenced[slot] = true;
+            return value;
+        }
+        value = function.applyAsDouble(argument);
+        stamp = segment.lock.writeLock();
+        try {
+            segment.missCount++;
+            segment.put(key, hash, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        return value;
+    }
+
+
+    /**
+     * @return the number of calls answered from the cache
+     */
+    public long getHitCount() {
+        long hitCount = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            hitCount += segment.hitCount;
+            segment.lock.unlockRead(stamp);
+        }
+        return hitCount;
+    }
+
+    /**
+     * @return the number of calls that called the function
+     */
+    public long getMissCount() {
+        long missCount = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            missCount += segment.missCount;
+            segment.lock.unlockRead(stamp);
+        }
+        return missCount;
+    }
+
+    /**
+     * @return the number of values dropped to make room for new ones
+     */
+    public long getEvictionCount() {
+        long evictionCount = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            evictionCount += segment.evictionCount;
+            segment.lock.unlockRead(stamp);
+        }
+        return evictionCount;
+    }
+
+    /**
+     * @return the share of the calls answered from the cache, 0 before the first call
+     */
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long callsCount = hitCount + getMissCount();
+        return callsCount == 0 ? 0 : (double) hitCount / callsCount;
+    }
+
+    /**
+     * @return the number of values in the cache
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            size += segment.size;
+            segment.lock.unlockRead(stamp);
+        }
+        return size;
+    }
+
+    /**
+     * @return the largest number of values the cache holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Drops all the values and resets the statistics.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            segment.clear();
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /*
+     * returns the function whose values are cached
+     * */
+    DoubleUnaryOperator getFunction() {
+        return function;
+    }
+
+
+    /*
+     * spreads the bits of the argument over the whole hash (the finalizer of murmur3) , the low bits pick
+     * the slot and the high bits the segment. integers only differ in their high bits
+     * */
+    private static long hash(long key) {
+        long hash = key ^ (key >>> 33);
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+
+    @Override
+    public String toString() {
+        long hitCount = getHitCount();
+        long missCount = getMissCount();
+        return size() + "/" + capacity + " values , " + hitCount + " hits , " + missCount + " misses";
+    }
+
+
+    /*
+     * an open addressing table with linear probing , at most half full. the values are changed under the
+     * write lock , the readers only write the hits and the reference bits saying a value was read since the
+     * clock hand went over it , a stale reference bit only gives a value another round
+     * */
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+
+        private final long[] keys;
+        private final double[] values;
+        private final boolean[] occupied;
+        private final boolean[] referenced;
+        private final int mask;
+        private final int maxSize;
+        private int size;
+        private int clockHand;
+
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+
+        Segment(int maxSize) {
+            int tableSize = 2;
+            while (tableSize < 2 * maxSize) {
+                tableSize *= 2;
+            }
+            this.keys = new long[tableSize];
+            this.values = new double[tableSize];
+            this.occupied = new boolean[tableSize];
+            this.referenced = new boolean[tableSize];
+            this.mask = tableSize - 1;
+            this.maxSize = maxSize;
+        }
+
+        /*
+         * returns the slot holding the given key , or -1. an optimistic read can see a table being changed ,
+         * it never looks at more slots than the table has
+         * */
+        int find(long key, long hash) {
+            int slot = (int) hash & mask;
+            for (int probe = 0; probe <= mask && occupied[slot]; probe++) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void put(long key, long hash, double value) {
+            // another thread may have computed it in the meantime
+            if (find(key, hash) >= 0) {
+                return;
+            }
+            if (size == maxSize) {
+                evict();
+            }
+            int slot = (int) hash & mask;
+            while (occupied[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            referenced[slot] = false;
+            occupied[slot] = true;
+            size++;
+        }
+
+        /*
+         * moves the clock hand to the first value that wasn't read since the hand last went over it and
+         * removes it , the values read in the meantime get another round
+         * */
+        private void evict() {
+            while (true) {
+                clockHand = (clockHand + 1) & mask;
+                if (occupied[clockHand] && referenced[clockHand]) {
+                    referenced[clockHand] = false;
+                } else if (occupied[clockHand]) {
+                    remove(clockHand);
+                    evictionCount++;
+                    return;
+                }
+            }
+        }
+
+        /*
+         * empties the slot and moves back the values after it that can't be found anymore across the hole
+         * */
+        private void remove(int slot) {
+            int hole = slot;
+            for (int next = (hole + 1) & mask; occupied[next]; next = (next + 1) & mask) {
+                int home = (int) hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    referenced[hole] = referenced[next];
+                    hole = next;
+                }
+            }
+            occupied[hole] = false;
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(occupied, false);
+            size = 0;
+            clockHand = 0;
+            hitCount = 0;
+            missCount = 0;
+            evictionCount = 0;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package main.java;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+
+/**
+ * The functions the expressions of a {@link Calc} can call, see {@link Calc#functions()}.
+ * <p>
+ * A registry starts with sqrt, log, sin and cos. A function can take any number of
+ * arguments, separated by commas: <code>pow(x, 2)</code>. A call is resolved to its function
+ * once, when the expression is compiled, so evaluating an expression costs the same whatever
+ * the number of registered functions. Registering a function under the name of another one
+ * replaces it, for the expressions compiled afterwards: the calculator compiles its cached
+ * expressions again once a function was registered.
+ * <p>
+ * The names of the functions are looked up in an open addressing table, straight from the
+ * characters of the expression. Registering copies the table, so a registry can be read by
+ * any number of threads while it is changed.
+ */
+public final class FunctionRegistry {
+
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    // the table of the registries without registered functions , shared by all of them so the calculators sharing
+    // an expression cache use the expressions the others compiled until they register a function
+    private static final RegisteredFunction[] BUILT_IN_TABLE = new RegisteredFunction[INITIAL_TABLE_SIZE];
+    private static final int BUILT_IN_FUNCTIONS_COUNT = 4;
+
+    static {
+        insert(BUILT_IN_TABLE, RegisteredFunction.builtIn(Constants.SQRT_FUNTION, OpCode.SQRT, Math::sqrt));
+        insert(BUILT_IN_TABLE, RegisteredFunction.builtIn(Constants.LOG_FUNCTION, OpCode.LOG, Math::log));
+        insert(BUILT_IN_TABLE, RegisteredFunction.builtIn(Constants.SIN_FUNCTION, OpCode.SIN, Math::sin));
+        insert(BUILT_IN_TABLE, RegisteredFunction.builtIn(Constants.COS_FUNCTION, OpCode.COS, Math::cos));
+    }
+
+    // the functions by the hash of their name , a power of two at least twice the number of functions
+    private volatile RegisteredFunction[] table = BUILT_IN_TABLE;
+    private int functionsCount = BUILT_IN_FUNCTIONS_COUNT;
+
+
+    /**
+     * Registers a function of one argument.
+     *
+     * @param name     the name the function is called with, a variable name
+     * @param function the function
+     * @param pure     true if the function always returns the same value for the same argument,
+     *                 without side effects
+     * @return the registered function
+     */
+    public RegisteredFunction register(String name, DoubleUnaryOperator function, boolean pure) {
+        return add(RegisteredFunction.of(checkName(name), function, pure));
+    }
+
+    /**
+     * Registers a function of two arguments.
+     *
+     * @param name     the name the function is called with, a variable name
+     * @param function the function
+     * @param pure     true if the function always returns the same value for the same arguments,
+     *                 without side effects
+     * @return the registered function
+     */
+    public RegisteredFunction register(String name, DoubleBinaryOperator function, boolean pure) {
+        return add(RegisteredFunction.of(checkName(name), function, pure));
+    }
+
+    /**
+     * Registers a function of any number of arguments, like a static method found with
+     * {@link java.lang.invoke.MethodHandles.Lookup#findStatic}. The arguments of the handle must
+     * be doubles, and it must return a double or a number that converts to one.
+     *
+     * @param name     the name the function is called with, a variable name
+     * @param function the function
+     * @param pure     true if the function always returns the same value for the same arguments,
+     *                 without side effects
+     * @return the registered function
+     */
+    public RegisteredFunction register(String name, MethodHandle function, boolean pure) {
+        return add(RegisteredFunction.of(checkName(name), function, pure));
+    }
+
+    /**
+     * Makes a pure function of one argument remember the values it was called with, up to the
+     * given number of them, see {@link FunctionCache}. It pays off for functions that are
+     * expensive and called with few different arguments, like angles on a grid. The function is
+     * replaced by its memoized version, memoizing it again starts a new cache.
+     *
+     * @param name     the name of the function
+     * @param capacity the largest number of values remembered
+     * @return the memoized function, its cache has the statistics
+     * @throws IllegalArgumentException if there is no such function, or it is impure or doesn't take one argument
+     */
+    public RegisteredFunction memoize(String name, int capacity) {
+        synchronized (this) {
+            RegisteredFunction function = get(name);
+            if (function == null) {
+                throw new IllegalArgumentException(name + " is not a function");
+            }
+            return add(function.memoized(capacity));
+        }
+    }
+
+    /**
+     * @param name the name of a function
+     * @return the function with the given name, or null if there is none
+     */
+    public RegisteredFunction get(String name) {
+        return find(table, name, 0, name.length());
+    }
+
+    /**
+     * @return all the functions, in no particular order
+     */
+    public List<RegisteredFunction> getFunctions() {
+        List<RegisteredFunction> functions = new ArrayList<>();
+        for (RegisteredFunction function : table) {
+            if (function != null) {
+                functions.add(function);
+            }
+        }
+        return Collections.unmodifiableList(functions);
+    }
+
+
+    /*
+     * returns the current table of the functions , it is never changed : registering makes a new one.
+     * an expression is compiled with a single table , and is compiled again when it isn't the current one
+     * */
+    RegisteredFunction[] table() {
+        return table;
+    }
+
+
+    /*
+     * returns the function of the given table whose name is the characters between start and end , or null
+     * */
+    static RegisteredFunction find(RegisteredFunction[] table, CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int characterIndex = start; characterIndex < end; characterIndex++) {
+            hash = 31 * hash + text.charAt(characterIndex);
+        }
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            if (nameEquals(table[slot].getName(), text, start, end)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+
+    private synchronized RegisteredFunction add(RegisteredFunction function) {
+        RegisteredFunction[] currentTable = table;
+        boolean replaced = find(currentTable, function.getName(), 0, function.getName().length()) != null;
+        int tableSize = currentTable.length;
+        if (!replaced && 2 * (functionsCount + 1) > tableSize) {
+            tableSize *= 2;
+        }
+        RegisteredFunction[] newTable = new RegisteredFunction[tableSize];
+        for (RegisteredFunction registeredFunction : currentTable) {
+            if (registeredFunction != null && !registeredFunction.getName().equals(function.getName())) {
+                insert(newTable, registeredFunction);
+            }
+        }
+        insert(newTable, function);
+        if (!replaced) {
+            functionsCount++;
+        }
+        table = newTable;
+        return function;
+    }
+
+    private static void insert(RegisteredFunction[] table, RegisteredFunction function) {
+        int mask = table.length - 1;
+        int slot = spread(function.getName().hashCode()) & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = function;
+    }
+
+    /*
+     * mixes the high bits of the hash into the low ones , the table only looks at the low ones
+     * */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean nameEquals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int characterIndex = 0; characterIndex < name.length(); characterIndex++) {
+            if (name.charAt(characterIndex) != text.charAt(start + characterIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * a function is called like a variable is named , the tokenizer reads its name as one word
+     * */
+    private static String checkName(String name) {
+        boolean valid = !name.isEmpty() && !Character.isDigit(name.charAt(0));
+        for (int characterIndex = 0; valid && characterIndex < name.length(); characterIndex++) {
+            char character = name.charAt(characterIndex);
+            valid = Tokenizer.isWordCharacter(character) && character != Constants.DECIMAL_POINT_CHARACTER;
+        }
+        if (!valid) {
+            throw new IllegalArgumentException(name + " is not a valid function name");
+        }
+        return name;
+    }
+
+
+    @Override
+    public String toString() {
+        return getFunctions().toString();
+    }
+}
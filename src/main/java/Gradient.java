@@ -0,0 +1,49 @@
+package main.java;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The value of an expression with its partial derivatives with respect to the variables
+ * it reads from the bindings, see {@link Calc#evalGradient(String)}.
+ */
+public final class Gradient {
+
+    private final double value;
+    private final Map<String, Double> partialDerivatives;
+
+    Gradient(double value, Map<String, Double> partialDerivatives) {
+        this.value = value;
+        this.partialDerivatives = Collections.unmodifiableMap(partialDerivatives);
+    }
+
+    /**
+     * @return the value of the expression
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @param variableName the name of a variable
+     * @return the partial derivative of the expression with respect to the variable, 0 if
+     * the expression doesn't read it from the bindings
+     */
+    public double getPartialDerivative(String variableName) {
+        Double partialDerivative = partialDerivatives.get(variableName);
+        return partialDerivative == null ? 0 : partialDerivative;
+    }
+
+    /**
+     * @return the partial derivatives with respect to the variables the expression reads from
+     * the bindings, in the order they appear in
+     */
+    public Map<String, Double> getPartialDerivatives() {
+        return partialDerivatives;
+    }
+
+    @Override
+    public String toString() {
+        return value + " " + partialDerivatives;
+    }
+}
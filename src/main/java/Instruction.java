@@ -0,0 +1,102 @@
+package main.java;
+
+/*
+ * a single step of a compiled expression , numbers , variable names and functions are only set
+ * for the op codes that need them
+ * */
+final class Instruction {
+
+    private final OpCode opCode;
+    private final double number;
+    private final String variableName;
+    // the position of the variable in the variables of the compiled expression
+    private final int variableIndex;
+    // where the instruction comes from in the expression , -1 when it doesn't matter
+    private final int position;
+    // the function a call was resolved to when the expression was compiled
+    private final RegisteredFunction function;
+
+    // the instructions are immutable , so an operation is the same instruction wherever it appears
+    private static final Instruction[] OPERATIONS = new Instruction[OpCode.values().length];
+
+    static {
+        for (OpCode opCode : OpCode.values()) {
+            OPERATIONS[opCode.ordinal()] = new Instruction(opCode, 0, null, -1, -1, null);
+        }
+    }
+
+    private Instruction(OpCode opCode, double number, String variableName, int variableIndex, int position,
+                        RegisteredFunction function) {
+        this.opCode = opCode;
+        this.number = number;
+        this.variableName = variableName;
+        this.variableIndex = variableIndex;
+        this.position = position;
+        this.function = function;
+    }
+
+    static Instruction operation(OpCode opCode) {
+        return OPERATIONS[opCode.ordinal()];
+    }
+
+    /*
+     * an operation that remembers where it is in the expression , for the operations that can fail
+     * */
+    static Instruction operation(OpCode opCode, int position) {
+        return new Instruction(opCode, 0, null, -1, position, null);
+    }
+
+    static Instruction number(double number) {
+        return new Instruction(OpCode.PUSH_NUMBER, number, null, -1, -1, null);
+    }
+
+    static Instruction variable(OpCode opCode, String variableName, int variableIndex, int position) {
+        return new Instruction(opCode, 0, variableName, variableIndex, position, null);
+    }
+
+    /*
+     * a call of the given function , at the given position of the expression
+     * */
+    static Instruction call(RegisteredFunction function, int position) {
+        return new Instruction(OpCode.CALL, 0, null, -1, position, function);
+    }
+
+    OpCode getOpCode() {
+        return opCode;
+    }
+
+    double getNumber() {
+        return number;
+    }
+
+    String getVariableName() {
+        return variableName;
+    }
+
+    int getVariableIndex() {
+        return variableIndex;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    RegisteredFunction getFunction() {
+        return function;
+    }
+
+    @Override
+    public String toString() {
+        switch (opCode) {
+            case PUSH_NUMBER:
+                return opCode + " " + number;
+            case LOAD_VARIABLE:
+            case STORE_VARIABLE:
+                return opCode + " " + variableName;
+            case CALL:
+                return opCode + " " + function.getName() + "/" + function.getArity();
+            default:
+                return opCode.toString();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package main.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/*
+ * the little JSON the evaluation server needs : reading an array of strings and writing
+ * strings , numbers , results and bindings.
+ *
+ * numbers JSON can't hold (NaN and infinities) are written as the strings java uses for them
+ * */
+final class Json {
+
+    private Json() {
+    }
+
+
+    /*
+     * parses a JSON array of strings , throws IllegalArgumentException when the text is something else
+     * */
+    static List<String> parseStringArray(String json) {
+        List<String> strings = new ArrayList<>();
+        int position = skipWhitespace(json, 0);
+        position = expect(json, position, '[');
+        position = skipWhitespace(json, position);
+        if (position < json.length() && json.charAt(position) == ']') {
+            position++;
+        } else {
+            while (true) {
+                StringBuilder string = new StringBuilder();
+                position = parseString(json, skipWhitespace(json, position), string);
+                strings.add(string.toString());
+                position = skipWhitespace(json, position);
+                if (position < json.length() && json.charAt(position) == ',') {
+                    position++;
+                    continue;
+                }
+                position = expect(json, position, ']');
+                break;
+            }
+        }
+        if (skipWhitespace(json, position) != json.length()) {
+            throw new IllegalArgumentException("unexpected text after the array at " + position);
+        }
+        return strings;
+    }
+
+    /*
+     * parses the string starting at the given position into the builder , returns the position after it
+     * */
+    private static int parseString(String json, int position, StringBuilder string) {
+        position = expect(json, position, '"');
+        while (position < json.length()) {
+            char character = json.charAt(position++);
+            if (character == '"') {
+                return position;
+            }
+            if (character != '\\') {
+                string.append(character);
+                continue;
+            }
+            if (position == json.length()) {
+                break;
+            }
+            char escaped = json.charAt(position++);
+            switch (escaped) {
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > json.length()) {
+                        throw new IllegalArgumentException("bad unicode escape at " + position);
+                    }
+                    try {
+                        string.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("bad unicode escape at " + position);
+                    }
+                    position += 4;
+                    break;
+                default:
+                    // \" \\ and \/
+                    string.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private static int expect(String json, int position, char expected) {
+        if (position >= json.length() || json.charAt(position) != expected) {
+            throw new IllegalArgumentException("expected " + expected + " at " + position);
+        }
+        return position + 1;
+    }
+
+    private static int skipWhitespace(String json, int position) {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+
+    static void appendString(StringBuilder json, String string) {
+        json.append('"');
+        for (int index = 0; index < string.length(); index++) {
+            char character = string.charAt(index);
+            switch (character) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        json.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        json.append(character);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    static void appendNumber(StringBuilder json, double number) {
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            json.append('"').append(number).append('"');
+        } else {
+            json.append(number);
+        }
+    }
+
+    /*
+     * writes {"value":...} or {"error":"..."}
+     * */
+    static void appendResult(StringBuilder json, EvaluationResult result) {
+        if (result.isSuccess()) {
+            json.append("{\"value\":");
+            appendNumber(json, result.getValue());
+        } else {
+            json.append("{\"error\":");
+            appendString(json, String.valueOf(result.getErrorMessage()));
+        }
+        json.append('}');
+    }
+
+    static void appendBindings(StringBuilder json, Map<String, Double> bindings) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Double> binding : bindings.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, binding.getKey());
+            json.append(':');
+            appendNumber(json, binding.getValue());
+        }
+        json.append('}');
+    }
+}
@@ -0,0 +1,53 @@
+package main.java;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/*
+ * the bindings seen by one thread of a calculator keeping _ per thread , the special variable
+ * is kept here and every other variable is read from and written to the shared bindings
+ * */
+final class LastResultBindings extends AbstractMap<String, Double> {
+
+    private final Map<String, Double> sharedBindings;
+    private Double lastResult;
+
+    LastResultBindings(Map<String, Double> sharedBindings) {
+        this.sharedBindings = sharedBindings;
+    }
+
+    @Override
+    public Double get(Object variableName) {
+        if (lastResult != null && Constants.SPECIAL_VARIABLE.equals(variableName)) {
+            return lastResult;
+        }
+        return sharedBindings.get(variableName);
+    }
+
+    @Override
+    public boolean containsKey(Object variableName) {
+        return get(variableName) != null;
+    }
+
+    @Override
+    public Double put(String variableName, Double variableValue) {
+        if (Constants.SPECIAL_VARIABLE.equals(variableName)) {
+            Double previousValue = get(variableName);
+            lastResult = variableValue;
+            return previousValue;
+        }
+        return sharedBindings.put(variableName, variableValue);
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        Map<String, Double> allBindings = new TreeMap<>(sharedBindings);
+        if (lastResult != null) {
+            allBindings.put(Constants.SPECIAL_VARIABLE, lastResult);
+        }
+        return allBindings.entrySet();
+    }
+}
@@ -0,0 +1,17 @@
+package main.java;
+
+/*
+ * which evaluations see the value bound to the special variable _ by an evaluation
+ * */
+public enum LastResultScope {
+
+    // _ is an ordinary binding of the calculator , it holds the value of the last evaluation that finished
+    // on any thread
+    SHARED,
+
+    // every thread has its own _ holding the value of its own last evaluation , a thread that didn't
+    // evaluate anything yet reads the _ of the calculator bindings
+    THREAD
+
+
+}
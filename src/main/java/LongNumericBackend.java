@@ -0,0 +1,140 @@
+package main.java;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/*
+ * the arithmetic of exact integers , the numbers are Long until they can't be anymore and then BigDecimal.
+ *
+ * a sum , a difference or a product of longs that overflows , a quotient of longs that is not an integer and
+ * a value that is not an integer are promoted to BigDecimal , and the operations on a promoted number are
+ * the exact ones of BigDecimal. only the quotients and the functions are rounded , to the math context
+ * */
+final class LongNumericBackend implements NumericBackend {
+
+    // 2^63 , the doubles below it in magnitude fit in a long
+    private static final double LONG_BOUND = 0x1p63;
+    // the biggest long whose square is a long
+    private static final long LARGEST_SQUARE_ROOT = 3_037_000_499L;
+
+    private final String name;
+    private final MathContext mathContext;
+
+    LongNumericBackend(String name, MathContext mathContext) {
+        this.name = name;
+        this.mathContext = mathContext;
+    }
+
+    @Override
+    public Number valueOf(double number) {
+        if (Math.rint(number) == number && Math.abs(number) < LONG_BOUND) {
+            return (long) number;
+        }
+        return BigDecimal.valueOf(number);
+    }
+
+    @Override
+    public Number add(Number first, Number second) {
+        if (first instanceof Long && second instanceof Long) {
+            long firstValue = first.longValue();
+            long secondValue = second.longValue();
+            long sum = firstValue + secondValue;
+            // the sum overflowed when its sign is not the sign of any of the operands
+            if (((firstValue ^ sum) & (secondValue ^ sum)) >= 0) {
+                return sum;
+            }
+        }
+        return toBigDecimal(first).add(toBigDecimal(second));
+    }
+
+    @Override
+    public Number subtract(Number first, Number second) {
+        if (first instanceof Long && second instanceof Long) {
+            long firstValue = first.longValue();
+            long secondValue = second.longValue();
+            long difference = firstValue - secondValue;
+            // the difference overflowed when the operands have different signs and it doesn't have the sign of the first
+            if (((firstValue ^ secondValue) & (firstValue ^ difference)) >= 0) {
+                return difference;
+            }
+        }
+        return toBigDecimal(first).subtract(toBigDecimal(second));
+    }
+
+    @Override
+    public Number multiply(Number first, Number second) {
+        if (first instanceof Long && second instanceof Long) {
+            long firstValue = first.longValue();
+            long secondValue = second.longValue();
+            long product = firstValue * secondValue;
+            // operands below 2^31 can't overflow , the others are checked by dividing back like Math.multiplyExact
+            if (((Math.abs(firstValue) | Math.abs(secondValue)) >>> 31 == 0)
+                    || (secondValue == 0 || product / secondValue == firstValue)
+                    && !(firstValue == Long.MIN_VALUE && secondValue == -1)) {
+                return product;
+            }
+        }
+        return toBigDecimal(first).multiply(toBigDecimal(second));
+    }
+
+    @Override
+    public Number divide(Number dividend, Number divisor) {
+        if (dividend instanceof Long && divisor instanceof Long) {
+            long dividendValue = dividend.longValue();
+            long divisorValue = divisor.longValue();
+            if (dividendValue % divisorValue == 0 && !(dividendValue == Long.MIN_VALUE && divisorValue == -1)) {
+                return dividendValue / divisorValue;
+            }
+        }
+        return toBigDecimal(dividend).divide(toBigDecimal(divisor), mathContext);
+    }
+
+    @Override
+    public boolean isZero(Number number) {
+        return number instanceof Long ? number.longValue() == 0 : toBigDecimal(number).signum() == 0;
+    }
+
+    @Override
+    public Number sqrt(Number number) {
+        if (number instanceof Long && number.longValue() >= 0) {
+            // the square root of a perfect square stays an integer
+            long value = number.longValue();
+            long root = (long) Math.sqrt(value);
+            while (root * root > value) {
+                root--;
+            }
+            while (root < LARGEST_SQUARE_ROOT && (root + 1) * (root + 1) <= value) {
+                root++;
+            }
+            if (root * root == value) {
+                return root;
+            }
+        }
+        return BigDecimalNumericBackend.sqrt(toBigDecimal(number), mathContext);
+    }
+
+    @Override
+    public Number log(Number number) {
+        return valueOf(Math.log(number.doubleValue()));
+    }
+
+    @Override
+    public Number sin(Number number) {
+        return valueOf(Math.sin(number.doubleValue()));
+    }
+
+    @Override
+    public Number cos(Number number) {
+        return valueOf(Math.cos(number.doubleValue()));
+    }
+
+
+    private static BigDecimal toBigDecimal(Number number) {
+        return BigDecimalNumericBackend.toBigDecimal(number);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
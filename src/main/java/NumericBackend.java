@@ -0,0 +1,88 @@
+package main.java;
+
+import java.math.MathContext;
+
+/**
+ * The arithmetic an expression is evaluated with, see
+ * {@link Calc#setNumericBackend(NumericBackend)} and
+ * {@link CompiledExpression#withNumericBackend(NumericBackend)}.
+ * <p>
+ * A backend works on the numbers it makes itself: literals and the values of the
+ * variables are given to {@link #valueOf(double)}, and every operation gets the
+ * numbers returned by the backend. The evaluator checks divisors with
+ * {@link #isZero(Number)} before dividing, so {@link #divide(Number, Number)} never
+ * gets a zero divisor.
+ * <p>
+ * Besides the built in backends, an implementation can bring its own kind of numbers
+ * (rationals, intervals...). It must be thread safe, a compiled expression can be
+ * evaluated by many threads at once.
+ */
+public interface NumericBackend {
+
+    /**
+     * Doubles, rounded as the {@link RoundingPolicy} says. This is the default, its
+     * expressions are evaluated without boxing or by generated classes.
+     */
+    NumericBackend DOUBLE = new DoubleNumericBackend();
+
+    /**
+     * Exact integers: the values are longs as long as they are integers that fit, a
+     * value that overflows, a division that is not exact and a variable that is not an
+     * integer are promoted to {@link java.math.BigDecimal}. The additions, subtractions
+     * and multiplications of promoted values are exact, the quotients that are not
+     * integers are rounded to 34 significant digits.
+     */
+    NumericBackend LONG = new LongNumericBackend("LONG", MathContext.DECIMAL128);
+
+    /**
+     * Decimals with 34 significant digits, see {@link #bigDecimal(MathContext)}.
+     */
+    NumericBackend BIG_DECIMAL = new BigDecimalNumericBackend(MathContext.DECIMAL128);
+
+    /**
+     * The cheapest backend that is still exact for each expression, chosen when it is
+     * compiled, see {@link CompiledExpression#inferNumericBackend()}.
+     */
+    NumericBackend INFERRED = new LongNumericBackend("INFERRED", MathContext.DECIMAL128);
+
+    /**
+     * Decimals rounded to the given context after every operation. The functions are
+     * computed with double precision, except for sqrt which has the precision of the context.
+     *
+     * @param mathContext the precision and the rounding of every operation
+     * @return a backend computing with {@link java.math.BigDecimal}
+     */
+    static NumericBackend bigDecimal(MathContext mathContext) {
+        return new BigDecimalNumericBackend(mathContext);
+    }
+
+
+    /**
+     * @param number a literal of the expression or the value of a variable
+     * @return the number as this backend represents it
+     */
+    Number valueOf(double number);
+
+    Number add(Number first, Number second);
+
+    Number subtract(Number first, Number second);
+
+    Number multiply(Number first, Number second);
+
+    /**
+     * @param dividend the number to divide
+     * @param divisor  a number that is not zero
+     * @return the quotient
+     */
+    Number divide(Number dividend, Number divisor);
+
+    boolean isZero(Number number);
+
+    Number sqrt(Number number);
+
+    Number log(Number number);
+
+    Number sin(Number number);
+
+    Number cos(Number number);
+}
@@ -0,0 +1,267 @@
+package main.java;
+
+import main.java.exceptions.DivisionByZeroException;
+import main.java.exceptions.VariableIsNotDefinedException;
+
+
+/*
+ * evaluates the instructions of a compiled expression with a numeric backend other than doubles.
+ *
+ * the instructions are the ones the expression was compiled to , not the optimized ones : the optimizer
+ * folds constants with doubles , which would lose the exactness the backend is there for.
+ *
+ * with the LONG backend , an expression without function calls and decimal literals first runs on a
+ * stack of primitive longs. the fast path gives up on the first value that is not an exact long (an
+ * overflow , a quotient with a remainder , a variable that is not an integer) or on any error , and the
+ * expression is evaluated again with the numbers of the backend , which are promoted one by one. the
+ * variables bound by the fast path are only written when it finishes , so running again is safe
+ * */
+final class NumericEvaluator {
+
+    // 2^63 , the doubles below it in magnitude fit in a long
+    private static final double LONG_BOUND = 0x1p63;
+
+    private final OpCode[] opCodes;
+    private final Number[] numbers;
+    private final long[] integerNumbers;
+    private final int[] variableIndexes;
+    private final RegisteredFunction[] functions;
+    private final int maxStackDepth;
+    private final int variablesCount;
+    private final NumericBackend numericBackend;
+    private final boolean longFastPath;
+
+    private final VariableIsNotDefinedException[] undefinedVariableErrors;
+    private final DivisionByZeroException[] divisionErrors;
+
+    NumericEvaluator(Instruction[] instructions, int variablesCount, NumericBackend numericBackend) {
+        this.opCodes = new OpCode[instructions.length];
+        this.numbers = new Number[instructions.length];
+        this.integerNumbers = new long[instructions.length];
+        this.variableIndexes = new int[instructions.length];
+        this.functions = new RegisteredFunction[instructions.length];
+        this.maxStackDepth = ExpressionOptimizer.computeMaxStackDepth(instructions);
+        this.variablesCount = variablesCount;
+        this.numericBackend = numericBackend;
+        this.undefinedVariableErrors = new VariableIsNotDefinedException[variablesCount];
+        this.divisionErrors = new DivisionByZeroException[instructions.length];
+        boolean longFastPath = numericBackend == NumericBackend.LONG || numericBackend == NumericBackend.INFERRED;
+        for (int instructionIndex = 0; instructionIndex < instructions.length; instructionIndex++) {
+            Instruction instruction = instructions[instructionIndex];
+            opCodes[instructionIndex] = instruction.getOpCode();
+            variableIndexes[instructionIndex] = instruction.getVariableIndex();
+            functions[instructionIndex] = instruction.getFunction();
+            switch (instruction.getOpCode()) {
+                case PUSH_NUMBER:
+                    numbers[instructionIndex] = numericBackend.valueOf(instruction.getNumber());
+                    integerNumbers[instructionIndex] = (long) instruction.getNumber();
+                    longFastPath &= isLong(instruction.getNumber());
+                    break;
+                case LOAD_VARIABLE:
+                    if (undefinedVariableErrors[instruction.getVariableIndex()] == null) {
+                        undefinedVariableErrors[instruction.getVariableIndex()] =
+                                new VariableIsNotDefinedException(instruction.getVariableName(), instruction.getPosition());
+                    }
+                    break;
+                case DIVIDE:
+                    divisionErrors[instructionIndex] = new DivisionByZeroException(instruction.getPosition());
+                    break;
+                case SQRT:
+                case LOG:
+                case SIN:
+                case COS:
+                case CALL:
+                    longFastPath = false;
+                    break;
+            }
+        }
+        this.longFastPath = longFastPath;
+    }
+
+
+    /*
+     * returns the number of longs of scratch memory evaluate needs , for the fast path
+     * */
+    int scratchSize() {
+        return maxStackDepth + variablesCount;
+    }
+
+
+    /*
+     * evaluates the expression with the given variables , the values of the variables the expression binds
+     * are written back to the variables , and marked as defined when definedVariables is given. reading a
+     * variable that is not defined throws an exception
+     * */
+    Number evaluate(double[] variables, boolean[] definedVariables, long[] scratch) throws VariableIsNotDefinedException {
+        if (longFastPath && evaluateLongs(variables, definedVariables, scratch)) {
+            return scratch[0];
+        }
+        Number[] numbersStack = new Number[maxStackDepth];
+        // the variables as numbers of the backend , converted when they are first read
+        Number[] frame = new Number[variablesCount];
+        int top = -1;
+        for (int instructionIndex = 0; instructionIndex < opCodes.length; instructionIndex++) {
+            switch (opCodes[instructionIndex]) {
+                case PUSH_NUMBER:
+                    numbersStack[++top] = numbers[instructionIndex];
+                    break;
+                case LOAD_VARIABLE:
+                    int variableIndex = variableIndexes[instructionIndex];
+                    if (frame[variableIndex] == null) {
+                        if (definedVariables != null && !definedVariables[variableIndex]) {
+                            throw undefinedVariableErrors[variableIndex];
+                        }
+                        frame[variableIndex] = numericBackend.valueOf(variables[variableIndex]);
+                    }
+                    numbersStack[++top] = frame[variableIndex];
+                    break;
+                case STORE_VARIABLE:
+                    int boundVariableIndex = variableIndexes[instructionIndex];
+                    frame[boundVariableIndex] = numbersStack[top];
+                    variables[boundVariableIndex] = numbersStack[top].doubleValue();
+                    if (definedVariables != null) {
+                        definedVariables[boundVariableIndex] = true;
+                    }
+                    break;
+                case SWAP:
+                    Number lastSeenNumber = numbersStack[top];
+                    numbersStack[top] = numbersStack[top - 1];
+                    numbersStack[top - 1] = lastSeenNumber;
+                    break;
+                case ADD:
+                    top--;
+                    numbersStack[top] = numericBackend.add(numbersStack[top], numbersStack[top + 1]);
+                    break;
+                case SUBTRACT:
+                    top--;
+                    numbersStack[top] = numericBackend.subtract(numbersStack[top], numbersStack[top + 1]);
+                    break;
+                case MULTIPLY:
+                    top--;
+                    numbersStack[top] = numericBackend.multiply(numbersStack[top], numbersStack[top + 1]);
+                    break;
+                case DIVIDE:
+                    top--;
+                    if (numericBackend.isZero(numbersStack[top + 1])) {
+                        throw divisionErrors[instructionIndex];
+                    }
+                    numbersStack[top] = numericBackend.divide(numbersStack[top], numbersStack[top + 1]);
+                    break;
+                case SQRT:
+                    numbersStack[top] = numericBackend.sqrt(numbersStack[top]);
+                    break;
+                case LOG:
+                    numbersStack[top] = numericBackend.log(numbersStack[top]);
+                    break;
+                case SIN:
+                    numbersStack[top] = numericBackend.sin(numbersStack[top]);
+                    break;
+                case COS:
+                    numbersStack[top] = numericBackend.cos(numbersStack[top]);
+                    break;
+                case CALL:
+                    // registered functions take and return doubles
+                    RegisteredFunction function = functions[instructionIndex];
+                    top -= function.getArity() - 1;
+                    double[] arguments = new double[function.getArity()];
+                    for (int argumentIndex = 0; argumentIndex < arguments.length; argumentIndex++) {
+                        arguments[argumentIndex] = numbersStack[top + argumentIndex].doubleValue();
+                    }
+                    numbersStack[top] = numericBackend.valueOf(function.invoke(arguments, 0));
+                    break;
+            }
+        }
+        return numbersStack[top];
+    }
+
+
+    /*
+     * runs the instructions on primitive longs , the stack is at the start of the scratch memory and the variables
+     * after it. returns false as soon as a value is not an exact long , nothing was written then. when it returns
+     * true the value of the expression is the first long of the scratch memory
+     * */
+    private boolean evaluateLongs(double[] variables, boolean[] definedVariables, long[] scratch) {
+        int firstVariable = maxStackDepth;
+        for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+            if (definedVariables == null || definedVariables[variableIndex]) {
+                if (!isLong(variables[variableIndex])) {
+                    return false;
+                }
+                scratch[firstVariable + variableIndex] = (long) variables[variableIndex];
+            }
+        }
+        boolean[] boundVariables = null;
+        int top = -1;
+        try {
+            for (int instructionIndex = 0; instructionIndex < opCodes.length; instructionIndex++) {
+                switch (opCodes[instructionIndex]) {
+                    case PUSH_NUMBER:
+                        scratch[++top] = integerNumbers[instructionIndex];
+                        break;
+                    case LOAD_VARIABLE:
+                        int variableIndex = variableIndexes[instructionIndex];
+                        if (definedVariables != null && !definedVariables[variableIndex]
+                                && (boundVariables == null || !boundVariables[variableIndex])) {
+                            // the error is thrown by the other path , after the bindings it makes before it
+                            return false;
+                        }
+                        scratch[++top] = scratch[firstVariable + variableIndex];
+                        break;
+                    case STORE_VARIABLE:
+                        if (boundVariables == null) {
+                            boundVariables = new boolean[variablesCount];
+                        }
+                        boundVariables[variableIndexes[instructionIndex]] = true;
+                        scratch[firstVariable + variableIndexes[instructionIndex]] = scratch[top];
+                        break;
+                    case SWAP:
+                        long lastSeenNumber = scratch[top];
+                        scratch[top] = scratch[top - 1];
+                        scratch[top - 1] = lastSeenNumber;
+                        break;
+                    case ADD:
+                        top--;
+                        scratch[top] = Math.addExact(scratch[top], scratch[top + 1]);
+                        break;
+                    case SUBTRACT:
+                        top--;
+                        scratch[top] = Math.subtractExact(scratch[top], scratch[top + 1]);
+                        break;
+                    case MULTIPLY:
+                        top--;
+                        scratch[top] = Math.multiplyExact(scratch[top], scratch[top + 1]);
+                        break;
+                    case DIVIDE:
+                        top--;
+                        long divisor = scratch[top + 1];
+                        if (divisor == 0 || scratch[top] % divisor != 0 || divisor == -1 && scratch[top] == Long.MIN_VALUE) {
+                            return false;
+                        }
+                        scratch[top] /= divisor;
+                        break;
+                    default:
+                        // functions never take the fast path
+                        return false;
+                }
+            }
+        } catch (ArithmeticException overflow) {
+            return false;
+        }
+        if (boundVariables != null) {
+            for (int variableIndex = 0; variableIndex < variablesCount; variableIndex++) {
+                if (boundVariables[variableIndex]) {
+                    variables[variableIndex] = scratch[firstVariable + variableIndex];
+                    if (definedVariables != null) {
+                        definedVariables[variableIndex] = true;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+
+    private static boolean isLong(double number) {
+        return Math.rint(number) == number && Math.abs(number) < LONG_BOUND;
+    }
+}
@@ -0,0 +1,25 @@
+package main.java;
+
+/*
+ * the instructions a compiled expression is made of , they are executed in postfix order
+ * on a stack of numbers
+ * */
+public enum OpCode {
+
+    PUSH_NUMBER,
+    LOAD_VARIABLE,
+    STORE_VARIABLE,
+    SWAP,
+    ADD,
+    SUBTRACT,
+    MULTIPLY,
+    DIVIDE,
+    SQRT,
+    LOG,
+    SIN,
+    COS,
+    // calls a registered function with the arguments on top of the stack
+    CALL
+
+
+}
@@ -0,0 +1,63 @@
+package main.java;
+
+/*
+ * the operators the compiler keeps on its operators stack , with their precedence and the
+ * instruction that applies them
+ * */
+enum Operator {
+
+    ADDITION(Constants.ADDITION_SUBTRACTION_PRECEDENCE, OpCode.ADD),
+    SUBTRACTION(Constants.ADDITION_SUBTRACTION_PRECEDENCE, OpCode.SUBTRACT),
+    MULTIPLICATION(Constants.MULTIPLICATION_DIVISION_PRECEDENCE, OpCode.MULTIPLY),
+    DIVISION(Constants.MULTIPLICATION_DIVISION_PRECEDENCE, OpCode.DIVIDE),
+    // a call of a registered function , the compiler keeps the function next to the operator
+    FUNCTION(Constants.FUNCTION_PRECEDENCE, OpCode.CALL),
+    VARIABLE(Constants.VARIABLE_OPERATOR_PRECEDENCE, OpCode.LOAD_VARIABLE),
+    BINDING(Constants.BINDING_PRECEDENCE, OpCode.STORE_VARIABLE),
+    OPENING_PARENTHESES(Constants.PARENTHESE_PRECEDENCE, null);
+
+
+    private final int strength;
+    private final OpCode opCode;
+
+    Operator(int strength, OpCode opCode) {
+        this.strength = strength;
+        this.opCode = opCode;
+    }
+
+    int getStrength() {
+        return strength;
+    }
+
+    OpCode getOpCode() {
+        return opCode;
+    }
+
+    /*
+     *  checks if the operator is one of the base operators ( - + / * )
+     *
+     * */
+    boolean isBinaryOperator() {
+        return this == ADDITION || this == SUBTRACTION || this == MULTIPLICATION || this == DIVISION;
+    }
+
+    /*
+     * returns the operator of the given binary operator character
+     * */
+    static Operator fromSymbol(char symbol) {
+        switch (symbol) {
+            case Constants.ADDITION_CHARACTER:
+                return ADDITION;
+            case Constants.SUBSTRACTION_CHARACTER:
+                return SUBTRACTION;
+            case Constants.MULTIPLICATION_CHARACTER:
+                return MULTIPLICATION;
+            case Constants.DIVISION_CHARACTER:
+                return DIVISION;
+            case Constants.BINDING_CHARACTER:
+                return BINDING;
+            default:
+                throw new IllegalArgumentException("unknown operator " + symbol);
+        }
+    }
+}
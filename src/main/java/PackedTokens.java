@@ -0,0 +1,132 @@
+package main.java;
+
+import java.util.Arrays;
+
+
+/**
+ * The tokens of an expression stored in parallel primitive arrays instead of one object
+ * per token. A token is described by its type, the offsets of its first character and of
+ * the character after its last one in the source, the character of operators and
+ * parentheses, and the value of numbers.
+ * <p>
+ * The source is not copied, so it must not change while the tokens are in use. An instance
+ * is reused by {@link Tokenizer#tokenize(CharSequence)}, which keeps the arrays it grew.
+ */
+public final class PackedTokens {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private CharSequence source;
+    private int size;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private char[] symbols = new char[INITIAL_CAPACITY];
+    private double[] numbers = new double[INITIAL_CAPACITY];
+
+
+    /*
+     * removes all the tokens , the new tokens will be read from the given source
+     * */
+    void reset(CharSequence source) {
+        this.source = source;
+        this.size = 0;
+    }
+
+    /*
+     * adds a token , symbol is only set for operators and parentheses and number only for numbers
+     * */
+    void add(TokenType type, int start, int end, char symbol, double number) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        symbols[size] = symbol;
+        numbers[size] = number;
+        size++;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType getType(int tokenIndex) {
+        return TOKEN_TYPES[types[tokenIndex]];
+    }
+
+    /**
+     * @return the offset of the first character of the token in the source
+     */
+    public int getStart(int tokenIndex) {
+        return starts[tokenIndex];
+    }
+
+    /**
+     * @return the offset of the character after the last character of the token in the source
+     */
+    public int getEnd(int tokenIndex) {
+        return ends[tokenIndex];
+    }
+
+    /**
+     * @return the character of an operator or a parentheses token
+     */
+    public char getSymbol(int tokenIndex) {
+        return symbols[tokenIndex];
+    }
+
+    /**
+     * @return the value of a number token
+     */
+    public double getNumber(int tokenIndex) {
+        return numbers[tokenIndex];
+    }
+
+    /**
+     * @return the text of the token, this is the only method creating a new object
+     */
+    public String getText(int tokenIndex) {
+        return source.subSequence(starts[tokenIndex], ends[tokenIndex]).toString();
+    }
+
+    /**
+     * @return true if the text of the token is the given string
+     */
+    public boolean textEquals(int tokenIndex, String text) {
+        int start = starts[tokenIndex];
+        int length = ends[tokenIndex] - start;
+        if (length != text.length()) {
+            return false;
+        }
+        for (int characterIndex = 0; characterIndex < length; characterIndex++) {
+            if (source.charAt(start + characterIndex) != text.charAt(characterIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder tokensAsString = new StringBuilder("[");
+        for (int tokenIndex = 0; tokenIndex < size; tokenIndex++) {
+            if (tokenIndex > 0) {
+                tokensAsString.append(", ");
+            }
+            tokensAsString.append(getType(tokenIndex)).append('=').append(source, starts[tokenIndex], ends[tokenIndex]);
+        }
+        return tokensAsString.append(']').toString();
+    }
+}
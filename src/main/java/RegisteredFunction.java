@@ -0,0 +1,231 @@
+package main.java;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+
+/**
+ * A function expressions can call, see {@link FunctionRegistry}.
+ * <p>
+ * The function is kept as a {@link MethodHandle} taking its arguments as doubles and returning
+ * a double, which is what the classes generated by the bytecode backend call. The interpreter
+ * calls the unary and binary operators it was registered with directly.
+ * <p>
+ * A pure function always returns the same value for the same arguments and has no side
+ * effects, so its calls with number arguments are computed once when the expression is
+ * compiled, and identical calls of a {@link FormulaSet} are merged. An impure function is
+ * called every time the expression is evaluated. A pure function of one argument can remember
+ * its values, see {@link FunctionRegistry#memoize(String, int)}.
+ */
+public final class RegisteredFunction {
+
+    private static final MethodHandle APPLY_UNARY;
+    private static final MethodHandle APPLY_BINARY;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            APPLY_UNARY = lookup.findVirtual(DoubleUnaryOperator.class, "applyAsDouble",
+                    MethodType.methodType(double.class, double.class));
+            APPLY_BINARY = lookup.findVirtual(DoubleBinaryOperator.class, "applyAsDouble",
+                    MethodType.methodType(double.class, double.class, double.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String name;
+    private final int arity;
+    private final boolean pure;
+    // the instruction calling the function , CALL for every function but the ones with their own op code
+    private final OpCode opCode;
+    private final MethodHandle handle;
+    private final DoubleUnaryOperator unaryOperator;
+    private final DoubleBinaryOperator binaryOperator;
+    // the handle taking its arguments as an array , for the other arities
+    private final MethodHandle spreadHandle;
+    // the values of a memoized function , null for the others
+    private final FunctionCache cache;
+
+    private RegisteredFunction(String name, int arity, boolean pure, OpCode opCode, MethodHandle handle,
+                               DoubleUnaryOperator unaryOperator, DoubleBinaryOperator binaryOperator) {
+        this(name, arity, pure, opCode, handle, unaryOperator, binaryOperator, null);
+    }
+
+    private RegisteredFunction(String name, int arity, boolean pure, OpCode opCode, MethodHandle handle,
+                               DoubleUnaryOperator unaryOperator, DoubleBinaryOperator binaryOperator,
+                               FunctionCache cache) {
+        this.name = name;
+        this.arity = arity;
+        this.pure = pure;
+        this.opCode = opCode;
+        this.handle = handle;
+        this.unaryOperator = unaryOperator;
+        this.binaryOperator = binaryOperator;
+        this.spreadHandle = arity == 1 || arity == 2 ? null : handle.asSpreader(double[].class, arity);
+        this.cache = cache;
+    }
+
+    static RegisteredFunction of(String name, DoubleUnaryOperator function, boolean pure) {
+        return new RegisteredFunction(name, 1, pure, OpCode.CALL, APPLY_UNARY.bindTo(function), function, null);
+    }
+
+    static RegisteredFunction of(String name, DoubleBinaryOperator function, boolean pure) {
+        return new RegisteredFunction(name, 2, pure, OpCode.CALL, APPLY_BINARY.bindTo(function), null, function);
+    }
+
+    static RegisteredFunction of(String name, MethodHandle function, boolean pure) {
+        MethodType type = function.type();
+        for (Class<?> parameterType : type.parameterArray()) {
+            if (parameterType != double.class && parameterType != Double.class) {
+                throw new IllegalArgumentException(name + " takes a " + parameterType.getName() + ", functions take doubles");
+            }
+        }
+        if (!isNumberType(type.returnType())) {
+            throw new IllegalArgumentException(name + " returns a " + type.returnType().getName() + ", functions return doubles");
+        }
+        if (function.isVarargsCollector()) {
+            throw new IllegalArgumentException(name + " takes a variable number of arguments");
+        }
+        int arity = type.parameterCount();
+        // the handles of all the functions take and return doubles , so they can be called with invokeExact
+        MethodHandle handle = function.asType(doublesMethodType(arity));
+        DoubleUnaryOperator unaryOperator = arity == 1 ? argument -> invokeUnary(handle, argument) : null;
+        DoubleBinaryOperator binaryOperator = arity == 2
+                ? (firstArgument, secondArgument) -> invokeBinary(handle, firstArgument, secondArgument) : null;
+        return new RegisteredFunction(name, arity, pure, OpCode.CALL, handle, unaryOperator, binaryOperator);
+    }
+
+    /*
+     * a function of java.lang.Math with its own op code , the evaluators compute it without calling the handle
+     * */
+    static RegisteredFunction builtIn(String name, OpCode opCode, DoubleUnaryOperator function) {
+        return new RegisteredFunction(name, 1, true, opCode, APPLY_UNARY.bindTo(function), function, null);
+    }
+
+
+    /*
+     * returns the same function remembering up to the given number of its values , a built in function is
+     * then called like the others. only a pure function of one argument can be memoized
+     * */
+    RegisteredFunction memoized(int capacity) {
+        if (!pure) {
+            throw new IllegalArgumentException(name + " is not pure , its values can't be cached");
+        }
+        if (arity != 1) {
+            throw new IllegalArgumentException(name + " takes " + arity + " arguments , only functions of one argument are cached");
+        }
+        // a memoized function is memoized again from the function itself
+        DoubleUnaryOperator function = cache == null ? unaryOperator : cache.getFunction();
+        FunctionCache functionCache = new FunctionCache(function, capacity);
+        return new RegisteredFunction(name, 1, true, OpCode.CALL, APPLY_UNARY.bindTo(functionCache), functionCache,
+                null, functionCache);
+    }
+
+
+    /**
+     * @return the name the function is called with
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of arguments the function takes
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * @return true if the function always returns the same value for the same arguments,
+     * without side effects
+     */
+    public boolean isPure() {
+        return pure;
+    }
+
+    /**
+     * @return the function as a handle taking {@link #getArity()} doubles and returning a double
+     */
+    public MethodHandle getHandle() {
+        return handle;
+    }
+
+    /**
+     * @return the values the function remembers, or null if it isn't memoized
+     */
+    public FunctionCache getCache() {
+        return cache;
+    }
+
+    OpCode getOpCode() {
+        return opCode;
+    }
+
+
+    /*
+     * calls the function with the arguments at the given position of the given array
+     * */
+    double invoke(double[] arguments, int firstArgument) {
+        switch (arity) {
+            case 1:
+                return unaryOperator.applyAsDouble(arguments[firstArgument]);
+            case 2:
+                return binaryOperator.applyAsDouble(arguments[firstArgument], arguments[firstArgument + 1]);
+            default:
+                try {
+                    return (double) spreadHandle.invokeExact(Arrays.copyOfRange(arguments, firstArgument, firstArgument + arity));
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(name + " failed", e);
+                }
+        }
+    }
+
+
+    private static double invokeUnary(MethodHandle handle, double argument) {
+        try {
+            return (double) handle.invokeExact(argument);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double invokeBinary(MethodHandle handle, double firstArgument, double secondArgument) {
+        try {
+            return (double) handle.invokeExact(firstArgument, secondArgument);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * the types MethodHandle.asType converts to double , by unboxing or widening
+     * */
+    private static boolean isNumberType(Class<?> type) {
+        return type == double.class || type == Double.class || type == float.class || type == Float.class
+                || type == int.class || type == long.class;
+    }
+
+    static MethodType doublesMethodType(int arity) {
+        Class<?>[] parameterTypes = new Class<?>[arity];
+        Arrays.fill(parameterTypes, double.class);
+        return MethodType.methodType(double.class, parameterTypes);
+    }
+
+
+    @Override
+    public String toString() {
+        return name + "/" + arity + (pure ? "" : " (impure)") + (cache == null ? "" : " (memoized)");
+    }
+}
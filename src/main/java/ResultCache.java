@@ -0,0 +1,113 @@
+package main.java;
+
+import main.java.exceptions.VariableIsNotDefinedException;
+
+
+/**
+ * A size bounded cache of the values of the expressions a calculator evaluated, so an
+ * expression evaluated again with the same variables is not evaluated again. When the
+ * cache is full the least recently used value is evicted.
+ * <p>
+ * A value is kept with the versions the variables it read had in the bindings of the
+ * calculator. Binding or removing a variable, from an expression like "x=1", from
+ * {@link Calc#bindings()} or with the ":clear" command, changes its version, and the
+ * values read from the variable are not used anymore. Finding a value costs a look up
+ * and a comparison of the versions of the variables it read.
+ * <p>
+ * Only the expressions binding no variable and calling no impure function are cached,
+ * and only when they are evaluated with the bindings of the calculator.
+ * <p>
+ * Like the expression cache, large caches are split into stripes with their own lock.
+ */
+public final class ResultCache {
+
+    // the compiled expressions are the keys , an expression compiled again with other settings or functions is
+    // another key
+    private final StripedLruCache<CompiledExpression, CachedResult> cachedResults;
+
+    /**
+     * @param capacity the maximum number of cached values, 0 disables caching
+     */
+    public ResultCache(int capacity) {
+        this.cachedResults = new StripedLruCache<>(capacity, System::identityHashCode);
+    }
+
+
+    /*
+     * returns the value of the given expression with the variables of the given frame , the cached one if none
+     * of the variables it reads changed since it was evaluated
+     * */
+    double evaluate(CompiledExpression compiledExpression, VariableFrame frame) throws VariableIsNotDefinedException {
+        CachedResult cachedResult = cachedResults.get(compiledExpression,
+                result -> frame.hasVersions(result.slots, result.versions));
+        if (cachedResult != null) {
+            return cachedResult.value;
+        }
+        // the versions are read first , a variable bound during the evaluation makes the value stale right away.
+        // an expression reading a variable that is not bound fails , or found it bound in the meantime
+        long[] versions = new long[compiledExpression.getFreeVariablesCount()];
+        VariableFrame.Resolution resolution = compiledExpression.loadFreeVariableVersions(frame, versions);
+        double value = compiledExpression.execute(frame);
+        if (resolution != null) {
+            cachedResults.put(compiledExpression, new CachedResult(resolution.getSlots(), versions, value));
+        }
+        return value;
+    }
+
+
+    /**
+     * Removes all the cached values, the counters are kept.
+     */
+    public void clear() {
+        cachedResults.clear();
+    }
+
+    public int size() {
+        return cachedResults.size();
+    }
+
+    public int getCapacity() {
+        return cachedResults.getCapacity();
+    }
+
+    public long getHitCount() {
+        return cachedResults.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cachedResults.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cachedResults.getEvictionCount();
+    }
+
+    /**
+     * @return the share of the cacheable evaluations answered from the cache, 0 before the first one
+     */
+    public double getHitRate() {
+        return cachedResults.getHitRate();
+    }
+
+    @Override
+    public String toString() {
+        return cachedResults + ", hit rate = " + Math.round(100 * getHitRate()) + "%";
+    }
+
+
+    /*
+     * the value of an expression and the versions of the slots it read
+     * */
+    private static final class CachedResult {
+
+        private final int[] slots;
+        private final long[] versions;
+        private final double value;
+
+        CachedResult(int[] slots, long[] versions, double value) {
+            this.slots = slots;
+            this.versions = versions;
+            this.value = value;
+        }
+    }
+}
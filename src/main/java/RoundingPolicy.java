@@ -0,0 +1,19 @@
+package main.java;
+
+/*
+ * when the values of an expression are rounded to 12 digits after the decimal point
+ * */
+public enum RoundingPolicy {
+
+    // values keep all the digits of a double
+    NONE,
+
+    // only the value of the expression and the values bound to variables are rounded , with double arithmetic
+    FINAL_RESULT,
+
+    // every literal , variable and intermediate result is rounded exactly like BigDecimal does , this is how
+    // expressions were always evaluated
+    EVERY_STEP
+
+
+}
@@ -0,0 +1,65 @@
+package main.java;
+
+import java.util.Map;
+
+
+/**
+ * A user session of a calculator, with its own bindings and its own "_".
+ * <p>
+ * The bindings of a session are forked from the bindings it was created from, without
+ * copying them: a variable the session didn't bind is read from its parent, and the
+ * variables the session binds or clears are only seen by the session. A session
+ * therefore only takes memory for the variables it changed, and sees later changes
+ * of the parent for the variables it didn't change.
+ * <p>
+ * Sessions share the expression cache and the settings of their calculator. A session
+ * is meant to be used by one thread at a time.
+ */
+public final class Session {
+
+    private final Calc calc;
+    private final Map<String, Double> bindings;
+
+    Session(Calc calc, Map<String, Double> bindings) {
+        this.calc = calc;
+        this.bindings = bindings;
+    }
+
+    /**
+     * Evaluates an arithmetic expression like {@link Calc#eval(String)}, with the
+     * bindings of the session.
+     *
+     * @param expr well-formed arithmetic expression
+     * @return the value of the given expression
+     */
+    public double eval(String expr) {
+        return calc.evaluate(expr, bindings);
+    }
+
+    /**
+     * Evaluates an arithmetic expression like {@link Calc#tryEval(String)}, with the
+     * bindings of the session.
+     *
+     * @param expr arithmetic expression
+     * @return the value of the given expression, or why it could not be evaluated
+     */
+    public EvaluationResult tryEval(String expr) {
+        return calc.tryEvaluate(expr, bindings);
+    }
+
+    /**
+     * Creates a session reading through the bindings of this session.
+     *
+     * @return the new session
+     */
+    public Session fork() {
+        return new Session(calc, new BindingScope(bindings));
+    }
+
+    /**
+     * @return the bindings seen by the session, changing them only changes the session
+     */
+    public Map<String, Double> bindings() {
+        return bindings;
+    }
+}
@@ -0,0 +1,196 @@
+package main.java;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+
+/*
+ * a size bounded map evicting its least recently used entry , shared by the expression cache and the result
+ * cache. large caches are split into stripes by the hash of the key , every stripe with its own lock , its own
+ * least recently used order and its own counters , so threads looking up different keys rarely wait for each
+ * other
+ * */
+final class StripedLruCache<K, V> {
+
+    // a stripe should still hold enough entries for its least recently used order to mean something
+    private static final int MIN_STRIPE_CAPACITY = 64;
+    private static final int MAX_STRIPES = 16;
+
+    private final int capacity;
+    private final ToIntFunction<? super K> keyHash;
+    private final Stripe<K, V>[] stripes;
+
+    /*
+     * the capacity is the maximum number of entries , 0 disables caching. the keys are spread over the stripes
+     * by the given hash , which has to be consistent with the equality of the keys
+     * */
+    @SuppressWarnings("unchecked")
+    StripedLruCache(int capacity, ToIntFunction<? super K> keyHash) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("the capacity of the cache can't be negative");
+        }
+        this.capacity = capacity;
+        this.keyHash = keyHash;
+        int stripesCount = 1;
+        while (stripesCount * 2 <= MAX_STRIPES && stripesCount * 2 * MIN_STRIPE_CAPACITY <= capacity) {
+            stripesCount *= 2;
+        }
+        this.stripes = new Stripe[stripesCount];
+        for (int stripeIndex = 0; stripeIndex < stripesCount; stripeIndex++) {
+            // the first stripes take what is left of the division
+            int stripeCapacity = capacity / stripesCount + (stripeIndex < capacity % stripesCount ? 1 : 0);
+            stripes[stripeIndex] = new Stripe<>(stripeCapacity);
+        }
+    }
+
+
+    /*
+     * returns the value of the given key , or null if it is not cached
+     * */
+    V get(K key) {
+        return stripeOf(key).get(key, null);
+    }
+
+    /*
+     * returns the value of the given key if it is still valid , or null. a value that is not valid anymore
+     * counts as a miss , it stays in the cache until it is replaced or evicted
+     * */
+    V get(K key, Predicate<? super V> isValid) {
+        return stripeOf(key).get(key, isValid);
+    }
+
+    void put(K key, V value) {
+        if (capacity > 0) {
+            stripeOf(key).put(key, value);
+        }
+    }
+
+    private Stripe<K, V> stripeOf(K key) {
+        int hash = keyHash.applyAsInt(key);
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+
+    /*
+     * removes all the entries , the counters are kept
+     * */
+    void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getHitCount() {
+        long hitCount = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            hitCount += stripe.getHitCount();
+        }
+        return hitCount;
+    }
+
+    long getMissCount() {
+        long missCount = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            missCount += stripe.getMissCount();
+        }
+        return missCount;
+    }
+
+    long getEvictionCount() {
+        long evictionCount = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            evictionCount += stripe.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+    /*
+     * the share of the lookups answered from the cache , 0 before the first one
+     * */
+    double getHitRate() {
+        long hitCount = getHitCount();
+        long lookupsCount = hitCount + getMissCount();
+        return lookupsCount == 0 ? 0 : (double) hitCount / lookupsCount;
+    }
+
+    @Override
+    public String toString() {
+        return "size = " + size() + "/" + capacity + ", hits = " + getHitCount()
+                + ", misses = " + getMissCount() + ", evictions = " + getEvictionCount();
+    }
+
+
+    /*
+     * a part of the cache with its own lock , its own least recently used order and its own counters
+     * */
+    private static final class Stripe<K, V> {
+
+        private final LinkedHashMap<K, V> values;
+
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+
+        Stripe(int capacity) {
+            // iterating in access order makes the first entry the least recently used one
+            this.values = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() > capacity) {
+                        evictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized V get(K key, Predicate<? super V> isValid) {
+            V value = values.get(key);
+            if (value == null || isValid != null && !isValid.test(value)) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return value;
+        }
+
+        synchronized void put(K key, V value) {
+            values.put(key, value);
+        }
+
+        synchronized void clear() {
+            values.clear();
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+
+        synchronized long getHitCount() {
+            return hitCount;
+        }
+
+        synchronized long getMissCount() {
+            return missCount;
+        }
+
+        synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+    }
+}
@@ -6,7 +6,8 @@ public enum TokenType {
     FUNCTION,
     PARENTHESES,
     VARIABLE,
-    NUMBER
+    NUMBER,
+    ARGUMENT_SEPARATOR
 
 
 }
@@ -10,19 +10,72 @@ public class Tokenizer {
 
 
     private final Logger LOGGER = Logger.getLogger(Tokenizer.class);
-    private static final Set<String> SUPPORTED_FUNCTIONS =
-            new HashSet<>(Arrays.asList(Constants.SQRT_FUNTION, Constants.LOG_FUNCTION, Constants.SIN_FUNCTION, Constants.COS_FUNCTION));
-    private static final Set<String> SUPPORTED_BINARY_OPERATORS=
-            new HashSet(Arrays.asList(Constants.MULTIPLICATION_CHARACTER, Constants.SUBSTRACTION_CHARACTER,
-                Constants.ADDITION_CHARACTER, Constants.BINDING_CHARACTER, Constants.DIVISION_CHARACTER));
 
+    // the classes of the ascii characters , any other character is either whitespace or not supported
+    private static final byte UNSUPPORTED_CHARACTER = 0;
+    private static final byte NUMBER_CHARACTER = 1;
+    private static final byte STRING_CHARACTER = 2;
+    private static final byte OPERATOR_CHARACTER = 3;
+    private static final byte PARENTHESES_CHARACTER = 4;
+    private static final byte WHITESPACE_CHARACTER = 5;
+    private static final byte SEPARATOR_CHARACTER = 6;
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (char character = 0; character < CHARACTER_CLASSES.length; character++) {
+            if (Character.isWhitespace(character)) {
+                CHARACTER_CLASSES[character] = WHITESPACE_CHARACTER;
+            }
+        }
+        for (char character = Constants.SMALLEST_DIGIT_CHARACTER; character <= Constants.HIGHEST_DIGIT_CHARACTER; character++) {
+            CHARACTER_CLASSES[character] = NUMBER_CHARACTER;
+        }
+        CHARACTER_CLASSES[Constants.DECIMAL_POINT_CHARACTER] = NUMBER_CHARACTER;
+        for (char character = Constants.FIRST_SMALL_CHARACTER; character <= Constants.LAST_SMALL_CHARACTER; character++) {
+            CHARACTER_CLASSES[character] = STRING_CHARACTER;
+        }
+        for (char character = Constants.FIRST_CAPITAL_CHARACTER; character <= Constants.LAST_CAPITAL_CHARACTER; character++) {
+            CHARACTER_CLASSES[character] = STRING_CHARACTER;
+        }
+        CHARACTER_CLASSES[Constants.SPECIAL_VARIABLE_CHARACTER] = STRING_CHARACTER;
+        CHARACTER_CLASSES[Constants.MULTIPLICATION_CHARACTER] = OPERATOR_CHARACTER;
+        CHARACTER_CLASSES[Constants.SUBSTRACTION_CHARACTER] = OPERATOR_CHARACTER;
+        CHARACTER_CLASSES[Constants.ADDITION_CHARACTER] = OPERATOR_CHARACTER;
+        CHARACTER_CLASSES[Constants.BINDING_CHARACTER] = OPERATOR_CHARACTER;
+        CHARACTER_CLASSES[Constants.DIVISION_CHARACTER] = OPERATOR_CHARACTER;
+        CHARACTER_CLASSES[Constants.OPENING_PARENTHESES_CHARACTER] = PARENTHESES_CHARACTER;
+        CHARACTER_CLASSES[Constants.CLOSING_PARENTHESES_CHARACTER] = PARENTHESES_CHARACTER;
+        CHARACTER_CLASSES[Constants.ARGUMENT_SEPARATOR_CHARACTER] = SEPARATOR_CHARACTER;
+    }
+
+    // the biggest number of digits after the decimal point that is divided exactly by a power of ten
+    private static final int MAX_EXACT_POWER_OF_TEN = 22;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int exponent = 1; exponent < POWERS_OF_TEN.length; exponent++) {
+            POWERS_OF_TEN[exponent] = POWERS_OF_TEN[exponent - 1] * 10;
+        }
+    }
 
-    private StringBuilder stringBuilder;
-    private List<Pair<TokenType, String>> tokens ;
+
+    private List<Pair<TokenType, String>> tokens;
+    private PackedTokens packedTokens;
+
+    // the words that are functions , and the table of the registry used by the expression being tokenized
+    private final FunctionRegistry functionRegistry;
+    private RegisteredFunction[] functionsTable;
 
     public Tokenizer() {
+        this(new FunctionRegistry());
+    }
+
+    public Tokenizer(FunctionRegistry functionRegistry) {
         tokens = new ArrayList<>();
-        stringBuilder=new StringBuilder();
+        packedTokens = new PackedTokens();
+        this.functionRegistry = functionRegistry;
     }
 
 
@@ -32,150 +85,203 @@ public class Tokenizer {
      * */
 
     public List<Pair<TokenType, String>> tokenizeString(String expression) throws UnknownCharacterException {
-        LOGGER.info("started tokenizing the Expression");
-
         tokens.clear();
-        char[] chars = expression.toCharArray();
-
-        for (int currentCharacterIndex = 0; currentCharacterIndex < chars.length; currentCharacterIndex++) {
-            char currentCharacter = chars[currentCharacterIndex];
-            if (isSupportedCharacter(currentCharacter)) {
-                // for both String and Number , the currentCharacterIndex needs to be set to the end of the
-                // the number or the character for example 21+3 , when we read 21 , we need to keep going
-                // from the first index that was different from number/string to not read it again
-                if (isString(currentCharacter)) {
-                    currentCharacterIndex = readWord(chars, currentCharacterIndex);
-                }
-                if (isNumber(currentCharacter)) {
-                    currentCharacterIndex = parseNumber(chars, currentCharacterIndex);
-                }
-                if (isOperator(currentCharacter)) {
-                    addTokenToPrasedTokensArray(TokenType.BINARY_OPERATOR, String.valueOf(currentCharacter));
-                }
-                if (isParentheses(currentCharacter)) {
-                    addTokenToPrasedTokensArray(TokenType.PARENTHESES, String.valueOf(currentCharacter));
-                }
-            } else {
-                throw new UnknownCharacterException(currentCharacter);
-            }
-
+        PackedTokens expressionTokens = tokenize(expression);
+        for (int tokenIndex = 0; tokenIndex < expressionTokens.size(); tokenIndex++) {
+            tokens.add(new Pair<>(expressionTokens.getType(tokenIndex), expressionTokens.getText(tokenIndex)));
         }
-        LOGGER.info("done tokenizing the Expression");
-        LOGGER.debug("the output of the tokenizer was " + tokens);
         return tokens;
     }
 
 
     /*
-    * returns wither a given character is supported or not
-    * */
-    private boolean isSupportedCharacter(char characterToCheck) {
-
-        return isNumber(characterToCheck) || isString(characterToCheck) || isOperator(characterToCheck) || isParentheses(characterToCheck);
+     * tokenizes the given characters in place , without creating an object per token.
+     *
+     * the returned tokens are reused by the next call of this method
+     * */
+    public PackedTokens tokenize(CharSequence expression) throws UnknownCharacterException {
+        return tokenize(expression, false, functionRegistry.table());
     }
 
+
     /*
-     * adds a token to the tokens List
+     * tokenizes the given characters , if wrapInParentheses is set the tokens start with "(" and end
+     * with ")" that don't take any character of the expression. the words that are names of the given
+     * functions are function tokens
      * */
-    private void addTokenToPrasedTokensArray(TokenType tokenType, String token) {
-        tokens.add(new Pair(tokenType, token));
+    PackedTokens tokenize(CharSequence expression, boolean wrapInParentheses, RegisteredFunction[] functionsTable)
+            throws UnknownCharacterException {
+        LOGGER.info("started tokenizing the Expression");
+        this.functionsTable = functionsTable;
 
+        packedTokens.reset(expression);
+        if (wrapInParentheses) {
+            packedTokens.add(TokenType.PARENTHESES, 0, 0, Constants.OPENING_PARENTHESES_CHARACTER, 0);
+        }
+        int expressionLength = expression.length();
+        int currentCharacterIndex = 0;
+        while (currentCharacterIndex < expressionLength) {
+            char currentCharacter = expression.charAt(currentCharacterIndex);
+            // for both String and Number , the currentCharacterIndex needs to be set to the end of the
+            // the number or the character for example 21+3 , when we read 21 , we need to keep going
+            // from the first index that was different from number/string to not read it again
+            switch (getCharacterClass(currentCharacter)) {
+                case WHITESPACE_CHARACTER:
+                    // whitespace only separates tokens
+                    currentCharacterIndex++;
+                    break;
+                case STRING_CHARACTER:
+                    currentCharacterIndex = readWord(expression, currentCharacterIndex);
+                    break;
+                case NUMBER_CHARACTER:
+                    currentCharacterIndex = readNumber(expression, currentCharacterIndex);
+                    break;
+                case OPERATOR_CHARACTER:
+                    packedTokens.add(TokenType.BINARY_OPERATOR, currentCharacterIndex, currentCharacterIndex + 1, currentCharacter, 0);
+                    currentCharacterIndex++;
+                    break;
+                case PARENTHESES_CHARACTER:
+                    packedTokens.add(TokenType.PARENTHESES, currentCharacterIndex, currentCharacterIndex + 1, currentCharacter, 0);
+                    currentCharacterIndex++;
+                    break;
+                case SEPARATOR_CHARACTER:
+                    packedTokens.add(TokenType.ARGUMENT_SEPARATOR, currentCharacterIndex, currentCharacterIndex + 1, currentCharacter, 0);
+                    currentCharacterIndex++;
+                    break;
+                default:
+                    throw new UnknownCharacterException(currentCharacter, currentCharacterIndex);
+            }
+        }
+        if (wrapInParentheses) {
+            packedTokens.add(TokenType.PARENTHESES, expressionLength, expressionLength, Constants.CLOSING_PARENTHESES_CHARACTER, 0);
+        }
+        LOGGER.info("done tokenizing the Expression");
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("the output of the tokenizer was " + packedTokens);
+        }
+        return packedTokens;
     }
 
-    /*
-     * reads a string and decides if its a variable or a function
-     * */
-
-    private int readWord(char[] chars, int startingCharacterPosition) {
-        LOGGER.debug("reading String at position " + startingCharacterPosition);
 
-        while (startingCharacterPosition < chars.length && (isNumber(chars[startingCharacterPosition]) || isString(chars[startingCharacterPosition]))) {
-            stringBuilder.append(chars[startingCharacterPosition]);
-            startingCharacterPosition++;
+    /*
+    * returns the class of the given character
+    * */
+    private static byte getCharacterClass(char characterToCheck) {
+        if (characterToCheck < CHARACTER_CLASSES.length) {
+            return CHARACTER_CLASSES[characterToCheck];
         }
-        String parsedWord = stringBuilder.toString();
-        TokenType wordType = isFunction(parsedWord) ? TokenType.FUNCTION : TokenType.VARIABLE;
-        addTokenToPrasedTokensArray(wordType, parsedWord);
-        clearStringBuilder();
-        LOGGER.debug("done reading the String ,last character position is  " + String.valueOf(startingCharacterPosition - 1));
-
-        return startingCharacterPosition - 1;
+        return Character.isWhitespace(characterToCheck) ? WHITESPACE_CHARACTER : UNSUPPORTED_CHARACTER;
     }
 
 
     /*
-     * check if a given character is an accepted string character
+     * reads a string and decides if its a variable or a function , returns the position after the string
      * */
-    private boolean isString(char expressionChar) {
-        return ((expressionChar >= Constants.FIRST_SMALL_CHARACTER && expressionChar <= Constants.LAST_SMALL_CHARACTER)
-                || (expressionChar >= Constants.FIRST_CAPITAL_CHARACTER && expressionChar <= Constants.LAST_CAPITAL_CHARACTER)
-                || expressionChar == Constants.SPECIAL_VARIABLE_CHARACTER);
+
+    private int readWord(CharSequence expression, int startingCharacterPosition) {
+        int currentCharacterIndex = startingCharacterPosition;
+        while (currentCharacterIndex < expression.length() && isWordCharacter(expression.charAt(currentCharacterIndex))) {
+            currentCharacterIndex++;
+        }
+        // a single lookup in the table of the functions , whatever the number of functions
+        TokenType type = FunctionRegistry.find(functionsTable, expression, startingCharacterPosition, currentCharacterIndex) == null
+                ? TokenType.VARIABLE : TokenType.FUNCTION;
+        packedTokens.add(type, startingCharacterPosition, currentCharacterIndex, (char) 0, 0);
+        return currentCharacterIndex;
     }
 
 
     /*
-     * check if a given character is a supported Operator
+     *reads a number in the expression , returns the position after the number
      * */
-    private boolean isOperator(char expressionChar) {
-        return SUPPORTED_BINARY_OPERATORS.contains(expressionChar);
 
+    private int readNumber(CharSequence expression, int numberStartingCharacter) {
+        // it will keep reading until a the next character is not a number
+        int currentCharacterIndex = numberStartingCharacter;
+        while (currentCharacterIndex < expression.length() && isNumber(expression.charAt(currentCharacterIndex))) {
+            currentCharacterIndex++;
+        }
+        packedTokens.add(TokenType.NUMBER, numberStartingCharacter, currentCharacterIndex, (char) 0,
+                parseDecimal(expression, numberStartingCharacter, currentCharacterIndex));
+        return currentCharacterIndex;
     }
 
+
     /*
-     * check if a given character is a parentheses
+     * parses the digits and the decimal point between start and end , straight from the characters.
+     *
+     * when the digits without the decimal point make an integer smaller than 2^53 (MAX_EXACT_MANTISSA) and
+     * there are at most MAX_EXACT_POWER_OF_TEN digits after the decimal point , both the integer and the
+     * power of ten are exact doubles and their quotient is correctly rounded , so the number is parsed
+     * without allocating. the other numbers are parsed by Double.parseDouble.
+     * NaN is returned for numbers that are not valid (like 1.2.3)
      * */
+    static double parseDecimal(CharSequence expression, int start, int end) {
+        long mantissa = 0;
+        int digitsAfterDecimalPoint = 0;
+        boolean seenDecimalPoint = false;
+        boolean seenDigit = false;
+        for (int characterIndex = start; characterIndex < end; characterIndex++) {
+            char currentCharacter = expression.charAt(characterIndex);
+            if (currentCharacter == Constants.DECIMAL_POINT_CHARACTER) {
+                if (seenDecimalPoint) {
+                    return Double.NaN;
+                }
+                seenDecimalPoint = true;
+            } else {
+                seenDigit = true;
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    // too many digits to be exact , let the jdk round it
+                    return Double.parseDouble(expression.subSequence(start, end).toString());
+                }
+                mantissa = mantissa * 10 + (currentCharacter - Constants.SMALLEST_DIGIT_CHARACTER);
+                if (seenDecimalPoint) {
+                    digitsAfterDecimalPoint++;
+                }
+            }
+        }
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (mantissa >= MAX_EXACT_MANTISSA || digitsAfterDecimalPoint > MAX_EXACT_POWER_OF_TEN) {
+            return Double.parseDouble(expression.subSequence(start, end).toString());
+        }
+        return mantissa / POWERS_OF_TEN[digitsAfterDecimalPoint];
+    }
 
-    private boolean isParentheses(char expressionChar) {
-        return (expressionChar == Constants.OPENING_PARENTHESES_CHARACTER || expressionChar == Constants.CLOSING_PARENTHESES_CHARACTER);
 
-    }
     /*
-     * check if a given character is a number
+     * check if a given character is whitespace
      * */
+    static boolean isWhitespace(char expressionChar) {
+        return getCharacterClass(expressionChar) == WHITESPACE_CHARACTER;
+    }
 
-    private boolean isNumber(char expressionChar) {
-        return ((expressionChar >= Constants.SMALLEST_DIGIT_CHARACTER && expressionChar <= Constants.HIGHEST_DIGIT_CHARACTER )
-                || expressionChar == Constants.DECIMAL_POINT_CHARACTER);
 
-    }
     /*
-     * check if a given string is a function
+     * check if a given character can be part of a number , a variable or a function name
      * */
-    private boolean isFunction(String expressionChar) {
-        return SUPPORTED_FUNCTIONS.contains(expressionChar);
-
+    static boolean isWordCharacter(char expressionChar) {
+        return isNumber(expressionChar) || isString(expressionChar);
     }
 
 
     /*
-     *parses a number in the char array
+     * check if a given character is an accepted string character
      * */
-
-    private int parseNumber(char[] chars, int numberStartingCharacter) {
-        // it will keep reading until a the next character is not a number
-        LOGGER.debug(" reading number startinf from  " + numberStartingCharacter);
-        int currentCharacterIndex=numberStartingCharacter;
-        while (currentCharacterIndex < chars.length && isNumber(chars[currentCharacterIndex])) {
-            stringBuilder.append(chars[currentCharacterIndex]);
-            currentCharacterIndex++;
-        }
-        String tokenizedNumber = stringBuilder.toString();
-        clearStringBuilder();
-        addTokenToPrasedTokensArray(TokenType.NUMBER, tokenizedNumber);
-
-        LOGGER.debug("done reading the String ,last character position is  " + String.valueOf(numberStartingCharacter - 1));
+    private static boolean isString(char expressionChar) {
+        return getCharacterClass(expressionChar) == STRING_CHARACTER;
+    }
 
 
-        return currentCharacterIndex - 1;
+    /*
+     * check if a given character is a number
+     * */
 
-    }
+    private static boolean isNumber(char expressionChar) {
+        return getCharacterClass(expressionChar) == NUMBER_CHARACTER;
 
-    /*
-    * clears the string builder field
-    * */
-    private void clearStringBuilder() {
-        stringBuilder.setLength(0);
     }
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,464 @@
+package main.java;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+
+
+/*
+ * the bindings of a calculator , kept in a flat frame of doubles indexed by the slots of the variables.
+ *
+ * every frame has its own layout giving a slot to every variable bound in the frame , a variable that is
+ * only read gets no slot. a compiled expression resolves the slots of its variables against the layout
+ * once and keeps the resolution of every frame it is evaluated with (a few of them) , which is checked
+ * against the frame every time it is used: a resolution made for an older layout , or before a variable it
+ * missed got a slot is made again.
+ * a bitset says which slots are bound , a variable that was never bound or was removed is not defined.
+ *
+ * the slots of removed variables are given back when the frame is cleared , or when most of its slots
+ * are not bound anymore , by moving the bound variables to a new compact layout. the frame therefore
+ * takes memory for the variables it binds , not for the ones other calculators saw.
+ *
+ * every slot has a version , changed every time the slot is bound or removed. the versions come from one
+ * counter of the frame , a version is never given twice , so a value computed from some slots is still
+ * valid as long as their versions didn't change , even across layouts.
+ *
+ * the frame is a map of the bound variables sorted by name , for the code reading the bindings by name.
+ * an expression reads all its variables in one optimistic read and stores the variables it bound under
+ * the write lock , so it never sees half of the bindings of another expression
+ * */
+final class VariableFrame extends AbstractMap<String, Double> {
+
+    private static final int INITIAL_SLOTS_COUNT = 64;
+    // the layout is made compact again when less than this share of its slots is bound
+    private static final int MIN_BOUND_SLOTS_SHARE = 4;
+
+    private final StampedLock lock = new StampedLock();
+    private Layout layout = new Layout(INITIAL_SLOTS_COUNT);
+    private double[] values = new double[INITIAL_SLOTS_COUNT];
+    private long[] boundSlots = new long[INITIAL_SLOTS_COUNT / 64];
+    private long[] versions = new long[INITIAL_SLOTS_COUNT];
+    private int size;
+    private long lastVersion;
+
+
+    /*
+     * returns the slots of the given variables in the current layout , -1 for the variables without a slot
+     * */
+    Resolution resolve(String[] variableNames) {
+        long stamp = lock.readLock();
+        try {
+            int[] slots = new int[variableNames.length];
+            boolean complete = true;
+            for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+                Integer slot = layout.slots.get(variableNames[variableIndex]);
+                slots[variableIndex] = slot == null ? -1 : slot;
+                complete &= slot != null;
+            }
+            return new Resolution(this, layout, layout.count, slots, complete);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*
+     * returns true if the resolution can still be used with this frame , to be called under the lock
+     * */
+    private boolean isCurrent(Resolution resolution) {
+        return resolution.layout == layout && (resolution.complete || resolution.slotsCount == layout.count);
+    }
+
+
+    /*
+     * reads the variables of the given resolution , and marks the ones that are bound. returns false , and
+     * reads nothing , if the resolution is not current anymore
+     * */
+    boolean load(Resolution resolution, double[] variables, boolean[] definedVariables) {
+        long stamp = lock.tryOptimisticRead();
+        boolean current = isCurrent(resolution);
+        if (current) {
+            read(resolution.slots, variables, definedVariables);
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                current = isCurrent(resolution);
+                if (current) {
+                    read(resolution.slots, variables, definedVariables);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    /*
+     * binds the variables flagged as bound and defined , at their slots in the given resolution while it is
+     * current , the variables without a slot get one
+     * */
+    void store(Resolution resolution, String[] variableNames, boolean[] boundVariables, double[] variables,
+               boolean[] definedVariables) {
+        long stamp = lock.writeLock();
+        try {
+            boolean current = resolution != null && isCurrent(resolution);
+            for (int variableIndex = 0; variableIndex < variableNames.length; variableIndex++) {
+                if (boundVariables[variableIndex] && definedVariables[variableIndex]) {
+                    int slot = current ? resolution.slots[variableIndex] : -1;
+                    bind(slot >= 0 ? slot : slotOf(variableNames[variableIndex]), variables[variableIndex]);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*
+     * reads the versions of the slots of the given resolution. returns false if the resolution is not
+     * current or misses a variable , its versions can't be trusted then
+     * */
+    boolean loadVersions(Resolution resolution, long[] slotVersions) {
+        long stamp = lock.tryOptimisticRead();
+        boolean current = resolution.complete && isCurrent(resolution);
+        if (current) {
+            readVersions(resolution.slots, slotVersions);
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                current = resolution.complete && isCurrent(resolution);
+                if (current) {
+                    readVersions(resolution.slots, slotVersions);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    /*
+     * returns true if none of the given slots changed since they had the given versions. a slot of an older
+     * layout has another version in the current one , versions are never given twice
+     * */
+    boolean hasVersions(int[] slots, long[] slotVersions) {
+        long stamp = lock.tryOptimisticRead();
+        boolean unchanged = versionsEqual(slots, slotVersions);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                unchanged = versionsEqual(slots, slotVersions);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return unchanged;
+    }
+
+    private void readVersions(int[] slots, long[] slotVersions) {
+        long[] currentVersions = versions;
+        for (int slotIndex = 0; slotIndex < slots.length; slotIndex++) {
+            slotVersions[slotIndex] = slots[slotIndex] < currentVersions.length ? currentVersions[slots[slotIndex]] : 0;
+        }
+    }
+
+    private boolean versionsEqual(int[] slots, long[] slotVersions) {
+        long[] currentVersions = versions;
+        for (int slotIndex = 0; slotIndex < slots.length; slotIndex++) {
+            long version = slots[slotIndex] < currentVersions.length ? currentVersions[slots[slotIndex]] : 0;
+            if (version != slotVersions[slotIndex]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * an optimistic read can see the arrays while they are replaced , they are read once and every slot
+     * is checked against their own length. a variable without a slot is not bound
+     * */
+    private void read(int[] slots, double[] variables, boolean[] definedVariables) {
+        double[] currentValues = values;
+        long[] currentBoundSlots = boundSlots;
+        for (int variableIndex = 0; variableIndex < slots.length; variableIndex++) {
+            int slot = slots[variableIndex];
+            boolean bound = slot >= 0 && isBound(currentBoundSlots, slot) && slot < currentValues.length;
+            definedVariables[variableIndex] = bound;
+            if (bound) {
+                variables[variableIndex] = currentValues[slot];
+            }
+        }
+    }
+
+
+    /*
+     * returns the slot of the given variable , a new one if it has none , under the write lock
+     * */
+    private int slotOf(String variableName) {
+        Integer slot = layout.slots.get(variableName);
+        if (slot != null) {
+            return slot;
+        }
+        int newSlot = layout.add(variableName);
+        if (newSlot >= values.length) {
+            int slotsCount = values.length * 2;
+            values = Arrays.copyOf(values, slotsCount);
+            boundSlots = Arrays.copyOf(boundSlots, (slotsCount + 63) / 64);
+            versions = Arrays.copyOf(versions, slotsCount);
+        }
+        versions[newSlot] = ++lastVersion;
+        return newSlot;
+    }
+
+    /*
+     * binds a slot , under the write lock
+     * */
+    private void bind(int slot, double value) {
+        values[slot] = value;
+        versions[slot] = ++lastVersion;
+        if (!isBound(boundSlots, slot)) {
+            boundSlots[slot >>> 6] |= 1L << slot;
+            size++;
+        }
+    }
+
+    private static boolean isBound(long[] boundSlots, int slot) {
+        return (slot >>> 6) < boundSlots.length && (boundSlots[slot >>> 6] & 1L << slot) != 0;
+    }
+
+    /*
+     * moves the bound variables to a new layout without the slots of the removed ones , under the write lock.
+     * the resolutions made for the old layout are made again
+     * */
+    private void compact() {
+        int slotsCount = INITIAL_SLOTS_COUNT;
+        while (slotsCount < 2 * size) {
+            slotsCount *= 2;
+        }
+        Layout compactLayout = new Layout(slotsCount);
+        double[] compactValues = new double[slotsCount];
+        long[] compactBoundSlots = new long[slotsCount / 64];
+        long[] compactVersions = new long[slotsCount];
+        for (int wordIndex = 0; wordIndex < boundSlots.length; wordIndex++) {
+            for (long word = boundSlots[wordIndex]; word != 0; word &= word - 1) {
+                int slot = wordIndex * 64 + Long.numberOfTrailingZeros(word);
+                int compactSlot = compactLayout.add(layout.names[slot]);
+                compactValues[compactSlot] = values[slot];
+                compactBoundSlots[compactSlot >>> 6] |= 1L << compactSlot;
+                compactVersions[compactSlot] = ++lastVersion;
+            }
+        }
+        layout = compactLayout;
+        values = compactValues;
+        boundSlots = compactBoundSlots;
+        versions = compactVersions;
+    }
+
+
+    @Override
+    public Double get(Object variableName) {
+        long stamp = lock.readLock();
+        try {
+            Integer slot = layout.slots.get(variableName);
+            return slot != null && isBound(boundSlots, slot) ? values[slot] : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object variableName) {
+        return get(variableName) != null;
+    }
+
+    @Override
+    public Double put(String variableName, Double variableValue) {
+        // like the concurrent map the bindings were kept in before , a variable can't be bound to null
+        Objects.requireNonNull(variableName);
+        Objects.requireNonNull(variableValue);
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(variableName);
+            Double previousValue = isBound(boundSlots, slot) ? values[slot] : null;
+            bind(slot, variableValue);
+            return previousValue;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Double remove(Object variableName) {
+        long stamp = lock.writeLock();
+        try {
+            Integer slot = layout.slots.get(variableName);
+            if (slot == null || !isBound(boundSlots, slot)) {
+                return null;
+            }
+            boundSlots[slot >>> 6] &= ~(1L << slot);
+            versions[slot] = ++lastVersion;
+            size--;
+            Double previousValue = values[slot];
+            if (layout.count > INITIAL_SLOTS_COUNT && size < layout.count / MIN_BOUND_SLOTS_SHARE) {
+                compact();
+            }
+            return previousValue;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            size = 0;
+            Arrays.fill(boundSlots, 0);
+            compact();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*
+     * returns the number of slots of the frame , the bound variables and the removed ones not given back yet
+     * take some of them
+     * */
+    int capacity() {
+        long stamp = lock.readLock();
+        try {
+            return values.length;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        return new AbstractSet<Entry<String, Double>>() {
+            @Override
+            public Iterator<Entry<String, Double>> iterator() {
+                Iterator<Entry<String, Double>> boundVariables = boundVariables().entrySet().iterator();
+                return new Iterator<Entry<String, Double>>() {
+                    private Entry<String, Double> lastEntry;
+
+                    @Override
+                    public boolean hasNext() {
+                        return boundVariables.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Double> next() {
+                        lastEntry = boundVariables.next();
+                        return lastEntry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        VariableFrame.this.remove(lastEntry.getKey());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return VariableFrame.this.size();
+            }
+        };
+    }
+
+    /*
+     * copies the bound variables , sorted by name
+     * */
+    private Map<String, Double> boundVariables() {
+        Map<String, Double> boundVariables = new TreeMap<>();
+        long stamp = lock.readLock();
+        try {
+            for (int wordIndex = 0; wordIndex < boundSlots.length; wordIndex++) {
+                for (long word = boundSlots[wordIndex]; word != 0; word &= word - 1) {
+                    int slot = wordIndex * 64 + Long.numberOfTrailingZeros(word);
+                    boundVariables.put(layout.names[slot], values[slot]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return boundVariables;
+    }
+
+
+    /*
+     * the slots of the variables of a frame , a layout only grows , it is replaced when the frame is compacted
+     * */
+    private static final class Layout {
+
+        private final Map<String, Integer> slots = new HashMap<>();
+        private String[] names;
+        private int count;
+
+        Layout(int slotsCount) {
+            this.names = new String[slotsCount];
+        }
+
+        int add(String variableName) {
+            if (count == names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[count] = variableName;
+            slots.put(variableName, count);
+            return count++;
+        }
+    }
+
+
+    /*
+     * the slots of some variables in a layout of a frame , -1 for the variables that had no slot
+     * */
+    static final class Resolution {
+
+        private final VariableFrame frame;
+        private final Layout layout;
+        private final int slotsCount;
+        private final int[] slots;
+        private final boolean complete;
+
+        private Resolution(VariableFrame frame, Layout layout, int slotsCount, int[] slots, boolean complete) {
+            this.frame = frame;
+            this.layout = layout;
+            this.slotsCount = slotsCount;
+            this.slots = slots;
+            this.complete = complete;
+        }
+
+        /*
+         * returns true if the resolution was made by the given frame , it may still be for an older layout
+         * */
+        boolean isOf(VariableFrame frame) {
+            return this.frame == frame;
+        }
+
+        /*
+         * returns the slots , in the order of the resolved variables
+         * */
+        int[] getSlots() {
+            return slots;
+        }
+    }
+}
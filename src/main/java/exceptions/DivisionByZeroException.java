@@ -0,0 +1,27 @@
+package main.java.exceptions;
+
+/*
+ * thrown when an expression divides by zero. it has no stack trace , so the interpreter keeps one
+ * for every division of an expression and throws it as often as needed
+ * */
+public class DivisionByZeroException extends ArithmeticException {
+
+    private final int position;
+
+    public DivisionByZeroException(int position) {
+        super("Division By Zero Exception");
+        this.position = position;
+    }
+
+    /*
+     * returns the position of the / in the expression , or -1 if it is not known
+     * */
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
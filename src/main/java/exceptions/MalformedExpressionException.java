@@ -0,0 +1,26 @@
+package main.java.exceptions;
+
+/*
+ * thrown when the tokens of an expression don't follow the grammar , like in 1+ or 1.2.3
+ * */
+public class MalformedExpressionException extends UnsupportedOperationException {
+
+    private final int position;
+
+    public MalformedExpressionException(String message, int position) {
+        super(message);
+        this.position = position;
+    }
+
+    /*
+     * returns the position in the expression where the error was found
+     * */
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,28 @@
+package main.java.exceptions;
+
+/*
+ * thrown when a parentheses of an expression has no matching one , like in (1+2 or 1+2).
+ * it has no stack trace , the position of the parentheses says where the error is
+ * */
+public class UnbalancedParenthesesException extends UnsupportedOperationException {
+
+    private final int position;
+
+    public UnbalancedParenthesesException(char parentheses, int position) {
+        super(String.format("unbalanced parentheses: the %s at %d %s", parentheses, position,
+                parentheses == '(' ? "is never closed" : "has no matching ("));
+        this.position = position;
+    }
+
+    /*
+     * returns the position of the parentheses in the expression
+     * */
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
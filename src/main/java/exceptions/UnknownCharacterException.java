@@ -1,12 +1,26 @@
 package main.java.exceptions;
 
+/*
+ * thrown when an expression has a character the tokenizer doesn't know , like in 1$2.
+ * it has no stack trace , the position of the character says where the error is
+ * */
 public class UnknownCharacterException extends Exception{
 
     char unknownCharacter;
 
-    public UnknownCharacterException(char unknownCharacter){
-        super();
+    private final int position;
+
+    public UnknownCharacterException(char unknownCharacter, int position){
+        super(String.format("character %s is not supported", unknownCharacter), null, false, false);
         this.unknownCharacter=unknownCharacter;
+        this.position=position;
+    }
+
+    /*
+     * returns the position of the character in the expression
+     * */
+    public int getPosition() {
+        return position;
     }
 
     @Override
@@ -1,10 +1,29 @@
 package main.java.exceptions;
 
+/*
+ * thrown when an expression reads a variable that has no value. it has no stack trace , so a
+ * compiled expression can keep one for every variable it reads and throw it as often as needed
+ * */
 public class VariableIsNotDefinedException extends Exception {
 
-    public VariableIsNotDefinedException(String message){
-        super(message);
+    private final String variableName;
+    private final int position;
 
+    public VariableIsNotDefinedException(String variableName, int position){
+        super(variableName + " is not defined", null, false, false);
+        this.variableName = variableName;
+        this.position = position;
+    }
+
+    public String getVariableName() {
+        return variableName;
+    }
+
+    /*
+     * returns the position in the expression where the variable is first read , or -1 if it is not known
+     * */
+    public int getPosition() {
+        return position;
     }
 
 }
@@ -0,0 +1,57 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class AllocationFreeEvaluationTest {
+
+    private static final int WARM_UP_EVALUATIONS = 200000;
+    private static final int MEASURED_EVALUATIONS = 100000;
+
+    private com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private CompiledExpression compiledExpression = new Calc().compile("(x*2+y/4)*(x-y)+sqrt(16)-(-x)");
+
+    @Test
+    public void evaluationWithBindingsDoesNotAllocateTest() {
+        Map<String, Double> bindings = new TreeMap<>();
+        bindings.put("x", 3.0);
+        bindings.put("y", 2.0);
+        double result = 0;
+        for (int i = 0; i < WARM_UP_EVALUATIONS; i++) {
+            result += compiledExpression.evaluate(bindings);
+        }
+
+        long allocatedBytesBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < MEASURED_EVALUATIONS; i++) {
+            result += compiledExpression.evaluate(bindings);
+        }
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytesBefore;
+
+        Assert.assertEquals(result, (WARM_UP_EVALUATIONS + MEASURED_EVALUATIONS) * 13.5);
+        Assert.assertEquals(allocatedBytes, 0);
+    }
+
+    @Test
+    public void evaluationWithVariablesArrayDoesNotAllocateTest() {
+        double[] variables = {3.0, 2.0};
+        double result = 0;
+        for (int i = 0; i < WARM_UP_EVALUATIONS; i++) {
+            result += compiledExpression.evaluate(variables);
+        }
+
+        long allocatedBytesBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < MEASURED_EVALUATIONS; i++) {
+            result += compiledExpression.evaluate(variables);
+        }
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytesBefore;
+
+        Assert.assertEquals(result, (WARM_UP_EVALUATIONS + MEASURED_EVALUATIONS) * 13.5);
+        Assert.assertEquals(allocatedBytes, 0);
+    }
+}
@@ -0,0 +1,82 @@
+import main.java.BindingsMode;
+import main.java.Calc;
+import main.java.EvaluationResult;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+public class BatchEvaluationTest {
+
+
+    @Test
+    public void resultsKeepTheOrderOfExpressionsTest() {
+        Calc calculatorTestObject = new Calc();
+        List<String> expressions = new ArrayList<>();
+        for (int expressionIndex = 0; expressionIndex < 100000; expressionIndex++) {
+            expressions.add(expressionIndex + "*2+" + (expressionIndex % 7));
+        }
+        List<EvaluationResult> results = calculatorTestObject.evalAll(expressions, BindingsMode.ISOLATED, new ForkJoinPool(4));
+
+        Assert.assertEquals(results.size(), expressions.size());
+        for (int expressionIndex = 0; expressionIndex < expressions.size(); expressionIndex++) {
+            Assert.assertEquals(results.get(expressionIndex).getExpression(), expressions.get(expressionIndex));
+            Assert.assertEquals(results.get(expressionIndex).getValue(), expressionIndex * 2.0 + expressionIndex % 7);
+        }
+    }
+
+    @Test
+    public void errorsAreCollectedTest() {
+        Calc calculatorTestObject = new Calc();
+        List<EvaluationResult> results = calculatorTestObject.evalAll(Arrays.asList("1+1", "2/0", "y", "2+%", "3*3"));
+
+        Assert.assertEquals(results.get(0).getValue(), 2.0);
+        Assert.assertFalse(results.get(1).isSuccess());
+        Assert.assertEquals(results.get(1).getError().getMessage(), "Division By Zero Exception");
+        Assert.assertTrue(results.get(2).getError() instanceof UnsupportedOperationException);
+        Assert.assertFalse(results.get(3).isSuccess());
+        Assert.assertEquals(results.get(4).getValue(), 9.0);
+    }
+
+    @Test
+    public void isolatedBindingsTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("x=10");
+        List<EvaluationResult> results = calculatorTestObject.evalAll(Arrays.asList("x=(x+1)", "x*2", "y=(x-1)"),
+                BindingsMode.ISOLATED);
+
+        Assert.assertEquals(results.get(0).getValue(), 11.0);
+        Assert.assertEquals(results.get(1).getValue(), 20.0);
+        Assert.assertEquals(results.get(2).getValue(), 9.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 10.0);
+        Assert.assertFalse(calculatorTestObject.bindings().containsKey("y"));
+    }
+
+    @Test
+    public void sharedBindingsTest() {
+        Calc calculatorTestObject = new Calc();
+        List<String> expressions = new ArrayList<>();
+        for (int variableIndex = 0; variableIndex < 5000; variableIndex++) {
+            expressions.add("v" + variableIndex + "=" + variableIndex);
+        }
+        calculatorTestObject.evalAll(expressions, BindingsMode.SHARED);
+
+        Assert.assertEquals(calculatorTestObject.bindings().size(), 5000);
+        Assert.assertEquals(calculatorTestObject.bindings().get("v4321"), 4321.0);
+    }
+
+    @Test
+    public void streamingEvaluationTest() {
+        Calc calculatorTestObject = new Calc();
+        List<Double> values = calculatorTestObject.evalAll(Arrays.asList("1+1", "sqrt(16)", "2*3", "1/0", "10-1").stream(),
+                BindingsMode.ISOLATED)
+                .map(result -> result.isSuccess() ? result.getValue() : Double.NaN)
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(values, Arrays.asList(2.0, 4.0, 6.0, Double.NaN, 9.0));
+    }
+}
@@ -0,0 +1,133 @@
+import main.java.BinaryProtocolClient;
+import main.java.BinaryProtocolServer;
+import main.java.Calc;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class BinaryProtocolTest {
+
+    private Calc calculatorTestObject = new Calc();
+
+    @Test
+    public void prepareAndEvaluateTest() throws IOException {
+        try (BinaryProtocolServer server = startServer(loopbackAddress());
+             BinaryProtocolClient client = BinaryProtocolClient.connect(server.getAddress())) {
+            int handle = client.prepare("sqrt(x*x+y*y)");
+            Assert.assertEquals(client.getVariableNames(handle), Arrays.asList("x", "y"));
+            Assert.assertEquals(client.evaluate(handle, 3, 4), 5.0);
+            Assert.assertEquals(client.evaluate(handle, 6, 8), 10.0);
+            int otherHandle = client.prepare("2*3");
+            Assert.assertNotEquals(otherHandle, handle);
+            Assert.assertEquals(client.evaluate(otherHandle), 6.0);
+        }
+    }
+
+    @Test
+    public void errorsTest() throws IOException {
+        try (BinaryProtocolServer server = startServer(loopbackAddress());
+             BinaryProtocolClient client = BinaryProtocolClient.connect(server.getAddress())) {
+            int handle = client.prepare("1/x");
+            try {
+                client.evaluate(handle, 0);
+                Assert.fail("dividing by zero should fail");
+            } catch (UnsupportedOperationException e) {
+                Assert.assertEquals(e.getMessage(), "Division By Zero Exception");
+            }
+            try {
+                client.prepare("1+$");
+                Assert.fail("an unknown character should fail");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            // the connection still works after the errors
+            Assert.assertEquals(client.evaluate(handle, 4), 0.25);
+            client.release(handle);
+            Assert.assertEquals(client.evaluate(client.prepare("x+1"), 1), 2.0);
+        }
+    }
+
+    @Test
+    public void pipelinedEvaluationsTest() throws IOException {
+        try (BinaryProtocolServer server = startServer(loopbackAddress());
+             BinaryProtocolClient client = BinaryProtocolClient.connect(server.getAddress())) {
+            int handle = client.prepare("x*2+y");
+            int window = 1000;
+            int rounds = 200;
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int evaluation = 0; evaluation < window; evaluation++) {
+                    client.send(handle, evaluation, round);
+                }
+                for (int evaluation = 0; evaluation < window; evaluation++) {
+                    Assert.assertEquals(client.receive(), evaluation * 2.0 + round);
+                }
+            }
+            report("pipelined single evaluations", window * rounds, System.nanoTime() - start);
+        }
+    }
+
+    @Test
+    public void evaluationOfRowsTest() throws IOException {
+        try (BinaryProtocolServer server = startServer(loopbackAddress());
+             BinaryProtocolClient client = BinaryProtocolClient.connect(server.getAddress())) {
+            int handle = client.prepare("x*2+y");
+            int rowsCount = 100000;
+            double[] rows = new double[rowsCount * 2];
+            for (int row = 0; row < rowsCount; row++) {
+                rows[row * 2] = row;
+                rows[row * 2 + 1] = 1;
+            }
+            double[] results = new double[rowsCount];
+            int requests = 20;
+            long start = System.nanoTime();
+            for (int request = 0; request < requests; request++) {
+                client.evaluate(handle, rows, rowsCount, results);
+            }
+            report("evaluations of rows", rowsCount * requests, System.nanoTime() - start);
+            for (int row = 0; row < rowsCount; row++) {
+                Assert.assertEquals(results[row], row * 2.0 + 1);
+            }
+        }
+    }
+
+    @Test
+    public void unixDomainSocketTest() throws IOException {
+        Path socketPath = Files.createTempDirectory("calc").resolve("calc.sock");
+        SocketAddress address;
+        try {
+            address = BinaryProtocolServer.unixDomainSocketAddress(socketPath);
+        } catch (UnsupportedOperationException e) {
+            throw new SkipException(e.getMessage());
+        }
+        try (BinaryProtocolServer server = startServer(address);
+             BinaryProtocolClient client = BinaryProtocolClient.connect(address)) {
+            int handle = client.prepare("x-y");
+            Assert.assertEquals(client.evaluate(handle, 5, 3), 2.0);
+        }
+        Assert.assertFalse(Files.exists(socketPath));
+    }
+
+
+    private BinaryProtocolServer startServer(SocketAddress address) throws IOException {
+        BinaryProtocolServer server = new BinaryProtocolServer(calculatorTestObject, address);
+        server.start();
+        return server;
+    }
+
+    private static SocketAddress loopbackAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private static void report(String name, long evaluations, long elapsedNanos) {
+        System.out.printf("%s : %d evaluations , %.0f evaluations/s%n", name, evaluations, evaluations / (elapsedNanos / 1e9));
+    }
+}
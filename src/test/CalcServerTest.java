@@ -0,0 +1,227 @@
+import main.java.Calc;
+import main.java.CalcServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CalcServerTest {
+
+    private Calc calculatorTestObject;
+    private CalcServer server;
+
+    @BeforeClass
+    public void enableNoDelay() {
+        CalcServer.enableNoDelay();
+    }
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+        calculatorTestObject = new Calc();
+        server = new CalcServer(calculatorTestObject, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void evalTest() throws IOException {
+        Assert.assertEquals(request("POST", "/eval", "x=(2*3)"), "200 {\"value\":6.0}");
+        Assert.assertEquals(request("POST", "/eval", "x+1"), "200 {\"value\":7.0}");
+        Assert.assertEquals(request("POST", "/eval", "1/0"), "400 {\"error\":\"Division By Zero Exception\"}");
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 6.0);
+        Assert.assertEquals(request("GET", "/eval", ""), "405 {\"error\":\"GET is not allowed here\"}");
+    }
+
+    @Test
+    public void functionFailureTest() throws IOException {
+        calculatorTestObject.functions().register("boom", (double argument) -> {
+            throw new IllegalStateException("backend down");
+        }, false);
+        Assert.assertEquals(request("POST", "/eval", "boom(1)+2"),
+                "500 {\"error\":\"java.lang.IllegalStateException: backend down\"}");
+        // the connection is still usable
+        Assert.assertEquals(request("POST", "/eval", "1+2"), "200 {\"value\":3.0}");
+    }
+
+    @Test
+    public void batchTest() throws IOException {
+        Assert.assertEquals(request("POST", "/batch", "[\"1+1\", \"1/0\", \"y\"]"),
+                "200 [{\"value\":2.0},{\"error\":\"Division By Zero Exception\"},{\"error\":\"y is not defined\"}]");
+        Assert.assertTrue(request("POST", "/batch", "1+1").startsWith("400 "));
+    }
+
+    @Test
+    public void sessionsTest() throws IOException {
+        Assert.assertEquals(request("POST", "/sessions/a/eval", "x=(1)"), "200 {\"value\":1.0}");
+        Assert.assertEquals(request("POST", "/sessions/a/eval", "y=(x+1)"), "200 {\"value\":2.0}");
+        Assert.assertEquals(request("GET", "/sessions/a/vars", ""), "200 {\"_\":2.0,\"x\":1.0,\"y\":2.0}");
+        // only eval and clear create a session
+        Assert.assertEquals(request("GET", "/sessions/b/vars", ""), "404 {\"error\":\"no such session b\"}");
+        Assert.assertEquals(request("POST", "/sessions/b/other", ""), "404 {\"error\":\"no such resource /sessions/b/other\"}");
+        Assert.assertEquals(request("GET", "/sessions/b/vars", ""), "404 {\"error\":\"no such session b\"}");
+        Assert.assertEquals(request("POST", "/sessions/b/clear", ""), "200 {}");
+        Assert.assertEquals(request("GET", "/sessions/b/vars", ""), "200 {}");
+        Assert.assertEquals(request("POST", "/sessions/a/clear", "x _"), "200 {}");
+        Assert.assertEquals(request("GET", "/sessions/a/vars", ""), "200 {\"y\":2.0}");
+        Assert.assertEquals(request("POST", "/sessions/a/clear", ""), "200 {}");
+        Assert.assertEquals(request("GET", "/sessions/a/vars", ""), "200 {}");
+        Assert.assertEquals(request("DELETE", "/sessions/a", ""), "200 {}");
+        Assert.assertEquals(request("GET", "/sessions/a/vars", ""), "404 {\"error\":\"no such session a\"}");
+        Assert.assertTrue(calculatorTestObject.bindings().isEmpty());
+    }
+
+    @Test
+    public void sessionsLimitTest() throws IOException {
+        server.stop(0);
+        server = new CalcServer(calculatorTestObject, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        server.start();
+        Assert.assertEquals(request("POST", "/sessions/a/eval", "x=(1)"), "200 {\"value\":1.0}");
+        Assert.assertEquals(request("POST", "/sessions/b/eval", "x=(2)"), "200 {\"value\":2.0}");
+        Assert.assertEquals(request("GET", "/sessions/a/vars", ""), "200 {\"_\":1.0,\"x\":1.0}");
+        // b is the least recently used session , it is forgotten for c
+        Assert.assertEquals(request("POST", "/sessions/c/eval", "x=(3)"), "200 {\"value\":3.0}");
+        Assert.assertEquals(request("GET", "/sessions/b/vars", ""), "404 {\"error\":\"no such session b\"}");
+        Assert.assertEquals(request("GET", "/sessions/a/vars", ""), "200 {\"_\":1.0,\"x\":1.0}");
+        Assert.assertEquals(request("GET", "/sessions/c/vars", ""), "200 {\"_\":3.0,\"x\":3.0}");
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new CalcServer(calculatorTestObject, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0));
+    }
+
+    @Test
+    public void pipelinedRequestsTest() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            StringBuilder requests = new StringBuilder();
+            for (String expression : Arrays.asList("1+1", "x=(5)", "x*2")) {
+                requests.append("POST /eval HTTP/1.1\r\nHost: localhost\r\nContent-Length: ")
+                        .append(expression.length()).append("\r\n\r\n").append(expression);
+            }
+            // all the requests are sent before reading any answer
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            Assert.assertEquals(readResponseBody(in), "{\"value\":2.0}");
+            Assert.assertEquals(readResponseBody(in), "{\"value\":5.0}");
+            Assert.assertEquals(readResponseBody(in), "{\"value\":10.0}");
+        }
+    }
+
+    @Test
+    public void loadTest() throws Exception {
+        int clientsCount = 4;
+        int requestsPerClient = 500;
+        ExecutorService clients = Executors.newFixedThreadPool(clientsCount);
+        List<Future<long[]>> clientLatencies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int clientIndex = 0; clientIndex < clientsCount; clientIndex++) {
+            int client = clientIndex;
+            clientLatencies.add(clients.submit(() -> {
+                long[] latencies = new long[requestsPerClient];
+                for (int requestIndex = 0; requestIndex < requestsPerClient; requestIndex++) {
+                    long requestStart = System.nanoTime();
+                    String response = request("POST", "/sessions/client" + client + "/eval", requestIndex + "*2+1");
+                    latencies[requestIndex] = System.nanoTime() - requestStart;
+                    Assert.assertEquals(response, "200 {\"value\":" + (requestIndex * 2 + 1) + ".0}");
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<long[]> future : clientLatencies) {
+            for (long latency : future.get()) {
+                latencies.add(latency);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+        Collections.sort(latencies);
+        System.out.printf("%d requests from %d clients : %.0f requests/s , p50 %.3f ms , p99 %.3f ms%n",
+                latencies.size(), clientsCount, latencies.size() / (elapsed / 1e9),
+                latencies.get(latencies.size() / 2) / 1e6, latencies.get(latencies.size() * 99 / 100) / 1e6);
+        Assert.assertEquals(latencies.size(), clientsCount * requestsPerClient);
+    }
+
+
+    /*
+     * sends a request on a kept alive connection , returns the status and the body
+     * */
+    private String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path)
+                .openConnection();
+        connection.setRequestMethod(method);
+        if (method.equals("POST")) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return status + " " + readFully(in);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            bytes.write(buffer, 0, count);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * reads one response off a raw connection , its headers then the body of the announced length
+     * */
+    private static String readResponseBody(InputStream in) throws IOException {
+        int contentLength = -1;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int character = in.read();
+            if (character < 0) {
+                throw new IOException("connection closed");
+            }
+            if (character != '\n') {
+                if (character != '\r') {
+                    line.append((char) character);
+                }
+                continue;
+            }
+            if (line.length() == 0) {
+                break;
+            }
+            if (line.toString().toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+            }
+            line.setLength(0);
+        }
+        byte[] body = new byte[contentLength];
+        for (int read = 0; read < contentLength; ) {
+            read += in.read(body, read, contentLength - read);
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,82 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ColumnarEvaluationTest {
+
+    private Calc calculatorTestObject = new Calc();
+
+
+    @Test
+    public void columnsGiveTheSameValuesAsRowsTest() {
+        int rows = 5000;
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[rows]);
+        columns.put("y", new double[rows]);
+        columns.put("z", new double[rows]);
+        for (int row = 0; row < rows; row++) {
+            columns.get("x")[row] = row * 0.5;
+            columns.get("y")[row] = row % 17 - 8;
+            columns.get("z")[row] = row + 1;
+        }
+        double[] output = new double[rows];
+        BitSet divisionByZeroRows = calculatorTestObject.evalColumns("sqrt(x*x+y*y)/z-log(z)+sin(x)*cos(y)", columns, output);
+
+        Assert.assertTrue(divisionByZeroRows.isEmpty());
+        CompiledExpression compiledExpression = calculatorTestObject.compile("sqrt(x*x+y*y)/z-log(z)+sin(x)*cos(y)");
+        Map<String, Double> bindings = new HashMap<>();
+        for (int row = 0; row < rows; row++) {
+            bindings.put("x", columns.get("x")[row]);
+            bindings.put("y", columns.get("y")[row]);
+            bindings.put("z", columns.get("z")[row]);
+            Assert.assertEquals(output[row], compiledExpression.evaluate(bindings));
+        }
+    }
+
+    @Test
+    public void divisionByZeroIsReportedPerRowTest() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[]{1, 2, 3, 4});
+        columns.put("z", new double[]{1, 0, 2, 0});
+        double[] output = new double[4];
+        BitSet divisionByZeroRows = calculatorTestObject.evalColumns("x/z+1", columns, output);
+
+        Assert.assertEquals(divisionByZeroRows.toString(), "{1, 3}");
+        Assert.assertEquals(output[0], 2.0);
+        Assert.assertTrue(Double.isNaN(output[1]));
+        Assert.assertEquals(output[2], 2.5);
+        Assert.assertTrue(Double.isNaN(output[3]));
+    }
+
+    @Test
+    public void bindingInsideFormulaTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("(t=(x*2))+t*t");
+        double[][] columns = new double[compiledExpression.getVariableNames().size()][];
+        columns[compiledExpression.getVariableNames().indexOf("x")] = new double[]{1, 2, 3};
+        double[] output = new double[3];
+        compiledExpression.evaluateColumns(columns, output);
+
+        Assert.assertEquals(output, new double[]{6, 20, 42});
+    }
+
+    @Test
+    public void everyStepRoundingTest() {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("x", new double[]{3, 7});
+        double[] output = new double[2];
+        calculatorTestObject.compile("1/x*x").withRoundingPolicy(RoundingPolicy.EVERY_STEP).evaluateColumns(columns, output);
+
+        Assert.assertEquals(output, new double[]{0.999999999999, 0.999999999999});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void missingColumnTest() {
+        calculatorTestObject.evalColumns("x+y", new HashMap<>(), new double[1]);
+    }
+}
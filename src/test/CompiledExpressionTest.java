@@ -0,0 +1,111 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.EvaluationBackend;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class CompiledExpressionTest {
+
+    private Calc calculatorTestObject = new Calc();
+
+    @Test
+    public void compiledExpressionIsReusableTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("2*(1+(1+(5*(10/2))+3)/5)");
+        Map<String, Double> bindings = new TreeMap<>();
+        Assert.assertEquals(compiledExpression.evaluate(bindings), 13.6);
+        Assert.assertEquals(compiledExpression.evaluate(bindings), 13.6);
+    }
+
+    @Test
+    public void compiledExpressionWithDifferentBindingsTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("sqrt(x*x+y*y)");
+        Map<String, Double> bindings = new TreeMap<>();
+        bindings.put("x", 3.0);
+        bindings.put("y", 4.0);
+        Assert.assertEquals(compiledExpression.evaluate(bindings), 5.0);
+        bindings.put("x", 6.0);
+        bindings.put("y", 8.0);
+        Assert.assertEquals(compiledExpression.evaluate(bindings), 10.0);
+    }
+
+    @Test
+    public void compiledBindingTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x=--1");
+        Map<String, Double> bindings = new TreeMap<>();
+        Assert.assertEquals(compiledExpression.evaluate(bindings), 1.0);
+        Assert.assertEquals(bindings.get("x"), 1.0);
+        Assert.assertFalse(bindings.containsKey("_"));
+    }
+
+    @Test
+    public void compiledExpressionErrorsTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x/y");
+        Map<String, Double> bindings = new TreeMap<>();
+        bindings.put("x", 1.0);
+        boolean exceptionFlag = false;
+        try {
+            compiledExpression.evaluate(bindings);
+        } catch (UnsupportedOperationException e) {
+            exceptionFlag = true;
+            Assert.assertTrue(e.getMessage().contains("y is not defined"));
+        }
+        Assert.assertTrue(exceptionFlag);
+
+        bindings.put("y", 0.0);
+        exceptionFlag = false;
+        try {
+            compiledExpression.evaluate(bindings);
+        } catch (UnsupportedOperationException e) {
+            exceptionFlag = true;
+            Assert.assertTrue(e.getMessage().contains("Division By Zero Exception"));
+        }
+        Assert.assertTrue(exceptionFlag);
+    }
+
+    @Test
+    public void bytecodeBackendGivesSameResultsTest() {
+        String[] expressions = {"1+2*3+4", "(1+2)*(3+4)", "2+3*---1", "2-(-1+2)", "-sin(90)", "log(10)",
+                "sqrt(sqrt(32/2))", "5*2+(((5+7)*2)-5+6)-(((4+5-10+20)-10)*3)*sqrt(4)", "cos(x)*y/3", "z=x*-y", "x+(z=2)*z"};
+        for (String expression : expressions) {
+            CompiledExpression interpretedExpression = calculatorTestObject.compile(expression);
+            CompiledExpression generatedExpression = interpretedExpression.withBackend(EvaluationBackend.BYTECODE);
+            Assert.assertEquals(generatedExpression.getBackend(), EvaluationBackend.BYTECODE);
+
+            Map<String, Double> interpretedBindings = new TreeMap<>();
+            interpretedBindings.put("x", 20.0);
+            interpretedBindings.put("y", 0.5);
+            Map<String, Double> generatedBindings = new TreeMap<>(interpretedBindings);
+            Assert.assertEquals(generatedExpression.evaluate(generatedBindings), interpretedExpression.evaluate(interpretedBindings), expression);
+            Assert.assertEquals(generatedBindings, interpretedBindings, expression);
+        }
+    }
+
+    @Test
+    public void bytecodeBackendErrorsTest() {
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.BYTECODE);
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x/(y-1)");
+        Assert.assertEquals(compiledExpression.getVariableNames(), Arrays.asList("x", "y"));
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{3, 4}), 1.0);
+        boolean exceptionFlag = false;
+        try {
+            compiledExpression.evaluate(new double[]{3, 1});
+        } catch (UnsupportedOperationException e) {
+            exceptionFlag = true;
+            Assert.assertTrue(e.getMessage().contains("Division By Zero Exception"));
+        }
+        Assert.assertTrue(exceptionFlag);
+
+        exceptionFlag = false;
+        try {
+            calculatorTestObject.eval("x+1");
+        } catch (UnsupportedOperationException e) {
+            exceptionFlag = true;
+            Assert.assertTrue(e.getMessage().contains("x is not defined"));
+        }
+        Assert.assertTrue(exceptionFlag);
+    }
+}
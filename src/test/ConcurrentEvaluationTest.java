@@ -0,0 +1,70 @@
+import main.java.Calc;
+import main.java.LastResultScope;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrentEvaluationTest {
+
+
+    @Test
+    public void sharedCalculatorTest() throws Exception {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("base=100");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Double>> results = new ArrayList<>();
+        for (int task = 0; task < 16; task++) {
+            String variableName = "v" + task;
+            results.add(executor.submit(() -> {
+                double sum = 0;
+                for (int i = 0; i < 500; i++) {
+                    calculatorTestObject.eval(variableName + "=" + i);
+                    sum += calculatorTestObject.eval(variableName + "*2+base");
+                }
+                return sum;
+            }));
+        }
+        for (Future<Double> result : results) {
+            Assert.assertEquals(result.get(), 299500.0);
+        }
+        executor.shutdown();
+        Assert.assertEquals(calculatorTestObject.bindings().get("v7"), 499.0);
+    }
+
+    @Test
+    public void lastResultPerThreadTest() throws Exception {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.setLastResultScope(LastResultScope.THREAD);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int task = 0; task < 16; task++) {
+            int taskNumber = task;
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    calculatorTestObject.eval(taskNumber + "+" + i);
+                    if (calculatorTestObject.eval("_") != taskNumber + i) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get());
+        }
+        executor.shutdown();
+        Assert.assertFalse(calculatorTestObject.bindings().containsKey("_"));
+    }
+
+    @Test
+    public void sharedLastResultTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("2*21");
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 42.0);
+    }
+}
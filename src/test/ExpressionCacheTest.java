@@ -0,0 +1,98 @@
+import main.java.Calc;
+import main.java.ExpressionCache;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ExpressionCacheTest {
+
+    @Test
+    public void whitespaceInsensitiveHitTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("x=1");
+        Assert.assertEquals(calculatorTestObject.eval("2+x"), 3.0);
+        Assert.assertEquals(calculatorTestObject.eval("2+ x"), 3.0);
+        Assert.assertEquals(calculatorTestObject.eval(" 2 +  x "), 3.0);
+
+        ExpressionCache expressionCache = calculatorTestObject.expressionCache();
+        Assert.assertEquals(expressionCache.getMissCount(), 2);
+        Assert.assertEquals(expressionCache.getHitCount(), 2);
+        Assert.assertEquals(expressionCache.size(), 2);
+    }
+
+    @Test
+    public void whitespaceBetweenNumbersIsKeptTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("1 2");
+        calculatorTestObject.eval("12");
+        Assert.assertEquals(calculatorTestObject.expressionCache().getHitCount(), 0);
+    }
+
+    @Test
+    public void leastRecentlyUsedEvictionTest() {
+        Calc calculatorTestObject = new Calc(new ExpressionCache(2));
+        calculatorTestObject.eval("1+1");
+        calculatorTestObject.eval("2+2");
+        calculatorTestObject.eval("1+1");
+        calculatorTestObject.eval("3+3");
+        // 2+2 was the least recently used expression
+        calculatorTestObject.eval("1+1");
+        calculatorTestObject.eval("2+2");
+
+        ExpressionCache expressionCache = calculatorTestObject.expressionCache();
+        Assert.assertEquals(expressionCache.getHitCount(), 2);
+        Assert.assertEquals(expressionCache.getMissCount(), 4);
+        Assert.assertEquals(expressionCache.getEvictionCount(), 2);
+        Assert.assertEquals(expressionCache.size(), 2);
+    }
+
+    @Test
+    public void disabledCacheTest() {
+        Calc calculatorTestObject = new Calc(new ExpressionCache(0));
+        Assert.assertEquals(calculatorTestObject.eval("1+1"), 2.0);
+        Assert.assertEquals(calculatorTestObject.eval("1+1"), 2.0);
+        Assert.assertEquals(calculatorTestObject.expressionCache().size(), 0);
+        Assert.assertEquals(calculatorTestObject.expressionCache().getHitCount(), 0);
+    }
+
+    @Test
+    public void calculatorsShareCompiledExpressionsTest() {
+        ExpressionCache expressionCache = new ExpressionCache(16);
+        Calc firstCalculator = new Calc(expressionCache);
+        Calc secondCalculator = new Calc(expressionCache);
+        Assert.assertSame(secondCalculator.compile("sqrt(x)*2"), firstCalculator.compile("sqrt(x)*2"));
+        Assert.assertEquals(expressionCache.getHitCount(), 1);
+
+        // a calculator with its own functions compiles the expressions again
+        secondCalculator.functions().register("twice", (double argument) -> 2 * argument, true);
+        Assert.assertNotSame(secondCalculator.compile("sqrt(x)*2"), firstCalculator.compile("sqrt(x)*2"));
+    }
+
+    @Test
+    public void sharedCacheTest() throws Exception {
+        ExpressionCache expressionCache = new ExpressionCache(16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Double>> results = new ArrayList<>();
+        for (int task = 0; task < 8; task++) {
+            results.add(executor.submit(() -> {
+                Calc calculator = new Calc(expressionCache);
+                double sum = 0;
+                for (int i = 0; i < 1000; i++) {
+                    sum += calculator.eval("x=" + (i % 32)) + calculator.eval("x*2");
+                }
+                return sum;
+            }));
+        }
+        for (Future<Double> result : results) {
+            Assert.assertEquals(result.get(), 46212.0);
+        }
+        executor.shutdown();
+        Assert.assertEquals(expressionCache.getHitCount() + expressionCache.getMissCount(), 16000);
+        Assert.assertTrue(expressionCache.size() <= 16);
+    }
+}
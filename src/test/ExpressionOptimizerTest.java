@@ -0,0 +1,105 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.EvaluationBackend;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ExpressionOptimizerTest {
+
+    private Calc calculatorTestObject = new Calc();
+
+    @Test
+    public void constantSubexpressionsAreFoldedTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("(2*3.5)+x*1+0");
+        Assert.assertEquals(compiledExpression.getCompiledOperationCount(), 9);
+        // 7 x +
+        Assert.assertEquals(compiledExpression.getOperationCount(), 3);
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{3}), 10.0);
+    }
+
+    @Test
+    public void functionsOfConstantsAreFoldedTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("sqrt(16)*y");
+        Assert.assertEquals(compiledExpression.getCompiledOperationCount(), 4);
+        Assert.assertEquals(compiledExpression.getOperationCount(), 3);
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{2}), 8.0);
+
+        compiledExpression = calculatorTestObject.compile("sqrt(16)+log(1)+sin(0)*cos(0)");
+        Assert.assertEquals(compiledExpression.getOperationCount(), 1);
+        Assert.assertEquals(calculatorTestObject.eval("sqrt(16)+log(1)+sin(0)*cos(0)"), 4.0);
+    }
+
+    @Test
+    public void doubleNegationIsDroppedTest() {
+        // x - (0 - y) becomes x + y
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x--y");
+        Assert.assertEquals(compiledExpression.getCompiledOperationCount(), 5);
+        Assert.assertEquals(compiledExpression.getOperationCount(), 3);
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{1, 2}), 3.0);
+
+        Assert.assertEquals(calculatorTestObject.compile("1--1").getOperationCount(), 1);
+        Assert.assertEquals(calculatorTestObject.eval("1--1"), 2.0);
+    }
+
+    @Test
+    public void negativeZeroIsKeptTest() {
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.NONE);
+        // -0 + 0 is 0 , the addition can't be dropped when x can be -0
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x+0");
+        Assert.assertEquals(compiledExpression.getOperationCount(), 3);
+        Assert.assertEquals(1 / compiledExpression.evaluate(new double[]{-0.0}), Double.POSITIVE_INFINITY);
+
+        compiledExpression = calculatorTestObject.compile("x*1");
+        Assert.assertEquals(compiledExpression.getOperationCount(), 1);
+        Assert.assertEquals(1 / compiledExpression.evaluate(new double[]{-0.0}), Double.NEGATIVE_INFINITY);
+
+        // --x is 0 - (0 - x) , it is 0 and not -0 for x = -0
+        compiledExpression = calculatorTestObject.compile("--x");
+        Assert.assertEquals(compiledExpression.getOperationCount(), 3);
+        Assert.assertEquals(1 / compiledExpression.evaluate(new double[]{-0.0}), Double.POSITIVE_INFINITY);
+    }
+
+    @Test
+    public void roundedStepsAreNeverNegativeZeroTest() {
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.EVERY_STEP);
+        Assert.assertEquals(calculatorTestObject.compile("x+0").getOperationCount(), 1);
+        Assert.assertEquals(calculatorTestObject.compile("--x").getOperationCount(), 1);
+        // the folded constant is rounded like the step it replaces
+        CompiledExpression compiledExpression = calculatorTestObject.compile("1/3+x");
+        Assert.assertEquals(compiledExpression.getOperationCount(), 3);
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{0}), 0.333333333333);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void divisionByZeroIsNotFoldedTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x+1/0");
+        Assert.assertEquals(compiledExpression.getOperationCount(), compiledExpression.getCompiledOperationCount());
+        calculatorTestObject.eval("x=1");
+        calculatorTestObject.eval("x+1/0");
+    }
+
+    @Test
+    public void bindingsAreKeptTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x=(2*3)");
+        Assert.assertEquals(compiledExpression.getOperationCount(), 2);
+        Assert.assertEquals(calculatorTestObject.eval("x=(2*3)"), 6.0);
+        Assert.assertEquals(calculatorTestObject.eval("x*1+0"), 6.0);
+    }
+
+    @Test
+    public void optimizedBytecodeTest() {
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.BYTECODE);
+        CompiledExpression compiledExpression = calculatorTestObject.compile("(2*3.5)+x*1+0");
+        Assert.assertEquals(compiledExpression.getBackend(), EvaluationBackend.BYTECODE);
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{3}), 10.0);
+    }
+
+    @Test
+    public void dumpShowsBothFormsTest() {
+        String dump = calculatorTestObject.compile("sqrt(16)*y").dump();
+        Assert.assertTrue(dump.contains("compiled (4 operations)"));
+        Assert.assertTrue(dump.contains("optimized (3 operations)"));
+        Assert.assertTrue(dump.contains("PUSH_NUMBER 4.0"));
+    }
+}
@@ -0,0 +1,67 @@
+import main.java.Calc;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FileEvaluationTest {
+
+    private Calc calculatorTestObject = new Calc();
+
+    @Test
+    public void fileEvaluationTest() throws IOException {
+        Path input = Files.createTempFile("expressions", ".txt");
+        Path output = Files.createTempFile("results", ".txt");
+        Files.write(input, "x=2\r\n\n  x*3  \n1/0\ny+1\n:vars\n_+1".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(calculatorTestObject.evalFile(input, output), 5);
+        Assert.assertEquals(Files.readAllLines(output), Arrays.asList("2.0", "6.0",
+                "*** ERROR: Division By Zero Exception", "*** ERROR: y is not defined",
+                "*** ERROR: commands can't be used in a file: :vars", "7.0"));
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 2.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 7.0);
+    }
+
+    @Test
+    public void fileEvaluationKeepsTheOrderOfTheLinesTest() throws IOException {
+        Path input = Files.createTempFile("expressions", ".txt");
+        Path output = Files.createTempFile("results", ".txt");
+        List<String> expressions = new ArrayList<>();
+        List<String> expectedResults = new ArrayList<>();
+        expressions.add("n=0");
+        expectedResults.add("0.0");
+        // many chunks of lines , every line depends on the one before it
+        for (int lineIndex = 1; lineIndex <= 100000; lineIndex++) {
+            expressions.add("n=(n+1)");
+            expectedResults.add(Double.toString(lineIndex));
+        }
+        Files.write(input, expressions);
+        Assert.assertEquals(calculatorTestObject.evalFile(input, output), 100001);
+        Assert.assertEquals(Files.readAllLines(output), expectedResults);
+    }
+
+    @Test
+    public void longLinesTest() throws IOException {
+        Path input = Files.createTempFile("expressions", ".txt");
+        Path output = Files.createTempFile("results", ".txt");
+        // longer than the read buffer
+        StringBuilder longExpression = new StringBuilder("0");
+        for (int termIndex = 0; termIndex < 300000; termIndex++) {
+            longExpression.append("+1");
+        }
+        Files.write(input, Arrays.asList("1+1", longExpression.toString(), "2+2"));
+        calculatorTestObject.evalFile(input, output);
+        Assert.assertEquals(Files.readAllLines(output), Arrays.asList("2.0", "300000.0", "4.0"));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void missingInputTest() throws IOException {
+        Path output = Files.createTempFile("results", ".txt");
+        calculatorTestObject.evalFile(output.resolveSibling("no-such-expressions.txt"), output);
+    }
+}
@@ -0,0 +1,75 @@
+import main.java.FormulaGraph;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FormulaGraphTest {
+
+
+    @Test
+    public void formulasFollowTheirVariablesTest() {
+        FormulaGraph formulaGraph = new FormulaGraph();
+        formulaGraph.eval("x=3");
+        Assert.assertEquals(formulaGraph.eval("y = x*2"), 6.0);
+        Assert.assertEquals(formulaGraph.eval("z = y+x"), 9.0);
+
+        formulaGraph.eval("x=10");
+        Assert.assertEquals(formulaGraph.get("z"), 30.0);
+        Assert.assertEquals(formulaGraph.eval("z-y"), 10.0);
+        Assert.assertEquals(formulaGraph.getFormula("y"), "x*2");
+    }
+
+    @Test
+    public void onlyAffectedFormulasAreRecomputedTest() {
+        FormulaGraph formulaGraph = new FormulaGraph();
+        formulaGraph.assign("a", 1);
+        formulaGraph.assign("b", 1);
+        for (int formulaIndex = 0; formulaIndex < 1000; formulaIndex++) {
+            formulaGraph.define("fa" + formulaIndex, "a+" + formulaIndex);
+            formulaGraph.define("fb" + formulaIndex, "b*" + formulaIndex);
+        }
+        formulaGraph.values();
+        long recomputedFormulas = formulaGraph.getRecomputedFormulasCount();
+
+        formulaGraph.assign("a", 2);
+        Assert.assertEquals(formulaGraph.get("fa10"), 12.0);
+        // reading one formula only recomputes that formula
+        Assert.assertEquals(formulaGraph.getRecomputedFormulasCount(), recomputedFormulas + 1);
+        formulaGraph.values();
+        // and the other formulas reading a , never the ones reading b
+        Assert.assertEquals(formulaGraph.getRecomputedFormulasCount(), recomputedFormulas + 1000);
+    }
+
+    @Test
+    public void longChainTest() {
+        FormulaGraph formulaGraph = new FormulaGraph();
+        formulaGraph.assign("v0", 0);
+        for (int formulaIndex = 1; formulaIndex <= 100000; formulaIndex++) {
+            formulaGraph.define("v" + formulaIndex, "v" + (formulaIndex - 1) + "+1");
+        }
+        Assert.assertEquals(formulaGraph.get("v100000"), 100000.0);
+        formulaGraph.assign("v0", 5);
+        Assert.assertEquals(formulaGraph.get("v100000"), 100005.0);
+    }
+
+    @Test
+    public void cycleIsRejectedTest() {
+        FormulaGraph formulaGraph = new FormulaGraph();
+        formulaGraph.eval("a=1");
+        formulaGraph.eval("b=a+1");
+        formulaGraph.eval("c=b*2");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> formulaGraph.eval("a=c+1"));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> formulaGraph.eval("a=a+1"));
+        // the rejected definitions didn't change anything
+        Assert.assertEquals(formulaGraph.get("c"), 4.0);
+    }
+
+    @Test
+    public void undefinedVariableTest() {
+        FormulaGraph formulaGraph = new FormulaGraph();
+        formulaGraph.define("total", "price*count");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> formulaGraph.get("total"));
+        formulaGraph.eval("price=2.5");
+        formulaGraph.eval("count=4");
+        Assert.assertEquals(formulaGraph.get("total"), 10.0);
+    }
+}
@@ -0,0 +1,85 @@
+import main.java.Calc;
+import main.java.FormulaSet;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class FormulaSetTest {
+
+    private Calc calculatorTestObject = new Calc();
+
+    @Test
+    public void formulaSetTest() {
+        List<String> formulas = Arrays.asList("sqrt(a*a+b*b)", "sqrt(a*a+b*b)*2", "a/b", "1/sqrt(a*a+b*b)");
+        FormulaSet formulaSet = new FormulaSet(calculatorTestObject, formulas);
+        Map<String, Double> bindings = new TreeMap<>();
+        bindings.put("a", 3.0);
+        bindings.put("b", 4.0);
+        Assert.assertEquals(formulaSet.getVariableNames(), Arrays.asList("a", "b"));
+        Assert.assertEquals(formulaSet.evaluate(bindings), new double[]{5, 10, 0.75, 0.2});
+    }
+
+    @Test
+    public void sharedSubtermsAreComputedOnceTest() {
+        List<String> formulas = Arrays.asList("sqrt(a*a+b*b)", "sqrt(a*a+b*b)*2", "sqrt(b*b+a*a)+1");
+        FormulaSet formulaSet = new FormulaSet(calculatorTestObject, formulas);
+        // every formula on its own : 8 + 10 + 10 operations
+        Assert.assertEquals(formulaSet.getCompiledOperationCount(), 28);
+        // a b a*a b*b + sqrt 2 * 1 +
+        Assert.assertEquals(formulaSet.getNodeCount(), 10);
+    }
+
+    @Test
+    public void formulaSetMatchesSeparateEvaluationTest() {
+        List<String> formulas = Arrays.asList("x*y+1/3", "-x--y", "sin(x)*cos(y)+x*y", "log(x*y)-sqrt(x)", "(x+y)/7");
+        for (RoundingPolicy roundingPolicy : RoundingPolicy.values()) {
+            calculatorTestObject.setRoundingPolicy(roundingPolicy);
+            FormulaSet formulaSet = new FormulaSet(calculatorTestObject, formulas);
+            Map<String, Double> bindings = new TreeMap<>();
+            for (double x = 0.5; x < 9; x += 0.75) {
+                bindings.put("x", x);
+                bindings.put("y", 3 - x / 3);
+                double[] outputs = formulaSet.evaluate(bindings);
+                for (int formulaIndex = 0; formulaIndex < formulas.size(); formulaIndex++) {
+                    Assert.assertEquals(outputs[formulaIndex],
+                            calculatorTestObject.compile(formulas.get(formulaIndex)).evaluate(bindings));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void divisionByZeroOnlyFailsItsFormulasTest() {
+        FormulaSet formulaSet = new FormulaSet(calculatorTestObject, Arrays.asList("x+1", "1/x", "1/x+2", "x*3"));
+        double[] outputs = new double[4];
+        BitSet failedFormulas = formulaSet.evaluate(new double[]{0}, outputs);
+        Assert.assertEquals(failedFormulas.toString(), "{1, 2}");
+        Assert.assertEquals(outputs[0], 1.0);
+        Assert.assertTrue(Double.isNaN(outputs[1]));
+        Assert.assertTrue(Double.isNaN(outputs[2]));
+        Assert.assertEquals(outputs[3], 0.0);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void divisionByZeroTest() {
+        Map<String, Double> bindings = new TreeMap<>();
+        bindings.put("x", 0.0);
+        new FormulaSet(calculatorTestObject, Arrays.asList("x+1", "1/x")).evaluate(bindings);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void undefinedVariableTest() {
+        new FormulaSet(calculatorTestObject, Arrays.asList("x+1", "y")).evaluate(new TreeMap<>());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void formulasCantBindTest() {
+        new FormulaSet(calculatorTestObject, Arrays.asList("x+1", "y=(x*2)"));
+    }
+}
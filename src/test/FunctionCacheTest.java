@@ -0,0 +1,153 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.EvaluationBackend;
+import main.java.FunctionCache;
+import main.java.RegisteredFunction;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FunctionCacheTest {
+
+    private Calc calculatorTestObject;
+
+    @BeforeMethod
+    public void setUp() {
+        calculatorTestObject = new Calc();
+        // the values are compared with the values of java.lang.Math
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.NONE);
+    }
+
+
+    @Test
+    public void memoizedFunctionTest() {
+        AtomicInteger callsCount = new AtomicInteger();
+        calculatorTestObject.functions().register("slowSin", argument -> {
+            callsCount.incrementAndGet();
+            return Math.sin(argument);
+        }, true);
+        FunctionCache cache = calculatorTestObject.functions().memoize("slowSin", 1024).getCache();
+
+        CompiledExpression expression = calculatorTestObject.compile("slowSin(x)*2");
+        for (int repetition = 0; repetition < 100; repetition++) {
+            for (int angle = 0; angle < 10; angle++) {
+                Assert.assertEquals(expression.evaluate(new double[]{angle * 0.1}), Math.sin(angle * 0.1) * 2);
+            }
+        }
+        Assert.assertEquals(callsCount.get(), 10);
+        Assert.assertEquals(cache.getMissCount(), 10);
+        Assert.assertEquals(cache.getHitCount(), 990);
+        Assert.assertEquals(cache.getHitRate(), 0.99);
+        Assert.assertEquals(cache.size(), 10);
+        Assert.assertEquals(cache.toString(), "10/1024 values , 990 hits , 10 misses");
+
+        cache.clear();
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertEquals(cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void builtInFunctionTest() {
+        calculatorTestObject.bindings().put("x", 0.0);
+        Assert.assertEquals(calculatorTestObject.eval("sin(x)"), 0.0);
+        RegisteredFunction sine = calculatorTestObject.functions().memoize("sin", 64);
+        Assert.assertEquals(sine.toString(), "sin/1 (memoized)");
+        // the cached expression is compiled again with the memoized function
+        Assert.assertEquals(calculatorTestObject.eval("sin(x)+sin(x)"), 0.0);
+        Assert.assertEquals(sine.getCache().getHitCount(), 1);
+        Assert.assertTrue(calculatorTestObject.compile("sin(x)").dump().contains("CALL sin/1"));
+
+        // -0 is not 0
+        calculatorTestObject.bindings().put("x", -0.0);
+        Assert.assertEquals(1 / calculatorTestObject.compile("sin(x)").evaluate(new double[]{-0.0}), Double.NEGATIVE_INFINITY);
+
+        CompiledExpression generatedExpression = calculatorTestObject.compile("sin(x)+1").withBackend(EvaluationBackend.BYTECODE);
+        Assert.assertEquals(generatedExpression.evaluate(new double[]{0}), 1.0);
+        Assert.assertEquals(sine.getCache().getHitCount(), 2);
+
+        // memoizing again starts from the function , not from the cache
+        FunctionCache newCache = calculatorTestObject.functions().memoize("sin", 8).getCache();
+        Assert.assertEquals(newCache.getCapacity(), 8);
+        Assert.assertEquals(calculatorTestObject.eval("sin(0)"), 0.0);
+        Assert.assertEquals(newCache.getMissCount(), 1);
+    }
+
+    @Test
+    public void evictionTest() {
+        FunctionCache cache = calculatorTestObject.functions().memoize("cos", 4).getCache();
+        CompiledExpression expression = calculatorTestObject.compile("cos(x)");
+        for (int argument = 1; argument <= 4; argument++) {
+            expression.evaluate(new double[]{argument});
+        }
+        // 1 is read , the clock evicts another value for 5
+        expression.evaluate(new double[]{1});
+        expression.evaluate(new double[]{5});
+        Assert.assertEquals(cache.getEvictionCount(), 1);
+        expression.evaluate(new double[]{1});
+        Assert.assertEquals(cache.getHitCount(), 2);
+        Assert.assertEquals(cache.size(), 4);
+
+        // whatever is evicted , the values found are the values of their arguments
+        FunctionCache boundedCache = calculatorTestObject.functions().memoize("log", 100).getCache();
+        CompiledExpression logarithm = calculatorTestObject.compile("log(x)");
+        Random random = new Random(42);
+        for (int call = 0; call < 100_000; call++) {
+            double argument = random.nextInt(300) + 1;
+            Assert.assertEquals(logarithm.evaluate(new double[]{argument}), Math.log(argument));
+        }
+        Assert.assertEquals(boundedCache.size(), 100);
+        Assert.assertEquals(boundedCache.getHitCount() + boundedCache.getMissCount(), 100_000);
+        Assert.assertEquals(boundedCache.getEvictionCount(), boundedCache.getMissCount() - 100);
+    }
+
+    @Test
+    public void concurrentCallsTest() throws Exception {
+        FunctionCache cache = calculatorTestObject.functions().memoize("sqrt", 256).getCache();
+        CompiledExpression expression = calculatorTestObject.compile("sqrt(x)");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int seed = thread;
+                results.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int call = 0; call < 50_000; call++) {
+                        double argument = random.nextInt(1000);
+                        if (expression.evaluate(new double[]{argument}) != Math.sqrt(argument)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // hits of calls made at the same time can be missing
+        Assert.assertTrue(cache.getHitCount() + cache.getMissCount() <= 200_000);
+        Assert.assertTrue(cache.size() <= 256);
+    }
+
+    @Test
+    public void onlyPureFunctionsTest() {
+        calculatorTestObject.functions().register("random", argument -> Math.random() * argument, false);
+        calculatorTestObject.functions().register("pow", Math::pow, true);
+        Assert.assertThrows(IllegalArgumentException.class, () -> calculatorTestObject.functions().memoize("random", 16));
+        Assert.assertThrows(IllegalArgumentException.class, () -> calculatorTestObject.functions().memoize("pow", 16));
+        Assert.assertThrows(IllegalArgumentException.class, () -> calculatorTestObject.functions().memoize("tan", 16));
+        Assert.assertThrows(IllegalArgumentException.class, () -> calculatorTestObject.functions().memoize("sin", 0));
+        Assert.assertNull(calculatorTestObject.functions().get("random").getCache());
+    }
+}
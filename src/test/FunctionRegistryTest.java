@@ -0,0 +1,152 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.ErrorCode;
+import main.java.EvaluationBackend;
+import main.java.EvaluationResult;
+import main.java.FormulaSet;
+import main.java.FunctionRegistry;
+import main.java.Gradient;
+import main.java.RegisteredFunction;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FunctionRegistryTest {
+
+    private static int impureCallsCount;
+
+    private Calc calculatorTestObject;
+
+    @BeforeMethod
+    public void setUp() {
+        calculatorTestObject = new Calc();
+        calculatorTestObject.functions().register("exp", Math::exp, true);
+        calculatorTestObject.functions().register("abs", (double number) -> Math.abs(number), true);
+        calculatorTestObject.functions().register("pow", Math::pow, true);
+        impureCallsCount = 0;
+    }
+
+
+    public static double clamp(double value, double low, double high) {
+        return Math.max(low, Math.min(high, value));
+    }
+
+    public static double next() {
+        return ++impureCallsCount;
+    }
+
+
+    @Test
+    public void registeredFunctionsTest() throws ReflectiveOperationException {
+        Assert.assertEquals(calculatorTestObject.eval("exp(0)+abs(0-3)"), 4.0);
+        Assert.assertEquals(calculatorTestObject.eval("pow(2,10)"), 1024.0);
+        Assert.assertEquals(calculatorTestObject.eval("pow(2, -1)"), 0.5);
+        Assert.assertEquals(calculatorTestObject.eval("pow(pow(2,3),(1+1))*2"), 128.0);
+        Assert.assertEquals(calculatorTestObject.eval("abs 2*3"), 6.0);
+
+        calculatorTestObject.functions().register("clamp", MethodHandles.lookup().findStatic(FunctionRegistryTest.class,
+                "clamp", MethodType.methodType(double.class, double.class, double.class, double.class)), true);
+        calculatorTestObject.bindings().put("x", 12.0);
+        Assert.assertEquals(calculatorTestObject.eval("clamp(x, 0, 10) + clamp(0-x, 0, 10)"), 10.0);
+        Assert.assertEquals(calculatorTestObject.functions().get("clamp").getArity(), 3);
+        Assert.assertNull(calculatorTestObject.functions().get("x"));
+        Assert.assertEquals(calculatorTestObject.functions().getFunctions().size(), 8);
+    }
+
+    @Test
+    public void pureFunctionsAreFoldedTest() throws ReflectiveOperationException {
+        calculatorTestObject.functions().register("next", MethodHandles.lookup().findStatic(FunctionRegistryTest.class,
+                "next", MethodType.methodType(double.class)), false);
+
+        CompiledExpression pureExpression = calculatorTestObject.compile("pow(2,3)*x");
+        Assert.assertEquals(pureExpression.getOperationCount(), 3, pureExpression.dump());
+
+        CompiledExpression impureExpression = calculatorTestObject.compile("next()+next()*0");
+        Assert.assertEquals(impureExpression.evaluate(new double[0]), 1.0);
+        Assert.assertEquals(impureExpression.evaluate(new double[0]), 3.0);
+        Assert.assertEquals(impureCallsCount, 4);
+        Assert.assertTrue(impureExpression.dump().contains("CALL next/0"), impureExpression.dump());
+    }
+
+    @Test
+    public void bytecodeBackendTest() {
+        calculatorTestObject.functions().register("hypot", Math::hypot, true);
+        CompiledExpression expression = calculatorTestObject.compile("hypot(x,y)+exp(x-x)+sqrt(y)")
+                .withBackend(EvaluationBackend.BYTECODE);
+        Assert.assertEquals(expression.getBackend(), EvaluationBackend.BYTECODE);
+        Assert.assertEquals(expression.evaluate(new double[]{3, 4}), 8.0);
+        Assert.assertEquals(expression.evaluate(new double[]{6, 8}), 10.0 + 1 + Math.sqrt(8), 1e-12);
+
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.BYTECODE);
+        Assert.assertEquals(calculatorTestObject.eval("pow(2,1+1)+pow(3,2)"), 13.0);
+    }
+
+    @Test
+    public void gradientTest() {
+        calculatorTestObject.bindings().put("x", 2.0);
+        calculatorTestObject.bindings().put("y", 3.0);
+        Gradient gradient = calculatorTestObject.evalGradient("pow(x,y)+exp(x)");
+        Assert.assertEquals(gradient.getValue(), 8 + Math.exp(2), 1e-12);
+        Assert.assertEquals(gradient.getPartialDerivatives().get("x"), 12 + Math.exp(2), 1e-6);
+        Assert.assertEquals(gradient.getPartialDerivatives().get("y"), 8 * Math.log(2), 1e-6);
+    }
+
+    @Test
+    public void columnsAndFormulaSetsTest() {
+        double[] output = new double[3];
+        calculatorTestObject.compile("pow(x,2)+abs(y)").evaluateColumns(
+                new double[][]{{1, 2, 3}, {-1, -2, -3}}, output);
+        Assert.assertEquals(output, new double[]{2, 6, 12});
+
+        FormulaSet formulaSet = new FormulaSet(calculatorTestObject, Arrays.asList("pow(a,b)+1", "pow(a,b)*2", "abs(a)"));
+        Assert.assertEquals(formulaSet.getNodeCount(), 8);
+        Map<String, Double> bindings = new HashMap<>();
+        bindings.put("a", -2.0);
+        bindings.put("b", 2.0);
+        Assert.assertEquals(formulaSet.evaluate(bindings), new double[]{5, 8, 2});
+    }
+
+    @Test
+    public void errorsTest() {
+        EvaluationResult result = calculatorTestObject.tryEval("1+pow(2)");
+        Assert.assertEquals(result.getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+        Assert.assertEquals(result.getErrorPosition(), 2);
+        Assert.assertEquals(result.getErrorMessage(), "pow takes 2 arguments");
+        Assert.assertEquals(calculatorTestObject.tryEval("sqrt(1,2)").getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+        Assert.assertEquals(calculatorTestObject.tryEval("(1,2)").getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+        Assert.assertEquals(calculatorTestObject.tryEval("pow(1,)").getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+        Assert.assertEquals(calculatorTestObject.tryEval("pow(,1)").getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+        Assert.assertEquals(calculatorTestObject.tryEval("1,2").getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+        // an unknown function is an undefined variable followed by parentheses
+        Assert.assertFalse(calculatorTestObject.tryEval("cbrt(8)").isSuccess());
+
+        FunctionRegistry functions = calculatorTestObject.functions();
+        Assert.assertThrows(IllegalArgumentException.class, () -> functions.register("2x", Math::abs, true));
+        Assert.assertThrows(IllegalArgumentException.class, () -> functions.register("a+b", Math::abs, true));
+        Assert.assertThrows(IllegalArgumentException.class, () -> functions.register("format",
+                MethodHandles.lookup().findStatic(String.class, "valueOf", MethodType.methodType(String.class, double.class)), true));
+    }
+
+    @Test
+    public void registeringRecompilesTest() {
+        Assert.assertEquals(calculatorTestObject.eval("sqrt(16)+abs(0-1)"), 5.0);
+        RegisteredFunction cubeRoot = calculatorTestObject.functions().register("sqrt", Math::cbrt, true);
+        Assert.assertEquals(cubeRoot.toString(), "sqrt/1");
+        Assert.assertSame(calculatorTestObject.functions().get("sqrt"), cubeRoot);
+        Assert.assertEquals(calculatorTestObject.eval("sqrt(27)+abs(0-1)"), 4.0);
+        Assert.assertEquals(calculatorTestObject.eval("sqrt(16)+abs(0-1)"), Math.cbrt(16) + 1, 1e-12);
+
+        // a name that was read as a variable is read as a function once it is registered
+        calculatorTestObject.bindings().put("twice", 5.0);
+        Assert.assertEquals(calculatorTestObject.eval("twice"), 5.0);
+        calculatorTestObject.functions().register("twice", (double number) -> 2 * number, false);
+        Assert.assertEquals(calculatorTestObject.eval("twice(4)"), 8.0);
+        Assert.assertEquals(calculatorTestObject.functions().get("twice").toString(), "twice/1 (impure)");
+    }
+}
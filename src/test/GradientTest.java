@@ -0,0 +1,126 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.EvaluationBackend;
+import main.java.Gradient;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class GradientTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    private Calc calculatorTestObject;
+
+    @BeforeMethod
+    public void setUp() {
+        calculatorTestObject = new Calc();
+        calculatorTestObject.bindings().put("x", 1.5);
+        calculatorTestObject.bindings().put("y", 0.75);
+    }
+
+
+    @Test
+    public void arithmeticTest() {
+        double x = 1.5;
+        double y = 0.75;
+        assertGradient("x*x*y+3*x", x * x * y + 3 * x, 2 * x * y + 3, x * x);
+        assertGradient("x-y*2", x - y * 2, 1, -2);
+        assertGradient("x/y", x / y, 1 / y, -x / (y * y));
+        assertGradient("1/(x*y)", 1 / (x * y), -1 / (x * x * y), -1 / (x * y * y));
+        // unary minus is compiled as 0-x
+        assertGradient("-x*-y", x * y, y, x);
+    }
+
+    @Test
+    public void functionsTest() {
+        double x = 1.5;
+        double y = 0.75;
+        double radius = Math.sqrt(x * x + y * y);
+        assertGradient("sqrt(x*x+y*y)", radius, x / radius, y / radius);
+        assertGradient("log(x)/y", Math.log(x) / y, 1 / (x * y), -Math.log(x) / (y * y));
+        assertGradient("sin(x)*cos(y)", Math.sin(x) * Math.cos(y), Math.cos(x) * Math.cos(y), -Math.sin(x) * Math.sin(y));
+        // the chain rule through nested calls
+        assertGradient("sin(sqrt(x*y))", Math.sin(Math.sqrt(x * y)),
+                Math.cos(Math.sqrt(x * y)) * y / (2 * Math.sqrt(x * y)),
+                Math.cos(Math.sqrt(x * y)) * x / (2 * Math.sqrt(x * y)));
+    }
+
+    @Test
+    public void bindingsTest() {
+        // t is bound by the expression , its derivative goes through the binding
+        Gradient gradient = calculatorTestObject.evalGradient("(t=(x*2))+t*t");
+        Assert.assertEquals(gradient.getValue(), 3 + 9.0);
+        Assert.assertEquals(gradient.getPartialDerivatives(), Collections.singletonMap("x", 2 + 8 * 1.5));
+        Assert.assertEquals(gradient.getPartialDerivative("t"), 0.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("t"), 3.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 12.0);
+
+        // x is read before it is bound , the derivative is with respect to its value in the bindings
+        gradient = calculatorTestObject.evalGradient("(x=(x*x))*x");
+        Assert.assertEquals(gradient.getValue(), Math.pow(1.5, 4));
+        Assert.assertEquals(gradient.getPartialDerivative("x"), 4 * Math.pow(1.5, 3), TOLERANCE);
+    }
+
+    @Test
+    public void variablesNotReadTest() {
+        Gradient gradient = calculatorTestObject.evalGradient("x*3");
+        Assert.assertEquals(gradient.getPartialDerivatives().keySet(), Collections.singleton("x"));
+        Assert.assertEquals(gradient.getPartialDerivative("y"), 0.0);
+        Assert.assertTrue(calculatorTestObject.evalGradient("2*3").getPartialDerivatives().isEmpty());
+    }
+
+    @Test
+    public void compiledExpressionTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x*sin(y)+(z=(x/y))*z");
+        Assert.assertEquals(compiledExpression.getVariableNames(), Arrays.asList("x", "y", "z"));
+        double[] gradient = new double[3];
+        for (double x = -2; x <= 2; x += 0.5) {
+            double y = x + 3.25;
+            double value = compiledExpression.evaluateGradient(new double[]{x, y, 0}, gradient);
+            Assert.assertEquals(value, compiledExpression.evaluate(new double[]{x, y, 0}));
+            Assert.assertEquals(gradient[0], Math.sin(y) + 2 * x / (y * y), TOLERANCE);
+            Assert.assertEquals(gradient[1], x * Math.cos(y) - 2 * x * x / (y * y * y), TOLERANCE);
+            // z is only bound
+            Assert.assertEquals(gradient[2], 0.0);
+        }
+    }
+
+    @Test
+    public void roundingAndBackendsTest() {
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.BYTECODE);
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.EVERY_STEP);
+        Gradient gradient = calculatorTestObject.evalGradient("x/3+y");
+        // the value is rounded like eval rounds it , the derivatives are not
+        Assert.assertEquals(gradient.getValue(), calculatorTestObject.eval("x/3+y"));
+        Assert.assertEquals(gradient.getPartialDerivative("x"), 1 / 3.0);
+    }
+
+    @Test
+    public void errorsTest() {
+        try {
+            calculatorTestObject.evalGradient("x/(y-y)");
+            Assert.fail("a division by zero was accepted");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(e.getMessage(), "Division By Zero Exception");
+        }
+        try {
+            calculatorTestObject.evalGradient("x*q");
+            Assert.fail("an undefined variable was accepted");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(e.getMessage(), "q is not defined");
+        }
+    }
+
+
+    private void assertGradient(String expression, double value, double partialDerivativeOfX, double partialDerivativeOfY) {
+        Gradient gradient = calculatorTestObject.evalGradient(expression);
+        Assert.assertEquals(gradient.getValue(), value, TOLERANCE, expression);
+        Assert.assertEquals(gradient.getPartialDerivative("x"), partialDerivativeOfX, TOLERANCE, expression);
+        Assert.assertEquals(gradient.getPartialDerivative("y"), partialDerivativeOfY, TOLERANCE, expression);
+    }
+}
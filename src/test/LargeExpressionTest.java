@@ -0,0 +1,186 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.EvaluationBackend;
+import main.java.EvaluationResult;
+import main.java.ExpressionCache;
+import main.java.exceptions.UnbalancedParenthesesException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+public class LargeExpressionTest {
+
+    private static final int TOKENS_COUNT = 1_000_000;
+    private static final int NESTING_DEPTH = 100_000;
+
+    // the expressions are too big to be worth caching
+    private Calc calculatorTestObject = new Calc(new ExpressionCache(0));
+
+    @Test(timeOut = 10000)
+    public void millionTokensFlatSumTest() {
+        // 1+1+...+1 , a number and an operator per term
+        StringBuilder expression = new StringBuilder(TOKENS_COUNT * 2).append('1');
+        for (int term = 1; term < TOKENS_COUNT / 2; term++) {
+            expression.append("+1");
+        }
+        Assert.assertEquals(calculatorTestObject.eval(expression.toString()), TOKENS_COUNT / 2.0);
+    }
+
+    @Test(timeOut = 10000)
+    public void millionTokensWithVariablesTest() {
+        // x+x-x+x-x... , every term reads a variable
+        StringBuilder expression = new StringBuilder(TOKENS_COUNT * 2).append("x");
+        for (int term = 1; term < TOKENS_COUNT / 4; term++) {
+            expression.append("+x-x");
+        }
+        calculatorTestObject.bindings().put("x", 1.0);
+        CompiledExpression compiledExpression = calculatorTestObject.compile(expression.toString());
+        Assert.assertEquals(compiledExpression.getVariableNames(), Collections.singletonList("x"));
+        Assert.assertEquals(compiledExpression.evaluate(new double[]{1.0}), 1.0);
+    }
+
+    @Test(timeOut = 10000)
+    public void deepLeftNestingTest() {
+        // ((((1)+1)+1)+1) , the operators stack stays small
+        StringBuilder expression = new StringBuilder(NESTING_DEPTH * 4);
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append('(');
+        }
+        expression.append('1');
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append(")+1");
+        }
+        Assert.assertEquals(calculatorTestObject.eval(expression.toString()), NESTING_DEPTH + 1.0);
+    }
+
+    @Test(timeOut = 10000)
+    public void deepRightNestingTest() {
+        // 1+(1+(1+(1))) , every level waits for the next one on the stacks
+        StringBuilder expression = new StringBuilder(NESTING_DEPTH * 4);
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append("1+(");
+        }
+        expression.append('1');
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append(')');
+        }
+        Assert.assertEquals(calculatorTestObject.eval(expression.toString()), NESTING_DEPTH + 1.0);
+    }
+
+    @Test(timeOut = 10000)
+    public void deepFunctionNestingTest() {
+        // -(-(-(x))) and cos(cos(cos(x))) , nested calls
+        StringBuilder negations = new StringBuilder(NESTING_DEPTH * 3);
+        StringBuilder calls = new StringBuilder(NESTING_DEPTH * 5);
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            negations.append("-(");
+            calls.append("cos(");
+        }
+        negations.append('x');
+        calls.append('x');
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            negations.append(')');
+            calls.append(')');
+        }
+        calculatorTestObject.bindings().put("x", 0.5);
+        Assert.assertEquals(calculatorTestObject.eval(negations.toString()), 0.5);
+        // the fixed point of cos
+        Assert.assertEquals(calculatorTestObject.eval(calls.toString()), 0.739085133215, 1e-12);
+    }
+
+    @Test(timeOut = 10000)
+    public void deepNestingWithBytecodeBackendTest() {
+        // the generated method would be too big , the expression is interpreted
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.BYTECODE);
+        StringBuilder expression = new StringBuilder(NESTING_DEPTH * 4);
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append("x+(");
+        }
+        expression.append('x');
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append(')');
+        }
+        calculatorTestObject.bindings().put("x", 2.0);
+        Assert.assertEquals(calculatorTestObject.eval(expression.toString()), NESTING_DEPTH * 2 + 2.0);
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.INTERPRETER);
+    }
+
+    @Test(timeOut = 10000)
+    public void longAssignmentChainTest() {
+        // v=v=v=...=1 , rounded as the final result like the default policy does
+        Assert.assertEquals(calculatorTestObject.eval(assignmentChain()), 1.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("v"), 1.0);
+    }
+
+    @Test(timeOut = 10000)
+    public void longAssignmentChainTryEvalTest() {
+        // tryEval answers with a value or an error , never with an Error of the virtual machine
+        EvaluationResult result;
+        try {
+            result = calculatorTestObject.tryEval(assignmentChain());
+        } catch (Error e) {
+            throw new AssertionError("tryEval threw " + e.getClass().getSimpleName(), e);
+        }
+        if (result.isSuccess()) {
+            Assert.assertEquals(result.getValue(), 1.0);
+        } else {
+            Assert.assertNotNull(result.getErrorCode());
+        }
+    }
+
+    @Test
+    public void unbalancedParenthesesTest() {
+        assertUnbalancedParentheses("(1+2", 0);
+        assertUnbalancedParentheses("1+2)", 3);
+        assertUnbalancedParentheses("(1))+(2", 3);
+        assertUnbalancedParentheses("((1)", 0);
+        assertUnbalancedParentheses("(1)+(2*(3)", 4);
+        assertUnbalancedParentheses(")(", 0);
+        assertUnbalancedParentheses("sqrt(4", 4);
+        // the error is an error of the calculator like the others
+        try {
+            calculatorTestObject.eval("(1+2))");
+            Assert.fail("unbalanced parentheses were accepted");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(e.getMessage(), "unbalanced parentheses: the ) at 5 has no matching (");
+        }
+        try {
+            calculatorTestObject.eval("(1+2");
+            Assert.fail("unbalanced parentheses were accepted");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(e.getMessage(), "unbalanced parentheses: the ( at 0 is never closed");
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void deeplyUnbalancedParenthesesTest() {
+        StringBuilder expression = new StringBuilder(NESTING_DEPTH * 2);
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append('(');
+        }
+        expression.append('1');
+        for (int depth = 1; depth < NESTING_DEPTH; depth++) {
+            expression.append(')');
+        }
+        assertUnbalancedParentheses(expression.toString(), 0);
+    }
+
+
+    private void assertUnbalancedParentheses(String expression, int position) {
+        try {
+            calculatorTestObject.compile(expression);
+            Assert.fail("unbalanced parentheses were accepted in " + expression);
+        } catch (UnbalancedParenthesesException e) {
+            Assert.assertEquals(e.getPosition(), position, expression);
+        }
+    }
+
+    private static String assignmentChain() {
+        StringBuilder expression = new StringBuilder(NESTING_DEPTH * 2 + 1);
+        for (int depth = 0; depth < NESTING_DEPTH; depth++) {
+            expression.append("v=");
+        }
+        return expression.append('1').toString();
+    }
+}
@@ -0,0 +1,133 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.ErrorCode;
+import main.java.EvaluationBackend;
+import main.java.EvaluationResult;
+import main.java.NumericBackend;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.HashMap;
+import java.util.Map;
+
+public class NumericBackendTest {
+
+    private Calc calculatorTestObject;
+
+    @BeforeMethod
+    public void setUp() {
+        calculatorTestObject = new Calc();
+    }
+
+
+    @Test
+    public void longBackendTest() {
+        calculatorTestObject.setNumericBackend(NumericBackend.LONG);
+        Assert.assertEquals(calculatorTestObject.evalNumber("(2+3)*4-7"), 13L);
+        Assert.assertEquals(calculatorTestObject.evalNumber("8/2"), 4L);
+        // a quotient that is not an integer is promoted
+        Assert.assertEquals(calculatorTestObject.evalNumber("7/2"), new BigDecimal("3.5"));
+        // so is a product that overflows , the double would be off by 2^11
+        Assert.assertEquals(calculatorTestObject.evalNumber("3037000500*3037000500"), new BigDecimal("9223372037000250000"));
+        Assert.assertEquals(calculatorTestObject.evalNumber("3037000500*3037000500-3037000500*3037000500+1"), new BigDecimal("1"));
+        Assert.assertEquals(calculatorTestObject.evalNumber("sqrt(144)"), 12L);
+        Assert.assertEquals(calculatorTestObject.eval("7/2"), 3.5);
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 3.5);
+    }
+
+    @Test
+    public void bigDecimalBackendTest() {
+        calculatorTestObject.setNumericBackend(NumericBackend.BIG_DECIMAL);
+        Assert.assertEquals(calculatorTestObject.evalNumber("0.1+0.2"), new BigDecimal("0.3"));
+        Assert.assertEquals(calculatorTestObject.evalNumber("1/3"), new BigDecimal("0.3333333333333333333333333333333333"));
+        Assert.assertEquals(calculatorTestObject.evalNumber("sqrt(2)"), new BigDecimal("1.414213562373095048801688724209698"));
+
+        calculatorTestObject.setNumericBackend(NumericBackend.bigDecimal(new MathContext(50)));
+        Assert.assertEquals(((BigDecimal) calculatorTestObject.evalNumber("1/3")).precision(), 50);
+        assertDecimal(((BigDecimal) calculatorTestObject.evalNumber("sqrt(2)*sqrt(2)")).round(new MathContext(48)), "2");
+    }
+
+    @Test
+    public void inferenceTest() {
+        Assert.assertEquals(calculatorTestObject.compile("x*2+3").inferNumericBackend(), NumericBackend.LONG);
+        Assert.assertEquals(calculatorTestObject.compile("x/2").inferNumericBackend(), NumericBackend.LONG);
+        Assert.assertEquals(calculatorTestObject.compile("x*0.5").inferNumericBackend(), NumericBackend.BIG_DECIMAL);
+        Assert.assertEquals(calculatorTestObject.compile("sqrt(x)+1").inferNumericBackend(), NumericBackend.DOUBLE);
+
+        calculatorTestObject.setNumericBackend(NumericBackend.INFERRED);
+        Assert.assertEquals(calculatorTestObject.evalNumber("6*7"), 42L);
+        // the literals are the shortest decimals of their doubles , 3 is 3.0
+        assertDecimal(calculatorTestObject.evalNumber("0.1*3"), "0.3");
+        Assert.assertEquals(calculatorTestObject.evalNumber("sin(0)"), 0.0);
+        Assert.assertEquals(calculatorTestObject.compile("6*7").getNumericBackend(), NumericBackend.INFERRED);
+    }
+
+    @Test
+    public void bindingsTest() {
+        calculatorTestObject.setNumericBackend(NumericBackend.LONG);
+        calculatorTestObject.bindings().put("x", 1e15);
+        // x+1 is exact as a long , the double of x*x is not
+        Assert.assertEquals(calculatorTestObject.evalNumber("(y=(x+1))*x"), new BigDecimal("1000000000000001000000000000000"));
+        Assert.assertEquals(calculatorTestObject.bindings().get("y"), 1e15 + 1);
+
+        // the fast path on longs and the promoted path bind the same values
+        calculatorTestObject.bindings().put("x", 3.0);
+        Assert.assertEquals(calculatorTestObject.evalNumber("x=(x*x)"), 9L);
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 9.0);
+        calculatorTestObject.bindings().put("x", 4e9);
+        Assert.assertEquals(calculatorTestObject.evalNumber("x=(x*x)"), new BigDecimal("16000000000000000000"));
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 1.6e19);
+        calculatorTestObject.bindings().put("x", 2.5);
+        Assert.assertEquals(calculatorTestObject.evalNumber("x=(x*2)"), new BigDecimal("5.0"));
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 5.0);
+    }
+
+    @Test
+    public void compiledExpressionTest() {
+        CompiledExpression compiledExpression = calculatorTestObject.compile("x/3*3");
+        Assert.assertEquals(compiledExpression.getNumericBackend(), NumericBackend.DOUBLE);
+        CompiledExpression exactExpression = compiledExpression.withNumericBackend(NumericBackend.BIG_DECIMAL);
+        Assert.assertEquals(exactExpression.getNumericBackend(), NumericBackend.BIG_DECIMAL);
+        // the backend is kept when the others change
+        Assert.assertEquals(exactExpression.withBackend(EvaluationBackend.BYTECODE).getNumericBackend(), NumericBackend.BIG_DECIMAL);
+        Assert.assertEquals(exactExpression.withBackend(EvaluationBackend.BYTECODE).withBackend(EvaluationBackend.INTERPRETER)
+                .getNumericBackend(), NumericBackend.BIG_DECIMAL);
+
+        Map<String, Double> bindings = new HashMap<>();
+        bindings.put("x", 10.0);
+        Assert.assertEquals(exactExpression.evaluateNumber(bindings), new BigDecimal("9.999999999999999999999999999999999"));
+        Assert.assertEquals(exactExpression.evaluate(new double[]{10}), 10.0);
+        Assert.assertEquals(exactExpression.asFunction().applyAsDouble(new double[]{10}), 10.0);
+        Assert.assertEquals(compiledExpression.withNumericBackend(NumericBackend.LONG).evaluate(new double[]{9}), 9.0);
+        Assert.assertSame(exactExpression.withNumericBackend(NumericBackend.BIG_DECIMAL), exactExpression);
+        Assert.assertEquals(exactExpression.withNumericBackend(NumericBackend.DOUBLE).evaluateNumber(bindings), 10.0);
+    }
+
+    @Test
+    public void errorsTest() {
+        for (NumericBackend numericBackend : new NumericBackend[]{NumericBackend.LONG, NumericBackend.BIG_DECIMAL}) {
+            calculatorTestObject.setNumericBackend(numericBackend);
+            calculatorTestObject.bindings().remove("t");
+            EvaluationResult result = calculatorTestObject.tryEval("(t=4)/(2-2)");
+            Assert.assertEquals(result.getErrorCode(), ErrorCode.DIVISION_BY_ZERO);
+            Assert.assertEquals(result.getErrorPosition(), 5);
+            // the bindings done before the error stay
+            Assert.assertEquals(calculatorTestObject.bindings().get("t"), 4.0);
+
+            result = calculatorTestObject.tryEval("1+q");
+            Assert.assertEquals(result.getErrorCode(), ErrorCode.UNDEFINED_VARIABLE);
+            Assert.assertEquals(result.getErrorPosition(), 2);
+
+            Assert.assertEquals(calculatorTestObject.tryEval("sqrt(0-1)").getErrorCode(), ErrorCode.NOT_A_NUMBER);
+        }
+    }
+
+
+    private static void assertDecimal(Number actual, String expected) {
+        Assert.assertTrue(actual instanceof BigDecimal, actual + " is not a BigDecimal");
+        Assert.assertEquals(((BigDecimal) actual).compareTo(new BigDecimal(expected)), 0, actual + " is not " + expected);
+    }
+}
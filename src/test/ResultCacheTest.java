@@ -0,0 +1,166 @@
+import main.java.Calc;
+import main.java.ExpressionCache;
+import main.java.ResultCache;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResultCacheTest {
+
+
+    @Test
+    public void unchangedVariablesHitTest() {
+        Calc calculatorTestObject = new Calc();
+        AtomicInteger callsCount = new AtomicInteger();
+        calculatorTestObject.functions().register("counted", argument -> {
+            callsCount.incrementAndGet();
+            return argument * 2;
+        }, true);
+        calculatorTestObject.eval("x=3");
+        calculatorTestObject.eval("y=4");
+
+        Assert.assertEquals(calculatorTestObject.eval("counted(x)+y"), 10.0);
+        Assert.assertEquals(calculatorTestObject.eval("counted(x) + y"), 10.0);
+        Assert.assertEquals(calculatorTestObject.eval("counted(x)+y"), 10.0);
+        Assert.assertEquals(callsCount.get(), 1);
+        // the value is still bound to _
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 10.0);
+
+        ResultCache resultCache = calculatorTestObject.resultCache();
+        Assert.assertEquals(resultCache.getHitCount(), 2);
+        Assert.assertEquals(resultCache.getMissCount(), 1);
+        Assert.assertEquals(resultCache.size(), 1);
+        Assert.assertEquals(resultCache.toString(), "size = 1/1024, hits = 2, misses = 1, evictions = 0, hit rate = 67%");
+
+        // a variable the expression doesn't read changes nothing
+        calculatorTestObject.eval("z=(x+1)");
+        Assert.assertEquals(calculatorTestObject.eval("counted(x)+y"), 10.0);
+        Assert.assertEquals(callsCount.get(), 1);
+    }
+
+    @Test
+    public void invalidationTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("x=1");
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 10.0);
+
+        // bound by an expression
+        calculatorTestObject.eval("x=2");
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 20.0);
+        calculatorTestObject.eval("y=(x=3)");
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 30.0);
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 30.0);
+
+        // bound to the same value , removed and bound again through the bindings
+        calculatorTestObject.bindings().put("x", 3.0);
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 30.0);
+        calculatorTestObject.bindings().remove("x");
+        Assert.assertFalse(calculatorTestObject.tryEval("x*10").isSuccess());
+        calculatorTestObject.bindings().put("x", 4.0);
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 40.0);
+
+        // :clear x and :clear
+        calculatorTestObject.bindings().keySet().removeAll(Arrays.asList("x", "y"));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> calculatorTestObject.eval("x*10"));
+        calculatorTestObject.eval("x=5");
+        Assert.assertEquals(calculatorTestObject.eval("x*10"), 50.0);
+        calculatorTestObject.bindings().clear();
+        Assert.assertThrows(UnsupportedOperationException.class, () -> calculatorTestObject.eval("x*10"));
+
+        // _ changes with every evaluation
+        Assert.assertEquals(calculatorTestObject.eval("1"), 1.0);
+        Assert.assertEquals(calculatorTestObject.eval("_+1"), 2.0);
+        Assert.assertEquals(calculatorTestObject.eval("_+1"), 3.0);
+        Assert.assertEquals(calculatorTestObject.resultCache().getHitCount(), 1);
+    }
+
+    @Test
+    public void uncachedExpressionsTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.functions().register("next", (double step) -> step + Math.random(), false);
+        // impure functions and bindings are evaluated every time
+        Assert.assertNotEquals(calculatorTestObject.eval("next(1)"), calculatorTestObject.eval("next(1)"));
+        calculatorTestObject.eval("x=(1+1)");
+        calculatorTestObject.bindings().put("x", 5.0);
+        calculatorTestObject.eval("x=(1+1)");
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 2.0);
+
+        // neither are sessions
+        calculatorTestObject.newSession().eval("2*3");
+        calculatorTestObject.newSession().eval("2*3");
+
+        // the value of an expression compiled again with other settings is not used
+        Assert.assertEquals(calculatorTestObject.eval("1/3"), 0.333333333333);
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.NONE);
+        Assert.assertEquals(calculatorTestObject.eval("1/3"), 1 / 3.0);
+        Assert.assertEquals(calculatorTestObject.resultCache().getHitCount(), 0);
+
+        Calc uncachedCalculator = new Calc(new ExpressionCache(16), 0);
+        uncachedCalculator.eval("2*3");
+        uncachedCalculator.eval("2*3");
+        Assert.assertEquals(uncachedCalculator.resultCache().getMissCount(), 0);
+        Assert.assertEquals(uncachedCalculator.resultCache().getHitRate(), 0.0);
+        Assert.assertThrows(IllegalArgumentException.class, () -> new ResultCache(-1));
+    }
+
+    @Test
+    public void boundedCacheTest() {
+        Calc calculatorTestObject = new Calc(new ExpressionCache(16), 2);
+        calculatorTestObject.eval("1+1");
+        calculatorTestObject.eval("2+2");
+        calculatorTestObject.eval("1+1");
+        calculatorTestObject.eval("3+3");
+        // 2+2 was the least recently used value
+        calculatorTestObject.eval("2+2");
+        ResultCache resultCache = calculatorTestObject.resultCache();
+        Assert.assertEquals(resultCache.size(), 2);
+        Assert.assertEquals(resultCache.getEvictionCount(), 2);
+        Assert.assertEquals(resultCache.getHitCount(), 1);
+        Assert.assertEquals(resultCache.getHitRate(), 0.2);
+
+        resultCache.clear();
+        Assert.assertEquals(resultCache.size(), 0);
+        Assert.assertEquals(calculatorTestObject.eval("2+2"), 4.0);
+    }
+
+    @Test
+    public void concurrentInvalidationTest() throws Exception {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.bindings().put("x", 0.0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 3; thread++) {
+                results.add(executor.submit(() -> {
+                    // x only grows , a stale value would be smaller than a value read before it
+                    double lastValue = 0;
+                    for (int read = 0; read < 20_000; read++) {
+                        double value = calculatorTestObject.eval("x*2");
+                        if (value < lastValue) {
+                            return false;
+                        }
+                        lastValue = value;
+                    }
+                    return true;
+                }));
+            }
+            for (int step = 1; step <= 20_000; step++) {
+                calculatorTestObject.bindings().put("x", (double) step);
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(calculatorTestObject.eval("x*2"), 40_000.0);
+    }
+}
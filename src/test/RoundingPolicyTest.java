@@ -0,0 +1,62 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.EvaluationBackend;
+import main.java.RoundingPolicy;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RoundingPolicyTest {
+
+
+    @Test
+    public void defaultRoundingPolicyTest() {
+        Calc calculatorTestObject = new Calc();
+        Assert.assertEquals(calculatorTestObject.getRoundingPolicy(), RoundingPolicy.FINAL_RESULT);
+        Assert.assertEquals(calculatorTestObject.eval("0.1+0.2"), 0.3);
+        Assert.assertEquals(calculatorTestObject.eval("1/3*3"), 1.0);
+        Assert.assertEquals(calculatorTestObject.eval("x=(1/3)"), 0.333333333333);
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 0.333333333333);
+    }
+
+    @Test
+    public void everyStepRoundingPolicyTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.EVERY_STEP);
+        // 1/3 is rounded before it is multiplied
+        Assert.assertEquals(calculatorTestObject.eval("1/3*3"), 0.999999999999);
+        Assert.assertEquals(calculatorTestObject.eval("0.1+0.2"), 0.3);
+    }
+
+    @Test
+    public void noRoundingPolicyTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.NONE);
+        Assert.assertEquals(calculatorTestObject.eval("0.1+0.2"), 0.1 + 0.2);
+        Assert.assertEquals(calculatorTestObject.eval("sqrt(2)"), Math.sqrt(2));
+    }
+
+    @Test
+    public void changingRoundingPolicyOfCachedExpressionTest() {
+        Calc calculatorTestObject = new Calc();
+        Assert.assertEquals(calculatorTestObject.eval("1/3*3"), 1.0);
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.EVERY_STEP);
+        Assert.assertEquals(calculatorTestObject.eval("1/3*3"), 0.999999999999);
+    }
+
+    @Test
+    public void bytecodeBackendRoundsLikeInterpreterTest() {
+        Calc calculatorTestObject = new Calc();
+        String[] expressions = {"1/3*3", "0.1+0.2", "y=sqrt(2)*1.0000000000004", "-log(7)/3+sin(1)", "y*y-2"};
+        for (RoundingPolicy roundingPolicy : RoundingPolicy.values()) {
+            for (String expression : expressions) {
+                CompiledExpression interpreted = calculatorTestObject.compile(expression).withRoundingPolicy(roundingPolicy);
+                CompiledExpression generated = interpreted.withBackend(EvaluationBackend.BYTECODE);
+                double[] interpretedVariables = {0.5};
+                double[] generatedVariables = {0.5};
+                Assert.assertEquals(generated.evaluate(generatedVariables), interpreted.evaluate(interpretedVariables),
+                        roundingPolicy + " " + expression);
+                Assert.assertEquals(generatedVariables, interpretedVariables);
+            }
+        }
+    }
+}
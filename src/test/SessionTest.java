@@ -0,0 +1,69 @@
+import main.java.Calc;
+import main.java.Session;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+public class SessionTest {
+
+
+    @Test
+    public void sessionReadsThroughBaseBindingsTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("rate=2");
+        Session session = calculatorTestObject.newSession();
+        Assert.assertEquals(session.eval("rate*10"), 20.0);
+
+        // later changes of the base are seen by sessions that didn't bind the variable
+        calculatorTestObject.eval("rate=3");
+        Assert.assertEquals(session.eval("rate*10"), 30.0);
+    }
+
+    @Test
+    public void sessionBindingsStayInSessionTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("x=1");
+        Session firstSession = calculatorTestObject.newSession();
+        Session secondSession = calculatorTestObject.newSession();
+
+        Assert.assertEquals(firstSession.eval("x=5"), 5.0);
+        Assert.assertEquals(secondSession.eval("x+1"), 2.0);
+        Assert.assertEquals(firstSession.eval("x+1"), 6.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 1.0);
+
+        Assert.assertEquals(firstSession.eval("_"), 6.0);
+        Assert.assertEquals(secondSession.eval("_"), 2.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 1.0);
+    }
+
+    @Test
+    public void clearOnlyClearsTheSessionTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("x=1");
+        calculatorTestObject.eval("y=2");
+        Session session = calculatorTestObject.newSession();
+        session.eval("z=3");
+
+        session.bindings().keySet().removeAll(Arrays.asList("x", "z"));
+        Assert.assertEquals(session.bindings().keySet(), new HashSet<>(Arrays.asList("_", "y")));
+        Assert.assertEquals(calculatorTestObject.bindings().get("x"), 1.0);
+
+        session.bindings().clear();
+        Assert.assertTrue(session.bindings().isEmpty());
+        Assert.assertEquals(calculatorTestObject.bindings().size(), 3);
+        Assert.assertThrows(UnsupportedOperationException.class, () -> session.eval("y"));
+    }
+
+    @Test
+    public void forkedSessionTest() {
+        Calc calculatorTestObject = new Calc();
+        Session session = calculatorTestObject.newSession();
+        session.eval("a=10");
+        Session forkedSession = session.fork();
+        Assert.assertEquals(forkedSession.eval("a=(a+1)"), 11.0);
+        Assert.assertEquals(session.eval("a"), 10.0);
+        Assert.assertFalse(calculatorTestObject.bindings().containsKey("a"));
+    }
+}
@@ -1,12 +1,14 @@
 
 
 import javafx.util.Pair;
+import main.java.PackedTokens;
 import main.java.TokenType;
 import main.java.Tokenizer;
 import main.java.exceptions.UnknownCharacterException;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -73,6 +75,38 @@ public class TokenizerTest {
         return expectedResults;
     }
 
+    @Test
+    public void tokenizeExpressionWithWhitespaceTest() throws UnknownCharacterException {
+        List<Pair<TokenType, String>> tokens = tokenizerTestObject.tokenizeString(" 1 +\t1*4+5+( 2+2 ) *5 / 3 ");
+        Assert.assertEquals(tokens, buildExpectedBaseList());
+    }
+
+    @Test
+    public void tokenizeCharSequenceInPlaceTest() throws UnknownCharacterException {
+        StringBuilder expression = new StringBuilder("x1 = sqrt(2.25)*10.5");
+        PackedTokens tokens = tokenizerTestObject.tokenize(CharBuffer.wrap(expression));
+
+        Assert.assertEquals(tokens.size(), 8);
+        Assert.assertEquals(tokens.getType(0), TokenType.VARIABLE);
+        Assert.assertEquals(tokens.getStart(0), 0);
+        Assert.assertEquals(tokens.getEnd(0), 2);
+        Assert.assertEquals(tokens.getSymbol(1), '=');
+        Assert.assertEquals(tokens.getType(2), TokenType.FUNCTION);
+        Assert.assertTrue(tokens.textEquals(2, "sqrt"));
+        Assert.assertEquals(tokens.getType(3), TokenType.PARENTHESES);
+        Assert.assertEquals(tokens.getNumber(4), 2.25);
+        Assert.assertEquals(tokens.getStart(4), 10);
+        Assert.assertEquals(tokens.getText(4), "2.25");
+        Assert.assertEquals(tokens.getNumber(7), 10.5);
+    }
+
+    @Test
+    public void tokenizeMalformedNumberTest() throws UnknownCharacterException {
+        PackedTokens tokens = tokenizerTestObject.tokenize("1.2.3+12345678901234567890");
+        Assert.assertTrue(Double.isNaN(tokens.getNumber(0)));
+        Assert.assertEquals(tokens.getNumber(2), 12345678901234567890.0);
+    }
+
     @Test
     public void UnknownCharacterException() {
 
@@ -0,0 +1,143 @@
+import main.java.Calc;
+import main.java.ErrorCode;
+import main.java.EvaluationBackend;
+import main.java.EvaluationResult;
+import main.java.RoundingPolicy;
+import main.java.Session;
+import main.java.exceptions.UnbalancedParenthesesException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+public class TryEvalTest {
+
+    private Calc calculatorTestObject;
+
+    @BeforeMethod
+    public void setUp() {
+        calculatorTestObject = new Calc();
+        calculatorTestObject.bindings().put("x", 1.0);
+    }
+
+
+    @Test
+    public void successTest() {
+        EvaluationResult result = calculatorTestObject.tryEval("x+2");
+        Assert.assertTrue(result.isSuccess());
+        Assert.assertEquals(result.getValue(), 3.0);
+        Assert.assertNull(result.getErrorCode());
+        Assert.assertEquals(result.getErrorPosition(), -1);
+        Assert.assertNull(result.getError());
+        // the value is bound to _ like eval does
+        Assert.assertEquals(calculatorTestObject.eval("_"), 3.0);
+    }
+
+    @Test
+    public void errorCodesAndPositionsTest() {
+        assertFailure("1+$2", ErrorCode.UNKNOWN_CHARACTER, 2);
+        assertFailure("(1+2", ErrorCode.UNBALANCED_PARENTHESES, 0);
+        assertFailure("1+2)", ErrorCode.UNBALANCED_PARENTHESES, 3);
+        assertFailure("1.2.3+1", ErrorCode.MALFORMED_EXPRESSION, 0);
+        assertFailure("1+", ErrorCode.MALFORMED_EXPRESSION, 2);
+        assertFailure("x=", ErrorCode.MALFORMED_EXPRESSION, 2);
+        assertFailure("2*y", ErrorCode.UNDEFINED_VARIABLE, 2);
+        assertFailure("1+y*y", ErrorCode.UNDEFINED_VARIABLE, 2);
+        assertFailure("1/0", ErrorCode.DIVISION_BY_ZERO, 1);
+        assertFailure("1+4/(x-x)", ErrorCode.DIVISION_BY_ZERO, 3);
+    }
+
+    @Test
+    public void positionsIgnoreWhitespaceTest() {
+        assertFailure("1 +  $", ErrorCode.UNKNOWN_CHARACTER, 5);
+        assertFailure("  y + 1", ErrorCode.UNDEFINED_VARIABLE, 2);
+        assertFailure(" 1 / ( x - x )", ErrorCode.DIVISION_BY_ZERO, 3);
+    }
+
+    @Test
+    public void bytecodeBackendPositionsTest() {
+        calculatorTestObject.setEvaluationBackend(EvaluationBackend.BYTECODE);
+        assertFailure("1+4/(x-x)", ErrorCode.DIVISION_BY_ZERO, 3);
+        assertFailure("x+2*y", ErrorCode.UNDEFINED_VARIABLE, 4);
+    }
+
+    @Test
+    public void notANumberTest() {
+        calculatorTestObject.setRoundingPolicy(RoundingPolicy.EVERY_STEP);
+        Assert.assertEquals(calculatorTestObject.tryEval("sqrt(0-1)").getErrorCode(), ErrorCode.NOT_A_NUMBER);
+    }
+
+    @Test
+    public void failureIsReportedLikeEvalTest() {
+        EvaluationResult result = calculatorTestObject.tryEval("4/(x-1)");
+        Assert.assertEquals(result.getErrorMessage(), "Division By Zero Exception");
+        Assert.assertTrue(result.getError() instanceof UnsupportedOperationException);
+        Assert.assertEquals(result.getValueOrElse(-1), -1.0);
+        try {
+            result.getValue();
+            Assert.fail("the value of a failed expression was returned");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(e.getMessage(), "Division By Zero Exception");
+        }
+        try {
+            calculatorTestObject.eval("4/(x-1)");
+            Assert.fail("a division by zero was accepted");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(e.getMessage(), result.getErrorMessage());
+        }
+    }
+
+    @Test
+    public void failureKeepsBindingsTest() {
+        calculatorTestObject.eval("5");
+        // the bindings made before the failure stay , like with eval , but _ is not bound
+        Assert.assertFalse(calculatorTestObject.tryEval("z=(2)+1/0").isSuccess());
+        Assert.assertEquals(calculatorTestObject.bindings().get("z"), 2.0);
+        Assert.assertEquals(calculatorTestObject.bindings().get("_"), 5.0);
+    }
+
+    @Test
+    public void sessionTryEvalTest() {
+        Session session = calculatorTestObject.newSession();
+        Assert.assertEquals(session.tryEval("y=(x+1)").getValue(), 2.0);
+        Assert.assertTrue(session.tryEval("y*2").isSuccess());
+        Assert.assertEquals(calculatorTestObject.tryEval("y*2").getErrorCode(), ErrorCode.UNDEFINED_VARIABLE);
+    }
+
+    @Test
+    public void functionFailuresAreThrownTest() {
+        IllegalStateException failure = new IllegalStateException("backend down");
+        calculatorTestObject.functions().register("boom", (double argument) -> {
+            throw failure;
+        }, false);
+        // the expression is fine , the function failed
+        try {
+            calculatorTestObject.tryEval("boom(1)+2");
+            Assert.fail("the failure of the function was returned as a result");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(e, failure);
+        }
+        Assert.assertThrows(IllegalStateException.class,
+                () -> calculatorTestObject.evalAll(Arrays.asList("1+1", "boom(x)")));
+        Assert.assertEquals(calculatorTestObject.tryEval("boom(1)+").getErrorCode(), ErrorCode.MALFORMED_EXPRESSION);
+    }
+
+    @Test
+    public void errorsHaveNoStackTraceTest() {
+        try {
+            calculatorTestObject.compile("(1+2");
+            Assert.fail("unbalanced parentheses were accepted");
+        } catch (UnbalancedParenthesesException e) {
+            Assert.assertEquals(e.getStackTrace().length, 0);
+        }
+    }
+
+
+    private void assertFailure(String expression, ErrorCode errorCode, int errorPosition) {
+        EvaluationResult result = calculatorTestObject.tryEval(expression);
+        Assert.assertFalse(result.isSuccess(), expression);
+        Assert.assertEquals(result.getErrorCode(), errorCode, expression);
+        Assert.assertEquals(result.getErrorPosition(), errorPosition, expression);
+    }
+}
@@ -0,0 +1,201 @@
+import main.java.Calc;
+import main.java.CompiledExpression;
+import main.java.ErrorCode;
+import main.java.EvaluationBackend;
+import main.java.EvaluationResult;
+import main.java.ExpressionCache;
+import main.java.NumericBackend;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class VariableFrameTest {
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+
+    @Test
+    public void bindingsViewTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("y=2");
+        calculatorTestObject.eval("x=(y*3)");
+        Map<String, Double> bindings = calculatorTestObject.bindings();
+        Assert.assertEquals(new ArrayList<>(bindings.keySet()), Arrays.asList("_", "x", "y"));
+        Assert.assertEquals(bindings.get("_"), 6.0);
+        Assert.assertEquals(bindings.get("x"), 6.0);
+        Assert.assertNull(bindings.get("never_bound"));
+        Assert.assertNull(bindings.get(null));
+
+        // the expressions see the changes of the view
+        bindings.put("y", 5.0);
+        Assert.assertEquals(calculatorTestObject.eval("y+_"), 11.0);
+        bindings.keySet().removeAll(Arrays.asList("x", "y"));
+        Assert.assertEquals(bindings.size(), 1);
+        Assert.assertEquals(bindings.toString(), "{_=11.0}");
+        Assert.assertThrows(NullPointerException.class, () -> bindings.put("x", null));
+    }
+
+    @Test
+    public void undefinedVariablesTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("x=1");
+        Assert.assertEquals(calculatorTestObject.eval("x+1"), 2.0);
+
+        calculatorTestObject.bindings().remove("x");
+        EvaluationResult result = calculatorTestObject.tryEval("1+x");
+        Assert.assertEquals(result.getErrorCode(), ErrorCode.UNDEFINED_VARIABLE);
+        Assert.assertEquals(result.getErrorPosition(), 2);
+
+        calculatorTestObject.eval("x=4");
+        calculatorTestObject.bindings().clear();
+        Assert.assertTrue(calculatorTestObject.bindings().isEmpty());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> calculatorTestObject.eval("x"));
+        Assert.assertThrows(UnsupportedOperationException.class, () -> calculatorTestObject.eval("_"));
+    }
+
+    @Test
+    public void backendsTest() {
+        Calc calculatorTestObject = new Calc();
+        calculatorTestObject.eval("a=2");
+        for (EvaluationBackend backend : EvaluationBackend.values()) {
+            calculatorTestObject.setEvaluationBackend(backend);
+            Assert.assertEquals(calculatorTestObject.eval("b=(a*3)"), 6.0);
+            Assert.assertEquals(calculatorTestObject.bindings().get("b"), 6.0);
+            Assert.assertEquals(calculatorTestObject.tryEval("a+c").getErrorCode(), ErrorCode.UNDEFINED_VARIABLE);
+            calculatorTestObject.bindings().remove("b");
+        }
+        calculatorTestObject.setNumericBackend(NumericBackend.LONG);
+        Assert.assertEquals(calculatorTestObject.evalNumber("b=(a+1)"), 3L);
+        Assert.assertEquals(calculatorTestObject.bindings().get("b"), 3.0);
+        Assert.assertEquals(calculatorTestObject.evalGradient("a*b").getPartialDerivatives().get("a"), 3.0);
+    }
+
+    @Test
+    public void manyVariablesTest() {
+        Calc calculatorTestObject = new Calc();
+        StringBuilder sum = new StringBuilder("0");
+        for (int variableIndex = 0; variableIndex < 300; variableIndex++) {
+            calculatorTestObject.eval("frameVariable" + variableIndex + "=" + variableIndex);
+            sum.append("+frameVariable").append(variableIndex);
+        }
+        Assert.assertEquals(calculatorTestObject.eval(sum.toString()), 299 * 300 / 2.0);
+        Assert.assertEquals(calculatorTestObject.bindings().size(), 301);
+
+        // every calculator has its own slots , an expression compiled with one can be evaluated with another
+        Calc otherCalculator = new Calc();
+        CompiledExpression expression = otherCalculator.compile("frameVariable299*2");
+        Assert.assertEquals(otherCalculator.tryEval("frameVariable299*2").getErrorCode(), ErrorCode.UNDEFINED_VARIABLE);
+        otherCalculator.bindings().put("frameVariable299", 1.5);
+        Assert.assertEquals(otherCalculator.eval("frameVariable299*2"), 3.0);
+        Assert.assertEquals(expression.evaluate(calculatorTestObject.bindings()), 598.0);
+    }
+
+    @Test
+    public void sharedExpressionCacheTest() {
+        ExpressionCache sharedCache = new ExpressionCache(16);
+        Calc firstCalculator = new Calc(sharedCache);
+        Calc secondCalculator = new Calc(sharedCache);
+        firstCalculator.eval("x=1");
+        secondCalculator.eval("unrelated=0");
+        secondCalculator.eval("x=2");
+        CompiledExpression expression = firstCalculator.compile("x*2");
+        Assert.assertSame(secondCalculator.compile("x*2"), expression);
+
+        // every frame keeps its own slots in the shared expression , alternating the calculators resolves nothing
+        // again , which would allocate
+        double sum = 0;
+        for (int evaluation = 0; evaluation < 100_000; evaluation++) {
+            sum += expression.evaluate(firstCalculator.bindings()) + expression.evaluate(secondCalculator.bindings());
+        }
+        long allocatedBytesBefore = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int evaluation = 0; evaluation < 100_000; evaluation++) {
+            sum += expression.evaluate(firstCalculator.bindings()) + expression.evaluate(secondCalculator.bindings());
+        }
+        long allocatedBytes = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytesBefore;
+        Assert.assertEquals(sum, 200_000 * 6.0);
+        Assert.assertEquals(allocatedBytes, 0);
+
+        // the slots still follow the changes of every frame
+        secondCalculator.bindings().remove("unrelated");
+        firstCalculator.bindings().put("x", 5.0);
+        Assert.assertEquals(expression.evaluate(firstCalculator.bindings()), 10.0);
+        Assert.assertEquals(expression.evaluate(secondCalculator.bindings()), 4.0);
+    }
+
+    @Test
+    public void namesSeenElsewhereTest() {
+        Calc busyCalculator = new Calc();
+        for (int variableIndex = 0; variableIndex < 100_000; variableIndex++) {
+            Assert.assertFalse(busyCalculator.tryEval("seenElsewhere" + variableIndex + "+1").isSuccess());
+        }
+        // only read , the names took no slot
+        Assert.assertEquals(busyCalculator.bindingsCapacity(), 64);
+
+        Calc freshCalculator = new Calc();
+        Assert.assertEquals(freshCalculator.eval("seenElsewhere99999=1"), 1.0);
+        Assert.assertEquals(freshCalculator.eval("seenElsewhere99999+1"), 2.0);
+        Assert.assertEquals(freshCalculator.bindingsCapacity(), 64);
+    }
+
+    @Test
+    public void removedSlotsAreReclaimedTest() {
+        Calc calculatorTestObject = new Calc();
+        for (int variableIndex = 0; variableIndex < 1000; variableIndex++) {
+            calculatorTestObject.bindings().put("reclaimed" + variableIndex, (double) variableIndex);
+        }
+        Assert.assertEquals(calculatorTestObject.bindingsCapacity(), 1024);
+        Assert.assertEquals(calculatorTestObject.eval("reclaimed1+reclaimed999"), 1000.0);
+
+        // removing most of the variables moves the others to a smaller frame , the expressions still find them
+        for (int variableIndex = 2; variableIndex < 990; variableIndex++) {
+            calculatorTestObject.bindings().remove("reclaimed" + variableIndex);
+        }
+        Assert.assertTrue(calculatorTestObject.bindingsCapacity() < 1024);
+        Assert.assertEquals(calculatorTestObject.bindings().size(), 13);
+        Assert.assertEquals(calculatorTestObject.eval("reclaimed1+reclaimed999"), 1000.0);
+        Assert.assertFalse(calculatorTestObject.tryEval("reclaimed500").isSuccess());
+
+        calculatorTestObject.bindings().clear();
+        Assert.assertEquals(calculatorTestObject.bindingsCapacity(), 64);
+        Assert.assertFalse(calculatorTestObject.tryEval("reclaimed1+reclaimed999").isSuccess());
+        calculatorTestObject.eval("reclaimed999=2");
+        Assert.assertEquals(calculatorTestObject.eval("reclaimed999*2"), 4.0);
+    }
+
+    @Test
+    public void concurrentBindingsTest() throws Exception {
+        Calc calculatorTestObject = new Calc();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                String variableName = "counter" + thread;
+                results.add(executor.submit(() -> {
+                    calculatorTestObject.bindings().put(variableName, 0.0);
+                    for (int step = 1; step <= 1000; step++) {
+                        // every thread only binds its own variable , it always reads its last value
+                        if (calculatorTestObject.eval(variableName + "=(" + variableName + "+1)") != step) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(calculatorTestObject.eval("counter0+counter1+counter2+counter3"), 4000.0);
+    }
+}